@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seedstack.redis.Redis;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link RedisTransactionMetadataResolver#resolve(MethodInvocation, TransactionMetadata)}, which runs on
+ * every transactional invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataResolverBenchmark {
+    private final RedisTransactionMetadataResolver resolver = new RedisTransactionMetadataResolver();
+    private final TransactionMetadata defaults = new TransactionMetadata();
+    private MethodInvocation onMethod;
+    private MethodInvocation onClass;
+    private MethodInvocation pipelined;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Field table = RedisTransactionMetadataResolver.class.getDeclaredField("redisTransactionMetadataTable");
+        table.setAccessible(true);
+        table.set(resolver, new RedisTransactionMetadataTable(
+                new RedisConfig(),
+                Arrays.asList(Service.class, AnnotatedService.class)
+        ));
+        onMethod = new StubMethodInvocation(Service.class.getMethod("onMethod"));
+        onClass = new StubMethodInvocation(AnnotatedService.class.getMethod("onClass"));
+        pipelined = new StubMethodInvocation(Service.class.getMethod("pipelined"));
+    }
+
+    @Benchmark
+    public TransactionMetadata annotatedMethod() {
+        return resolver.resolve(onMethod, defaults);
+    }
+
+    @Benchmark
+    public TransactionMetadata annotatedClass() {
+        return resolver.resolve(onClass, defaults);
+    }
+
+    @Benchmark
+    public TransactionMetadata pipelinedMethod() {
+        return resolver.resolve(pipelined, defaults);
+    }
+
+    public static class Service {
+        @Redis("client1")
+        public void onMethod() {
+        }
+
+        @Redis(value = "client1", pipelined = true, atomic = false, flushThreshold = 100)
+        public void pipelined() {
+        }
+    }
+
+    @Redis("client1")
+    public static class AnnotatedService {
+        public void onClass() {
+        }
+    }
+
+    private static class StubMethodInvocation implements MethodInvocation {
+        private final Method method;
+
+        private StubMethodInvocation(Method method) {
+            this.method = method;
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public Object[] getArguments() {
+            return new Object[0];
+        }
+
+        @Override
+        public Object proceed() {
+            return null;
+        }
+
+        @Override
+        public Object getThis() {
+            return null;
+        }
+
+        @Override
+        public AccessibleObject getStaticPart() {
+            return method;
+        }
+    }
+}
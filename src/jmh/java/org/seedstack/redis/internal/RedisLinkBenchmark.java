@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Transaction;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-invocation bookkeeping of {@link RedisLink}: pushing a holder, looking up the current transaction
+ * and popping the holder, flat and nested.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisLinkBenchmark {
+    private final RedisLink<Transaction> redisLink = new RedisLink<>(new ThreadLocalContextCarrier());
+    private final Jedis jedis = new Jedis();
+    private final Transaction transaction = new Transaction(new Client());
+    private final TransactionMetadata transactionMetadata = new TransactionMetadata();
+
+    @Benchmark
+    public Jedis pushGetPop() {
+        redisLink.push(jedis, transactionMetadata);
+        redisLink.getHolder().setTransaction(transaction);
+        redisLink.get();
+        return redisLink.pop();
+    }
+
+    @Benchmark
+    public Jedis nestedPushGetPop() {
+        redisLink.push(jedis, transactionMetadata);
+        redisLink.getHolder().setTransaction(transaction);
+        redisLink.push(jedis, transactionMetadata);
+        redisLink.getHolder().setTransaction(transaction);
+        redisLink.get();
+        redisLink.pop();
+        redisLink.get();
+        return redisLink.pop();
+    }
+}
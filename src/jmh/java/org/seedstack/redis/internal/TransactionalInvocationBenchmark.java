@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.inject.Injector;
+import io.nuun.kernel.api.Kernel;
+import io.nuun.kernel.core.NuunCore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seedstack.redis.Redis;
+import org.seedstack.seed.core.Seed;
+import org.seedstack.seed.transaction.Transactional;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Transaction;
+
+import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures complete {@link Transactional} {@link Redis} invocations, from interception to connection release, against
+ * a {@link RespServer}. The figures include the interceptor, the metadata resolution, the pool borrow and the
+ * network round-trips on the loopback interface.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TransactionalInvocationBenchmark {
+    private RespServer server;
+    private Kernel kernel;
+    private Service service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new RespServer();
+        kernel = Seed.createKernel(null, NuunCore.newKernelConfiguration()
+                .param("seedstack.config.redis.clients.client1.uri", "redis://localhost:" + server.getPort())
+                .param("seedstack.config.redis.clients.client1.poolConfig.maxTotal", "16"), true);
+        service = kernel.objectGraph().as(Injector.class)
+                .createChildInjector(binder -> binder.bind(Service.class))
+                .getInstance(Service.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Seed.disposeKernel(kernel);
+        server.close();
+    }
+
+    @Benchmark
+    public void transaction() {
+        service.transaction();
+    }
+
+    @Benchmark
+    public void atomicPipeline() {
+        service.atomicPipeline();
+    }
+
+    @Benchmark
+    public void pipeline() {
+        service.pipeline();
+    }
+
+    @Benchmark
+    public String direct() {
+        return service.direct();
+    }
+
+    public static class Service {
+        @Inject
+        private Transaction transaction;
+        @Inject
+        private Pipeline pipeline;
+        @Inject
+        private Jedis jedis;
+
+        @Transactional
+        @Redis("client1")
+        public void transaction() {
+            transaction.set("key", "value");
+        }
+
+        @Transactional
+        @Redis(value = "client1", pipelined = true)
+        public void atomicPipeline() {
+            pipeline.set("key", "value");
+        }
+
+        @Transactional
+        @Redis(value = "client1", pipelined = true, atomic = false)
+        public void pipeline() {
+            pipeline.set("key", "value");
+        }
+
+        @Transactional
+        @Redis(value = "client1", mode = Redis.Mode.DIRECT)
+        public String direct() {
+            return jedis.get("key");
+        }
+    }
+}
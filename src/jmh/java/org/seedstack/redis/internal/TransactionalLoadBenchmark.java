@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.inject.Injector;
+import io.nuun.kernel.api.Kernel;
+import io.nuun.kernel.core.NuunCore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seedstack.redis.Redis;
+import org.seedstack.seed.core.Seed;
+import org.seedstack.seed.transaction.Transactional;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Transaction;
+
+import javax.inject.Inject;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives {@link Transactional} {@link Redis} methods from more threads than pooled connections against a
+ * {@link RespServer} delaying each command, so the figures include the pool contention and the command latency. Each
+ * invocation increments a counter, sets a hash field and appends to a bounded list of one of {@value #KEYS} keys,
+ * either in a MULTI/EXEC transaction or in a non-atomic pipeline. The sample time mode reports the p50, p99 and p999
+ * invocation latencies, the server latency being set with the {@code latency} and {@code jitter} parameters in
+ * microseconds (e.g. {@code -Djmh.args="TransactionalLoad -p latency=500 -p jitter=100"}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+public class TransactionalLoadBenchmark {
+    private static final int KEYS = 1024;
+    @Param({"0", "200"})
+    private long latency;
+    @Param({"50"})
+    private long jitter;
+    @Param({"8"})
+    private int poolSize;
+    private RespServer server;
+    private Kernel kernel;
+    private Service service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new RespServer().setLatency(latency, jitter);
+        kernel = Seed.createKernel(null, NuunCore.newKernelConfiguration()
+                .param("seedstack.config.redis.clients.client1.uri", "redis://localhost:" + server.getPort())
+                .param("seedstack.config.redis.clients.client1.poolConfig.maxTotal", String.valueOf(poolSize))
+                .param("seedstack.config.redis.clients.client1.poolConfig.maxIdle", String.valueOf(poolSize)), true);
+        service = kernel.objectGraph().as(Injector.class)
+                .createChildInjector(binder -> binder.bind(Service.class))
+                .getInstance(Service.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Seed.disposeKernel(kernel);
+        server.close();
+    }
+
+    @Benchmark
+    public void transaction() {
+        service.transaction(String.valueOf(ThreadLocalRandom.current().nextInt(KEYS)));
+    }
+
+    @Benchmark
+    public void pipeline() {
+        service.pipeline(String.valueOf(ThreadLocalRandom.current().nextInt(KEYS)));
+    }
+
+    public static class Service {
+        @Inject
+        private Transaction transaction;
+        @Inject
+        private Pipeline pipeline;
+
+        @Transactional
+        @Redis("client1")
+        public void transaction(String key) {
+            transaction.incr("counter:" + key);
+            transaction.hset("hash:" + key, "field", key);
+            transaction.rpush("list:" + key, key);
+            transaction.ltrim("list:" + key, -16, -1);
+        }
+
+        @Transactional
+        @Redis(value = "client1", pipelined = true, atomic = false)
+        public void pipeline(String key) {
+            pipeline.incr("counter:" + key);
+            pipeline.hset("hash:" + key, "field", key);
+            pipeline.rpush("list:" + key, key);
+            pipeline.ltrim("list:" + key, -16, -1);
+        }
+    }
+}
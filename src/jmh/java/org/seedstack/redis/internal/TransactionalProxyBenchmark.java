@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.seedstack.seed.core.internal.transaction.TransactionalClassProxy;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Transaction;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares calls through the injected transactional proxies with direct calls on the underlying Jedis objects. Only
+ * methods doing no I/O are invoked, so the difference is the cost of the proxy and of the link lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionalProxyBenchmark {
+    private final RedisLink<Transaction> transactionLink = new RedisLink<>(new ThreadLocalContextCarrier());
+    private final RedisLink<Pipeline> pipelineLink = new RedisLink<>(new ThreadLocalContextCarrier());
+    private final Client client = new Client();
+    private Transaction transaction;
+    private Pipeline pipeline;
+    private Transaction transactionProxy;
+    private Pipeline pipelineProxy;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Jedis jedis = new Jedis();
+        transaction = new Transaction(client);
+        pipeline = new Pipeline();
+        transactionProxy = TransactionalClassProxy.create(Transaction.class, transactionLink);
+        pipelineProxy = TransactionalClassProxy.create(Pipeline.class, pipelineLink);
+        transactionLink.push(jedis);
+        transactionLink.getHolder().setTransaction(transaction);
+        pipelineLink.push(jedis);
+        pipelineLink.getHolder().setTransaction(pipeline);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        transactionLink.pop();
+        pipelineLink.pop();
+    }
+
+    @Benchmark
+    public void transactionDirect() {
+        transaction.setClient(client);
+    }
+
+    @Benchmark
+    public void transactionProxy() {
+        transactionProxy.setClient(client);
+    }
+
+    @Benchmark
+    public boolean pipelineDirect() {
+        return pipeline.isInMulti();
+    }
+
+    @Benchmark
+    public boolean pipelineProxy() {
+        return pipelineProxy.isInMulti();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Asynchronous access to a Redis client. Each operation borrows a connection from a pool dedicated to this facade,
+ * runs on the executor configured for the client and completes the returned future with its result, or exceptionally
+ * with the Jedis exception raised.
+ *
+ * <p>Inject it with the client name as qualifier (e.g. {@code @Inject @Named("client1") AsyncRedis asyncRedis}). It
+ * does not take part in {@link org.seedstack.seed.transaction.Transactional} methods and can be used from any thread,
+ * which allows issuing many independent operations concurrently.</p>
+ */
+public interface AsyncRedis {
+    /**
+     * Runs the specified function with a pooled connection.
+     *
+     * @param function the function issuing commands on the connection.
+     * @param <T>      the type of the result.
+     * @return the future result of the function.
+     */
+    <T> CompletableFuture<T> execute(Function<Jedis, T> function);
+
+    /**
+     * Issues the commands added by the specified consumer as a single pipeline.
+     *
+     * @param commands the consumer adding commands to the pipeline.
+     * @return the future replies of all pipelined commands, in order.
+     */
+    CompletableFuture<List<Object>> pipelined(Consumer<Pipeline> commands);
+
+    CompletableFuture<String> get(String key);
+
+    CompletableFuture<List<String>> mget(String... keys);
+
+    CompletableFuture<String> set(String key, String value);
+
+    CompletableFuture<String> setex(String key, int seconds, String value);
+
+    CompletableFuture<Long> del(String... keys);
+
+    CompletableFuture<Boolean> exists(String key);
+
+    CompletableFuture<Long> expire(String key, int seconds);
+
+    CompletableFuture<Long> incr(String key);
+
+    CompletableFuture<String> hget(String key, String field);
+
+    CompletableFuture<Map<String, String>> hgetAll(String key);
+
+    CompletableFuture<Long> hset(String key, String field, String value);
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Coalesces the commands submitted concurrently by many threads into pipelines. Queued commands are sent together,
+ * up to a maximum batch size, optionally after waiting a configurable linger time for more commands. Each returned
+ * future is completed individually with the reply of its command, or exceptionally with its error.
+ *
+ * <p>Inject it with the client name as qualifier (e.g. {@code @Inject @Named("client1") BatchingRedis redis}).
+ * Commands are not atomic with each other and do not take part in
+ * {@link org.seedstack.seed.transaction.Transactional} methods.</p>
+ *
+ * <p>Futures are completed by the thread sending the batches, so dependent stages attached without an executor run on
+ * that thread and delay the next batch. Use the {@code *Async} variants of {@link CompletableFuture} for any stage
+ * doing more than trivial work.</p>
+ *
+ * <p>When a batch fails after being sent, for instance because the connection is lost while reading the replies, all
+ * its futures are completed exceptionally although the server may have executed some or all of its commands. The
+ * outcome of such commands is unknown: retrying a non-idempotent command (e.g. {@code incr} or {@code hset} on a
+ * counter field) after such a failure may apply it twice.</p>
+ */
+public interface BatchingRedis {
+    /**
+     * Queues a command to be sent in the next batch.
+     *
+     * @param command the function adding exactly one command to the batch pipeline and returning its response.
+     * @param <T>     the type of the reply.
+     * @return the future reply of the command.
+     */
+    <T> CompletableFuture<T> submit(Function<Pipeline, Response<T>> command);
+
+    CompletableFuture<String> get(String key);
+
+    CompletableFuture<String> set(String key, String value);
+
+    CompletableFuture<String> setex(String key, int seconds, String value);
+
+    CompletableFuture<Long> del(String key);
+
+    CompletableFuture<Boolean> exists(String key);
+
+    CompletableFuture<Long> expire(String key, int seconds);
+
+    CompletableFuture<Long> incr(String key);
+
+    CompletableFuture<String> hget(String key, String field);
+
+    CompletableFuture<Long> hset(String key, String field, String value);
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * A command sent by a {@link RedisBulkLoader}. Its arguments are encoded once, at creation. The first argument is the
+ * key of the command, which determines its slot when loading a cluster.
+ */
+public final class BulkCommand {
+    private final ProtocolCommand command;
+    private final byte[][] arguments;
+
+    private BulkCommand(ProtocolCommand command, byte[][] arguments) {
+        this.command = command;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Creates an arbitrary command.
+     *
+     * @param command   the command name.
+     * @param key       the key of the command.
+     * @param arguments the arguments following the key.
+     * @return the command.
+     */
+    public static BulkCommand of(String command, String key, String... arguments) {
+        byte[] name = SafeEncoder.encode(command);
+        return create(() -> name, SafeEncoder.encode(key), SafeEncoder.encodeMany(arguments));
+    }
+
+    /**
+     * Creates an arbitrary binary command.
+     *
+     * @param command   the command name.
+     * @param key       the key of the command.
+     * @param arguments the arguments following the key.
+     * @return the command.
+     */
+    public static BulkCommand of(byte[] command, byte[] key, byte[]... arguments) {
+        return create(() -> command, key, arguments);
+    }
+
+    public static BulkCommand set(String key, String value) {
+        return create(Protocol.Command.SET, SafeEncoder.encode(key), SafeEncoder.encode(value));
+    }
+
+    public static BulkCommand set(byte[] key, byte[] value) {
+        return create(Protocol.Command.SET, key, value);
+    }
+
+    public static BulkCommand setex(String key, int seconds, String value) {
+        return create(Protocol.Command.SETEX, SafeEncoder.encode(key), Protocol.toByteArray(seconds), SafeEncoder.encode(value));
+    }
+
+    public static BulkCommand hset(String key, String field, String value) {
+        return create(Protocol.Command.HSET, SafeEncoder.encode(key), SafeEncoder.encode(field), SafeEncoder.encode(value));
+    }
+
+    public static BulkCommand sadd(String key, String... members) {
+        return create(Protocol.Command.SADD, SafeEncoder.encode(key), SafeEncoder.encodeMany(members));
+    }
+
+    public static BulkCommand rpush(String key, String... values) {
+        return create(Protocol.Command.RPUSH, SafeEncoder.encode(key), SafeEncoder.encodeMany(values));
+    }
+
+    public static BulkCommand zadd(String key, double score, String member) {
+        return create(Protocol.Command.ZADD, SafeEncoder.encode(key), Protocol.toByteArray(score), SafeEncoder.encode(member));
+    }
+
+    public static BulkCommand expire(String key, int seconds) {
+        return create(Protocol.Command.EXPIRE, SafeEncoder.encode(key), Protocol.toByteArray(seconds));
+    }
+
+    public static BulkCommand del(String key) {
+        return create(Protocol.Command.DEL, SafeEncoder.encode(key));
+    }
+
+    public ProtocolCommand getCommand() {
+        return command;
+    }
+
+    public byte[] getKey() {
+        return arguments[0];
+    }
+
+    /**
+     * @return the arguments of the command, starting with its key.
+     */
+    public byte[][] getArguments() {
+        return arguments;
+    }
+
+    private static BulkCommand create(ProtocolCommand command, byte[] key, byte[]... arguments) {
+        if (key == null) {
+            throw new IllegalArgumentException("Bulk commands require a key");
+        }
+        byte[][] all = new byte[arguments.length + 1][];
+        all[0] = key;
+        System.arraycopy(arguments, 0, all, 1, arguments.length);
+        return new BulkCommand(command, all);
+    }
+}
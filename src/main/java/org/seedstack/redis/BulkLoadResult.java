@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link RedisBulkLoader} load.
+ */
+public class BulkLoadResult {
+    private final long commands;
+    private final long errors;
+    private final List<String> errorSamples;
+    private final long elapsedNanos;
+
+    public BulkLoadResult(long commands, long errors, List<String> errorSamples, long elapsedNanos) {
+        this.commands = commands;
+        this.errors = errors;
+        this.errorSamples = Collections.unmodifiableList(errorSamples);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of commands sent, including failed ones.
+     */
+    public long getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return the number of commands which received an error reply.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the messages of the first error replies.
+     */
+    public List<String> getErrorSamples() {
+        return errorSamples;
+    }
+
+    public long getElapsed(TimeUnit timeUnit) {
+        return timeUnit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of commands per second.
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : commands * 1_000_000_000d / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d command(s) in %d ms (%.0f/s), %d error(s)",
+                commands, getElapsed(TimeUnit.MILLISECONDS), getThroughput(), errors);
+    }
+}
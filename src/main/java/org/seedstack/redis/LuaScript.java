@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyPipelineBase;
+import redis.clients.jedis.Response;
+
+import java.util.List;
+
+/**
+ * Handle of a Lua script declared with {@link RedisScript}, invoked with EVALSHA. A script missing from the server
+ * cache, after a restart or a failover, is transparently loaded again. The type parameter is the type the script reply
+ * is converted to: {@code Long} for integers, {@code String} for bulk and status replies, {@code List} for arrays.
+ *
+ * @param <T> the type of the script result.
+ */
+public interface LuaScript<T> {
+    /**
+     * @return the SHA1 digest of the script, as computed by Redis.
+     */
+    String getSha1();
+
+    /**
+     * Runs the script on its client, or on the cluster master owning the first key.
+     *
+     * @param keys the keys accessed by the script, all hashed to the same slot on clusters.
+     * @param args the script arguments.
+     * @return the script result.
+     */
+    T eval(List<String> keys, List<String> args);
+
+    /**
+     * Runs the script with the specified connection, such as the {@link Jedis} injected in a {@code DIRECT}
+     * {@link Redis} scope.
+     *
+     * @param jedis the connection.
+     * @param keys  the keys accessed by the script.
+     * @param args  the script arguments.
+     * @return the script result.
+     */
+    T eval(Jedis jedis, List<String> keys, List<String> args);
+
+    /**
+     * Queues the script in the specified {@link redis.clients.jedis.Transaction} or
+     * {@link redis.clients.jedis.Pipeline}, such as the ones injected in {@link Redis} scopes. Since a queued script
+     * cannot be retried, a script missing from the server fails its response and is loaded again for the next
+     * invocations.
+     *
+     * @param pipeline the transaction or pipeline.
+     * @param keys     the keys accessed by the script.
+     * @param args     the script arguments.
+     * @return the response of the script, available once the transaction or pipeline is executed.
+     */
+    Response<T> eval(MultiKeyPipelineBase pipeline, List<String> keys, List<String> args);
+}
@@ -22,12 +22,90 @@ import java.lang.annotation.Target;
 @Inherited
 public @interface Redis {
     /**
-     * @return the configured client name.
+     * Value of {@link #routingKey()} routing each invocation to the slot of the first key used in its transaction.
+     */
+    String FIRST_KEY = "*";
+
+    /**
+     * @return the configured client name. When a configured cluster name is specified instead, commands are issued
+     * through the injectable {@link RedisClusterPipeline}, or through the injectable
+     * {@link redis.clients.jedis.Transaction} if a {@link #routingKey()} is specified.
      */
     String value();
 
+    /**
+     * @return for a cluster, the key or hash tag (such as {@code {user:42}}) whose slot receives the commands of the
+     * method, which are then executed in a MULTI/EXEC transaction on the master owning this slot. With
+     * {@link #FIRST_KEY}, each invocation is routed to the slot of the first key it uses, so that transactions on
+     * different entities (such as {@code {user:42}:profile} and {@code {user:43}:profile}) are spread over the
+     * cluster. All the keys used in the transaction must hash to the same slot. Ignored for clients, and for clusters
+     * when {@link #pipelined()} is true or in {@link Mode#DIRECT} mode.
+     */
+    String routingKey() default "";
+
     /**
      * @return if true open the transaction on a pipeline.
      */
     boolean pipelined() default false;
+
+    /**
+     * @return if false and {@link #pipelined()} is true, commands are only batched in the pipeline without being
+     * wrapped in a MULTI/EXEC transaction. The pipeline is synchronized instead of executed when the method returns.
+     * Such a pipeline cannot be rolled back: commands are written to the connection as they are queued, and a rollback
+     * only reads their pending replies, so all of them may have been executed.
+     */
+    boolean atomic() default true;
+
+    /**
+     * @return when strictly positive, the number of commands after which a non-atomic pipeline is synchronized with
+     * the server. Commands synchronized by a flush have been executed when the method fails. Ignored for atomic
+     * pipelines.
+     */
+    int flushThreshold() default 0;
+
+    /**
+     * @return if true and {@link #pipelined()} is true, commands are sent with server replies disabled (CLIENT REPLY
+     * OFF, requiring Redis 3.2 or later), so they are neither read back nor allocated a readable response. Connection
+     * errors are reported when the method returns, but command errors are not. The {@link #atomic()} and
+     * {@link #flushThreshold()} attributes are ignored. Every command returns the same shared
+     * {@link redis.clients.jedis.Response}, which never holds a reply: calling its {@code get()} method always throws
+     * a {@link redis.clients.jedis.exceptions.JedisDataException}. MULTI is not supported. Enabling it on a method of
+     * a cluster, in {@link Mode#DIRECT} mode or when {@link #pipelined()} is false fails at startup.
+     */
+    boolean fireAndForget() default false;
+
+    /**
+     * @return if true the method only reads data, so its commands are sent to one of the read replicas configured
+     * for the client, or to the primary when no replica is available. Ignored for clusters.
+     */
+    boolean readOnly() default false;
+
+    /**
+     * @return when positive or zero, the maximum time in milliseconds spent waiting for a pooled connection when the
+     * method is entered, overriding the {@code borrow} options of the client. Ignored for clusters.
+     */
+    int borrowTimeout() default -1;
+
+    /**
+     * @return the mode used to access the client within the annotated method scope.
+     */
+    Mode mode() default Mode.TRANSACTION;
+
+    /**
+     * The way commands are issued to the client within the annotated method scope.
+     */
+    enum Mode {
+        /**
+         * Commands are queued in a MULTI/EXEC transaction (or in a pipeline if {@link #pipelined()} is true) and
+         * executed when the method returns. Use the injectable {@link redis.clients.jedis.Transaction} or
+         * {@link redis.clients.jedis.Pipeline}.
+         */
+        TRANSACTION,
+        /**
+         * A plain pooled connection is bound to the method scope and commands are executed immediately, without
+         * MULTI/EXEC. Use the injectable {@link redis.clients.jedis.Jedis} or
+         * {@link redis.clients.jedis.commands.JedisCommands}. The {@link #pipelined()} attribute is ignored.
+         */
+        DIRECT
+    }
 }
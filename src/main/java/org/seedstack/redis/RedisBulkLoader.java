@@ -0,0 +1,40 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams large numbers of commands to a client or cluster. Commands are encoded directly into the output buffer of a
+ * pooled connection and their replies are read and discarded, only errors being counted, so memory usage does not
+ * depend on the number of commands. At most {@link RedisConfig.BulkLoadConfig#getWindow()} commands are in flight on
+ * a connection, which applies backpressure to the source of commands.
+ *
+ * <p>Inject it with the client or cluster name as qualifier (e.g. {@code @Inject @Named("client1") RedisBulkLoader
+ * bulkLoader}). On a cluster, commands are partitioned by the master owning their key slot and each master is loaded
+ * in parallel through its own connection. Commands are not atomic and not retried: redirections and other error
+ * replies are counted in the result, while a connection failure aborts the load.</p>
+ */
+public interface RedisBulkLoader {
+    /**
+     * Loads the commands of the iterator, which is consumed by the calling thread.
+     *
+     * @param commands the commands to send.
+     * @return the throughput and error counts of the load.
+     */
+    BulkLoadResult load(Iterator<BulkCommand> commands);
+
+    /**
+     * Loads the commands of the stream, which is consumed by the calling thread.
+     *
+     * @param commands the commands to send.
+     * @return the throughput and error counts of the load.
+     */
+    BulkLoadResult load(Stream<BulkCommand> commands);
+}
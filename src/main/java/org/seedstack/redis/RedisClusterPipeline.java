@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import redis.clients.jedis.PipelineBase;
+
+import java.io.Closeable;
+
+/**
+ * A pipeline over a Redis cluster. Single-key commands are queued locally and, when synchronized, grouped by hash slot
+ * and owning master node, then sent as one pipeline per node in parallel. Commands redirected by the cluster (MOVED or
+ * ASK) are re-routed individually.
+ *
+ * <p>Inject it in methods annotated with {@link org.seedstack.seed.transaction.Transactional} and {@link Redis}
+ * specifying a configured cluster name. The pipeline is synchronized when the method returns.</p>
+ */
+public abstract class RedisClusterPipeline extends PipelineBase implements Closeable {
+    /**
+     * Sends all queued commands to their owning nodes and reads the replies into the corresponding responses.
+     */
+    public abstract void sync();
+
+    /**
+     * Discards all queued commands that have not been synchronized yet.
+     */
+    public abstract void clear();
+
+    @Override
+    public abstract void close();
+}
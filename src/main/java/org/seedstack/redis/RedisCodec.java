@@ -0,0 +1,35 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+/**
+ * Converts keys and values of given types to and from their binary representation in Redis. Implementations are
+ * detected by classpath scanning: for each implementation, a {@link RedisTemplate} with the same type arguments is
+ * injectable for each client (e.g. {@code @Inject @Named("client1") RedisTemplate<String, Order> orders}). They are
+ * instantiated by injection and must be thread-safe.
+ *
+ * <p>A built-in codec handling string keys and values of basic types (strings, numbers, booleans, byte arrays or any
+ * serializable object) backs {@code RedisTemplate<String, Object>} unless an implementation with the same type
+ * arguments is present.</p>
+ *
+ * @param <K> the type of keys.
+ * @param <V> the type of values.
+ */
+public interface RedisCodec<K, V> {
+    byte[] encodeKey(K key);
+
+    K decodeKey(byte[] bytes);
+
+    byte[] encodeValue(V value);
+
+    /**
+     * @param bytes the binary value, never null.
+     * @return the decoded value.
+     */
+    V decodeValue(byte[] bytes);
+}
@@ -12,6 +12,8 @@ import org.seedstack.coffig.SingleValue;
 import redis.clients.jedis.JedisPoolConfig;
 import redis.clients.jedis.Protocol;
 
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.net.URI;
@@ -22,6 +24,14 @@ public class RedisConfig {
     private Map<String, ClientConfig> clients = new HashMap<>();
     private String defaultClient;
     private Map<String, ClusterConfig> clusters = new HashMap<>();
+    private Map<String, ShardedClientConfig> shardedClients = new HashMap<>();
+    @NotNull
+    private WarmUpConfig warmUp = new WarmUpConfig();
+    @NotNull
+    private CodecConfig codec = new CodecConfig();
+    @NotNull
+    private TracingConfig tracing = new TracingConfig();
+    private Class<? extends RedisContextCarrier> contextCarrier;
 
     public Map<String, ClientConfig> getClients() {
         return Collections.unmodifiableMap(clients);
@@ -49,6 +59,246 @@ public class RedisConfig {
         this.clusters.put(name, clusterConfig);
     }
 
+    public Map<String, ShardedClientConfig> getShardedClients() {
+        return Collections.unmodifiableMap(shardedClients);
+    }
+
+    public RedisConfig addShardedClient(String name, ShardedClientConfig shardedClientConfig) {
+        this.shardedClients.put(name, shardedClientConfig);
+        return this;
+    }
+
+    public WarmUpConfig getWarmUp() {
+        return warmUp;
+    }
+
+    public RedisConfig setWarmUp(WarmUpConfig warmUp) {
+        this.warmUp = warmUp;
+        return this;
+    }
+
+    public CodecConfig getCodec() {
+        return codec;
+    }
+
+    public RedisConfig setCodec(CodecConfig codec) {
+        this.codec = codec;
+        return this;
+    }
+
+    public TracingConfig getTracing() {
+        return tracing;
+    }
+
+    public RedisConfig setTracing(TracingConfig tracing) {
+        this.tracing = tracing;
+        return this;
+    }
+
+    public Class<? extends RedisContextCarrier> getContextCarrier() {
+        return contextCarrier;
+    }
+
+    /**
+     * Sets the carrier of the Redis transaction context, a thread-local variable being used if not specified.
+     *
+     * @param contextCarrier the carrier class, with a public no-argument constructor.
+     * @return the configuration itself.
+     */
+    public RedisConfig setContextCarrier(Class<? extends RedisContextCarrier> contextCarrier) {
+        this.contextCarrier = contextCarrier;
+        return this;
+    }
+
+    /**
+     * Configuration of the built-in binary codec used by {@code RedisTemplate<String, Object>}.
+     */
+    public static class CodecConfig {
+        @Min(0)
+        private int compressionThreshold = 0;
+
+        public int getCompressionThreshold() {
+            return compressionThreshold;
+        }
+
+        /**
+         * Sets the encoded size in bytes from which values are compressed, if it makes them smaller. Zero (the
+         * default) disables compression.
+         *
+         * @param compressionThreshold the size in bytes.
+         * @return the configuration itself.
+         */
+        public CodecConfig setCompressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+    }
+
+    /**
+     * Configuration of the sampled command tracing. When enabled, the commands called on the injected
+     * {@code Transaction}, {@code Pipeline}, {@code Jedis}, {@code RedisClusterPipeline} and {@code JedisCluster}
+     * instances are sampled to record their name, key, payload size and latency, and to track the most frequently
+     * accessed keys and the biggest payloads, which are published through diagnostics.
+     */
+    public static class TracingConfig {
+        public static final double DEFAULT_SAMPLE_RATE = 0.01;
+        public static final int DEFAULT_TOP_KEYS = 10;
+        public static final int DEFAULT_SKETCH_WIDTH = 2048;
+        public static final int DEFAULT_SKETCH_DEPTH = 4;
+        private boolean enabled = false;
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        private double sampleRate = DEFAULT_SAMPLE_RATE;
+        @Min(1)
+        private int topKeys = DEFAULT_TOP_KEYS;
+        @Min(1)
+        private int sketchWidth = DEFAULT_SKETCH_WIDTH;
+        @Min(1)
+        private int sketchDepth = DEFAULT_SKETCH_DEPTH;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public TracingConfig setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public double getSampleRate() {
+            return sampleRate;
+        }
+
+        /**
+         * Sets the fraction of the commands which are traced, between 0 and 1.
+         *
+         * @param sampleRate the sampled fraction of commands.
+         * @return the configuration itself.
+         */
+        public TracingConfig setSampleRate(double sampleRate) {
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        public int getTopKeys() {
+            return topKeys;
+        }
+
+        /**
+         * Sets the number of hot keys and big keys which are reported.
+         *
+         * @param topKeys the number of keys of each ranking.
+         * @return the configuration itself.
+         */
+        public TracingConfig setTopKeys(int topKeys) {
+            this.topKeys = topKeys;
+            return this;
+        }
+
+        public int getSketchWidth() {
+            return sketchWidth;
+        }
+
+        /**
+         * Sets the number of counters per row of the count-min sketch estimating key frequencies, rounded up to a
+         * power of two. Wider sketches overestimate less.
+         *
+         * @param sketchWidth the number of counters per row.
+         * @return the configuration itself.
+         */
+        public TracingConfig setSketchWidth(int sketchWidth) {
+            this.sketchWidth = sketchWidth;
+            return this;
+        }
+
+        public int getSketchDepth() {
+            return sketchDepth;
+        }
+
+        /**
+         * Sets the number of rows of the count-min sketch estimating key frequencies.
+         *
+         * @param sketchDepth the number of rows.
+         * @return the configuration itself.
+         */
+        public TracingConfig setSketchDepth(int sketchDepth) {
+            this.sketchDepth = sketchDepth;
+            return this;
+        }
+    }
+
+    /**
+     * Configuration of the startup warm-up. Clusters are always created in parallel. When enabled, the pools of all
+     * clients and cluster nodes are also concurrently filled up to their {@code minIdle} size before the application
+     * starts, so the first requests do not pay the connection handshakes.
+     */
+    public static class WarmUpConfig {
+        public static final int DEFAULT_TIMEOUT = 10000;
+        public static final int DEFAULT_PARALLELISM = 16;
+        private boolean enabled = true;
+        private boolean ping = false;
+        @Min(0)
+        private int timeout = DEFAULT_TIMEOUT;
+        @Min(1)
+        private int parallelism = DEFAULT_PARALLELISM;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public WarmUpConfig setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public boolean isPing() {
+            return ping;
+        }
+
+        /**
+         * Makes the startup fail unless every client and cluster node answers a PING within the warm-up timeout. When
+         * disabled (the default), warm-up failures are only logged.
+         *
+         * @param ping true to gate the startup on a successful PING.
+         * @return the configuration itself.
+         */
+        public WarmUpConfig setPing(boolean ping) {
+            this.ping = ping;
+            return this;
+        }
+
+        public int getTimeout() {
+            return timeout;
+        }
+
+        /**
+         * Sets the time budget of the whole warm-up in milliseconds, after which the remaining connections are
+         * created lazily. Clusters which could not be created within this budget make the startup fail.
+         *
+         * @param timeout the time budget in milliseconds.
+         * @return the configuration itself.
+         */
+        public WarmUpConfig setTimeout(int timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * Sets the maximum number of connections opened concurrently during the warm-up.
+         *
+         * @param parallelism the number of concurrent handshakes.
+         * @return the configuration itself.
+         */
+        public WarmUpConfig setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+    }
+
     public static abstract class CommonConfig {
         @NotNull
         private JedisPoolConfig poolConfig = new JedisPoolConfig();
@@ -109,6 +359,22 @@ public class RedisConfig {
         @SingleValue
         private URI uri;
         private Class<? extends RedisExceptionHandler> exceptionHandler;
+        @NotNull
+        private NearCacheConfig nearCache = new NearCacheConfig();
+        @NotNull
+        private AsyncConfig async = new AsyncConfig();
+        @NotNull
+        private BatchingConfig batching = new BatchingConfig();
+        @NotNull
+        private ReplicasConfig replicas = new ReplicasConfig();
+        @NotNull
+        private BulkLoadConfig bulkLoad = new BulkLoadConfig();
+        @NotNull
+        private ListenersConfig listeners = new ListenersConfig();
+        @NotNull
+        private BorrowConfig borrow = new BorrowConfig();
+        private Map<String, RateLimiterConfig> rateLimiters = new HashMap<>();
+        private Map<String, SemaphoreConfig> semaphores = new HashMap<>();
 
         public URI getUri() {
             return uri;
@@ -127,6 +393,875 @@ public class RedisConfig {
             this.exceptionHandler = exceptionHandler;
             return this;
         }
+
+        public NearCacheConfig getNearCache() {
+            return nearCache;
+        }
+
+        public ClientConfig setNearCache(NearCacheConfig nearCache) {
+            this.nearCache = nearCache;
+            return this;
+        }
+
+        public AsyncConfig getAsync() {
+            return async;
+        }
+
+        public ClientConfig setAsync(AsyncConfig async) {
+            this.async = async;
+            return this;
+        }
+
+        public BatchingConfig getBatching() {
+            return batching;
+        }
+
+        public ClientConfig setBatching(BatchingConfig batching) {
+            this.batching = batching;
+            return this;
+        }
+
+        public ReplicasConfig getReplicas() {
+            return replicas;
+        }
+
+        public ClientConfig setReplicas(ReplicasConfig replicas) {
+            this.replicas = replicas;
+            return this;
+        }
+
+        public BulkLoadConfig getBulkLoad() {
+            return bulkLoad;
+        }
+
+        public ClientConfig setBulkLoad(BulkLoadConfig bulkLoad) {
+            this.bulkLoad = bulkLoad;
+            return this;
+        }
+
+        public ListenersConfig getListeners() {
+            return listeners;
+        }
+
+        public ClientConfig setListeners(ListenersConfig listeners) {
+            this.listeners = listeners;
+            return this;
+        }
+
+        public BorrowConfig getBorrow() {
+            return borrow;
+        }
+
+        public ClientConfig setBorrow(BorrowConfig borrow) {
+            this.borrow = borrow;
+            return this;
+        }
+
+        public Map<String, RateLimiterConfig> getRateLimiters() {
+            return Collections.unmodifiableMap(rateLimiters);
+        }
+
+        public ClientConfig addRateLimiter(String name, RateLimiterConfig rateLimiterConfig) {
+            this.rateLimiters.put(name, rateLimiterConfig);
+            return this;
+        }
+
+        public Map<String, SemaphoreConfig> getSemaphores() {
+            return Collections.unmodifiableMap(semaphores);
+        }
+
+        public ClientConfig addSemaphore(String name, SemaphoreConfig semaphoreConfig) {
+            this.semaphores.put(name, semaphoreConfig);
+            return this;
+        }
+    }
+
+    /**
+     * Configuration of the {@link RedisListener} methods of a client. Each subscription and stream consumer holds a
+     * dedicated connection, while listener invocations run on a worker pool shared by all listeners of the client.
+     * When its queue is full, the connections stop reading messages until workers catch up.
+     */
+    public static class ListenersConfig {
+        public static final int DEFAULT_THREADS = 4;
+        public static final int DEFAULT_QUEUE_SIZE = 1000;
+        public static final int DEFAULT_COUNT = 100;
+        public static final int DEFAULT_BLOCK = 1000;
+        @Min(1)
+        private int threads = DEFAULT_THREADS;
+        @Min(1)
+        private int queueSize = DEFAULT_QUEUE_SIZE;
+        @Min(1)
+        private int count = DEFAULT_COUNT;
+        @Min(1)
+        private int block = DEFAULT_BLOCK;
+        private String consumer;
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public ListenersConfig setThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        /**
+         * Sets the maximum number of messages waiting for a worker thread.
+         *
+         * @param queueSize the capacity of the worker queue.
+         * @return the configuration itself.
+         */
+        public ListenersConfig setQueueSize(int queueSize) {
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Sets the maximum number of stream entries read by each XREADGROUP, which are acknowledged together.
+         *
+         * @param count the XREADGROUP COUNT.
+         * @return the configuration itself.
+         */
+        public ListenersConfig setCount(int count) {
+            this.count = count;
+            return this;
+        }
+
+        public int getBlock() {
+            return block;
+        }
+
+        /**
+         * Sets how long, in milliseconds, XREADGROUP waits for new entries. It also bounds the time needed to stop
+         * stream consumers.
+         *
+         * @param block the XREADGROUP BLOCK in milliseconds.
+         * @return the configuration itself.
+         */
+        public ListenersConfig setBlock(int block) {
+            this.block = block;
+            return this;
+        }
+
+        public String getConsumer() {
+            return consumer;
+        }
+
+        /**
+         * Sets the consumer name in stream consumer groups, which must be unique among application instances and
+         * stable across restarts to recover pending entries. Defaults to the name of the runtime (pid@host).
+         *
+         * @param consumer the consumer name.
+         * @return the configuration itself.
+         */
+        public ListenersConfig setConsumer(String consumer) {
+            this.consumer = consumer;
+            return this;
+        }
+    }
+
+    /**
+     * Configuration of the {@link RedisBulkLoader} of a client or cluster.
+     */
+    public static class BulkLoadConfig {
+        public static final int DEFAULT_WINDOW = 1000;
+        @Min(2)
+        private int window = DEFAULT_WINDOW;
+
+        public int getWindow() {
+            return window;
+        }
+
+        /**
+         * Sets the maximum number of commands sent on a connection without having read their reply. When the window
+         * is full, half of the pending replies are read before sending more commands. On clusters, it is also the
+         * capacity of the queue of each master node.
+         *
+         * @param window the maximum number of in-flight commands per connection.
+         * @return the configuration itself.
+         */
+        public BulkLoadConfig setWindow(int window) {
+            this.window = window;
+            return this;
+        }
+    }
+
+    /**
+     * Configuration of a {@link RedisRateLimiter} of a client or cluster, injected with its name as qualifier.
+     */
+    public static class RateLimiterConfig {
+        public static final int DEFAULT_PERIOD = 1000;
+        @NotNull
+        private Algorithm algorithm = Algorithm.TOKEN_BUCKET;
+        @Min(1)
+        private int limit = 1;
+        @Min(1)
+        private int period = DEFAULT_PERIOD;
+        @Min(0)
+        private int burst;
+        @Min(0)
+        private int prefetch;
+
+        public Algorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public RateLimiterConfig setAlgorithm(Algorithm algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        /**
+         * Sets the number of permits granted per period.
+         *
+         * @param limit the number of permits.
+         * @return the configuration itself.
+         */
+        public RateLimiterConfig setLimit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        public int getPeriod() {
+            return period;
+        }
+
+        /**
+         * Sets the period of the limit, which is the length of the sliding window or the time needed to refill the
+         * token bucket with {@code limit} permits.
+         *
+         * @param period the period in milliseconds.
+         * @return the configuration itself.
+         */
+        public RateLimiterConfig setPeriod(int period) {
+            this.period = period;
+            return this;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        /**
+         * Sets the capacity of the token bucket, which is the number of permits that can be acquired at once after an
+         * idle period. Defaults to the limit if 0. Ignored by sliding windows.
+         *
+         * @param burst the bucket capacity.
+         * @return the configuration itself.
+         */
+        public RateLimiterConfig setBurst(int burst) {
+            this.burst = burst;
+            return this;
+        }
+
+        public int getPrefetch() {
+            return prefetch;
+        }
+
+        /**
+         * Sets the number of extra permits acquired along with the requested ones and kept locally for the next
+         * acquisitions of the same key, so a hot limiter only calls the server once every {@code prefetch + 1}
+         * acquisitions. Permits still held locally after one period are discarded, which lowers the effective limit of
+         * an instance that does not use them all. A denied acquisition is also remembered until the server expects
+         * permits to be available again, so the next ones are denied without calling the server. Prefetching is
+         * disabled if 0.
+         *
+         * @param prefetch the number of permits acquired in advance.
+         * @return the configuration itself.
+         */
+        public RateLimiterConfig setPrefetch(int prefetch) {
+            this.prefetch = prefetch;
+            return this;
+        }
+
+        public enum Algorithm {
+            /**
+             * Counts the permits granted in the current and previous fixed windows, the previous count being weighted
+             * by its overlap with the sliding window.
+             */
+            SLIDING_WINDOW,
+            /**
+             * Refills a bucket of {@code burst} permits at the rate of {@code limit} permits per period.
+             */
+            TOKEN_BUCKET
+        }
+    }
+
+    /**
+     * Configuration of a {@link RedisSemaphore} of a client or cluster, injected with its name as qualifier.
+     */
+    public static class SemaphoreConfig {
+        public static final int DEFAULT_LEASE_TIME = 30000;
+        @Min(1)
+        private int permits = 1;
+        @Min(1)
+        private int leaseTime = DEFAULT_LEASE_TIME;
+
+        public int getPermits() {
+            return permits;
+        }
+
+        /**
+         * Sets the number of permits that can be held at the same time.
+         *
+         * @param permits the number of permits.
+         * @return the configuration itself.
+         */
+        public SemaphoreConfig setPermits(int permits) {
+            this.permits = permits;
+            return this;
+        }
+
+        public int getLeaseTime() {
+            return leaseTime;
+        }
+
+        /**
+         * Sets the time after which a permit that was neither released nor renewed is reclaimed, so permits held by a
+         * crashed instance are eventually available again.
+         *
+         * @param leaseTime the lease time in milliseconds.
+         * @return the configuration itself.
+         */
+        public SemaphoreConfig setLeaseTime(int leaseTime) {
+            this.leaseTime = leaseTime;
+            return this;
+        }
+    }
+
+    /**
+     * Configuration of the read replicas of a client. Methods annotated with {@code @Redis(readOnly = true)} borrow
+     * their connection from a replica pool, falling back to the primary when no replica is available. Replica pools
+     * use the same pool, timeout and SSL settings as the primary.
+     */
+    public static class ReplicasConfig {
+        public static final int DEFAULT_RETRY_DELAY = 1000;
+        @SingleValue
+        private List<URI> uris = new ArrayList<>();
+        @NotNull
+        private Selection selection = Selection.LEAST_OUTSTANDING;
+        @Min(0)
+        private int retryDelay = DEFAULT_RETRY_DELAY;
+
+        public List<URI> getUris() {
+            return uris;
+        }
+
+        public ReplicasConfig setUris(List<URI> uris) {
+            this.uris = uris;
+            return this;
+        }
+
+        public ReplicasConfig addUri(URI uri) {
+            this.uris.add(uri);
+            return this;
+        }
+
+        public Selection getSelection() {
+            return selection;
+        }
+
+        public ReplicasConfig setSelection(Selection selection) {
+            this.selection = selection;
+            return this;
+        }
+
+        public int getRetryDelay() {
+            return retryDelay;
+        }
+
+        /**
+         * Sets the delay in milliseconds during which a replica is skipped after a failure to connect to it.
+         *
+         * @param retryDelay the delay in milliseconds.
+         * @return the configuration itself.
+         */
+        public ReplicasConfig setRetryDelay(int retryDelay) {
+            this.retryDelay = retryDelay;
+            return this;
+        }
+
+        public enum Selection {
+            /**
+             * The replica with the fewest borrowed connections is chosen.
+             */
+            LEAST_OUTSTANDING,
+            /**
+             * Replicas are chosen in turn.
+             */
+            ROUND_ROBIN
+        }
+    }
+
+    /**
+     * Configuration of the way {@link Redis} scopes borrow the connection of a client. By default a borrow waits as
+     * long as allowed by the {@code maxWaitMillis} pool option. A borrow time budget, which can be overridden per
+     * method with {@link Redis#borrowTimeout()}, fails with a dedicated error once exhausted. The optional circuit
+     * breaker rejects borrows for a while after consecutive connection failures, and the optional adaptive sizing
+     * grows or shrinks the {@code maxTotal} pool option according to the observed borrow wait time.
+     */
+    public static class BorrowConfig {
+        public static final int DEFAULT_TIMEOUT = -1;
+        private int timeout = DEFAULT_TIMEOUT;
+        private boolean failFast = false;
+        @NotNull
+        private CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+        @NotNull
+        private AdaptiveConfig adaptive = new AdaptiveConfig();
+
+        public int getTimeout() {
+            return timeout;
+        }
+
+        /**
+         * Sets the maximum time in milliseconds spent waiting for a connection, a negative value (the default) keeping
+         * the {@code maxWaitMillis} pool option.
+         *
+         * @param timeout the borrow time budget in milliseconds.
+         * @return the configuration itself.
+         */
+        public BorrowConfig setTimeout(int timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public boolean isFailFast() {
+            return failFast;
+        }
+
+        /**
+         * Sets if borrows fail immediately instead of waiting when the pool is exhausted, unless the method specifies
+         * its own budget.
+         *
+         * @param failFast true to never wait for a connection.
+         * @return the configuration itself.
+         */
+        public BorrowConfig setFailFast(boolean failFast) {
+            this.failFast = failFast;
+            return this;
+        }
+
+        public CircuitBreakerConfig getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        public BorrowConfig setCircuitBreaker(CircuitBreakerConfig circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        public AdaptiveConfig getAdaptive() {
+            return adaptive;
+        }
+
+        public BorrowConfig setAdaptive(AdaptiveConfig adaptive) {
+            this.adaptive = adaptive;
+            return this;
+        }
+
+        /**
+         * Configuration of the circuit breaker of a client. Once opened by consecutive connection failures, borrows are
+         * rejected for the open duration, after which a single trial is let through: its success closes the circuit
+         * and its failure opens it again.
+         */
+        public static class CircuitBreakerConfig {
+            public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+            public static final int DEFAULT_OPEN_DURATION = 10000;
+            private boolean enabled = false;
+            @Min(1)
+            private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+            @Min(0)
+            private int openDuration = DEFAULT_OPEN_DURATION;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public CircuitBreakerConfig setEnabled(boolean enabled) {
+                this.enabled = enabled;
+                return this;
+            }
+
+            public int getFailureThreshold() {
+                return failureThreshold;
+            }
+
+            /**
+             * Sets the number of consecutive connection failures opening the circuit.
+             *
+             * @param failureThreshold the number of failures.
+             * @return the configuration itself.
+             */
+            public CircuitBreakerConfig setFailureThreshold(int failureThreshold) {
+                this.failureThreshold = failureThreshold;
+                return this;
+            }
+
+            public int getOpenDuration() {
+                return openDuration;
+            }
+
+            /**
+             * Sets the time in milliseconds during which an opened circuit rejects borrows.
+             *
+             * @param openDuration the duration in milliseconds.
+             * @return the configuration itself.
+             */
+            public CircuitBreakerConfig setOpenDuration(int openDuration) {
+                this.openDuration = openDuration;
+                return this;
+            }
+        }
+
+        /**
+         * Configuration of the adaptive sizing of a client pool. At each interval, {@code maxTotal} grows by a quarter
+         * when borrows waited longer than the target on average or exhausted their budget, and shrinks by an eighth when
+         * less than half of the connections were used, within the configured bounds.
+         */
+        public static class AdaptiveConfig {
+            public static final int DEFAULT_TARGET_WAIT = 5;
+            public static final int DEFAULT_INTERVAL = 1000;
+            private boolean enabled = false;
+            @Min(0)
+            private int minTotal = 0;
+            @Min(0)
+            private int maxTotal = 0;
+            @Min(0)
+            private int targetWait = DEFAULT_TARGET_WAIT;
+            @Min(1)
+            private int interval = DEFAULT_INTERVAL;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public AdaptiveConfig setEnabled(boolean enabled) {
+                this.enabled = enabled;
+                return this;
+            }
+
+            public int getMinTotal() {
+                return minTotal;
+            }
+
+            /**
+             * Sets the lower bound of {@code maxTotal}, zero (the default) meaning the configured pool size.
+             *
+             * @param minTotal the minimum number of connections.
+             * @return the configuration itself.
+             */
+            public AdaptiveConfig setMinTotal(int minTotal) {
+                this.minTotal = minTotal;
+                return this;
+            }
+
+            public int getMaxTotal() {
+                return maxTotal;
+            }
+
+            /**
+             * Sets the upper bound of {@code maxTotal}, zero (the default) meaning four times the configured pool size.
+             *
+             * @param maxTotal the maximum number of connections.
+             * @return the configuration itself.
+             */
+            public AdaptiveConfig setMaxTotal(int maxTotal) {
+                this.maxTotal = maxTotal;
+                return this;
+            }
+
+            public int getTargetWait() {
+                return targetWait;
+            }
+
+            /**
+             * Sets the mean borrow wait time in milliseconds above which the pool grows.
+             *
+             * @param targetWait the wait time in milliseconds.
+             * @return the configuration itself.
+             */
+            public AdaptiveConfig setTargetWait(int targetWait) {
+                this.targetWait = targetWait;
+                return this;
+            }
+
+            public int getInterval() {
+                return interval;
+            }
+
+            /**
+             * Sets the time in milliseconds between two pool size adjustments.
+             *
+             * @param interval the interval in milliseconds.
+             * @return the configuration itself.
+             */
+            public AdaptiveConfig setInterval(int interval) {
+                this.interval = interval;
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Configuration of the {@link AsyncRedis} facade of a client. Its connection pool and executor are created on
+     * first use.
+     */
+    public static class AsyncConfig {
+        public static final int DEFAULT_MAX_CONNECTIONS = 8;
+        @Min(1)
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        @Min(0)
+        private int threads = 0;
+        private boolean virtualThreads = false;
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        /**
+         * Sets the size of the dedicated connection pool of the asynchronous facade, which is separate from the pool
+         * used by transactions so concurrent fan-outs cannot starve them.
+         *
+         * @param maxConnections the maximum number of connections.
+         * @return the configuration itself.
+         */
+        public AsyncConfig setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Sets the number of threads executing the commands. Zero (the default) uses as many threads as connections.
+         *
+         * @param threads the number of threads.
+         * @return the configuration itself.
+         */
+        public AsyncConfig setThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        /**
+         * Runs each command on a new virtual thread instead of a fixed thread pool, if supported by the Java runtime
+         * (Java 21 or later). The number of concurrent commands remains bounded by the connection pool.
+         *
+         * @param virtualThreads true to use virtual threads.
+         * @return the configuration itself.
+         */
+        public AsyncConfig setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+    }
+
+    /**
+     * Configuration of the {@link BatchingRedis} executor of a client. Its threads are started on first use.
+     */
+    public static class BatchingConfig {
+        public static final int DEFAULT_MAX_BATCH_SIZE = 128;
+        public static final int DEFAULT_MAX_PENDING = 10000;
+        @Min(1)
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        @Min(0)
+        private int maxLingerMicros = 0;
+        @Min(1)
+        private int maxPending = DEFAULT_MAX_PENDING;
+        @Min(1)
+        private int threads = 1;
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        /**
+         * Sets the maximum number of commands sent in one pipeline.
+         *
+         * @param maxBatchSize the maximum number of commands per batch.
+         * @return the configuration itself.
+         */
+        public BatchingConfig setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public int getMaxLingerMicros() {
+            return maxLingerMicros;
+        }
+
+        /**
+         * Sets how long, in microseconds, a batch waits for more commands after its first one before being sent if
+         * it is not full. Zero (the default) sends the commands already queued without waiting.
+         *
+         * @param maxLingerMicros the maximum linger time in microseconds.
+         * @return the configuration itself.
+         */
+        public BatchingConfig setMaxLingerMicros(int maxLingerMicros) {
+            this.maxLingerMicros = maxLingerMicros;
+            return this;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        /**
+         * Sets the maximum number of queued commands. Commands submitted beyond this limit fail immediately.
+         *
+         * @param maxPending the maximum number of queued commands.
+         * @return the configuration itself.
+         */
+        public BatchingConfig setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+            return this;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * Sets the number of threads sending batches, each holding at most one connection at a time.
+         *
+         * @param threads the number of threads.
+         * @return the configuration itself.
+         */
+        public BatchingConfig setThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+    }
+
+    /**
+     * Configuration of the optional near cache of a client. When enabled, GET, HGET and MGET replies are kept in a
+     * bounded local cache which is invalidated by Redis through client-side caching (CLIENT TRACKING), using a
+     * dedicated connection subscribed to the invalidation channel. Requires Redis 6 or later.
+     */
+    public static class NearCacheConfig {
+        public static final long DEFAULT_MAX_SIZE = 10000;
+        public static final int DEFAULT_RECONNECT_DELAY = 1000;
+        private boolean enabled = false;
+        @Min(1)
+        private long maxSize = DEFAULT_MAX_SIZE;
+        @Min(0)
+        private long maxWeight = 0;
+        @NotNull
+        private TrackingMode trackingMode = TrackingMode.DEFAULT;
+        private Set<String> prefixes = new HashSet<>();
+        @Min(0)
+        private int reconnectDelay = DEFAULT_RECONNECT_DELAY;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public NearCacheConfig setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        /**
+         * Sets the maximum number of cached keys. Ignored if a maximum weight is specified.
+         *
+         * @param maxSize the maximum number of cached keys.
+         * @return the configuration itself.
+         */
+        public NearCacheConfig setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public long getMaxWeight() {
+            return maxWeight;
+        }
+
+        /**
+         * Sets the approximate maximum memory footprint of cached keys and values, in bytes. Zero (the default) bounds
+         * the cache by size instead.
+         *
+         * @param maxWeight the maximum weight in bytes.
+         * @return the configuration itself.
+         */
+        public NearCacheConfig setMaxWeight(long maxWeight) {
+            this.maxWeight = maxWeight;
+            return this;
+        }
+
+        public TrackingMode getTrackingMode() {
+            return trackingMode;
+        }
+
+        public NearCacheConfig setTrackingMode(TrackingMode trackingMode) {
+            this.trackingMode = trackingMode;
+            return this;
+        }
+
+        public Set<String> getPrefixes() {
+            return prefixes;
+        }
+
+        /**
+         * Sets the key prefixes to receive invalidations for in {@link TrackingMode#BCAST} mode. An empty set means
+         * every key.
+         *
+         * @param prefixes the key prefixes.
+         * @return the configuration itself.
+         */
+        public NearCacheConfig setPrefixes(Set<String> prefixes) {
+            this.prefixes = prefixes;
+            return this;
+        }
+
+        public int getReconnectDelay() {
+            return reconnectDelay;
+        }
+
+        /**
+         * Sets the delay in milliseconds before reconnecting the invalidation connection after a failure. The near
+         * cache is bypassed while this connection is down.
+         *
+         * @param reconnectDelay the delay in milliseconds.
+         * @return the configuration itself.
+         */
+        public NearCacheConfig setReconnectDelay(int reconnectDelay) {
+            this.reconnectDelay = reconnectDelay;
+            return this;
+        }
+
+        public enum TrackingMode {
+            /**
+             * The server remembers the keys read by each pooled connection and only sends invalidations for those.
+             */
+            DEFAULT,
+            /**
+             * The server sends invalidations for every modified key matching the configured prefixes, whether it
+             * was read or not. Uses less server memory at the expense of more invalidation messages.
+             */
+            BCAST
+        }
     }
 
     public static class ClusterConfig extends CommonConfig {
@@ -137,6 +1272,10 @@ public class RedisConfig {
         private String user;
         private String password;
         private String clientName;
+        @NotNull
+        private BulkLoadConfig bulkLoad = new BulkLoadConfig();
+        private Map<String, RateLimiterConfig> rateLimiters = new HashMap<>();
+        private Map<String, SemaphoreConfig> semaphores = new HashMap<>();
 
         public Set<String> getHostAndPorts() {
             return hostAndPorts;
@@ -182,5 +1321,56 @@ public class RedisConfig {
             this.clientName = clientName;
             return this;
         }
+
+        public BulkLoadConfig getBulkLoad() {
+            return bulkLoad;
+        }
+
+        public ClusterConfig setBulkLoad(BulkLoadConfig bulkLoad) {
+            this.bulkLoad = bulkLoad;
+            return this;
+        }
+
+        public Map<String, RateLimiterConfig> getRateLimiters() {
+            return Collections.unmodifiableMap(rateLimiters);
+        }
+
+        public ClusterConfig addRateLimiter(String name, RateLimiterConfig rateLimiterConfig) {
+            this.rateLimiters.put(name, rateLimiterConfig);
+            return this;
+        }
+
+        public Map<String, SemaphoreConfig> getSemaphores() {
+            return Collections.unmodifiableMap(semaphores);
+        }
+
+        public ClusterConfig addSemaphore(String name, SemaphoreConfig semaphoreConfig) {
+            this.semaphores.put(name, semaphoreConfig);
+            return this;
+        }
+    }
+
+    /**
+     * Configuration of a client spreading keys over several standalone Redis instances by consistent hashing. Each
+     * shard has its own pool built from the common settings. The position of each URI in the list determines the
+     * keys it owns, so shards must only be appended to keep most keys in place.
+     */
+    public static class ShardedClientConfig extends CommonConfig {
+        @SingleValue
+        private List<URI> uris = new ArrayList<>();
+
+        public List<URI> getUris() {
+            return uris;
+        }
+
+        public ShardedClientConfig setUris(List<URI> uris) {
+            this.uris = uris;
+            return this;
+        }
+
+        public ShardedClientConfig addUri(URI uri) {
+            this.uris.add(uri);
+            return this;
+        }
     }
 }
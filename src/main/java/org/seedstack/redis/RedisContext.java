@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Immutable snapshot of the {@link Redis} scopes active when it was captured with
+ * {@link RedisContextManager#capture()}. Re-entering it on another thread makes the injected {@code Transaction},
+ * {@code Pipeline}, {@code Jedis} and {@link RedisClusterPipeline} refer to the captured scopes for the duration of
+ * the call, the previous context of the thread being restored afterwards. The captured scopes must still be active and
+ * their connection must not be used concurrently by several threads.
+ */
+public interface RedisContext {
+    /**
+     * Runs the specified task within this context.
+     *
+     * @param runnable the task.
+     */
+    void run(Runnable runnable);
+
+    /**
+     * Calls the specified task within this context.
+     *
+     * @param callable the task.
+     * @param <T>      the type of the result.
+     * @return the result of the task.
+     * @throws Exception if the task failed.
+     */
+    <T> T call(Callable<T> callable) throws Exception;
+
+    /**
+     * @param runnable the task.
+     * @return a task running the specified one within this context.
+     */
+    Runnable wrap(Runnable runnable);
+
+    /**
+     * @param callable the task.
+     * @param <T>      the type of the result.
+     * @return a task calling the specified one within this context.
+     */
+    <T> Callable<T> wrap(Callable<T> callable);
+
+    /**
+     * Wraps an executor so that its tasks run within this context, for instance to compose {@code CompletableFuture}
+     * stages with the {@code *Async(..., executor)} methods.
+     *
+     * @param executor the executor.
+     * @return an executor running tasks within this context.
+     */
+    Executor wrap(Executor executor);
+}
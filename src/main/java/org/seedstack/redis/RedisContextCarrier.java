@@ -0,0 +1,28 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+/**
+ * Carries the Redis transaction context of the current thread, which is an opaque immutable value. The default carrier
+ * is a thread-local variable cleared as soon as the outermost {@link Redis} scope ends. Alternative carriers, for
+ * instance bridging to the context propagation of a reactive or tracing library, can be configured with the
+ * {@code redis.contextCarrier} option and must have a public no-argument constructor.
+ */
+public interface RedisContextCarrier {
+    /**
+     * @return the context of the current thread or null if none.
+     */
+    Object get();
+
+    /**
+     * Sets the context of the current thread.
+     *
+     * @param context the context or null to clear it.
+     */
+    void set(Object context);
+}
@@ -0,0 +1,19 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+/**
+ * Captures the Redis transaction context of the current thread, to hand {@link Redis} scopes over to other threads
+ * such as virtual threads or {@code CompletableFuture} stages.
+ */
+public interface RedisContextManager {
+    /**
+     * @return the context of the current thread, empty if no {@link Redis} scope is active.
+     */
+    RedisContext capture();
+}
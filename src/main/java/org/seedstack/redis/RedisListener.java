@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as a consumer of Redis messages, detected at startup and invoked on an instance obtained from the
+ * injector. A listener consumes either Pub/Sub channels, Pub/Sub patterns or a stream through a consumer group:
+ * <ul>
+ * <li>channel and pattern listeners take the message ({@code String}) and optionally the channel it was published
+ * on as first parameter ({@code String channel, String message}),</li>
+ * <li>stream listeners take a {@link redis.clients.jedis.StreamEntry} and optionally the stream name as first
+ * parameter. Entries are acknowledged in one XACK per poll once processed; entries whose listener failed are left
+ * pending and delivered again on the next startup.</li>
+ * </ul>
+ *
+ * <p>Listeners use dedicated connections of their client, outside of its pool, and are invoked on the bounded worker
+ * pool configured by the {@code listeners} client option.</p>
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RedisListener {
+    /**
+     * @return the configured client name, the default client being used if empty.
+     */
+    String client() default "";
+
+    /**
+     * @return the Pub/Sub channels to subscribe to.
+     */
+    String[] channels() default {};
+
+    /**
+     * @return the Pub/Sub patterns to subscribe to.
+     */
+    String[] patterns() default {};
+
+    /**
+     * @return the stream to consume, with the {@link #group()} consumer group.
+     */
+    String stream() default "";
+
+    /**
+     * @return the consumer group, created at the end of the stream if it does not exist.
+     */
+    String group() default "";
+}
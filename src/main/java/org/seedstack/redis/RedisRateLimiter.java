@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+/**
+ * Distributed rate limiter declared in the {@code rateLimiters} of a client or cluster configuration. Each acquisition
+ * is decided by a single script call, which atomically reads and updates the limiter state on the server. The state
+ * is stored under a key derived from the limiter name and the optional partition key, such as a user or tenant
+ * identifier, so each partition is limited independently.
+ *
+ * <p>Inject it with the limiter name as qualifier (e.g. {@code @Inject @Named("api") RedisRateLimiter rateLimiter}).
+ * Acquisitions do not block: denied permits are not queued and can be requested again later. The algorithm, limit and
+ * local prefetching are configured by {@link RedisConfig.RateLimiterConfig}.</p>
+ */
+public interface RedisRateLimiter {
+    /**
+     * @return the limiter name.
+     */
+    String getName();
+
+    /**
+     * Acquires a permit of the limiter.
+     *
+     * @return true if the permit was granted, false if the limit is reached.
+     */
+    boolean tryAcquire();
+
+    /**
+     * Acquires the specified number of permits of the limiter, either all or none.
+     *
+     * @param permits the number of permits.
+     * @return true if the permits were granted, false if the limit is reached.
+     */
+    boolean tryAcquire(int permits);
+
+    /**
+     * Acquires a permit of the specified partition of the limiter.
+     *
+     * @param key the partition key.
+     * @return true if the permit was granted, false if the limit of the partition is reached.
+     */
+    boolean tryAcquire(String key);
+
+    /**
+     * Acquires the specified number of permits of the specified partition of the limiter, either all or none.
+     *
+     * @param key     the partition key.
+     * @param permits the number of permits.
+     * @return true if the permits were granted, false if the limit of the partition is reached.
+     */
+    boolean tryAcquire(String key, int permits);
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.Tuple;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Lazy streams over the SCAN family of commands of a client or cluster. Pages are only fetched as the stream is
+ * consumed, each page borrowing a connection for the duration of a single command, so keyspaces or collections of any
+ * size can be walked without blocking the server or loading them in memory.
+ *
+ * <p>Inject it with the client or cluster name as qualifier (e.g. {@code @Inject @Named("client1") RedisScanner
+ * scanner}). The MATCH pattern and COUNT hint are given as {@link ScanParams}, a COUNT of {@value #DEFAULT_COUNT} being
+ * used when not specified. On a cluster, {@link #scan(ScanParams)} returns a parallel stream splitting the scan by
+ * master node, while collection scans are sent to the master owning the collection key. As with the underlying
+ * commands, elements may be returned more than once if the data changes during the scan.</p>
+ */
+public interface RedisScanner {
+    int DEFAULT_COUNT = 1000;
+
+    /**
+     * @return the keys of the keyspace.
+     */
+    Stream<String> scan();
+
+    /**
+     * @param scanParams the MATCH pattern and COUNT hint.
+     * @return the keys of the keyspace matching the pattern.
+     */
+    Stream<String> scan(ScanParams scanParams);
+
+    /**
+     * @param key the key of the hash.
+     * @return the fields of the hash with their values.
+     */
+    Stream<Map.Entry<String, String>> hscan(String key);
+
+    /**
+     * @param key        the key of the hash.
+     * @param scanParams the MATCH pattern and COUNT hint.
+     * @return the fields of the hash matching the pattern, with their values.
+     */
+    Stream<Map.Entry<String, String>> hscan(String key, ScanParams scanParams);
+
+    Stream<String> sscan(String key);
+
+    Stream<String> sscan(String key, ScanParams scanParams);
+
+    Stream<Tuple> zscan(String key);
+
+    Stream<Tuple> zscan(String key, ScanParams scanParams);
+}
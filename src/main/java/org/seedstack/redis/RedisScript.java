@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import javax.inject.Qualifier;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Qualifies an injected {@link LuaScript} field with the classpath location of its Lua source and the client or
+ * cluster it runs on:
+ *
+ * <pre>
+ * &#64;Inject
+ * &#64;RedisScript(value = "scripts/acquire.lua", client = "client1")
+ * private LuaScript&lt;Long&gt; acquire;
+ * </pre>
+ *
+ * <p>Annotated fields are detected at startup and every declared script is loaded with SCRIPT LOAD into each
+ * configured client and each cluster master, so scripts are then only referenced by their SHA1 digest.</p>
+ */
+@Qualifier
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RedisScript {
+    /**
+     * @return the classpath location of the Lua script.
+     */
+    String value();
+
+    /**
+     * @return the configured client or cluster name, the default client being used if empty.
+     */
+    String client() default "";
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+/**
+ * Distributed counting semaphore declared in the {@code semaphores} of a client or cluster configuration, capping the
+ * number of concurrent holders across all instances. Acquiring, renewing and releasing a permit are each a single
+ * script call. Permits are leases that expire after {@link RedisConfig.SemaphoreConfig#getLeaseTime()} unless renewed,
+ * so the permits of a crashed instance are eventually reclaimed.
+ *
+ * <p>Inject it with the semaphore name as qualifier (e.g. {@code @Inject @Named("exports") RedisSemaphore
+ * semaphore}) and release permits with a try-with-resources statement:</p>
+ *
+ * <pre>
+ * try (RedisSemaphore.Permit permit = semaphore.tryAcquire()) {
+ *     if (permit != null) {
+ *         // at most 'permits' concurrent executions
+ *     }
+ * }
+ * </pre>
+ */
+public interface RedisSemaphore {
+    /**
+     * @return the semaphore name.
+     */
+    String getName();
+
+    /**
+     * Acquires a permit of the semaphore.
+     *
+     * @return the permit, or null if all permits are held.
+     */
+    Permit tryAcquire();
+
+    /**
+     * Acquires a permit of the specified partition of the semaphore, each partition having its own permits.
+     *
+     * @param key the partition key.
+     * @return the permit, or null if all permits of the partition are held.
+     */
+    Permit tryAcquire(String key);
+
+    /**
+     * Permit held until it is released or its lease expires.
+     */
+    interface Permit extends AutoCloseable {
+        /**
+         * Extends the lease of the permit by the configured lease time from now.
+         *
+         * @return true if the lease was extended, false if the permit already expired or was released.
+         */
+        boolean renew();
+
+        /**
+         * Releases the permit. Releasing a permit more than once has no effect.
+         */
+        @Override
+        void close();
+    }
+}
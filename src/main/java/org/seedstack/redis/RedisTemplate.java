@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Typed access to a Redis client through a {@link RedisCodec}. Commands are issued with the binary overloads of Jedis,
+ * so keys and values are only encoded once, by the codec. Each operation borrows a connection from the client pool.
+ *
+ * <p>Inject it with the client name as qualifier and the type arguments of an available codec (e.g.
+ * {@code @Inject @Named("client1") RedisTemplate<String, Object> template}). Within
+ * {@link org.seedstack.seed.transaction.Transactional} methods, use the codec returned by {@link #getCodec()} with the
+ * binary overloads of the injectable {@link redis.clients.jedis.Transaction} or {@link redis.clients.jedis.Pipeline}
+ * instead.</p>
+ *
+ * @param <K> the type of keys.
+ * @param <V> the type of values.
+ */
+public interface RedisTemplate<K, V> {
+    /**
+     * Runs the specified function with a pooled connection.
+     *
+     * @param function the function issuing commands on the connection.
+     * @param <T>      the type of the result.
+     * @return the result of the function.
+     */
+    <T> T execute(Function<Jedis, T> function);
+
+    RedisCodec<K, V> getCodec();
+
+    /**
+     * @param key the key.
+     * @return the decoded value or null if the key does not exist.
+     */
+    V get(K key);
+
+    /**
+     * @param keys the keys.
+     * @return the decoded values, in the order of the keys, with null for missing keys.
+     */
+    List<V> mget(List<K> keys);
+
+    void set(K key, V value);
+
+    void setex(K key, int seconds, V value);
+
+    void mset(Map<K, V> entries);
+
+    /**
+     * @param key the key.
+     * @return true if the key was deleted.
+     */
+    boolean del(K key);
+
+    boolean exists(K key);
+
+    /**
+     * @param key     the key.
+     * @param seconds the time to live in seconds.
+     * @return true if the timeout was set.
+     */
+    boolean expire(K key, int seconds);
+
+    V hget(K key, String field);
+
+    void hset(K key, String field, V value);
+
+    Map<String, V> hgetAll(K key);
+}
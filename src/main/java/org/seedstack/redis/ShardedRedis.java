@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Access to a sharded client, which spreads keys over several standalone Redis instances by consistent hashing. When
+ * a key contains a hash tag (e.g. {@code {user1}.name}), only the tag is hashed so related keys live on the same shard.
+ *
+ * <p>Inject it with the sharded client name as qualifier (e.g. {@code @Inject @Named("sharded1") ShardedRedis
+ * shardedRedis}). Each operation borrows a connection from the pool of the shard owning its key. Multi-key operations
+ * are split by shard and executed on all involved shards in parallel; they are not atomic across shards.</p>
+ */
+public interface ShardedRedis {
+    /**
+     * Runs the specified function with a pooled connection to the shard owning the specified key.
+     *
+     * @param key      the key determining the shard.
+     * @param function the function issuing commands on the connection.
+     * @param <T>      the type of the result.
+     * @return the result of the function.
+     */
+    <T> T execute(String key, Function<Jedis, T> function);
+
+    /**
+     * Runs the specified function on every shard in parallel, each with a pooled connection.
+     *
+     * @param function the function issuing commands on the connection.
+     * @param <T>      the type of the results.
+     * @return the result of the function on each shard, in the order shards are configured.
+     */
+    <T> List<T> executeOnAllShards(Function<Jedis, T> function);
+
+    String get(String key);
+
+    /**
+     * @param keys the keys to get, which may belong to different shards.
+     * @return the values of the keys, in the order of the keys.
+     */
+    List<String> mget(String... keys);
+
+    String set(String key, String value);
+
+    /**
+     * Sets the specified keys with one MSET per involved shard. Unlike MSET on a single instance, this is not atomic
+     * when keys belong to different shards: if a shard fails, the keys of the other shards may have been set.
+     *
+     * @param keysValues the keys and values to set, alternately. Keys may belong to different shards.
+     * @return {@code OK} once all involved shards replied {@code OK}, otherwise the first other status reply.
+     */
+    String mset(String... keysValues);
+
+    String setex(String key, int seconds, String value);
+
+    /**
+     * @param keys the keys to delete, which may belong to different shards.
+     * @return the total number of keys deleted.
+     */
+    Long del(String... keys);
+
+    Boolean exists(String key);
+
+    Long expire(String key, int seconds);
+
+    Long incr(String key);
+
+    String hget(String key, String field);
+
+    Map<String, String> hgetAll(String key);
+
+    Long hset(String key, String field, String value);
+}
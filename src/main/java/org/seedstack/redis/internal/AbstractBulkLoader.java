@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.BulkCommand;
+import org.seedstack.redis.BulkLoadResult;
+import org.seedstack.redis.RedisBulkLoader;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+abstract class AbstractBulkLoader implements RedisBulkLoader {
+    private static final int MAX_ERROR_SAMPLES = 10;
+    final String name;
+    final int window;
+
+    AbstractBulkLoader(String name, int window) {
+        this.name = name;
+        this.window = window;
+    }
+
+    @Override
+    public BulkLoadResult load(Stream<BulkCommand> commands) {
+        return load(commands.iterator());
+    }
+
+    /**
+     * Sends the commands on the connection, reading half of the pending replies each time the window is full. If the
+     * iterator fails, the pending replies are still read so the connection can be returned to its pool.
+     */
+    void stream(Jedis jedis, Iterator<BulkCommand> commands, Errors errors) {
+        Client client = jedis.getClient();
+        int pending = 0;
+        try {
+            while (commands.hasNext()) {
+                BulkCommand command = commands.next();
+                client.sendCommand(command.getCommand(), command.getArguments());
+                if (++pending >= window) {
+                    int toRead = window / 2;
+                    readReplies(client, toRead, errors);
+                    pending -= toRead;
+                }
+            }
+        } finally {
+            readReplies(client, pending, errors);
+        }
+    }
+
+    void onError(JedisDataException e) {
+        // no-op by default
+    }
+
+    private void readReplies(Client client, int count, Errors errors) {
+        for (int i = 0; i < count; i++) {
+            try {
+                client.getOne();
+            } catch (JedisDataException e) {
+                errors.record(e);
+                onError(e);
+            }
+        }
+    }
+
+    /**
+     * Counts error replies and keeps the first messages, possibly from concurrent connections.
+     */
+    static class Errors {
+        private final AtomicLong count = new AtomicLong();
+        private final List<String> samples = new ArrayList<>();
+
+        void record(JedisDataException e) {
+            if (count.incrementAndGet() <= MAX_ERROR_SAMPLES) {
+                synchronized (samples) {
+                    samples.add(e.getMessage());
+                }
+            }
+        }
+
+        BulkLoadResult toResult(long commands, long startNanos) {
+            synchronized (samples) {
+                return new BulkLoadResult(commands, count.get(), new ArrayList<>(samples), System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
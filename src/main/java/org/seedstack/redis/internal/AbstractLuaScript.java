@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.LuaScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyPipelineBase;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.util.List;
+
+abstract class AbstractLuaScript<T> implements LuaScript<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractLuaScript.class);
+    private final String location;
+    private final String source;
+    private final String sha1;
+
+    AbstractLuaScript(String location, String source) {
+        this.location = location;
+        this.source = source;
+        this.sha1 = LuaScriptRegistry.sha1(source);
+    }
+
+    @Override
+    public String getSha1() {
+        return sha1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T eval(Jedis jedis, List<String> keys, List<String> args) {
+        try {
+            return (T) jedis.evalsha(sha1, keys, args);
+        } catch (JedisNoScriptException e) {
+            LOGGER.debug("Lua script {} missing from the server, loading it again", location);
+            jedis.scriptLoad(source);
+            return (T) jedis.evalsha(sha1, keys, args);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Response<T> eval(MultiKeyPipelineBase pipeline, List<String> keys, List<String> args) {
+        return new ReloadingResponse((Response<T>) (Response<?>) pipeline.evalsha(sha1, keys, args));
+    }
+
+    String getSource() {
+        return source;
+    }
+
+    /**
+     * Loads the script again on the servers it runs on, after one of them reported it missing.
+     */
+    abstract void reload();
+
+    /**
+     * Response of a queued script, reloading the script when the server reports it missing.
+     */
+    private class ReloadingResponse extends Response<T> {
+        private final Response<T> response;
+
+        private ReloadingResponse(Response<T> response) {
+            super(null);
+            this.response = response;
+        }
+
+        @Override
+        public T get() {
+            try {
+                return response.get();
+            } catch (JedisNoScriptException e) {
+                LOGGER.debug("Lua script {} missing from the server, loading it again", location);
+                try {
+                    reload();
+                } catch (RuntimeException reloadException) {
+                    e.addSuppressed(reloadException);
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return response.toString();
+        }
+    }
+}
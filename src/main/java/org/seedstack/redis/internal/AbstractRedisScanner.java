@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.RedisScanner;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.Tuple;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+abstract class AbstractRedisScanner implements RedisScanner {
+    @Override
+    public Stream<String> scan() {
+        return scan(defaultScanParams());
+    }
+
+    @Override
+    public Stream<Map.Entry<String, String>> hscan(String key) {
+        return hscan(key, defaultScanParams());
+    }
+
+    @Override
+    public Stream<Map.Entry<String, String>> hscan(String key, ScanParams scanParams) {
+        return StreamSupport.stream(new ScanSpliterator<>(cursor -> execute(key, jedis -> jedis.hscan(key, cursor, scanParams))), false);
+    }
+
+    @Override
+    public Stream<String> sscan(String key) {
+        return sscan(key, defaultScanParams());
+    }
+
+    @Override
+    public Stream<String> sscan(String key, ScanParams scanParams) {
+        return StreamSupport.stream(new ScanSpliterator<>(cursor -> execute(key, jedis -> jedis.sscan(key, cursor, scanParams))), false);
+    }
+
+    @Override
+    public Stream<Tuple> zscan(String key) {
+        return zscan(key, defaultScanParams());
+    }
+
+    @Override
+    public Stream<Tuple> zscan(String key, ScanParams scanParams) {
+        return StreamSupport.stream(new ScanSpliterator<>(cursor -> execute(key, jedis -> jedis.zscan(key, cursor, scanParams))), false);
+    }
+
+    /**
+     * Runs the specified function with a connection to the node holding the specified key.
+     */
+    abstract <T> T execute(String key, Function<Jedis, T> function);
+
+    private static ScanParams defaultScanParams() {
+        return new ScanParams().count(DEFAULT_COUNT);
+    }
+}
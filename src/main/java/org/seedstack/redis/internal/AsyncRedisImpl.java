@@ -0,0 +1,183 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.seedstack.redis.AsyncRedis;
+import org.seedstack.redis.RedisConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * {@link AsyncRedis} implementation of a client. The dedicated pool and the executor are created on first use so
+ * clients which do not use the facade do not pay for it.
+ */
+class AsyncRedisImpl implements AsyncRedis {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncRedisImpl.class);
+    private final String name;
+    private final RedisConfig.AsyncConfig asyncConfig;
+    private final Supplier<JedisPool> poolFactory;
+    private final RedisMetrics redisMetrics;
+    private volatile JedisPool jedisPool;
+    private volatile ExecutorService executorService;
+    private boolean closed;
+
+    AsyncRedisImpl(String name, RedisConfig.AsyncConfig asyncConfig, Supplier<JedisPool> poolFactory, RedisMetrics redisMetrics) {
+        this.name = name;
+        this.asyncConfig = asyncConfig;
+        this.poolFactory = poolFactory;
+        this.redisMetrics = redisMetrics;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> execute(Function<Jedis, T> function) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            getExecutorService().execute(() -> {
+                try (Jedis jedis = redisMetrics.borrow(jedisPool)) {
+                    future.complete(function.apply(jedis));
+                } catch (Throwable t) {
+                    redisMetrics.recordException();
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<List<Object>> pipelined(Consumer<Pipeline> commands) {
+        return execute(jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            commands.accept(pipeline);
+            return pipeline.syncAndReturnAll();
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> get(String key) {
+        return execute(jedis -> jedis.get(key));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> mget(String... keys) {
+        return execute(jedis -> jedis.mget(keys));
+    }
+
+    @Override
+    public CompletableFuture<String> set(String key, String value) {
+        return execute(jedis -> jedis.set(key, value));
+    }
+
+    @Override
+    public CompletableFuture<String> setex(String key, int seconds, String value) {
+        return execute(jedis -> jedis.setex(key, (long) seconds, value));
+    }
+
+    @Override
+    public CompletableFuture<Long> del(String... keys) {
+        return execute(jedis -> jedis.del(keys));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(String key) {
+        return execute(jedis -> jedis.exists(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> expire(String key, int seconds) {
+        return execute(jedis -> jedis.expire(key, (long) seconds));
+    }
+
+    @Override
+    public CompletableFuture<Long> incr(String key) {
+        return execute(jedis -> jedis.incr(key));
+    }
+
+    @Override
+    public CompletableFuture<String> hget(String key, String field) {
+        return execute(jedis -> jedis.hget(key, field));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> hgetAll(String key) {
+        return execute(jedis -> jedis.hgetAll(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> hset(String key, String field, String value) {
+        return execute(jedis -> jedis.hset(key, field, value));
+    }
+
+    /**
+     * Returns the dedicated pool if it has been created, null otherwise.
+     */
+    JedisPool getJedisPool() {
+        return jedisPool;
+    }
+
+    synchronized void close() {
+        closed = true;
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+        if (jedisPool != null) {
+            jedisPool.close();
+        }
+    }
+
+    private ExecutorService getExecutorService() {
+        ExecutorService current = executorService;
+        if (current == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new RejectedExecutionException("Asynchronous facade of Redis client " + name + " is closed");
+                }
+                if (executorService == null) {
+                    jedisPool = poolFactory.get();
+                    executorService = createExecutorService();
+                }
+                current = executorService;
+            }
+        }
+        return current;
+    }
+
+    private ExecutorService createExecutorService() {
+        if (asyncConfig.isVirtualThreads()) {
+            try {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                LOGGER.info("Asynchronous facade of Redis client {} uses virtual threads", name);
+                return (ExecutorService) method.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.warn("Virtual threads are not supported by this Java runtime, asynchronous facade of Redis client {} uses a thread pool", name);
+            }
+        }
+        int threads = asyncConfig.getThreads() > 0 ? asyncConfig.getThreads() : asyncConfig.getMaxConnections();
+        return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("redis-async-" + name + "-%d")
+                .setDaemon(true)
+                .build());
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.BatchingRedis;
+import org.seedstack.redis.RedisConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.util.Pool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * {@link BatchingRedis} implementation of a client. Commands are queued in a bounded queue drained by one or more
+ * flusher threads, each sending the commands it drained as one pipeline over a connection borrowed from the client
+ * pool. While a batch is in flight, new commands accumulate for the next one. Futures are completed on the flusher
+ * threads.
+ */
+class BatchingRedisImpl implements BatchingRedis {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingRedisImpl.class);
+    private final String name;
+    private final RedisConfig.BatchingConfig batchingConfig;
+    private final Pool<Jedis> jedisPool;
+    private final RedisMetrics redisMetrics;
+    private final BlockingQueue<BatchedCommand<?>> queue;
+    private final List<Thread> flushers = new ArrayList<>();
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    BatchingRedisImpl(String name, RedisConfig.BatchingConfig batchingConfig, Pool<Jedis> jedisPool, RedisMetrics redisMetrics) {
+        this.name = name;
+        this.batchingConfig = batchingConfig;
+        this.jedisPool = jedisPool;
+        this.redisMetrics = redisMetrics;
+        this.queue = new ArrayBlockingQueue<>(batchingConfig.getMaxPending());
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Function<Pipeline, Response<T>> command) {
+        if (!started) {
+            start();
+        }
+        BatchedCommand<T> batchedCommand = new BatchedCommand<>(command);
+        if (closed) {
+            batchedCommand.future.completeExceptionally(closedException());
+        } else if (!queue.offer(batchedCommand)) {
+            batchedCommand.future.completeExceptionally(new RejectedExecutionException(
+                    "Batching queue of Redis client " + name + " is full"));
+        } else if (closed && queue.remove(batchedCommand)) {
+            // closed while offering: the queue may have been drained already, so the command is failed here
+            batchedCommand.future.completeExceptionally(closedException());
+        }
+        return batchedCommand.future;
+    }
+
+    @Override
+    public CompletableFuture<String> get(String key) {
+        return submit(pipeline -> pipeline.get(key));
+    }
+
+    @Override
+    public CompletableFuture<String> set(String key, String value) {
+        return submit(pipeline -> pipeline.set(key, value));
+    }
+
+    @Override
+    public CompletableFuture<String> setex(String key, int seconds, String value) {
+        return submit(pipeline -> pipeline.setex(key, (long) seconds, value));
+    }
+
+    @Override
+    public CompletableFuture<Long> del(String key) {
+        return submit(pipeline -> pipeline.del(key));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(String key) {
+        return submit(pipeline -> pipeline.exists(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> expire(String key, int seconds) {
+        return submit(pipeline -> pipeline.expire(key, (long) seconds));
+    }
+
+    @Override
+    public CompletableFuture<Long> incr(String key) {
+        return submit(pipeline -> pipeline.incr(key));
+    }
+
+    @Override
+    public CompletableFuture<String> hget(String key, String field) {
+        return submit(pipeline -> pipeline.hget(key, field));
+    }
+
+    @Override
+    public CompletableFuture<Long> hset(String key, String field, String value) {
+        return submit(pipeline -> pipeline.hset(key, field, value));
+    }
+
+    synchronized void close() {
+        closed = true;
+        for (Thread flusher : flushers) {
+            flusher.interrupt();
+        }
+        for (Thread flusher : flushers) {
+            try {
+                flusher.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<BatchedCommand<?>> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (BatchedCommand<?> batchedCommand : remaining) {
+            batchedCommand.future.completeExceptionally(closedException());
+        }
+    }
+
+    private synchronized void start() {
+        if (!started && !closed) {
+            for (int i = 0; i < batchingConfig.getThreads(); i++) {
+                Thread flusher = new Thread(this::flush, "redis-batching-" + name + "-" + i);
+                flusher.setDaemon(true);
+                flusher.start();
+                flushers.add(flusher);
+            }
+            started = true;
+        }
+    }
+
+    private void flush() {
+        List<BatchedCommand<?>> batch = new ArrayList<>(batchingConfig.getMaxBatchSize());
+        while (!closed) {
+            try {
+                collect(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(batch, closedException());
+                return;
+            }
+            send(batch);
+            batch.clear();
+        }
+    }
+
+    private void collect(List<BatchedCommand<?>> batch) throws InterruptedException {
+        int maxBatchSize = batchingConfig.getMaxBatchSize();
+        batch.add(queue.take());
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        if (batchingConfig.getMaxLingerMicros() > 0) {
+            long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(batchingConfig.getMaxLingerMicros());
+            while (batch.size() < maxBatchSize) {
+                BatchedCommand<?> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+        }
+    }
+
+    private void send(List<BatchedCommand<?>> batch) {
+        int queued = 0;
+        // the connection is released before completing the futures, which may run dependent stages
+        try (Jedis jedis = redisMetrics.borrow(jedisPool)) {
+            Pipeline pipeline = jedis.pipelined();
+            for (BatchedCommand<?> batchedCommand : batch) {
+                if (batchedCommand.queue(pipeline)) {
+                    queued++;
+                }
+            }
+            pipeline.sync();
+        } catch (RuntimeException e) {
+            LOGGER.debug("Unable to send a batch of {} command(s) to Redis client {}", batch.size(), name, e);
+            redisMetrics.recordException();
+            fail(batch, e);
+            return;
+        }
+        redisMetrics.recordBatch(queued);
+        for (BatchedCommand<?> batchedCommand : batch) {
+            batchedCommand.complete();
+        }
+    }
+
+    private RejectedExecutionException closedException() {
+        return new RejectedExecutionException("Batching executor of Redis client " + name + " is closed");
+    }
+
+    private void fail(List<BatchedCommand<?>> batch, Throwable throwable) {
+        for (BatchedCommand<?> batchedCommand : batch) {
+            batchedCommand.fail(throwable);
+        }
+    }
+
+    private static class BatchedCommand<T> {
+        private final Function<Pipeline, Response<T>> command;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private Response<T> response;
+        private RuntimeException queueFailure;
+
+        private BatchedCommand(Function<Pipeline, Response<T>> command) {
+            this.command = command;
+        }
+
+        private boolean queue(Pipeline pipeline) {
+            try {
+                response = command.apply(pipeline);
+                return true;
+            } catch (RuntimeException e) {
+                queueFailure = e;
+                return false;
+            }
+        }
+
+        private void complete() {
+            if (queueFailure != null) {
+                future.completeExceptionally(queueFailure);
+                return;
+            }
+            try {
+                future.complete(response.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void fail(Throwable throwable) {
+            future.completeExceptionally(queueFailure != null ? queueFailure : throwable);
+        }
+    }
+}
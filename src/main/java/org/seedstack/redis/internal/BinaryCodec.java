@@ -0,0 +1,313 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.RedisCodec;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Built-in codec of string keys and values of basic types. A value is encoded as a one-byte type tag followed by its
+ * payload: raw bytes, UTF-8 strings, zig-zag variable-length integers, IEEE 754 doubles, or Java serialization for
+ * other serializable objects. Payloads reaching the compression threshold are deflated if it makes them smaller, which
+ * is flagged in the tag and followed by the uncompressed length.
+ *
+ * <p>Encoding goes through per-thread growable buffers and deflater, so each value costs a single allocation of its
+ * exact encoded size.</p>
+ */
+class BinaryCodec implements RedisCodec<String, Object> {
+    private static final int BYTES = 0;
+    private static final int STRING = 1;
+    private static final int LONG = 2;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 4;
+    private static final int TRUE = 5;
+    private static final int FALSE = 6;
+    private static final int SERIALIZED = 7;
+    private static final int COMPRESSED = 0x80;
+    private static final int INITIAL_BUFFER_SIZE = 256;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+    private static final ThreadLocal<Buffer> COMPRESSION_BUFFERS = ThreadLocal.withInitial(Buffer::new);
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+    private final int compressionThreshold;
+
+    BinaryCodec(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] encodeKey(String key) {
+        return SafeEncoder.encode(key);
+    }
+
+    @Override
+    public String decodeKey(byte[] bytes) {
+        return SafeEncoder.encode(bytes);
+    }
+
+    @Override
+    public byte[] encodeValue(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values cannot be encoded");
+        }
+        Buffer buffer = BUFFERS.get();
+        try {
+            buffer.size = 1;
+            int tag = writePayload(buffer, value);
+            int payloadSize = buffer.size - 1;
+            if (compressionThreshold > 0 && payloadSize >= compressionThreshold) {
+                byte[] compressed = compress(buffer, tag, payloadSize);
+                if (compressed != null) {
+                    return compressed;
+                }
+            }
+            buffer.bytes[0] = (byte) tag;
+            return Arrays.copyOf(buffer.bytes, buffer.size);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Override
+    public Object decodeValue(byte[] bytes) {
+        int tag = bytes[0] & 0xFF;
+        if ((tag & COMPRESSED) != 0) {
+            int[] position = {1};
+            int size = (int) readVarLong(bytes, position);
+            return readPayload(tag & ~COMPRESSED, decompress(bytes, position[0], size), 0, size);
+        } else {
+            return readPayload(tag, bytes, 1, bytes.length - 1);
+        }
+    }
+
+    private int writePayload(Buffer buffer, Object value) {
+        if (value instanceof String) {
+            writeUtf8(buffer, (String) value);
+            return STRING;
+        } else if (value instanceof byte[]) {
+            buffer.write((byte[]) value, 0, ((byte[]) value).length);
+            return BYTES;
+        } else if (value instanceof Long) {
+            writeVarLong(buffer, zigZag((Long) value));
+            return LONG;
+        } else if (value instanceof Integer) {
+            writeVarLong(buffer, zigZag((Integer) value));
+            return INTEGER;
+        } else if (value instanceof Double) {
+            long bits = Double.doubleToRawLongBits((Double) value);
+            buffer.ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer.bytes[buffer.size++] = (byte) (bits >>> shift);
+            }
+            return DOUBLE;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        } else if (value instanceof Serializable) {
+            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(buffer)) {
+                objectOutputStream.writeObject(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return SERIALIZED;
+        } else {
+            throw new IllegalArgumentException("Values of type " + value.getClass().getName() + " cannot be encoded");
+        }
+    }
+
+    private Object readPayload(int tag, byte[] bytes, int offset, int length) {
+        switch (tag) {
+            case BYTES:
+                return Arrays.copyOfRange(bytes, offset, offset + length);
+            case STRING:
+                return new String(bytes, offset, length, StandardCharsets.UTF_8);
+            case LONG:
+                return unZigZag(readVarLong(bytes, new int[]{offset}));
+            case INTEGER:
+                return (int) unZigZag(readVarLong(bytes, new int[]{offset}));
+            case DOUBLE:
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = (bits << 8) | (bytes[offset + i] & 0xFF);
+                }
+                return Double.longBitsToDouble(bits);
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case SERIALIZED:
+                try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+                    return objectInputStream.readObject();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new IllegalArgumentException("Unable to deserialize value", e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown value type tag " + tag);
+        }
+    }
+
+    private byte[] compress(Buffer buffer, int tag, int payloadSize) {
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(buffer.bytes, 1, payloadSize);
+        deflater.finish();
+        Buffer target = COMPRESSION_BUFFERS.get();
+        try {
+            target.write(tag | COMPRESSED);
+            writeVarLong(target, payloadSize);
+            // the compressed form is only kept if smaller than the uncompressed one
+            int limit = payloadSize + 1;
+            target.ensureCapacity(limit - target.size);
+            while (!deflater.finished() && target.size < limit) {
+                target.size += deflater.deflate(target.bytes, target.size, limit - target.size);
+            }
+            if (!deflater.finished() || target.size >= limit) {
+                return null;
+            }
+            return Arrays.copyOf(target.bytes, target.size);
+        } finally {
+            target.release();
+        }
+    }
+
+    private byte[] decompress(byte[] bytes, int offset, int size) {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(bytes, offset, bytes.length - offset);
+        byte[] result = new byte[size];
+        try {
+            int inflated = 0;
+            while (inflated < size && !inflater.finished()) {
+                int count = inflater.inflate(result, inflated, size - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != size) {
+                throw new IllegalArgumentException("Truncated compressed value");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted compressed value", e);
+        }
+        return result;
+    }
+
+    private static void writeUtf8(Buffer buffer, String value) {
+        int length = value.length();
+        buffer.ensureCapacity(length * 3);
+        byte[] bytes = buffer.bytes;
+        int position = buffer.size;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, replaced as the JDK encoder does
+                bytes[position++] = '?';
+            } else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buffer.size = position;
+    }
+
+    private static void writeVarLong(Buffer buffer, long value) {
+        buffer.ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.bytes[buffer.size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer.bytes[buffer.size++] = (byte) value;
+    }
+
+    private static long readVarLong(byte[] bytes, int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Growable byte buffer, also usable as the target of an {@link ObjectOutputStream}.
+     */
+    private static class Buffer extends OutputStream {
+        private byte[] bytes;
+        private int size;
+
+        private Buffer() {
+            this.bytes = new byte[INITIAL_BUFFER_SIZE];
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, bytes, size, len);
+            size += len;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+            }
+        }
+
+        /**
+         * Shrinks the buffer back after encoding an exceptionally large value, so threads do not retain it.
+         */
+        private void release() {
+            if (bytes.length > MAX_RETAINED_BUFFER_SIZE) {
+                bytes = new byte[INITIAL_BUFFER_SIZE];
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.seed.SeedException;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies the borrow options of a client to the transactions borrowing its connections: the borrow time budget, the
+ * circuit breaker and the adaptive sizing of the primary pool. The circuit breaker counts the failures to obtain a
+ * primary connection and the primary connections found broken when released.
+ */
+class BorrowGuard {
+    static final String BORROW_TIMEOUT = "redis.borrowTimeout";
+    private static final Logger LOGGER = LoggerFactory.getLogger(BorrowGuard.class);
+    private final String name;
+    private final RedisConfig.BorrowConfig borrowConfig;
+    private final BudgetedJedisPool primary;
+    private final boolean circuitBreakerEnabled;
+    private final int failureThreshold;
+    private final long openDurationNanos;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicBoolean trialInProgress = new AtomicBoolean();
+    private final Set<Jedis> primaryConnections = ConcurrentHashMap.newKeySet();
+    private final LongAdder rejections = new LongAdder();
+    private volatile boolean open;
+    private volatile long openUntil;
+    private final boolean adaptive;
+    private final int minTotal;
+    private final int maxTotal;
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder exhaustions = new LongAdder();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    BorrowGuard(String name, RedisConfig.BorrowConfig borrowConfig, BudgetedJedisPool primary) {
+        this.name = name;
+        this.borrowConfig = borrowConfig;
+        this.primary = primary;
+        RedisConfig.BorrowConfig.CircuitBreakerConfig circuitBreakerConfig = borrowConfig.getCircuitBreaker();
+        this.circuitBreakerEnabled = circuitBreakerConfig.isEnabled();
+        this.failureThreshold = circuitBreakerConfig.getFailureThreshold();
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(circuitBreakerConfig.getOpenDuration());
+        RedisConfig.BorrowConfig.AdaptiveConfig adaptiveConfig = borrowConfig.getAdaptive();
+        int configuredTotal = primary.getMaxTotal();
+        if (adaptiveConfig.isEnabled() && configuredTotal <= 0) {
+            LOGGER.warn("Adaptive pool sizing of Redis client {} disabled since its pool size is unbounded", name);
+        }
+        this.adaptive = adaptiveConfig.isEnabled() && configuredTotal > 0;
+        this.minTotal = adaptiveConfig.getMinTotal() > 0 ? adaptiveConfig.getMinTotal() : configuredTotal;
+        this.maxTotal = Math.max(minTotal, adaptiveConfig.getMaxTotal() > 0 ? adaptiveConfig.getMaxTotal() : configuredTotal * 4);
+    }
+
+    /**
+     * Borrows a connection from the specified pool of the client within the time budget of the transaction.
+     */
+    Jedis borrow(BudgetedJedisPool pool, RedisMetrics redisMetrics, TransactionMetadata transactionMetadata) {
+        boolean fromPrimary = pool == primary;
+        boolean trial = fromPrimary && acquirePermission();
+        long budget = getBudget(transactionMetadata);
+        long start = System.nanoTime();
+        try {
+            Jedis jedis = budget < 0 ? redisMetrics.borrow(pool) : redisMetrics.borrow(() -> pool.getResource(budget));
+            if (fromPrimary && circuitBreakerEnabled) {
+                primaryConnections.add(jedis);
+            }
+            if (fromPrimary && adaptive) {
+                peakActive.accumulateAndGet(primary.getNumActive(), Math::max);
+            }
+            return jedis;
+        } catch (JedisExhaustedPoolException e) {
+            if (trial) {
+                trialInProgress.set(false);
+            }
+            if (fromPrimary) {
+                exhaustions.increment();
+            }
+            if (budget < 0) {
+                throw e;
+            }
+            throw SeedException.wrap(e, RedisErrorCode.BORROW_TIMEOUT_EXCEEDED)
+                    .put("clientName", name)
+                    .put("timeout", budget);
+        } catch (JedisConnectionException e) {
+            if (fromPrimary) {
+                recordFailure();
+            }
+            throw e;
+        } finally {
+            if (fromPrimary && adaptive) {
+                borrows.increment();
+                waitNanos.add(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Returns a connection borrowed with {@link #borrow(BudgetedJedisPool, RedisMetrics, TransactionMetadata)} to its
+     * pool, reporting its health to the circuit breaker.
+     */
+    void release(Jedis jedis) {
+        if (circuitBreakerEnabled && primaryConnections.remove(jedis)) {
+            if (jedis.isBroken()) {
+                recordFailure();
+            } else {
+                recordSuccess();
+            }
+        }
+        jedis.close();
+    }
+
+    boolean isAdaptive() {
+        return adaptive;
+    }
+
+    int getAdaptiveInterval() {
+        return borrowConfig.getAdaptive().getInterval();
+    }
+
+    /**
+     * Grows or shrinks the primary pool according to the borrows made since the previous adjustment.
+     */
+    void adapt() {
+        long borrowCount = borrows.sumThenReset();
+        long waited = waitNanos.sumThenReset();
+        long exhausted = exhaustions.sumThenReset();
+        int peak = peakActive.getAndSet(primary.getNumActive());
+        long meanWaitMillis = borrowCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waited / borrowCount);
+        int targetWait = borrowConfig.getAdaptive().getTargetWait();
+        int current = primary.getMaxTotal();
+        int target = current;
+        if ((exhausted > 0 || meanWaitMillis > targetWait) && current < maxTotal) {
+            target = Math.min(maxTotal, current + Math.max(1, current / 4));
+        } else if (exhausted == 0 && meanWaitMillis <= targetWait && peak < current / 2 && current > minTotal) {
+            target = Math.max(minTotal, current - Math.max(1, current / 8));
+        }
+        if (target != current) {
+            LOGGER.debug("Resizing pool of Redis client {} from {} to {} connections (mean borrow wait {} ms, {} exhausted borrow(s), peak of {} active connections)",
+                    name, current, target, meanWaitMillis, exhausted, peak);
+            primary.setMaxTotal(target);
+            int waiters = primary.getNumWaiters();
+            if (target > current && waiters > 0) {
+                // threads already waiting are only woken up by a connection becoming idle
+                try {
+                    primary.addObjects(Math.min(target - current, waiters));
+                } catch (RuntimeException e) {
+                    LOGGER.debug("Unable to create connections of Redis client {} after growing its pool", name, e);
+                }
+            }
+        }
+    }
+
+    Map<String, Object> collect() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("maxTotal", primary.getMaxTotal());
+        if (circuitBreakerEnabled) {
+            result.put("circuit", open ? "OPEN" : "CLOSED");
+            result.put("consecutiveFailures", failures.get());
+            result.put("rejections", rejections.sum());
+        }
+        return result;
+    }
+
+    private long getBudget(TransactionMetadata transactionMetadata) {
+        Object timeout = transactionMetadata == null ? null : transactionMetadata.getMetadata(BORROW_TIMEOUT);
+        if (timeout instanceof Integer) {
+            return (Integer) timeout;
+        } else if (borrowConfig.isFailFast()) {
+            return 0;
+        } else {
+            return borrowConfig.getTimeout();
+        }
+    }
+
+    /**
+     * Checks that the circuit allows a borrow, which is the single trial allowed once the open duration has elapsed.
+     *
+     * @return true if the borrow is the trial of a half-open circuit.
+     */
+    private boolean acquirePermission() {
+        if (!circuitBreakerEnabled || !open) {
+            return false;
+        }
+        if (System.nanoTime() - openUntil < 0 || !trialInProgress.compareAndSet(false, true)) {
+            rejections.increment();
+            throw SeedException.createNew(RedisErrorCode.CIRCUIT_BREAKER_OPEN)
+                    .put("clientName", name)
+                    .put("failures", failures.get());
+        }
+        return true;
+    }
+
+    private void recordSuccess() {
+        failures.set(0);
+        if (open) {
+            open = false;
+            trialInProgress.set(false);
+            LOGGER.info("Circuit breaker of Redis client {} closed", name);
+        }
+    }
+
+    private void recordFailure() {
+        if (circuitBreakerEnabled && failures.incrementAndGet() >= failureThreshold) {
+            boolean wasOpen = open;
+            openUntil = System.nanoTime() + openDurationNanos;
+            open = true;
+            trialInProgress.set(false);
+            if (!wasOpen) {
+                LOGGER.warn("Circuit breaker of Redis client {} opened after {} consecutive connection failures", name, failures.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocketFactory;
+import java.net.URI;
+import java.util.NoSuchElementException;
+
+/**
+ * Jedis pool allowing to borrow a connection within a time budget instead of the {@code maxWaitMillis} pool option,
+ * and to resize the pool while in use.
+ *
+ * <p>The underlying commons-pool object pool is created and held by this class, the pool inherited from
+ * {@link redis.clients.jedis.util.Pool} being left unset: every method of the Jedis pool accessing it is overridden
+ * with the same behavior.</p>
+ */
+class BudgetedJedisPool extends JedisPool {
+    // assigned by initPool() while the superclass is constructed, so it must not have an initializer
+    private GenericObjectPool<Jedis> pool;
+
+    BudgetedJedisPool(GenericObjectPoolConfig<Jedis> poolConfig, URI uri, int connectionTimeout, int soTimeout) {
+        super(poolConfig, uri, connectionTimeout, soTimeout);
+    }
+
+    BudgetedJedisPool(GenericObjectPoolConfig<Jedis> poolConfig, URI uri, int connectionTimeout, int soTimeout, int infiniteSoTimeout, SSLSocketFactory sslSocketFactory, SSLParameters sslParameters) {
+        super(poolConfig, uri, connectionTimeout, soTimeout, infiniteSoTimeout, sslSocketFactory, sslParameters, null);
+    }
+
+    BudgetedJedisPool(GenericObjectPoolConfig<Jedis> poolConfig, PooledObjectFactory<Jedis> factory) {
+        super(poolConfig, factory);
+    }
+
+    // still the only hook called by the Jedis pool constructors to create the object pool
+    @Override
+    @SuppressWarnings("deprecation")
+    public void initPool(GenericObjectPoolConfig<Jedis> poolConfig, PooledObjectFactory<Jedis> factory) {
+        if (pool != null) {
+            try {
+                closeInternalPool();
+            } catch (RuntimeException e) {
+                // ignore, the pool is replaced anyway
+            }
+        }
+        pool = new GenericObjectPool<>(factory, poolConfig);
+    }
+
+    @Override
+    public Jedis getResource() {
+        return borrow(pool.getMaxWaitMillis());
+    }
+
+    /**
+     * Borrows a connection, waiting at most the specified time if the pool is exhausted. Failures are reported with
+     * the same exceptions as {@link #getResource()}.
+     */
+    Jedis getResource(long maxWaitMillis) {
+        return borrow(maxWaitMillis);
+    }
+
+    int getMaxTotal() {
+        return pool.getMaxTotal();
+    }
+
+    void setMaxTotal(int maxTotal) {
+        pool.setMaxTotal(maxTotal);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return pool.isClosed();
+    }
+
+    @Override
+    public int getNumActive() {
+        return isInactive() ? -1 : pool.getNumActive();
+    }
+
+    @Override
+    public int getNumIdle() {
+        return isInactive() ? -1 : pool.getNumIdle();
+    }
+
+    @Override
+    public int getNumWaiters() {
+        return isInactive() ? -1 : pool.getNumWaiters();
+    }
+
+    @Override
+    public long getMeanBorrowWaitTimeMillis() {
+        return isInactive() ? -1 : pool.getMeanBorrowWaitTimeMillis();
+    }
+
+    @Override
+    public long getMaxBorrowWaitTimeMillis() {
+        return isInactive() ? -1 : pool.getMaxBorrowWaitTimeMillis();
+    }
+
+    @Override
+    public void addObjects(int count) {
+        try {
+            for (int i = 0; i < count; i++) {
+                pool.addObject();
+            }
+        } catch (Exception e) {
+            throw new JedisException("Error trying to add idle objects", e);
+        }
+    }
+
+    @Override
+    protected void clearInternalPool() {
+        try {
+            pool.clear();
+        } catch (Exception e) {
+            throw new JedisException("Could not clear the pool", e);
+        }
+    }
+
+    @Override
+    protected void returnResourceObject(Jedis resource) {
+        try {
+            pool.returnObject(resource);
+        } catch (Exception e) {
+            throw new JedisException("Could not return the resource to the pool", e);
+        }
+    }
+
+    @Override
+    protected void returnBrokenResourceObject(Jedis resource) {
+        try {
+            pool.invalidateObject(resource);
+        } catch (Exception e) {
+            throw new JedisException("Could not return the broken resource to the pool", e);
+        }
+    }
+
+    @Override
+    protected void closeInternalPool() {
+        try {
+            pool.close();
+        } catch (Exception e) {
+            throw new JedisException("Could not destroy the pool", e);
+        }
+    }
+
+    private Jedis borrow(long maxWaitMillis) {
+        Jedis jedis;
+        try {
+            jedis = pool.borrowObject(maxWaitMillis);
+        } catch (NoSuchElementException e) {
+            if (e.getCause() == null) {
+                throw new JedisExhaustedPoolException("Could not get a resource within " + maxWaitMillis + " ms since the pool is exhausted", e);
+            }
+            throw new JedisConnectionException("Could not get a resource from the pool", e);
+        } catch (Exception e) {
+            throw new JedisConnectionException("Could not get a resource from the pool", e);
+        }
+        jedis.setDataSource(this);
+        return jedis;
+    }
+
+    private boolean isInactive() {
+        return pool == null || pool.isClosed();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.BulkCommand;
+import org.seedstack.redis.BulkLoadResult;
+import org.seedstack.seed.SeedException;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.util.Pool;
+
+import java.util.Iterator;
+
+class ClientBulkLoader extends AbstractBulkLoader {
+    private final Pool<Jedis> jedisPool;
+    private final RedisMetrics redisMetrics;
+
+    ClientBulkLoader(String name, int window, Pool<Jedis> jedisPool, RedisMetrics redisMetrics) {
+        super(name, window);
+        this.jedisPool = jedisPool;
+        this.redisMetrics = redisMetrics;
+    }
+
+    @Override
+    public BulkLoadResult load(Iterator<BulkCommand> commands) {
+        long start = System.nanoTime();
+        Errors errors = new Errors();
+        CountingIterator countingIterator = new CountingIterator(commands);
+        try (Jedis jedis = redisMetrics.borrow(jedisPool)) {
+            stream(jedis, countingIterator, errors);
+        } catch (JedisConnectionException e) {
+            redisMetrics.recordException();
+            throw SeedException.wrap(e, RedisErrorCode.BULK_LOAD_FAILED)
+                    .put("target", name)
+                    .put("sent", countingIterator.count);
+        }
+        return errors.toResult(countingIterator.count, start);
+    }
+
+    private static class CountingIterator implements Iterator<BulkCommand> {
+        private final Iterator<BulkCommand> delegate;
+        private long count;
+
+        private CountingIterator(Iterator<BulkCommand> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public BulkCommand next() {
+            count++;
+            return delegate.next();
+        }
+    }
+}
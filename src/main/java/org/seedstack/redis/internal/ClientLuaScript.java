@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.util.Pool;
+
+import java.util.List;
+
+class ClientLuaScript<T> extends AbstractLuaScript<T> {
+    private final Pool<Jedis> jedisPool;
+    private final RedisMetrics redisMetrics;
+
+    ClientLuaScript(String location, String source, Pool<Jedis> jedisPool, RedisMetrics redisMetrics) {
+        super(location, source);
+        this.jedisPool = jedisPool;
+        this.redisMetrics = redisMetrics;
+    }
+
+    @Override
+    public T eval(List<String> keys, List<String> args) {
+        try (Jedis jedis = redisMetrics.borrow(jedisPool)) {
+            return eval(jedis, keys, args);
+        } catch (RuntimeException e) {
+            redisMetrics.recordException();
+            throw e;
+        }
+    }
+
+    @Override
+    void reload() {
+        try (Jedis jedis = redisMetrics.borrow(jedisPool)) {
+            jedis.scriptLoad(getSource());
+        }
+    }
+}
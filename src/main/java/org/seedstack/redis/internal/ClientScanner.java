@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.util.Pool;
+
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+class ClientScanner extends AbstractRedisScanner {
+    private final Pool<Jedis> jedisPool;
+    private final RedisMetrics redisMetrics;
+
+    ClientScanner(Pool<Jedis> jedisPool, RedisMetrics redisMetrics) {
+        this.jedisPool = jedisPool;
+        this.redisMetrics = redisMetrics;
+    }
+
+    @Override
+    public Stream<String> scan(ScanParams scanParams) {
+        return StreamSupport.stream(new ScanSpliterator<>(cursor -> execute(null, jedis -> jedis.scan(cursor, scanParams))), false);
+    }
+
+    @Override
+    <T> T execute(String key, Function<Jedis, T> function) {
+        try (Jedis jedis = redisMetrics.borrow(jedisPool)) {
+            return function.apply(jedis);
+        } catch (RuntimeException e) {
+            redisMetrics.recordException();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.BulkCommand;
+import org.seedstack.redis.BulkLoadResult;
+import org.seedstack.seed.SeedException;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk loader of a cluster. The calling thread dispatches commands to a bounded queue per master node, each queue
+ * being streamed by a task of the cluster executor over its own connection. A full queue blocks the dispatch, so the
+ * slowest master throttles the load.
+ */
+class ClusterBulkLoader extends AbstractBulkLoader {
+    private static final BulkCommand END = BulkCommand.of("END", "END");
+    private static final long OFFER_TIMEOUT = 100;
+    private final ClusterTopology clusterTopology;
+    private final ExecutorService executorService;
+
+    ClusterBulkLoader(String name, int window, ClusterTopology clusterTopology, ExecutorService executorService) {
+        super(name, window);
+        this.clusterTopology = clusterTopology;
+        this.executorService = executorService;
+    }
+
+    @Override
+    public BulkLoadResult load(Iterator<BulkCommand> commands) {
+        long start = System.nanoTime();
+        Errors errors = new Errors();
+        AtomicLong sent = new AtomicLong();
+        Map<HostAndPort, NodeLoad> nodeLoads = new HashMap<>();
+        try {
+            while (commands.hasNext()) {
+                BulkCommand command = commands.next();
+                int slot = JedisClusterCRC16.getSlot(command.getKey());
+                NodeLoad nodeLoad = nodeLoads.computeIfAbsent(clusterTopology.getOwner(slot),
+                        node -> new NodeLoad(node, slot, errors, sent));
+                nodeLoad.put(command);
+            }
+        } finally {
+            for (NodeLoad nodeLoad : nodeLoads.values()) {
+                nodeLoad.end();
+            }
+        }
+        for (NodeLoad nodeLoad : nodeLoads.values()) {
+            nodeLoad.await();
+        }
+        return errors.toResult(sent.get(), start);
+    }
+
+    @Override
+    void onError(JedisDataException e) {
+        if (e instanceof JedisMovedDataException) {
+            JedisMovedDataException movedDataException = (JedisMovedDataException) e;
+            clusterTopology.update(movedDataException.getSlot(), movedDataException.getTargetNode());
+        }
+    }
+
+    private class NodeLoad implements Iterator<BulkCommand> {
+        private final HostAndPort node;
+        private final BlockingQueue<BulkCommand> queue = new ArrayBlockingQueue<>(window);
+        private final AtomicLong sent;
+        private final Future<?> future;
+        private BulkCommand next;
+
+        private NodeLoad(HostAndPort node, int slot, Errors errors, AtomicLong sent) {
+            this.node = node;
+            this.sent = sent;
+            this.future = executorService.submit(() -> {
+                try (Jedis jedis = clusterTopology.getConnection(node, slot)) {
+                    stream(jedis, this, errors);
+                }
+            });
+        }
+
+        private void put(BulkCommand command) {
+            try {
+                while (!queue.offer(command, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    if (future.isDone()) {
+                        // the node load failed, so its queue will never be drained
+                        await();
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                throw failure(e);
+            }
+        }
+
+        private void end() {
+            try {
+                while (!future.isDone() && !queue.offer(END, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    // retry until the node load consumes its queue or fails
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+            }
+        }
+
+        private void await() {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                throw failure(e);
+            } catch (ExecutionException e) {
+                throw failure(e.getCause());
+            }
+        }
+
+        private SeedException failure(Throwable cause) {
+            return SeedException.wrap(cause, RedisErrorCode.BULK_LOAD_FAILED)
+                    .put("target", name + " (" + node + ")")
+                    .put("sent", sent.get());
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for bulk commands", e);
+                }
+            }
+            return next != END;
+        }
+
+        @Override
+        public BulkCommand next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            BulkCommand command = next;
+            next = null;
+            sent.incrementAndGet();
+            return command;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.List;
+
+class ClusterLuaScript<T> extends AbstractLuaScript<T> {
+    private final ClusterTopology clusterTopology;
+
+    ClusterLuaScript(String location, String source, ClusterTopology clusterTopology) {
+        super(location, source);
+        this.clusterTopology = clusterTopology;
+    }
+
+    @Override
+    public T eval(List<String> keys, List<String> args) {
+        // scripts without keys run on the master owning the first slot
+        int slot = keys.isEmpty() ? 0 : JedisClusterCRC16.getSlot(keys.get(0));
+        return clusterTopology.execute(slot, jedis -> eval(jedis, keys, args));
+    }
+
+    @Override
+    void reload() {
+        // the master missing the script is not known, so it is loaded on all of them
+        for (int slot : clusterTopology.getMasterSlots().values()) {
+            clusterTopology.execute(slot, jedis -> jedis.scriptLoad(getSource()));
+        }
+    }
+}
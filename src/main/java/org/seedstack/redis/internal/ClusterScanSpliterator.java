@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Spliterator over a set of cluster nodes, each node being scanned by its own {@link ScanSpliterator}. Splitting
+ * divides the nodes in halves, so a parallel stream ends up scanning every node in a separate fork-join task.
+ */
+class ClusterScanSpliterator<N, T> implements Spliterator<T> {
+    private final List<N> nodes;
+    private final Function<N, Spliterator<T>> nodeScanner;
+    private int index;
+    private Spliterator<T> current;
+
+    ClusterScanSpliterator(List<N> nodes, Function<N, Spliterator<T>> nodeScanner) {
+        this.nodes = nodes;
+        this.nodeScanner = nodeScanner;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (true) {
+            if (current == null) {
+                if (index >= nodes.size()) {
+                    return false;
+                }
+                current = nodeScanner.apply(nodes.get(index++));
+            }
+            if (current.tryAdvance(action)) {
+                return true;
+            }
+            current = null;
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int remaining = nodes.size() - index;
+        if (current != null || remaining < 2) {
+            return null;
+        }
+        int middle = index + remaining / 2;
+        Spliterator<T> prefix = new ClusterScanSpliterator<>(nodes.subList(index, middle), nodeScanner);
+        index = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Scanner of a cluster. Keyspace scans enumerate the masters when the stream is created and address each of them
+ * through the first slot it owns. The cursor of a master is not resumed on another node, so slots migrating during a
+ * scan may be missed.
+ */
+class ClusterScanner extends AbstractRedisScanner {
+    private final ClusterTopology clusterTopology;
+
+    ClusterScanner(ClusterTopology clusterTopology) {
+        this.clusterTopology = clusterTopology;
+    }
+
+    @Override
+    public Stream<String> scan(ScanParams scanParams) {
+        return StreamSupport.stream(new ClusterScanSpliterator<>(
+                new ArrayList<>(clusterTopology.getMasterSlots().entrySet()),
+                (Map.Entry<HostAndPort, Integer> master) -> new ScanSpliterator<>(cursor -> scanMaster(master.getValue(), cursor, scanParams))
+        ), true);
+    }
+
+    @Override
+    <T> T execute(String key, Function<Jedis, T> function) {
+        return clusterTopology.execute(JedisClusterCRC16.getSlot(key), function);
+    }
+
+    private ScanResult<String> scanMaster(int slot, String cursor, ScanParams scanParams) {
+        return clusterTopology.execute(slot, jedis -> jedis.scan(cursor, scanParams));
+    }
+}
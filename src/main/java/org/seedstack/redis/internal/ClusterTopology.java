@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Maps each hash slot of a cluster to its owning master node, from the output of the CLUSTER SLOTS command. Connections
+ * to nodes are borrowed from the pools maintained by the {@link JedisCluster}.
+ */
+class ClusterTopology {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterTopology.class);
+    private final String name;
+    private final JedisCluster jedisCluster;
+    private final int maxAttempts;
+    private final RedisMetrics redisMetrics;
+    private volatile HostAndPort[] slotOwners = new HostAndPort[JedisCluster.HASHSLOTS];
+
+    ClusterTopology(String name, JedisCluster jedisCluster, int maxAttempts, RedisMetrics redisMetrics) {
+        this.name = name;
+        this.jedisCluster = jedisCluster;
+        this.maxAttempts = maxAttempts;
+        this.redisMetrics = redisMetrics;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    JedisCluster getJedisCluster() {
+        return jedisCluster;
+    }
+
+    /**
+     * Returns the maximum number of attempts for a command redirected by the cluster.
+     */
+    int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Returns the master node owning the specified slot, refreshing the topology if the slot is not known yet.
+     */
+    HostAndPort getOwner(int slot) {
+        HostAndPort owner = slotOwners[slot];
+        if (owner == null) {
+            refresh();
+            owner = slotOwners[slot];
+        }
+        return owner;
+    }
+
+    /**
+     * Returns the distinct master nodes currently owning at least one slot.
+     */
+    Set<HostAndPort> getMasters() {
+        HostAndPort[] owners = slotOwners;
+        Set<HostAndPort> masters = new LinkedHashSet<>();
+        for (HostAndPort owner : owners) {
+            if (owner != null) {
+                masters.add(owner);
+            }
+        }
+        if (masters.isEmpty()) {
+            refresh();
+            for (HostAndPort owner : slotOwners) {
+                if (owner != null) {
+                    masters.add(owner);
+                }
+            }
+        }
+        return Collections.unmodifiableSet(masters);
+    }
+
+    /**
+     * Returns the first slot owned by each distinct master node, allowing to borrow a connection to every master.
+     */
+    Map<HostAndPort, Integer> getMasterSlots() {
+        Map<HostAndPort, Integer> masterSlots = new LinkedHashMap<>();
+        for (HostAndPort master : getMasters()) {
+            HostAndPort[] owners = slotOwners;
+            for (int slot = 0; slot < owners.length; slot++) {
+                if (master.equals(owners[slot])) {
+                    masterSlots.put(master, slot);
+                    break;
+                }
+            }
+        }
+        return masterSlots;
+    }
+
+    /**
+     * Runs the specified function with a connection to the master owning the specified slot. Redirections update the
+     * slot mapping and connection failures refresh the topology before retrying, up to the maximum number of attempts.
+     */
+    <T> T execute(int slot, Function<Jedis, T> function) {
+        RuntimeException lastException = null;
+        for (int attempt = 0; attempt < Math.max(1, maxAttempts); attempt++) {
+            try (Jedis jedis = getConnection(getOwner(slot), slot)) {
+                return function.apply(jedis);
+            } catch (JedisMovedDataException e) {
+                update(slot, e.getTargetNode());
+                lastException = e;
+            } catch (JedisConnectionException e) {
+                refresh();
+                lastException = e;
+            }
+        }
+        redisMetrics.recordException();
+        throw lastException;
+    }
+
+    /**
+     * Records a slot redirection received from the cluster.
+     */
+    void update(int slot, HostAndPort owner) {
+        slotOwners[slot] = owner;
+    }
+
+    /**
+     * Borrows a connection to the specified node. If the node is not known by the {@link JedisCluster} yet, a
+     * connection is borrowed for the specified slot instead.
+     */
+    Jedis getConnection(HostAndPort node, int slot) {
+        JedisPool jedisPool = node == null ? null : jedisCluster.getClusterNodes().get(node.toString());
+        if (jedisPool != null) {
+            return redisMetrics.borrow(jedisPool);
+        } else {
+            return jedisCluster.getConnectionFromSlot(slot);
+        }
+    }
+
+    /**
+     * Reloads the slot mapping from the first reachable node.
+     */
+    synchronized void refresh() {
+        JedisConnectionException lastException = null;
+        for (Map.Entry<String, JedisPool> entry : jedisCluster.getClusterNodes().entrySet()) {
+            try (Jedis jedis = entry.getValue().getResource()) {
+                slotOwners = parseSlots(jedis.clusterSlots(), jedis.getClient().getHost());
+                return;
+            } catch (JedisConnectionException e) {
+                LOGGER.debug("Unable to refresh topology of cluster {} from node {}", name, entry.getKey(), e);
+                lastException = e;
+            }
+        }
+        if (lastException != null) {
+            throw lastException;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private HostAndPort[] parseSlots(List<Object> slots, String defaultHost) {
+        HostAndPort[] owners = new HostAndPort[JedisCluster.HASHSLOTS];
+        for (Object slotRange : slots) {
+            List<Object> slotInfo = (List<Object>) slotRange;
+            int start = ((Long) slotInfo.get(0)).intValue();
+            int end = ((Long) slotInfo.get(1)).intValue();
+            List<Object> masterInfo = (List<Object>) slotInfo.get(2);
+            String host = SafeEncoder.encode((byte[]) masterInfo.get(0));
+            HostAndPort master = new HostAndPort(
+                    host.isEmpty() ? defaultHost : host,
+                    ((Long) masterInfo.get(1)).intValue()
+            );
+            for (int slot = start; slot <= end; slot++) {
+                owners[slot] = master;
+            }
+        }
+        return owners;
+    }
+}
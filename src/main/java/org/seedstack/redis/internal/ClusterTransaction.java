@@ -0,0 +1,316 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.seed.SeedException;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MULTI/EXEC transaction on the master owning a single slot of a cluster. The slot is either fixed or pinned by the
+ * first key queued, the keys of all commands (including multi-key commands) being checked against it as they are
+ * queued. Commands are recorded and sent within MULTI/EXEC when the transaction is executed, so no connection is held
+ * while they are queued. A redirection of the
+ * slot aborts the transaction on the server, which is then replayed on the new owner (MOVED) or, preceded by ASKING,
+ * on the node importing the slot (ASK). Connection failures are retried only if they happen before anything was sent,
+ * since the transaction may otherwise have been executed.
+ */
+class ClusterTransaction extends Transaction {
+    private final ClusterTopology clusterTopology;
+    private static final int UNPINNED = -1;
+    private int slot;
+    private final int maxAttempts;
+    private final List<QueuedCommand> queuedCommands = new ArrayList<>();
+    private final CommandRecorder commandRecorder = new CommandRecorder();
+
+    /**
+     * Creates a transaction whose slot is pinned by its first key.
+     *
+     * @param clusterTopology the topology of the cluster.
+     */
+    ClusterTransaction(ClusterTopology clusterTopology) {
+        this(clusterTopology, UNPINNED);
+    }
+
+    /**
+     * Creates a transaction on a fixed slot.
+     *
+     * @param clusterTopology the topology of the cluster.
+     * @param slot            the slot.
+     */
+    ClusterTransaction(ClusterTopology clusterTopology, int slot) {
+        this.clusterTopology = clusterTopology;
+        this.slot = slot;
+        this.maxAttempts = Math.max(1, clusterTopology.getMaxAttempts());
+        setClient(commandRecorder);
+    }
+
+    @Override
+    protected Client getClient(String key) {
+        checkSlot(key, JedisClusterCRC16.getSlot(key));
+        return commandRecorder;
+    }
+
+    @Override
+    protected Client getClient(byte[] key) {
+        checkSlot(key, JedisClusterCRC16.getSlot(key));
+        return commandRecorder;
+    }
+
+    @Override
+    public List<Object> exec() {
+        inTransaction = false;
+        if (queuedCommands.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Object> replies = executeQueued();
+        List<Object> formatted = new ArrayList<>(replies.size());
+        for (Object reply : replies) {
+            try {
+                formatted.add(generateResponse(reply).get());
+            } catch (JedisDataException e) {
+                formatted.add(e);
+            }
+        }
+        return formatted;
+    }
+
+    @Override
+    public List<Response<?>> execGetResponse() {
+        inTransaction = false;
+        if (queuedCommands.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Object> replies = executeQueued();
+        List<Response<?>> responses = new ArrayList<>(replies.size());
+        for (Object reply : replies) {
+            responses.add(generateResponse(reply));
+        }
+        return responses;
+    }
+
+    @Override
+    public String discard() {
+        inTransaction = false;
+        queuedCommands.clear();
+        clean();
+        return "OK";
+    }
+
+    @Override
+    public void clear() {
+        if (inTransaction) {
+            discard();
+        }
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    /**
+     * Executes the queued commands, the pending responses being discarded if the transaction fails.
+     */
+    private List<Object> executeQueued() {
+        try {
+            return execute();
+        } catch (RuntimeException e) {
+            clean();
+            throw e;
+        } finally {
+            queuedCommands.clear();
+        }
+    }
+
+    private List<Object> execute() {
+        if (slot == UNPINNED) {
+            throw SeedException.createNew(RedisErrorCode.UNROUTABLE_CLUSTER_TRANSACTION)
+                    .put("cluster", clusterTopology.getName());
+        }
+        RuntimeException lastException = null;
+        HostAndPort askTarget = null;
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            HostAndPort target = askTarget != null ? askTarget : clusterTopology.getOwner(slot);
+            Jedis jedis;
+            try {
+                jedis = clusterTopology.getConnection(target, slot);
+            } catch (JedisConnectionException e) {
+                // nothing was sent yet so the owner can be looked up again
+                lastException = e;
+                askTarget = null;
+                refreshTopology();
+                continue;
+            }
+            try {
+                return send(jedis.getClient(), askTarget != null);
+            } catch (JedisMovedDataException e) {
+                clusterTopology.update(slot, e.getTargetNode());
+                askTarget = null;
+                lastException = e;
+            } catch (JedisAskDataException e) {
+                // the slot is being migrated, only this attempt goes to the importing node
+                askTarget = e.getTargetNode();
+                lastException = e;
+            } catch (JedisConnectionException e) {
+                refreshTopology();
+                throw e;
+            } finally {
+                jedis.close();
+            }
+        }
+        throw lastException;
+    }
+
+    private List<Object> send(Client client, boolean asking) {
+        if (asking) {
+            client.sendCommand(Protocol.Command.ASKING);
+        }
+        client.multi();
+        for (QueuedCommand queuedCommand : queuedCommands) {
+            client.sendCommand(queuedCommand.command, queuedCommand.args);
+        }
+        client.exec();
+        JedisRedirectionException redirection = null;
+        for (Object acknowledgement : client.getMany(queuedCommands.size() + (asking ? 2 : 1))) {
+            if (redirection == null && acknowledgement instanceof JedisRedirectionException) {
+                redirection = (JedisRedirectionException) acknowledgement;
+            }
+        }
+        try {
+            List<Object> replies = client.getObjectMultiBulkReply();
+            if (replies == null) {
+                throw new JedisDataException("Cluster transaction aborted by the server");
+            }
+            return replies;
+        } catch (JedisDataException e) {
+            // the whole transaction was discarded by the server (EXECABORT) because the slot moved
+            if (redirection != null) {
+                throw redirection;
+            }
+            throw e;
+        }
+    }
+
+    private void refreshTopology() {
+        try {
+            clusterTopology.refresh();
+        } catch (JedisConnectionException e) {
+            // the next attempt or the caller reports the failure
+        }
+    }
+
+    private void checkSlot(Object key, int keySlot) {
+        if (slot == UNPINNED) {
+            slot = keySlot;
+        } else if (keySlot != slot) {
+            throw SeedException.createNew(RedisErrorCode.CROSS_SLOT_CLUSTER_TRANSACTION)
+                    .put("key", key instanceof byte[] ? SafeEncoder.encode((byte[]) key) : key)
+                    .put("keySlot", keySlot)
+                    .put("slot", slot)
+                    .put("cluster", clusterTopology.getName());
+        }
+    }
+
+    private static class QueuedCommand {
+        private final ProtocolCommand command;
+        private final byte[][] args;
+
+        private QueuedCommand(ProtocolCommand command, byte[][] args) {
+            this.command = command;
+            this.args = args;
+        }
+    }
+
+    /**
+     * A never-connected client which records the commands issued by {@link Transaction} instead of writing them to a
+     * socket.
+     */
+    private class CommandRecorder extends Client {
+        @Override
+        public void sendCommand(ProtocolCommand cmd, byte[]... args) {
+            // single-key commands are checked by getClient(key), multi-key commands are sent directly
+            if (cmd instanceof Protocol.Command) {
+                checkKeys((Protocol.Command) cmd, args);
+            }
+            queuedCommands.add(new QueuedCommand(cmd, args));
+        }
+
+        private void checkKeys(Protocol.Command command, byte[][] args) {
+            switch (command) {
+                case MGET:
+                case DEL:
+                case UNLINK:
+                case EXISTS:
+                case TOUCH:
+                case WATCH:
+                case RENAME:
+                case RENAMENX:
+                case RPOPLPUSH:
+                case SINTER:
+                case SINTERSTORE:
+                case SUNION:
+                case SUNIONSTORE:
+                case SDIFF:
+                case SDIFFSTORE:
+                case PFCOUNT:
+                case PFMERGE:
+                    checkKeys(args, 0, args.length, 1);
+                    break;
+                case MSET:
+                case MSETNX:
+                    checkKeys(args, 0, args.length, 2);
+                    break;
+                case SMOVE:
+                case BRPOPLPUSH:
+                case LMOVE:
+                case BLMOVE:
+                    checkKeys(args, 0, Math.min(2, args.length), 1);
+                    break;
+                case BLPOP:
+                case BRPOP:
+                    // the last argument is the timeout
+                    checkKeys(args, 0, args.length - 1, 1);
+                    break;
+                case BITOP:
+                    checkKeys(args, 1, args.length, 1);
+                    break;
+                case ZINTERSTORE:
+                case ZUNIONSTORE:
+                    checkKeys(args, 0, 1, 1);
+                    if (args.length > 1) {
+                        checkKeys(args, 2, Math.min(args.length, 2 + Integer.parseInt(SafeEncoder.encode(args[1]))), 1);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void checkKeys(byte[][] args, int from, int to, int step) {
+            for (int i = from; i < to; i += step) {
+                checkSlot(args[i], JedisClusterCRC16.getSlot(args[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.RedisConfig;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.lang.reflect.Method;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records a sample of the commands called through the traced proxies. Each sampled command is counted per name with its
+ * payload size and latency, and its key is counted in a count-min sketch. The keys with the highest estimated counts
+ * and the keys with the biggest payloads are kept in two bounded rankings, so memory does not grow with the keyspace.
+ */
+class CommandTracer {
+    private static final int MAX_KEY_LENGTH = 256;
+    private static final int MAX_COUNTED_ELEMENTS = 1024;
+    private static final Set<String> KEYLESS_COMMANDS = new HashSet<>(Arrays.asList(
+            "auth", "clientKill", "clientSetname", "configGet", "configSet", "echo", "eval", "evalsha", "info",
+            "ping", "publish", "scriptExists", "scriptLoad", "select", "sendCommand", "waitReplicas"
+    ));
+    private final double sampleRate;
+    private final int sketchMask;
+    private final int sketchDepth;
+    private final AtomicLongArray sketch;
+    private final Map<String, CommandStats> commands = new ConcurrentHashMap<>();
+    private final Ranking hotKeys;
+    private final Ranking bigKeys;
+    private final LongAdder sampled = new LongAdder();
+
+    CommandTracer(RedisConfig.TracingConfig tracingConfig) {
+        this.sampleRate = tracingConfig.getSampleRate();
+        int width = Integer.highestOneBit(Math.max(1, tracingConfig.getSketchWidth() - 1)) << 1;
+        this.sketchMask = width - 1;
+        this.sketchDepth = tracingConfig.getSketchDepth();
+        this.sketch = new AtomicLongArray(width * sketchDepth);
+        this.hotKeys = new Ranking(tracingConfig.getTopKeys());
+        this.bigKeys = new Ranking(tracingConfig.getTopKeys());
+    }
+
+    /**
+     * Decides if the command about to be called is traced.
+     */
+    boolean sample() {
+        return sampleRate > 0 && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    /**
+     * Records a sampled command.
+     *
+     * @param method the method called on the traced proxy.
+     * @param args   the arguments of the call.
+     * @param result the value returned by the call.
+     * @param nanos  the duration of the call, or a negative value if the command was only queued.
+     */
+    void record(Method method, Object[] args, Object result, long nanos) {
+        sampled.increment();
+        String name = method.getName();
+        long size = sizeOf(args) + sizeOf(result);
+        commands.computeIfAbsent(name, k -> new CommandStats()).record(size, nanos);
+        String key = keyOf(name, args);
+        if (key != null) {
+            hotKeys.offer(key, increment(key));
+            bigKeys.offer(key, size);
+        }
+    }
+
+    Map<String, Object> collect() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sampleRate", sampleRate);
+        result.put("sampledCommands", sampled.sum());
+        Map<String, Object> commandInfo = new TreeMap<>();
+        commands.forEach((name, stats) -> commandInfo.put(name.toUpperCase(Locale.ENGLISH), stats.collect()));
+        result.put("commands", commandInfo);
+        Map<String, Object> hotKeyInfo = new LinkedHashMap<>();
+        hotKeys.top().forEach(entry -> hotKeyInfo.put(entry.getKey(), sampleRate > 0 ? Math.round(entry.getValue() / sampleRate) : 0));
+        result.put("hotKeys", hotKeyInfo);
+        Map<String, Object> bigKeyInfo = new LinkedHashMap<>();
+        bigKeys.top().forEach(entry -> bigKeyInfo.put(entry.getKey(), entry.getValue()));
+        result.put("bigKeys", bigKeyInfo);
+        return result;
+    }
+
+    /**
+     * Counts an occurrence of the key in the sketch and returns its estimated number of occurrences.
+     */
+    private long increment(String key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < sketchDepth; row++) {
+            int index = row * (sketchMask + 1) + (mix(hash, row) & sketchMask);
+            estimate = Math.min(estimate, sketch.incrementAndGet(index));
+        }
+        return estimate;
+    }
+
+    private static int mix(int hash, int row) {
+        int h = hash * (0x9E3779B9 + (row << 1));
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static String keyOf(String name, Object[] args) {
+        if (args == null || args.length == 0 || KEYLESS_COMMANDS.contains(name)) {
+            return null;
+        }
+        Object first = args[0];
+        if (first instanceof String[] && ((String[]) first).length > 0) {
+            first = ((String[]) first)[0];
+        } else if (first instanceof byte[][] && ((byte[][]) first).length > 0) {
+            first = ((byte[][]) first)[0];
+        }
+        String key;
+        if (first instanceof String) {
+            key = (String) first;
+        } else if (first instanceof byte[]) {
+            byte[] bytes = (byte[]) first;
+            key = SafeEncoder.encode(bytes.length > MAX_KEY_LENGTH ? Arrays.copyOf(bytes, MAX_KEY_LENGTH) : bytes);
+        } else {
+            return null;
+        }
+        return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+    }
+
+    /**
+     * Approximates the size in bytes of the arguments or result of a command, strings being counted by their length.
+     */
+    private static long sizeOf(Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if (value instanceof String) {
+            return ((String) value).length();
+        } else if (value instanceof Object[]) {
+            return sizeOf(Arrays.asList((Object[]) value));
+        } else if (value instanceof Collection) {
+            long size = 0;
+            int counted = 0;
+            for (Object element : (Collection<?>) value) {
+                if (counted++ == MAX_COUNTED_ELEMENTS) {
+                    // large collections are extrapolated from their first elements
+                    return size * ((Collection<?>) value).size() / MAX_COUNTED_ELEMENTS;
+                }
+                size += sizeOf(element);
+            }
+            return size;
+        } else if (value instanceof Map) {
+            return sizeOf(((Map<?, ?>) value).keySet()) + sizeOf(((Map<?, ?>) value).values());
+        } else {
+            return 0;
+        }
+    }
+
+    private static class CommandStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private void record(long size, long nanos) {
+            count.increment();
+            bytes.add(size);
+            if (nanos >= 0) {
+                latency.record(nanos);
+            }
+        }
+
+        private Map<String, Object> collect() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            long sampledCount = count.sum();
+            result.put("sampled", sampledCount);
+            result.put("meanBytes", sampledCount == 0 ? 0 : bytes.sum() / sampledCount);
+            LatencyStats latencyStats = latency.snapshot();
+            if (latencyStats.getCount() > 0) {
+                result.put("latency", latencyStats.toMap());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Keeps the keys with the highest scores, the lowest one being evicted by a higher score of another key.
+     */
+    private static class Ranking {
+        private final int capacity;
+        private final Map<String, Long> scores = new HashMap<>();
+        private long lowest;
+
+        private Ranking(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private synchronized void offer(String key, long score) {
+            Long current = scores.get(key);
+            if (current != null) {
+                if (score > current) {
+                    scores.put(key, score);
+                    if (current == lowest) {
+                        lowest = computeLowest();
+                    }
+                }
+            } else if (scores.size() < capacity) {
+                scores.put(key, score);
+                lowest = scores.size() == 1 ? score : Math.min(lowest, score);
+            } else if (score > lowest) {
+                scores.entrySet().stream()
+                        .filter(entry -> entry.getValue() == lowest)
+                        .findFirst()
+                        .ifPresent(entry -> scores.remove(entry.getKey()));
+                scores.put(key, score);
+                lowest = computeLowest();
+            }
+        }
+
+        private synchronized List<Map.Entry<String, Long>> top() {
+            List<Map.Entry<String, Long>> entries = new ArrayList<>(scores.entrySet().size());
+            scores.forEach((key, score) -> entries.add(new AbstractMap.SimpleImmutableEntry<>(key, score)));
+            entries.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+            return entries;
+        }
+
+        private long computeLowest() {
+            return scores.values().stream().mapToLong(Long::longValue).min().orElse(0);
+        }
+    }
+}
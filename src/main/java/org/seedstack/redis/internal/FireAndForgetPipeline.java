@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * A pipeline sending its commands with server replies disabled (CLIENT REPLY OFF), so nothing is read back and no
+ * {@link Response} is allocated per command. Replies are enabled again when the pipeline is synchronized, the
+ * acknowledgement of which reports the connection errors. Command errors are not reported. All commands return the
+ * same shared response, which never holds a reply and fails when read.
+ */
+class FireAndForgetPipeline extends Pipeline {
+    private static final byte[] REPLY = SafeEncoder.encode("REPLY");
+    private static final byte[] OFF = SafeEncoder.encode("OFF");
+    private static final byte[] ON = SafeEncoder.encode("ON");
+    private static final Response<?> DISCARDED = new DiscardedResponse();
+    private boolean repliesDisabled;
+
+    FireAndForgetPipeline(Client client) {
+        setClient(client);
+        client.sendCommand(Protocol.Command.CLIENT, REPLY, OFF);
+        repliesDisabled = true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T> Response<T> getResponse(Builder<T> builder) {
+        return (Response<T>) DISCARDED;
+    }
+
+    @Override
+    public Response<String> multi() {
+        throw new UnsupportedOperationException("MULTI is not supported in fire-and-forget pipelines");
+    }
+
+    /**
+     * Enables the replies of the connection again and waits for the acknowledgement, all commands sent before having
+     * been processed by the server once it is received.
+     */
+    @Override
+    public void sync() {
+        if (repliesDisabled) {
+            repliesDisabled = false;
+            try {
+                client.sendCommand(Protocol.Command.CLIENT, REPLY, ON);
+                client.getStatusCodeReply();
+            } catch (RuntimeException e) {
+                if (!(e instanceof JedisConnectionException)) {
+                    // the reply mode of the connection is unknown so it is dropped, a new one being opened on next use
+                    client.disconnect();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static class DiscardedResponse extends Response<String> {
+        private DiscardedResponse() {
+            super(BuilderFactory.STRING);
+        }
+
+        @Override
+        public void set(Object data) {
+            // no reply is ever read
+        }
+
+        @Override
+        public String get() {
+            throw new JedisDataException("Replies are discarded in fire-and-forget pipelines");
+        }
+    }
+}
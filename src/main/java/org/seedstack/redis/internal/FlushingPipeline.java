@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import redis.clients.jedis.BinaryJedis;
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.lang.reflect.Field;
+
+/**
+ * A non-atomic {@link Pipeline} which synchronizes with the server every time a given number of commands has been
+ * queued, so large batches stream through without buffering all replies until the end. Commands synchronized by a
+ * flush have been executed and cannot be rolled back.
+ */
+class FlushingPipeline extends Pipeline {
+    private static final Field JEDIS_PIPELINE = getJedisPipelineField();
+    private final int flushThreshold;
+    private int pendingCommands;
+
+    private FlushingPipeline(Client client, int flushThreshold) {
+        this.flushThreshold = flushThreshold;
+        setClient(client);
+    }
+
+    /**
+     * Creates a flushing pipeline on a connection. Like the pipelines returned by {@link Jedis#pipelined()}, it is
+     * registered as the current pipeline of the connection, which refuses direct commands while replies are pending
+     * and reads them when its state is reset on return to its pool.
+     *
+     * @param jedis          the connection.
+     * @param flushThreshold the number of commands after which the pipeline is synchronized.
+     * @return the pipeline.
+     */
+    static FlushingPipeline pipelined(Jedis jedis, int flushThreshold) {
+        FlushingPipeline pipeline = new FlushingPipeline(jedis.getClient(), flushThreshold);
+        try {
+            JEDIS_PIPELINE.set(jedis, pipeline);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to register the pipeline on the Jedis connection", e);
+        }
+        return pipeline;
+    }
+
+    @Override
+    protected <T> Response<T> getResponse(Builder<T> builder) {
+        Response<T> response = super.getResponse(builder);
+        if (!isInMulti() && ++pendingCommands >= flushThreshold) {
+            pendingCommands = 0;
+            sync();
+        }
+        return response;
+    }
+
+    private static Field getJedisPipelineField() {
+        try {
+            // only assigned by Jedis#pipelined(), which cannot create a subclass
+            Field field = BinaryJedis.class.getDeclaredField("pipeline");
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("Unsupported Jedis version", e);
+        }
+    }
+}
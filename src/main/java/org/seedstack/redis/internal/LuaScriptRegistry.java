@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.common.base.Strings;
+import com.google.common.io.Resources;
+import com.google.inject.Key;
+import org.seedstack.redis.LuaScript;
+import org.seedstack.redis.RedisScript;
+import org.seedstack.seed.SeedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Detects the {@link LuaScript} fields qualified with {@link RedisScript}, creates their handles and loads the
+ * scripts into every configured client and cluster master.
+ */
+class LuaScriptRegistry {
+    static final Predicate<Class<?>> SCRIPT_ANNOTATED = candidate -> {
+        try {
+            for (Field field : candidate.getDeclaredFields()) {
+                if (field.isAnnotationPresent(RedisScript.class)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    };
+    private static final Logger LOGGER = LoggerFactory.getLogger(LuaScriptRegistry.class);
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private final Map<String, JedisPool> jedisPools;
+    private final Map<String, RedisMetrics> redisMetrics;
+    private final Map<String, ClusterTopology> clusterTopologies;
+    private final String defaultTarget;
+    private final Map<String, String> sources = new LinkedHashMap<>();
+    private final Map<String, AbstractLuaScript<?>> luaScripts = new HashMap<>();
+    private final Map<Key<?>, LuaScript<?>> bindings = new HashMap<>();
+
+    LuaScriptRegistry(Map<String, JedisPool> jedisPools, Map<String, RedisMetrics> redisMetrics, Map<String, ClusterTopology> clusterTopologies, String defaultClient) {
+        this.jedisPools = jedisPools;
+        this.redisMetrics = redisMetrics;
+        this.clusterTopologies = clusterTopologies;
+        if (!Strings.isNullOrEmpty(defaultClient)) {
+            this.defaultTarget = defaultClient;
+        } else if (jedisPools.size() + clusterTopologies.size() == 1) {
+            this.defaultTarget = jedisPools.isEmpty() ? clusterTopologies.keySet().iterator().next() : jedisPools.keySet().iterator().next();
+        } else {
+            this.defaultTarget = null;
+        }
+    }
+
+    /**
+     * Detects the script fields declared by the specified classes.
+     *
+     * @param candidates the scanned classes.
+     */
+    void register(Collection<Class<?>> candidates) {
+        for (Class<?> candidate : candidates) {
+            for (Field field : candidate.getDeclaredFields()) {
+                RedisScript redisScript = field.getAnnotation(RedisScript.class);
+                if (redisScript != null) {
+                    register(field, redisScript);
+                }
+            }
+        }
+    }
+
+    private void register(Field field, RedisScript redisScript) {
+        if (field.getType() != LuaScript.class) {
+            throw invalid(field, "the field type must be " + LuaScript.class.getName());
+        }
+        String target = redisScript.client().isEmpty() ? defaultTarget : redisScript.client();
+        if (target == null || !jedisPools.containsKey(target) && !clusterTopologies.containsKey(target)) {
+            throw invalid(field, "unknown client or cluster '" + redisScript.client() + "'");
+        }
+        String location = redisScript.value().startsWith("/") ? redisScript.value().substring(1) : redisScript.value();
+        String source = sources.get(location);
+        if (source == null) {
+            source = read(field, location);
+            sources.put(location, source);
+        }
+        bindings.put(Key.get(field.getGenericType(), redisScript), getScript(target, location, source));
+    }
+
+    /**
+     * Creates the handle of a script bundled with the add-on, which is loaded along with the detected scripts.
+     *
+     * @param target   the client or cluster the script runs on.
+     * @param location the script location, relative to this class.
+     * @return the script handle.
+     */
+    @SuppressWarnings("unchecked")
+    <T> LuaScript<T> getBuiltInScript(String target, String location) {
+        String qualifiedLocation = LuaScriptRegistry.class.getPackage().getName().replace('.', '/') + "/" + location;
+        String source = sources.computeIfAbsent(qualifiedLocation, key -> {
+            try {
+                return Resources.toString(Resources.getResource(LuaScriptRegistry.class, location), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return (LuaScript<T>) getScript(target, qualifiedLocation, source);
+    }
+
+    private AbstractLuaScript<?> getScript(String target, String location, String source) {
+        return luaScripts.computeIfAbsent(target + ":" + location, key -> jedisPools.containsKey(target)
+                ? new ClientLuaScript<>(location, source, jedisPools.get(target), redisMetrics.get(target))
+                : new ClusterLuaScript<>(location, source, clusterTopologies.get(target)));
+    }
+
+    private String read(Field field, String location) {
+        ClassLoader classLoader = field.getDeclaringClass().getClassLoader();
+        URL url = classLoader == null ? null : classLoader.getResource(location);
+        if (url == null) {
+            throw invalid(field, "Lua script '" + location + "' not found in the classpath");
+        }
+        try {
+            return Resources.toString(url, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw invalid(field, "unable to read Lua script '" + location + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the detected scripts into every client and cluster master. Failures are only logged since scripts missing
+     * from a server are loaded again on their first invocation.
+     */
+    void preload() {
+        if (sources.isEmpty()) {
+            return;
+        }
+        jedisPools.forEach((clientName, jedisPool) -> {
+            try (Jedis jedis = jedisPool.getResource()) {
+                sources.values().forEach(jedis::scriptLoad);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unable to load Lua scripts into client {} at startup", clientName, e);
+            }
+        });
+        clusterTopologies.forEach((clusterName, clusterTopology) -> {
+            for (int slot : clusterTopology.getMasterSlots().values()) {
+                try {
+                    clusterTopology.execute(slot, jedis -> {
+                        sources.values().forEach(jedis::scriptLoad);
+                        return null;
+                    });
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Unable to load Lua scripts into the master of slot {} of cluster {} at startup", slot, clusterName, e);
+                }
+            }
+        });
+        LOGGER.info("Loaded {} Lua script(s) into {} client(s) and {} cluster(s)", sources.size(), jedisPools.size(), clusterTopologies.size());
+    }
+
+    Map<Key<?>, LuaScript<?>> getBindings() {
+        return bindings;
+    }
+
+    static String sha1(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+                hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SeedException invalid(Field field, String reason) {
+        return SeedException.createNew(RedisErrorCode.INVALID_REDIS_SCRIPT)
+                .put("field", field.toString())
+                .put("reason", reason);
+    }
+}
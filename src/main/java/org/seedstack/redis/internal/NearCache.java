@@ -0,0 +1,369 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import org.seedstack.redis.RedisConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Local cache of string values and hash fields of a client, invalidated by Redis server-assisted client-side caching.
+ * A dedicated connection is subscribed to the invalidation channel and the pooled connections (or, in BCAST mode, a
+ * second dedicated connection) redirect their invalidations to it. While this connection is down, the cache is empty
+ * and no value can be stored.
+ *
+ * <p>A value read from Redis is only stored if no invalidation for its key (or reconnection) occurred since the read
+ * was issued. This is checked after storing the value, against a striped invalidation counter.</p>
+ */
+class NearCache implements NearCacheMXBean {
+    static final String INVALIDATION_CHANNEL = "__redis__:invalidate";
+    static final long NOT_TRACKING = -1;
+    private static final Logger LOGGER = LoggerFactory.getLogger(NearCache.class);
+    private static final int STRIPES = 1024;
+    private static final int ENTRY_OVERHEAD = 64;
+    private final String name;
+    private final RedisConfig.NearCacheConfig nearCacheConfig;
+    private final Cache<String, Object> cache;
+    private final AtomicLongArray invalidationStripes = new AtomicLongArray(STRIPES);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private volatile long subscriberId = NOT_TRACKING;
+    private volatile boolean running;
+    private volatile Jedis subscriber;
+    private Thread invalidationThread;
+
+    NearCache(String name, RedisConfig.NearCacheConfig nearCacheConfig) {
+        this.name = name;
+        this.nearCacheConfig = nearCacheConfig;
+        CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder()
+                .removalListener(notification -> {
+                    if (notification.wasEvicted()) {
+                        evictions.increment();
+                    }
+                });
+        if (nearCacheConfig.getMaxWeight() > 0) {
+            cacheBuilder.maximumWeight(nearCacheConfig.getMaxWeight())
+                    .weigher((String key, Object value) -> ENTRY_OVERHEAD + 2 * key.length() + weigh(value));
+        } else {
+            cacheBuilder.maximumSize(nearCacheConfig.getMaxSize());
+        }
+        this.cache = cacheBuilder.build();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Starts the invalidation listener, using connections obtained from the specified supplier.
+     */
+    synchronized void start(Supplier<Jedis> connectionSupplier) {
+        running = true;
+        invalidationThread = new Thread(() -> listen(connectionSupplier), "redis-near-cache-" + name);
+        invalidationThread.setDaemon(true);
+        invalidationThread.start();
+    }
+
+    synchronized void stop() {
+        running = false;
+        Jedis currentSubscriber = subscriber;
+        if (currentSubscriber != null) {
+            currentSubscriber.getClient().disconnect();
+        }
+        if (invalidationThread != null) {
+            invalidationThread.interrupt();
+            try {
+                invalidationThread.join(nearCacheConfig.getReconnectDelay() + 1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            invalidationThread = null;
+        }
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the id of the connection receiving invalidations, or {@link #NOT_TRACKING} if it is down.
+     */
+    long getSubscriberId() {
+        return subscriberId;
+    }
+
+    boolean isBroadcasting() {
+        return nearCacheConfig.getTrackingMode() == RedisConfig.NearCacheConfig.TrackingMode.BCAST;
+    }
+
+    /**
+     * Makes the specified pooled connection redirect the invalidations of the keys it reads to the current subscriber,
+     * if not already done. Does nothing in BCAST mode where tracking is enabled once on a dedicated connection.
+     */
+    void track(NearCachingJedis jedis) {
+        long currentId = subscriberId;
+        if (!isBroadcasting() && currentId != NOT_TRACKING && jedis.getTrackingId() != currentId) {
+            if (jedis.getTrackingId() != NOT_TRACKING) {
+                jedis.sendCommand(Protocol.Command.CLIENT, "TRACKING", "OFF");
+            }
+            jedis.sendCommand(Protocol.Command.CLIENT, "TRACKING", "ON", "REDIRECT", String.valueOf(currentId));
+            jedis.setTrackingId(currentId);
+        }
+    }
+
+    /**
+     * Returns a stamp to pass to {@link #put(String, Object, long, long)} after reading the specified key from Redis.
+     */
+    long stamp(String key) {
+        return invalidationStripes.get(stripe(key));
+    }
+
+    String getValue(String key) {
+        Object value = cache.getIfPresent(key);
+        if (value instanceof String) {
+            hits.increment();
+            return (String) value;
+        } else {
+            misses.increment();
+            return null;
+        }
+    }
+
+    String getField(String key, String field) {
+        Object value = cache.getIfPresent(key);
+        if (value instanceof HashFields) {
+            String fieldValue = ((HashFields) value).fields.get(field);
+            if (fieldValue != null) {
+                hits.increment();
+                return fieldValue;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    void putValue(String key, String value, long trackingId, long stamp) {
+        if (value != null) {
+            put(key, value, trackingId, stamp);
+        }
+    }
+
+    void putField(String key, String field, String value, long trackingId, long stamp) {
+        if (value != null) {
+            Object current = cache.getIfPresent(key);
+            if (current instanceof HashFields) {
+                put(key, ((HashFields) current).with(field, value), trackingId, stamp);
+            } else {
+                put(key, new HashFields(ImmutableMap.of(field, value)), trackingId, stamp);
+            }
+        }
+    }
+
+    void invalidate(String key) {
+        invalidationStripes.incrementAndGet(stripe(key));
+        cache.invalidate(key);
+        invalidations.increment();
+    }
+
+    void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            invalidationStripes.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    @Override
+    public long getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return subscriberId != NOT_TRACKING;
+    }
+
+    Map<String, Object> collect() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("connected", isConnected());
+        result.put("trackingMode", nearCacheConfig.getTrackingMode());
+        result.put("size", getSize());
+        result.put("hits", getHitCount());
+        result.put("misses", getMissCount());
+        result.put("evictions", getEvictionCount());
+        result.put("invalidations", getInvalidationCount());
+        return result;
+    }
+
+    private void put(String key, Object value, long trackingId, long stamp) {
+        if (trackingId == NOT_TRACKING) {
+            return;
+        }
+        cache.put(key, value);
+        // an invalidation increments the stripe before removing the key, so a concurrent one is always detected here
+        if (subscriberId != trackingId || invalidationStripes.get(stripe(key)) != stamp) {
+            cache.invalidate(key);
+        }
+    }
+
+    private void listen(Supplier<Jedis> connectionSupplier) {
+        while (running) {
+            Jedis broadcastTracker = null;
+            try (Jedis currentSubscriber = connectionSupplier.get()) {
+                subscriber = currentSubscriber;
+                long id = currentSubscriber.clientId();
+                Client client = currentSubscriber.getClient();
+                client.subscribe(INVALIDATION_CHANNEL);
+                client.getOne();
+                if (isBroadcasting()) {
+                    broadcastTracker = connectionSupplier.get();
+                    broadcastTracker.sendCommand(Protocol.Command.CLIENT, broadcastTrackingArgs(id));
+                }
+                client.setTimeoutInfinite();
+                invalidateAll();
+                subscriberId = id;
+                LOGGER.info("Near cache of Redis client {} is receiving invalidations on connection {}", name, id);
+                while (running) {
+                    onMessage(client.getOne());
+                }
+            } catch (JedisException | ClassCastException e) {
+                subscriberId = NOT_TRACKING;
+                invalidateAll();
+                if (running) {
+                    LOGGER.warn("Near cache of Redis client {} lost its invalidation connection, retrying in {} ms",
+                            name, nearCacheConfig.getReconnectDelay(), e);
+                    sleep();
+                }
+            } finally {
+                subscriberId = NOT_TRACKING;
+                subscriber = null;
+                if (broadcastTracker != null) {
+                    try {
+                        broadcastTracker.close();
+                    } catch (JedisException e) {
+                        LOGGER.debug("Unable to close near cache tracking connection of Redis client {}", name, e);
+                    }
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onMessage(Object reply) {
+        List<Object> message = (List<Object>) reply;
+        if (message.size() == 3 && "message".equals(SafeEncoder.encode((byte[]) message.get(0)))) {
+            Object keys = message.get(2);
+            if (keys instanceof List) {
+                for (Object key : (List<Object>) keys) {
+                    invalidate(SafeEncoder.encode((byte[]) key));
+                }
+            } else {
+                // null payload: the server flushed its database
+                invalidateAll();
+            }
+        }
+    }
+
+    private String[] broadcastTrackingArgs(long redirectId) {
+        List<String> args = new ArrayList<>();
+        args.add("TRACKING");
+        args.add("ON");
+        args.add("REDIRECT");
+        args.add(String.valueOf(redirectId));
+        args.add("BCAST");
+        for (String prefix : nearCacheConfig.getPrefixes()) {
+            args.add("PREFIX");
+            args.add(prefix);
+        }
+        return args.toArray(new String[0]);
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(nearCacheConfig.getReconnectDelay());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private static int stripe(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static int weigh(Object value) {
+        if (value instanceof String) {
+            return 2 * ((String) value).length();
+        } else {
+            int weight = 0;
+            for (Map.Entry<String, String> field : ((HashFields) value).fields.entrySet()) {
+                weight += ENTRY_OVERHEAD + 2 * (field.getKey().length() + field.getValue().length());
+            }
+            return weight;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the cached fields of a hash, replaced as a whole when a field is added.
+     */
+    private static class HashFields {
+        private final Map<String, String> fields;
+
+        private HashFields(Map<String, String> fields) {
+            this.fields = fields;
+        }
+
+        private HashFields with(String field, String value) {
+            Map<String, String> copy = new LinkedHashMap<>(fields);
+            copy.put(field, value);
+            return new HashFields(ImmutableMap.copyOf(copy));
+        }
+    }
+}
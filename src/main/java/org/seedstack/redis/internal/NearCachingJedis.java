@@ -0,0 +1,362 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.args.FlushMode;
+import redis.clients.jedis.params.GetExParams;
+import redis.clients.jedis.params.SetParams;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A pooled {@link Jedis} connection serving GET, HGET and MGET from the {@link NearCache} of its client. Other commands,
+ * as well as transactions and pipelines created from this connection, always go to the server.
+ *
+ * <p>The string and hash commands writing keys with this connection evict them from the near cache as soon as they
+ * return, so the connection reads its own writes without waiting for the invalidation sent by the server. Keys written
+ * otherwise (binary commands, transactions, pipelines, scripts without declared keys or other clients) are only
+ * evicted when the server invalidation is received.</p>
+ */
+class NearCachingJedis extends Jedis {
+    private final NearCache nearCache;
+    private long trackingId = NearCache.NOT_TRACKING;
+
+    NearCachingJedis(URI uri, JedisClientConfig jedisClientConfig, NearCache nearCache) {
+        super(uri, jedisClientConfig);
+        this.nearCache = nearCache;
+    }
+
+    @Override
+    public String get(String key) {
+        String value = nearCache.getValue(key);
+        if (value == null) {
+            long id = currentTrackingId();
+            long stamp = nearCache.stamp(key);
+            value = super.get(key);
+            nearCache.putValue(key, value, id, stamp);
+        }
+        return value;
+    }
+
+    @Override
+    public String hget(String key, String field) {
+        String value = nearCache.getField(key, field);
+        if (value == null) {
+            long id = currentTrackingId();
+            long stamp = nearCache.stamp(key);
+            value = super.hget(key, field);
+            nearCache.putField(key, field, value, id, stamp);
+        }
+        return value;
+    }
+
+    @Override
+    public List<String> mget(String... keys) {
+        String[] values = new String[keys.length];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = nearCache.getValue(keys[i]);
+            if (values[i] == null) {
+                missing.add(i);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long id = currentTrackingId();
+            String[] missingKeys = new String[missing.size()];
+            long[] stamps = new long[missing.size()];
+            for (int i = 0; i < missingKeys.length; i++) {
+                missingKeys[i] = keys[missing.get(i)];
+                stamps[i] = nearCache.stamp(missingKeys[i]);
+            }
+            List<String> missingValues = super.mget(missingKeys);
+            for (int i = 0; i < missingKeys.length; i++) {
+                values[missing.get(i)] = missingValues.get(i);
+                nearCache.putValue(missingKeys[i], missingValues.get(i), id, stamps[i]);
+            }
+        }
+        return Arrays.asList(values);
+    }
+
+    @Override
+    public String set(String key, String value) {
+        return write(() -> super.set(key, value), key);
+    }
+
+    @Override
+    public String set(String key, String value, SetParams params) {
+        return write(() -> super.set(key, value, params), key);
+    }
+
+    @Override
+    public Long setnx(String key, String value) {
+        return write(() -> super.setnx(key, value), key);
+    }
+
+    @Override
+    public String setex(String key, long seconds, String value) {
+        return write(() -> super.setex(key, seconds, value), key);
+    }
+
+    @Override
+    public String psetex(String key, long milliseconds, String value) {
+        return write(() -> super.psetex(key, milliseconds, value), key);
+    }
+
+    @Override
+    public String getSet(String key, String value) {
+        return write(() -> super.getSet(key, value), key);
+    }
+
+    @Override
+    public String getDel(String key) {
+        return write(() -> super.getDel(key), key);
+    }
+
+    @Override
+    public String getEx(String key, GetExParams params) {
+        return write(() -> super.getEx(key, params), key);
+    }
+
+    @Override
+    public Long append(String key, String value) {
+        return write(() -> super.append(key, value), key);
+    }
+
+    @Override
+    public Long setrange(String key, long offset, String value) {
+        return write(() -> super.setrange(key, offset, value), key);
+    }
+
+    @Override
+    public Long incr(String key) {
+        return write(() -> super.incr(key), key);
+    }
+
+    @Override
+    public Long incrBy(String key, long increment) {
+        return write(() -> super.incrBy(key, increment), key);
+    }
+
+    @Override
+    public Double incrByFloat(String key, double increment) {
+        return write(() -> super.incrByFloat(key, increment), key);
+    }
+
+    @Override
+    public Long decr(String key) {
+        return write(() -> super.decr(key), key);
+    }
+
+    @Override
+    public Long decrBy(String key, long decrement) {
+        return write(() -> super.decrBy(key, decrement), key);
+    }
+
+    @Override
+    public String mset(String... keysValues) {
+        return write(() -> super.mset(keysValues), everyOther(keysValues));
+    }
+
+    @Override
+    public Long msetnx(String... keysValues) {
+        return write(() -> super.msetnx(keysValues), everyOther(keysValues));
+    }
+
+    @Override
+    public Long hset(String key, String field, String value) {
+        return write(() -> super.hset(key, field, value), key);
+    }
+
+    @Override
+    public Long hset(String key, Map<String, String> hash) {
+        return write(() -> super.hset(key, hash), key);
+    }
+
+    @Override
+    public Long hsetnx(String key, String field, String value) {
+        return write(() -> super.hsetnx(key, field, value), key);
+    }
+
+    @Override
+    public String hmset(String key, Map<String, String> hash) {
+        return write(() -> super.hmset(key, hash), key);
+    }
+
+    @Override
+    public Long hincrBy(String key, String field, long value) {
+        return write(() -> super.hincrBy(key, field, value), key);
+    }
+
+    @Override
+    public Double hincrByFloat(String key, String field, double value) {
+        return write(() -> super.hincrByFloat(key, field, value), key);
+    }
+
+    @Override
+    public Long hdel(String key, String... fields) {
+        return write(() -> super.hdel(key, fields), key);
+    }
+
+    @Override
+    public Long del(String key) {
+        return write(() -> super.del(key), key);
+    }
+
+    @Override
+    public Long del(String... keys) {
+        return write(() -> super.del(keys), keys);
+    }
+
+    @Override
+    public Long unlink(String key) {
+        return write(() -> super.unlink(key), key);
+    }
+
+    @Override
+    public Long unlink(String... keys) {
+        return write(() -> super.unlink(keys), keys);
+    }
+
+    @Override
+    public Long expire(String key, long seconds) {
+        return write(() -> super.expire(key, seconds), key);
+    }
+
+    @Override
+    public Long pexpire(String key, long milliseconds) {
+        return write(() -> super.pexpire(key, milliseconds), key);
+    }
+
+    @Override
+    public Long expireAt(String key, long unixTime) {
+        return write(() -> super.expireAt(key, unixTime), key);
+    }
+
+    @Override
+    public Long pexpireAt(String key, long millisecondsTimestamp) {
+        return write(() -> super.pexpireAt(key, millisecondsTimestamp), key);
+    }
+
+    @Override
+    public String rename(String oldKey, String newKey) {
+        return write(() -> super.rename(oldKey, newKey), oldKey, newKey);
+    }
+
+    @Override
+    public Long renamenx(String oldKey, String newKey) {
+        return write(() -> super.renamenx(oldKey, newKey), oldKey, newKey);
+    }
+
+    @Override
+    public Long move(String key, int dbIndex) {
+        return write(() -> super.move(key, dbIndex), key);
+    }
+
+    @Override
+    public Boolean copy(String srcKey, String dstKey, boolean replace) {
+        return write(() -> super.copy(srcKey, dstKey, replace), dstKey);
+    }
+
+    @Override
+    public Object eval(String script, int keyCount, String... params) {
+        return write(() -> super.eval(script, keyCount, params), Arrays.copyOf(params, Math.max(0, Math.min(keyCount, params.length))));
+    }
+
+    @Override
+    public Object eval(String script, List<String> keys, List<String> args) {
+        return write(() -> super.eval(script, keys, args), keys.toArray(new String[0]));
+    }
+
+    @Override
+    public Object evalsha(String sha1, int keyCount, String... params) {
+        return write(() -> super.evalsha(sha1, keyCount, params), Arrays.copyOf(params, Math.max(0, Math.min(keyCount, params.length))));
+    }
+
+    @Override
+    public Object evalsha(String sha1, List<String> keys, List<String> args) {
+        return write(() -> super.evalsha(sha1, keys, args), keys.toArray(new String[0]));
+    }
+
+    @Override
+    public String flushDB() {
+        return flush(super::flushDB);
+    }
+
+    @Override
+    public String flushDB(FlushMode flushMode) {
+        return flush(() -> super.flushDB(flushMode));
+    }
+
+    @Override
+    public String flushAll() {
+        return flush(super::flushAll);
+    }
+
+    @Override
+    public String flushAll(FlushMode flushMode) {
+        return flush(() -> super.flushAll(flushMode));
+    }
+
+    long getTrackingId() {
+        return trackingId;
+    }
+
+    void setTrackingId(long trackingId) {
+        this.trackingId = trackingId;
+    }
+
+    /**
+     * Runs a command writing the specified keys, then evicts them. Keys are evicted even if the command failed, since
+     * it may have been executed.
+     */
+    private <T> T write(Supplier<T> command, String... keys) {
+        try {
+            return command.get();
+        } finally {
+            for (String key : keys) {
+                nearCache.invalidate(key);
+            }
+        }
+    }
+
+    private String flush(Supplier<String> command) {
+        try {
+            return command.get();
+        } finally {
+            nearCache.invalidateAll();
+        }
+    }
+
+    private static String[] everyOther(String[] keysValues) {
+        String[] keys = new String[(keysValues.length + 1) / 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keysValues[2 * i];
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the id of the subscriber receiving the invalidations of the keys read by this connection, or
+     * {@link NearCache#NOT_TRACKING} if they are not received (in which case the read value must not be cached).
+     */
+    private long currentTrackingId() {
+        long subscriberId = nearCache.getSubscriberId();
+        if (nearCache.isBroadcasting() || subscriberId == trackingId) {
+            return subscriberId;
+        } else {
+            return NearCache.NOT_TRACKING;
+        }
+    }
+}
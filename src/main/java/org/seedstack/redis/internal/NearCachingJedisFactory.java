@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisFactory;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.util.JedisURIHelper;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocketFactory;
+import java.net.URI;
+
+/**
+ * Creates the {@link NearCachingJedis} connections of a client pool, making them track the keys they read. The
+ * standard {@link JedisFactory} behavior (database selection, validation, destruction) is kept.
+ */
+class NearCachingJedisFactory extends JedisFactory {
+    private final URI uri;
+    private final JedisClientConfig jedisClientConfig;
+    private final NearCache nearCache;
+
+    NearCachingJedisFactory(URI uri, int connectionTimeout, int soTimeout, int infiniteSoTimeout,
+            SSLSocketFactory sslSocketFactory, SSLParameters sslParameters, NearCache nearCache) {
+        super(uri, connectionTimeout, soTimeout, infiniteSoTimeout, null, sslSocketFactory, sslParameters, null);
+        this.uri = uri;
+        this.jedisClientConfig = DefaultJedisClientConfig.builder()
+                .connectionTimeoutMillis(connectionTimeout)
+                .socketTimeoutMillis(soTimeout)
+                .blockingSocketTimeoutMillis(infiniteSoTimeout)
+                .user(JedisURIHelper.getUser(uri))
+                .password(JedisURIHelper.getPassword(uri))
+                .database(JedisURIHelper.getDBIndex(uri))
+                .ssl(JedisURIHelper.isRedisSSLScheme(uri))
+                .sslSocketFactory(sslSocketFactory)
+                .sslParameters(sslParameters)
+                .build();
+        this.nearCache = nearCache;
+    }
+
+    @Override
+    public PooledObject<Jedis> makeObject() throws Exception {
+        NearCachingJedis jedis = new NearCachingJedis(uri, jedisClientConfig, nearCache);
+        try {
+            jedis.connect();
+            nearCache.track(jedis);
+        } catch (JedisException e) {
+            jedis.close();
+            throw e;
+        }
+        return new DefaultPooledObject<>(jedis);
+    }
+
+    @Override
+    public void activateObject(PooledObject<Jedis> pooledJedis) throws Exception {
+        super.activateObject(pooledJedis);
+        nearCache.track((NearCachingJedis) pooledJedis.getObject());
+    }
+
+    /**
+     * Creates a connection outside of the pool, for receiving invalidations.
+     */
+    Jedis createConnection() {
+        Jedis jedis = new Jedis(uri, jedisClientConfig);
+        jedis.connect();
+        return jedis;
+    }
+}
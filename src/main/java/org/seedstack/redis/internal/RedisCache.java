@@ -0,0 +1,990 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyPipelineBase;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.PipelineBase;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.SafeEncoder;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.CacheManager;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.configuration.CompleteConfiguration;
+import javax.cache.configuration.Configuration;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.EternalExpiryPolicy;
+import javax.cache.expiry.ExpiryPolicy;
+import javax.cache.integration.CacheLoader;
+import javax.cache.integration.CacheWriter;
+import javax.cache.integration.CompletionListener;
+import javax.cache.processor.EntryProcessor;
+import javax.cache.processor.EntryProcessorException;
+import javax.cache.processor.EntryProcessorResult;
+import javax.cache.processor.MutableEntry;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * JCache {@link Cache} stored in Redis. Entries of a cache are stored under keys prefixed by its name and a colon, the
+ * colons and backslashes of the name being escaped so that the keys of two caches never share a prefix. Entries are
+ * spread over the slots of a cluster: bulk operations are sent as a pipeline of single-key commands, grouped by the
+ * master node owning their slot, and clearing or iterating a cache scans every master node. Keys and values are encoded
+ * with the built-in binary codec, which implies store-by-value semantics.
+ *
+ * <p>Expiry policies are mapped to Redis expirations. Conditional and "get and" operations are atomic through Lua
+ * scripts, comparing values by their encoded form, and entry processors run in an optimistic WATCH/MULTI/EXEC
+ * transaction. Cache entry listeners are notified of the changes made through the cache, as described in
+ * {@link RedisCacheListeners}: puts then read the previous value of the entry through a script.</p>
+ */
+class RedisCache<K, V> implements Cache<K, V> {
+    private static final long UNCHANGED = -2;
+    private static final long ETERNAL = -1;
+    private static final int SCAN_COUNT = 500;
+    private static final int MAX_PROCESSOR_ATTEMPTS = 16;
+    private static final String STORE = "local function store(key, value, ttl) "
+            + "if ttl == '0' then redis.call('DEL', key) "
+            + "elseif ttl == '-2' then local pttl = redis.call('PTTL', key); redis.call('SET', key, value); "
+            + "if pttl > 0 then redis.call('PEXPIRE', key, pttl) end "
+            + "elseif ttl == '-1' then redis.call('SET', key, value) "
+            + "else redis.call('SET', key, value, 'PX', ttl) end end ";
+    static final Script PUT = new Script(STORE + "local old = redis.call('GET', KEYS[1]); "
+            + "if old then store(KEYS[1], ARGV[1], ARGV[3]) else store(KEYS[1], ARGV[1], ARGV[2]) end; return old");
+    static final Script REPLACE = new Script(STORE + "local old = redis.call('GET', KEYS[1]); "
+            + "if old then store(KEYS[1], ARGV[1], ARGV[2]) end; return old");
+    static final Script REPLACE_IF_EQUAL = new Script(STORE + "if redis.call('GET', KEYS[1]) == ARGV[2] then "
+            + "store(KEYS[1], ARGV[1], ARGV[3]); return 1 end; return 0");
+    static final Script REMOVE_IF_EQUAL = new Script("if redis.call('GET', KEYS[1]) == ARGV[1] then "
+            + "redis.call('DEL', KEYS[1]); return 1 end; return 0");
+    static final Script GET_AND_REMOVE = new Script("local old = redis.call('GET', KEYS[1]); "
+            + "if old then redis.call('DEL', KEYS[1]) end; return old");
+    private final String name;
+    private final RedisCacheManager cacheManager;
+    private final String backendName;
+    private final MutableConfiguration<K, V> configuration;
+    private final ExpiryPolicy expiryPolicy;
+    private final CacheLoader<K, V> cacheLoader;
+    private final CacheWriter<K, V> cacheWriter;
+    private final RedisCacheStatistics statistics = new RedisCacheStatistics();
+    private final RedisCacheListeners<K, V> listeners = new RedisCacheListeners<>(this);
+    private final byte[] prefix;
+    private final byte[] scanPattern;
+    private volatile boolean closed;
+
+    @SuppressWarnings("unchecked")
+    RedisCache(String name, RedisCacheManager cacheManager, String backendName, CompleteConfiguration<K, V> configuration) {
+        this.name = name;
+        this.cacheManager = cacheManager;
+        this.backendName = backendName;
+        this.configuration = new MutableConfiguration<>(configuration);
+        this.expiryPolicy = configuration.getExpiryPolicyFactory() == null
+                ? new EternalExpiryPolicy() : configuration.getExpiryPolicyFactory().create();
+        this.cacheLoader = configuration.isReadThrough() && configuration.getCacheLoaderFactory() != null
+                ? configuration.getCacheLoaderFactory().create() : null;
+        this.cacheWriter = configuration.isWriteThrough() && configuration.getCacheWriterFactory() != null
+                ? (CacheWriter<K, V>) configuration.getCacheWriterFactory().create() : null;
+        String escapedName = name.replace("\\", "\\\\").replace(":", "\\:");
+        this.prefix = SafeEncoder.encode(escapedName + ":");
+        this.scanPattern = SafeEncoder.encode(escapeGlob(escapedName) + ":*");
+        this.statistics.setEnabled(configuration.isStatisticsEnabled());
+        for (CacheEntryListenerConfiguration<K, V> listenerConfiguration : configuration.getCacheEntryListenerConfigurations()) {
+            listeners.register(listenerConfiguration);
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        checkOpen();
+        requireNonNull(key);
+        long start = System.nanoTime();
+        byte[] encodedKey = encodeKey(key);
+        long accessTtl = ttl(expiryPolicy.getExpiryForAccess());
+        byte[] encodedValue = execute(encodedKey, jedis -> {
+            if (accessTtl == UNCHANGED) {
+                return jedis.get(encodedKey);
+            } else {
+                Pipeline pipeline = jedis.pipelined();
+                Response<byte[]> response = pipeline.get(encodedKey);
+                touch(pipeline, encodedKey, accessTtl);
+                pipeline.sync();
+                return response.get();
+            }
+        });
+        V value = decodeValue(encodedValue);
+        if (value != null && accessTtl == 0) {
+            listeners.expired(key, value);
+        }
+        if (value == null && cacheLoader != null) {
+            value = load(key);
+        }
+        statistics.recordGets(value == null ? 0 : 1, value == null ? 1 : 0, System.nanoTime() - start);
+        return value;
+    }
+
+    @Override
+    public Map<K, V> getAll(Set<? extends K> keys) {
+        checkOpen();
+        long start = System.nanoTime();
+        List<K> keyList = new ArrayList<>(keys);
+        byte[][] encodedKeys = new byte[keyList.size()][];
+        for (int i = 0; i < encodedKeys.length; i++) {
+            encodedKeys[i] = encodeKey(requireNonNull(keyList.get(i)));
+        }
+        Map<K, V> result = new LinkedHashMap<>();
+        if (encodedKeys.length == 0) {
+            return result;
+        }
+        long accessTtl = ttl(expiryPolicy.getExpiryForAccess());
+        List<Response<byte[]>> responses = new ArrayList<>(encodedKeys.length);
+        List<Response<?>> touches = new ArrayList<>();
+        pipelined(pipeline -> {
+            for (byte[] encodedKey : encodedKeys) {
+                responses.add(pipeline.get(encodedKey));
+                if (accessTtl != UNCHANGED) {
+                    touches.add(touch(pipeline, encodedKey, accessTtl));
+                }
+            }
+        });
+        touches.forEach(Response::get);
+        List<K> missing = new ArrayList<>();
+        for (int i = 0; i < encodedKeys.length; i++) {
+            V value = decodeValue(responses.get(i).get());
+            if (value != null) {
+                result.put(keyList.get(i), value);
+                if (accessTtl == 0) {
+                    listeners.expired(keyList.get(i), value);
+                }
+            } else {
+                missing.add(keyList.get(i));
+            }
+        }
+        int hits = result.size();
+        if (!missing.isEmpty() && cacheLoader != null) {
+            result.putAll(loadAll(missing));
+        }
+        statistics.recordGets(hits, keyList.size() - hits, System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        checkOpen();
+        byte[] encodedKey = encodeKey(requireNonNull(key));
+        return execute(encodedKey, jedis -> jedis.exists(encodedKey));
+    }
+
+    @Override
+    public void loadAll(Set<? extends K> keys, boolean replaceExistingValues, CompletionListener completionListener) {
+        checkOpen();
+        try {
+            if (cacheLoader != null) {
+                List<K> toLoad = new ArrayList<>();
+                for (K key : keys) {
+                    if (replaceExistingValues || !containsKey(key)) {
+                        toLoad.add(key);
+                    }
+                }
+                if (!toLoad.isEmpty()) {
+                    loadAll(toLoad);
+                }
+            }
+            if (completionListener != null) {
+                completionListener.onCompletion();
+            }
+        } catch (RuntimeException e) {
+            if (completionListener != null) {
+                completionListener.onException(e);
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void put(K key, V value) {
+        checkOpen();
+        requireNonNull(key);
+        requireNonNull(value);
+        long start = System.nanoTime();
+        writeThrough(key, value);
+        statistics.recordPuts(store(key, value) ? 1 : 0, System.nanoTime() - start);
+    }
+
+    @Override
+    public V getAndPut(K key, V value) {
+        checkOpen();
+        requireNonNull(key);
+        requireNonNull(value);
+        long start = System.nanoTime();
+        writeThrough(key, value);
+        byte[] encodedKey = encodeKey(key);
+        byte[] encodedValue = encodeValue(value);
+        long creationTtl = ttl(expiryPolicy.getExpiryForCreation());
+        long updateTtl = ttl(expiryPolicy.getExpiryForUpdate());
+        V previous = decodeValue((byte[]) execute(encodedKey, jedis -> eval(jedis, PUT, encodedKey, encodedValue, ttlArg(creationTtl), ttlArg(updateTtl))));
+        notifyPut(key, value, previous, creationTtl, updateTtl);
+        statistics.recordGets(previous == null ? 0 : 1, previous == null ? 1 : 0, 0);
+        statistics.recordPuts(1, System.nanoTime() - start);
+        return previous;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        checkOpen();
+        long start = System.nanoTime();
+        List<K> keyList = new ArrayList<>(entries.size());
+        List<V> valueList = new ArrayList<>(entries.size());
+        entries.forEach((key, value) -> {
+            keyList.add(requireNonNull(key));
+            valueList.add(requireNonNull(value));
+        });
+        if (cacheWriter != null) {
+            List<Entry<? extends K, ? extends V>> writes = new ArrayList<>(entries.size());
+            for (int i = 0; i < keyList.size(); i++) {
+                writes.add(new RedisCacheEntry<>(keyList.get(i), valueList.get(i)));
+            }
+            cacheWriter.writeAll(writes);
+        }
+        if (keyList.isEmpty()) {
+            return;
+        }
+        long creationTtl = ttl(expiryPolicy.getExpiryForCreation());
+        long updateTtl = ttl(expiryPolicy.getExpiryForUpdate());
+        boolean readPrevious = creationTtl != updateTtl || !listeners.isEmpty();
+        List<Response<?>> responses = new ArrayList<>(keyList.size());
+        pipelined(pipeline -> {
+            for (int i = 0; i < keyList.size(); i++) {
+                byte[] encodedKey = encodeKey(keyList.get(i));
+                byte[] encodedValue = encodeValue(valueList.get(i));
+                if (readPrevious) {
+                    responses.add(eval(pipeline, PUT, encodedKey, encodedValue, ttlArg(creationTtl), ttlArg(updateTtl)));
+                } else {
+                    responses.add(store(pipeline, encodedKey, encodedValue, creationTtl));
+                }
+            }
+        });
+        for (int i = 0; i < responses.size(); i++) {
+            Object reply = responses.get(i).get();
+            if (readPrevious) {
+                notifyPut(keyList.get(i), valueList.get(i), decodeValue((byte[]) reply), creationTtl, updateTtl);
+            }
+        }
+        statistics.recordPuts(creationTtl == 0 ? 0 : keyList.size(), System.nanoTime() - start);
+    }
+
+    @Override
+    public boolean putIfAbsent(K key, V value) {
+        checkOpen();
+        long start = System.nanoTime();
+        byte[] encodedKey = encodeKey(requireNonNull(key));
+        byte[] encodedValue = encodeValue(requireNonNull(value));
+        long creationTtl = ttl(expiryPolicy.getExpiryForCreation());
+        SetParams setParams = SetParams.setParams().nx();
+        if (creationTtl > 0) {
+            setParams.px(creationTtl);
+        }
+        boolean stored = creationTtl != 0 && execute(encodedKey, jedis -> jedis.set(encodedKey, encodedValue, setParams)) != null;
+        if (stored) {
+            writeThrough(key, value);
+            listeners.created(key, value);
+        }
+        statistics.recordPuts(stored ? 1 : 0, System.nanoTime() - start);
+        return stored;
+    }
+
+    @Override
+    public boolean remove(K key) {
+        checkOpen();
+        requireNonNull(key);
+        long start = System.nanoTime();
+        deleteThrough(key);
+        byte[] encodedKey = encodeKey(key);
+        boolean removed;
+        if (listeners.isEmpty()) {
+            removed = execute(encodedKey, jedis -> jedis.del(encodedKey)) > 0;
+        } else {
+            V previous = decodeValue((byte[]) execute(encodedKey, jedis -> eval(jedis, GET_AND_REMOVE, encodedKey)));
+            removed = previous != null;
+            if (removed) {
+                listeners.removed(key, previous);
+            }
+        }
+        statistics.recordRemovals(removed ? 1 : 0, System.nanoTime() - start);
+        return removed;
+    }
+
+    @Override
+    public boolean remove(K key, V oldValue) {
+        checkOpen();
+        long start = System.nanoTime();
+        byte[] encodedKey = encodeKey(requireNonNull(key));
+        byte[] encodedValue = encodeValue(requireNonNull(oldValue));
+        boolean removed = ((Long) execute(encodedKey, jedis -> eval(jedis, REMOVE_IF_EQUAL, encodedKey, encodedValue))) == 1;
+        if (removed) {
+            deleteThrough(key);
+            listeners.removed(key, oldValue);
+        }
+        statistics.recordRemovals(removed ? 1 : 0, System.nanoTime() - start);
+        return removed;
+    }
+
+    @Override
+    public V getAndRemove(K key) {
+        checkOpen();
+        requireNonNull(key);
+        long start = System.nanoTime();
+        deleteThrough(key);
+        byte[] encodedKey = encodeKey(key);
+        V previous = decodeValue((byte[]) execute(encodedKey, jedis -> eval(jedis, GET_AND_REMOVE, encodedKey)));
+        if (previous != null) {
+            listeners.removed(key, previous);
+        }
+        statistics.recordGets(previous == null ? 0 : 1, previous == null ? 1 : 0, 0);
+        statistics.recordRemovals(previous == null ? 0 : 1, System.nanoTime() - start);
+        return previous;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        checkOpen();
+        long start = System.nanoTime();
+        byte[] encodedKey = encodeKey(requireNonNull(key));
+        byte[] encodedOldValue = encodeValue(requireNonNull(oldValue));
+        byte[] encodedNewValue = encodeValue(requireNonNull(newValue));
+        long updateTtl = ttl(expiryPolicy.getExpiryForUpdate());
+        boolean replaced = ((Long) execute(encodedKey, jedis -> eval(jedis, REPLACE_IF_EQUAL, encodedKey, encodedNewValue, encodedOldValue, ttlArg(updateTtl)))) == 1;
+        if (replaced) {
+            writeThrough(key, newValue);
+            notifyUpdate(key, newValue, oldValue, updateTtl);
+        }
+        statistics.recordPuts(replaced ? 1 : 0, System.nanoTime() - start);
+        return replaced;
+    }
+
+    @Override
+    public boolean replace(K key, V value) {
+        return getAndReplace(key, value) != null;
+    }
+
+    @Override
+    public V getAndReplace(K key, V value) {
+        checkOpen();
+        long start = System.nanoTime();
+        byte[] encodedKey = encodeKey(requireNonNull(key));
+        byte[] encodedValue = encodeValue(requireNonNull(value));
+        long updateTtl = ttl(expiryPolicy.getExpiryForUpdate());
+        V previous = decodeValue((byte[]) execute(encodedKey, jedis -> eval(jedis, REPLACE, encodedKey, encodedValue, ttlArg(updateTtl))));
+        if (previous != null) {
+            writeThrough(key, value);
+            notifyUpdate(key, value, previous, updateTtl);
+        }
+        statistics.recordGets(previous == null ? 0 : 1, previous == null ? 1 : 0, 0);
+        statistics.recordPuts(previous == null ? 0 : 1, System.nanoTime() - start);
+        return previous;
+    }
+
+    @Override
+    public void removeAll(Set<? extends K> keys) {
+        checkOpen();
+        long start = System.nanoTime();
+        List<byte[]> encodedKeys = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            encodedKeys.add(encodeKey(requireNonNull(key)));
+        }
+        if (cacheWriter != null) {
+            cacheWriter.deleteAll(new ArrayList<>(keys));
+        }
+        if (!encodedKeys.isEmpty()) {
+            List<Response<?>> responses = new ArrayList<>(encodedKeys.size());
+            pipelined(pipeline -> encodedKeys.forEach(encodedKey -> responses.add(delete(pipeline, encodedKey))));
+            statistics.recordRemovals(removed(encodedKeys, responses), System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        checkOpen();
+        if (cacheWriter != null) {
+            List<K> keys = new ArrayList<>();
+            for (Entry<K, V> entry : this) {
+                keys.add(entry.getKey());
+            }
+            cacheWriter.deleteAll(keys);
+        }
+        long start = System.nanoTime();
+        statistics.recordRemovals(deleteAllKeys(true), System.nanoTime() - start);
+    }
+
+    @Override
+    public void clear() {
+        checkOpen();
+        deleteAllKeys(false);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <C extends Configuration<K, V>> C getConfiguration(Class<C> clazz) {
+        if (clazz.isInstance(configuration)) {
+            return (C) new MutableConfiguration<>(configuration);
+        }
+        throw new IllegalArgumentException("Unsupported configuration class " + clazz.getName());
+    }
+
+    @Override
+    public <T> T invoke(K key, EntryProcessor<K, V, T> entryProcessor, Object... arguments) throws EntryProcessorException {
+        checkOpen();
+        requireNonNull(entryProcessor);
+        byte[] encodedKey = encodeKey(requireNonNull(key));
+        return execute(encodedKey, jedis -> {
+            for (int attempt = 0; attempt < MAX_PROCESSOR_ATTEMPTS; attempt++) {
+                jedis.watch(encodedKey);
+                RedisMutableEntry entry = new RedisMutableEntry(key, decodeValue(jedis.get(encodedKey)));
+                T result;
+                try {
+                    result = entryProcessor.process(entry, arguments);
+                } catch (Exception e) {
+                    jedis.unwatch();
+                    throw e instanceof EntryProcessorException ? (EntryProcessorException) e : new EntryProcessorException(e);
+                }
+                if (!entry.modified) {
+                    jedis.unwatch();
+                    statistics.recordGets(entry.loadedValue == null ? 0 : 1, entry.loadedValue == null ? 1 : 0, 0);
+                    return result;
+                }
+                long ttl = UNCHANGED;
+                if (entry.value != null) {
+                    ttl = ttl(entry.loadedValue == null ? expiryPolicy.getExpiryForCreation() : expiryPolicy.getExpiryForUpdate());
+                    if (ttl == UNCHANGED) {
+                        // the key is watched so its remaining time to live cannot change before the transaction
+                        long pttl = jedis.pttl(encodedKey);
+                        ttl = pttl > 0 ? pttl : ETERNAL;
+                    }
+                }
+                Transaction transaction = jedis.multi();
+                if (entry.value == null) {
+                    transaction.del(encodedKey);
+                } else {
+                    store(transaction, encodedKey, encodeValue(entry.value), ttl);
+                }
+                if (transaction.exec() != null) {
+                    if (entry.value == null) {
+                        deleteThrough(key);
+                        statistics.recordRemovals(1, 0);
+                        listeners.removed(key, entry.loadedValue);
+                    } else {
+                        writeThrough(key, entry.value);
+                        statistics.recordPuts(1, 0);
+                        notifyPut(key, entry.value, entry.loadedValue, ttl, ttl);
+                    }
+                    return result;
+                }
+            }
+            throw new EntryProcessorException("Entry " + key + " of cache " + name + " was concurrently modified too many times");
+        });
+    }
+
+    @Override
+    public <T> Map<K, EntryProcessorResult<T>> invokeAll(Set<? extends K> keys, EntryProcessor<K, V, T> entryProcessor, Object... arguments) {
+        Map<K, EntryProcessorResult<T>> results = new HashMap<>();
+        for (K key : keys) {
+            try {
+                T result = invoke(key, entryProcessor, arguments);
+                if (result != null) {
+                    results.put(key, () -> result);
+                }
+            } catch (EntryProcessorException e) {
+                results.put(key, () -> {
+                    throw e;
+                });
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CacheManager getCacheManager() {
+        return cacheManager;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        if (clazz.isAssignableFrom(getClass())) {
+            return clazz.cast(this);
+        }
+        throw new IllegalArgumentException("Cannot unwrap Redis cache to " + clazz.getName());
+    }
+
+    @Override
+    public void registerCacheEntryListener(CacheEntryListenerConfiguration<K, V> cacheEntryListenerConfiguration) {
+        configuration.addCacheEntryListenerConfiguration(cacheEntryListenerConfiguration);
+        listeners.register(cacheEntryListenerConfiguration);
+    }
+
+    @Override
+    public void deregisterCacheEntryListener(CacheEntryListenerConfiguration<K, V> cacheEntryListenerConfiguration) {
+        configuration.removeCacheEntryListenerConfiguration(cacheEntryListenerConfiguration);
+        listeners.deregister(cacheEntryListenerConfiguration);
+    }
+
+    @Override
+    public Iterator<Entry<K, V>> iterator() {
+        checkOpen();
+        return new EntryIterator();
+    }
+
+    MutableConfiguration<K, V> getMutableConfiguration() {
+        return configuration;
+    }
+
+    RedisCacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    private RedisCacheBackends.Backend getBackend() {
+        RedisCacheBackends.Backend backend = RedisCacheBackends.get(backendName);
+        if (backend == null) {
+            throw new CacheException("Redis client or cluster " + backendName + " of cache " + name + " is not available");
+        }
+        return backend;
+    }
+
+    private <T> T execute(byte[] encodedKey, Function<Jedis, T> function) {
+        return getBackend().execute(JedisClusterCRC16.getSlot(encodedKey), function);
+    }
+
+    private void pipelined(Consumer<PipelineBase> commands) {
+        getBackend().pipelined(commands);
+    }
+
+    /**
+     * Deletes the keys of the cache found by scanning each node, notifying the listeners of the removed entries if
+     * requested.
+     */
+    private long deleteAllKeys(boolean notify) {
+        RedisCacheBackends.Backend backend = getBackend();
+        long deleted = 0;
+        for (Integer slot : backend.getNodeSlots()) {
+            deleted += backend.execute(slot, jedis -> {
+                long nodeDeleted = 0;
+                ScanParams scanParams = new ScanParams().match(scanPattern).count(SCAN_COUNT);
+                byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+                do {
+                    ScanResult<byte[]> scanResult = jedis.scan(cursor, scanParams);
+                    List<byte[]> keys = scanResult.getResult();
+                    if (!keys.isEmpty()) {
+                        // keys of a node may belong to different slots, so they are deleted one by one
+                        Pipeline pipeline = jedis.pipelined();
+                        List<Response<?>> responses = new ArrayList<>(keys.size());
+                        for (byte[] key : keys) {
+                            responses.add(notify ? delete(pipeline, key) : pipeline.del(key));
+                        }
+                        pipeline.sync();
+                        nodeDeleted += removed(keys, responses);
+                    }
+                    cursor = scanResult.getCursorAsBytes();
+                } while (!Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY));
+                return nodeDeleted;
+            });
+        }
+        return deleted;
+    }
+
+    /**
+     * Queues the deletion of a key, which reads its value if listeners are registered.
+     */
+    private Response<?> delete(PipelineBase pipeline, byte[] encodedKey) {
+        return listeners.isEmpty() ? pipeline.del(encodedKey) : eval(pipeline, GET_AND_REMOVE, encodedKey);
+    }
+
+    /**
+     * Counts the entries removed by the replies of DEL commands or of the GET_AND_REMOVE script, notifying the
+     * listeners of the values removed by the script.
+     */
+    private long removed(List<byte[]> encodedKeys, List<Response<?>> responses) {
+        long removed = 0;
+        for (int i = 0; i < responses.size(); i++) {
+            Object reply = responses.get(i).get();
+            if (reply instanceof Long) {
+                removed += (Long) reply;
+            } else if (reply != null) {
+                removed++;
+                listeners.removed(decodeKey(encodedKeys.get(i)), decodeValue((byte[]) reply));
+            }
+        }
+        return removed;
+    }
+
+    private V load(K key) {
+        V value = cacheLoader.load(key);
+        if (value != null) {
+            putLoaded(key, value);
+        }
+        return value;
+    }
+
+    private Map<K, V> loadAll(List<K> keys) {
+        Map<K, V> loaded = new LinkedHashMap<>();
+        Map<K, V> values = cacheLoader.loadAll(keys);
+        if (values != null) {
+            values.forEach((key, value) -> {
+                if (key != null && value != null) {
+                    loaded.put(key, value);
+                }
+            });
+            loaded.forEach(this::putLoaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * Stores a loaded value without going through the cache writer, as required for read-through.
+     */
+    private void putLoaded(K key, V value) {
+        store(key, value);
+    }
+
+    /**
+     * Stores an entry with its creation or update expiry and notifies the listeners. The previous value is read by the
+     * PUT script when the expiries differ or when listeners are registered.
+     *
+     * @return false if the entry expired at creation.
+     */
+    private boolean store(K key, V value) {
+        byte[] encodedKey = encodeKey(key);
+        byte[] encodedValue = encodeValue(value);
+        long creationTtl = ttl(expiryPolicy.getExpiryForCreation());
+        long updateTtl = ttl(expiryPolicy.getExpiryForUpdate());
+        if (creationTtl == updateTtl && listeners.isEmpty()) {
+            execute(encodedKey, jedis -> {
+                store(jedis, encodedKey, encodedValue, creationTtl);
+                return null;
+            });
+        } else {
+            byte[] previous = (byte[]) execute(encodedKey, jedis -> eval(jedis, PUT, encodedKey, encodedValue, ttlArg(creationTtl), ttlArg(updateTtl)));
+            notifyPut(key, value, decodeValue(previous), creationTtl, updateTtl);
+        }
+        return creationTtl != 0;
+    }
+
+    private void notifyPut(K key, V value, V previous, long creationTtl, long updateTtl) {
+        if (previous != null) {
+            notifyUpdate(key, value, previous, updateTtl);
+        } else if (creationTtl != 0) {
+            listeners.created(key, value);
+        }
+    }
+
+    /**
+     * Notifies the update of an entry, which expires immediately with a zero update duration.
+     */
+    private void notifyUpdate(K key, V value, V previous, long updateTtl) {
+        if (updateTtl == 0) {
+            listeners.expired(key, previous);
+        } else {
+            listeners.updated(key, value, previous);
+        }
+    }
+
+    private void writeThrough(K key, V value) {
+        if (cacheWriter != null) {
+            cacheWriter.write(new RedisCacheEntry<>(requireNonNull(key), requireNonNull(value)));
+        }
+    }
+
+    private void deleteThrough(K key) {
+        if (cacheWriter != null) {
+            cacheWriter.delete(requireNonNull(key));
+        }
+    }
+
+    private byte[] encodeKey(K key) {
+        byte[] encodedKey = RedisCacheBackends.getCodec().encodeValue(key);
+        byte[] result = Arrays.copyOf(prefix, prefix.length + encodedKey.length);
+        System.arraycopy(encodedKey, 0, result, prefix.length, encodedKey.length);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K decodeKey(byte[] encodedKey) {
+        return (K) RedisCacheBackends.getCodec().decodeValue(Arrays.copyOfRange(encodedKey, prefix.length, encodedKey.length));
+    }
+
+    private byte[] encodeValue(V value) {
+        return RedisCacheBackends.getCodec().encodeValue(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V decodeValue(byte[] encodedValue) {
+        return encodedValue == null ? null : (V) RedisCacheBackends.getCodec().decodeValue(encodedValue);
+    }
+
+    private void checkOpen() {
+        if (closed || cacheManager.isClosed()) {
+            throw new IllegalStateException("Cache " + name + " is closed");
+        }
+    }
+
+    private static <T> T requireNonNull(T object) {
+        if (object == null) {
+            throw new NullPointerException("Null keys, values and entry processors are not allowed");
+        }
+        return object;
+    }
+
+    private static void store(Jedis jedis, byte[] key, byte[] value, long ttl) {
+        if (ttl == 0) {
+            jedis.del(key);
+        } else if (ttl > 0) {
+            jedis.psetex(key, ttl, value);
+        } else {
+            jedis.set(key, value);
+        }
+    }
+
+    private static Response<?> store(PipelineBase pipeline, byte[] key, byte[] value, long ttl) {
+        if (ttl == 0) {
+            return pipeline.del(key);
+        } else if (ttl > 0) {
+            return pipeline.psetex(key, ttl, value);
+        } else {
+            return pipeline.set(key, value);
+        }
+    }
+
+    private static Response<?> touch(PipelineBase pipeline, byte[] key, long ttl) {
+        if (ttl == 0) {
+            return pipeline.del(key);
+        } else if (ttl > 0) {
+            return pipeline.pexpire(key, ttl);
+        } else {
+            return pipeline.persist(key);
+        }
+    }
+
+    private static Object eval(Jedis jedis, Script script, byte[]... keyAndArgs) {
+        try {
+            return jedis.evalsha(script.sha, 1, keyAndArgs);
+        } catch (JedisNoScriptException e) {
+            return jedis.eval(script.body, 1, keyAndArgs);
+        }
+    }
+
+    /**
+     * Queues the evaluation of a script in a pipeline of a client or of a cluster, the latter routing it by its key.
+     */
+    private static Response<Object> eval(PipelineBase pipeline, Script script, byte[] key, byte[]... args) {
+        if (pipeline instanceof RedisClusterPipelineImpl) {
+            return ((RedisClusterPipelineImpl) pipeline).eval(script.body, key, args);
+        }
+        byte[][] keyAndArgs = new byte[args.length + 1][];
+        keyAndArgs[0] = key;
+        System.arraycopy(args, 0, keyAndArgs, 1, args.length);
+        return ((MultiKeyPipelineBase) pipeline).eval(script.body, 1, keyAndArgs);
+    }
+
+    /**
+     * Converts an expiry duration to milliseconds, {@link #ETERNAL} or {@link #UNCHANGED} (null duration).
+     */
+    private static long ttl(Duration duration) {
+        if (duration == null) {
+            return UNCHANGED;
+        } else if (duration.isEternal()) {
+            return ETERNAL;
+        } else if (duration.isZero()) {
+            return 0;
+        } else {
+            return Math.max(1, duration.getTimeUnit().toMillis(duration.getDurationAmount()));
+        }
+    }
+
+    private static byte[] ttlArg(long ttl) {
+        return SafeEncoder.encode(String.valueOf(ttl));
+    }
+
+    private static String escapeGlob(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    static class Script {
+        private final byte[] body;
+        private final byte[] sha;
+
+        private Script(String body) {
+            this.body = SafeEncoder.encode(body);
+            try {
+                StringBuilder hex = new StringBuilder();
+                for (byte b : MessageDigest.getInstance("SHA-1").digest(this.body)) {
+                    hex.append(String.format("%02x", b));
+                }
+                this.sha = hex.toString().getBytes(StandardCharsets.US_ASCII);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        String getBody() {
+            return SafeEncoder.encode(body);
+        }
+    }
+
+    private class RedisMutableEntry implements MutableEntry<K, V> {
+        private final K key;
+        private final V loadedValue;
+        private V value;
+        private boolean modified;
+
+        private RedisMutableEntry(K key, V loadedValue) {
+            this.key = key;
+            this.loadedValue = loadedValue;
+            this.value = loadedValue;
+        }
+
+        @Override
+        public boolean exists() {
+            return value != null;
+        }
+
+        @Override
+        public void remove() {
+            value = null;
+            modified = loadedValue != null;
+        }
+
+        @Override
+        public void setValue(V value) {
+            this.value = requireNonNull(value);
+            this.modified = true;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> clazz) {
+            throw new IllegalArgumentException("Cannot unwrap Redis cache entry to " + clazz.getName());
+        }
+    }
+
+    /**
+     * Iterates over the entries of the cache node by node and page by page, each page costing a SCAN and a pipeline of
+     * GET commands.
+     */
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private final ScanParams scanParams = new ScanParams().match(scanPattern).count(SCAN_COUNT);
+        private final List<Integer> nodeSlots = getBackend().getNodeSlots();
+        private int node;
+        private byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+        private Iterator<Entry<K, V>> page = new ArrayList<Entry<K, V>>().iterator();
+        private Entry<K, V> last;
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && node < nodeSlots.size()) {
+                page = fetch().iterator();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = page.next();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            RedisCache.this.remove(last.getKey());
+            last = null;
+        }
+
+        private List<Entry<K, V>> fetch() {
+            List<Entry<K, V>> entries = getBackend().execute(nodeSlots.get(node), jedis -> {
+                ScanResult<byte[]> scanResult = jedis.scan(cursor, scanParams);
+                cursor = scanResult.getCursorAsBytes();
+                List<byte[]> keys = scanResult.getResult();
+                List<Entry<K, V>> nodeEntries = new ArrayList<>(keys.size());
+                if (!keys.isEmpty()) {
+                    Pipeline pipeline = jedis.pipelined();
+                    List<Response<byte[]>> values = new ArrayList<>(keys.size());
+                    for (byte[] key : keys) {
+                        values.add(pipeline.get(key));
+                    }
+                    pipeline.sync();
+                    for (int i = 0; i < keys.size(); i++) {
+                        V value = decodeValue(values.get(i).get());
+                        if (value != null) {
+                            nodeEntries.add(new RedisCacheEntry<>(decodeKey(keys.get(i)), value));
+                        }
+                    }
+                }
+                return nodeEntries;
+            });
+            if (Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY)) {
+                node++;
+            }
+            return entries;
+        }
+    }
+}
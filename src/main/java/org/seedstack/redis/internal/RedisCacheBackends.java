@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.PipelineBase;
+import redis.clients.jedis.util.Pool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Bridges the clients and clusters configured by {@link RedisPlugin} to the JCache provider, which is instantiated
+ * through {@link java.util.ServiceLoader} outside of the injector. Backends are registered while the kernel is
+ * started. This class does not depend on the JCache API, which is optional.
+ */
+final class RedisCacheBackends {
+    static final String DEFAULT_NAME = "default";
+    private static final Map<String, Backend> BACKENDS = new ConcurrentHashMap<>();
+    private static volatile String defaultName;
+    private static volatile BinaryCodec codec = new BinaryCodec(0);
+
+    private RedisCacheBackends() {
+        // no instantiation allowed
+    }
+
+    static void register(String name, Backend backend) {
+        BACKENDS.put(name, backend);
+    }
+
+    /**
+     * Returns the backend of the specified name, the {@value #DEFAULT_NAME} name resolving to the default client when
+     * no client or cluster is named that way.
+     */
+    static Backend get(String name) {
+        Backend backend = BACKENDS.get(name);
+        String resolvedDefaultName = defaultName;
+        if (backend == null && DEFAULT_NAME.equals(name) && resolvedDefaultName != null) {
+            backend = BACKENDS.get(resolvedDefaultName);
+        }
+        return backend;
+    }
+
+    static void setDefaultName(String defaultName) {
+        RedisCacheBackends.defaultName = defaultName;
+    }
+
+    static BinaryCodec getCodec() {
+        return codec;
+    }
+
+    static void setCodec(BinaryCodec codec) {
+        RedisCacheBackends.codec = codec;
+    }
+
+    static void clear() {
+        BACKENDS.clear();
+        defaultName = null;
+    }
+
+    static Backend forPool(Pool<Jedis> jedisPool, RedisMetrics redisMetrics) {
+        return new Backend() {
+            @Override
+            public <T> T execute(int slot, Function<Jedis, T> function) {
+                try (Jedis jedis = redisMetrics.borrow(jedisPool)) {
+                    return function.apply(jedis);
+                } catch (RuntimeException e) {
+                    redisMetrics.recordException();
+                    throw e;
+                }
+            }
+
+            @Override
+            public List<Integer> getNodeSlots() {
+                return Collections.singletonList(0);
+            }
+
+            @Override
+            public void pipelined(Consumer<PipelineBase> commands) {
+                execute(0, jedis -> {
+                    Pipeline pipeline = jedis.pipelined();
+                    commands.accept(pipeline);
+                    pipeline.sync();
+                    return null;
+                });
+            }
+        };
+    }
+
+    static Backend forCluster(ClusterTopology clusterTopology, ExecutorService executorService) {
+        return new Backend() {
+            @Override
+            public <T> T execute(int slot, Function<Jedis, T> function) {
+                return clusterTopology.execute(slot, function);
+            }
+
+            @Override
+            public List<Integer> getNodeSlots() {
+                return new ArrayList<>(clusterTopology.getMasterSlots().values());
+            }
+
+            @Override
+            public void pipelined(Consumer<PipelineBase> commands) {
+                try (RedisClusterPipelineImpl pipeline = new RedisClusterPipelineImpl(clusterTopology, executorService)) {
+                    commands.accept(pipeline);
+                    pipeline.sync();
+                }
+            }
+        };
+    }
+
+    /**
+     * Runs commands on the client or on the cluster nodes holding the keys of a cache.
+     */
+    interface Backend {
+        /**
+         * Runs the specified function with a connection to the node owning the specified slot, which is ignored by a
+         * client. The function must only access keys hashed to that slot.
+         */
+        <T> T execute(int slot, Function<Jedis, T> function);
+
+        /**
+         * Returns a slot owned by each node, allowing to run functions on every node. A client has a single node.
+         */
+        List<Integer> getNodeSlots();
+
+        /**
+         * Queues single-key commands in a pipeline and synchronizes it, so that their responses can be read once this
+         * method returns. On a cluster, commands are grouped by the master node owning their slot.
+         */
+        void pipelined(Consumer<PipelineBase> commands);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import javax.cache.configuration.CompleteConfiguration;
+import javax.cache.management.CacheMXBean;
+
+/**
+ * Configuration of a Redis cache, exposed through the JCache configuration MXBean.
+ */
+class RedisCacheConfiguration implements CacheMXBean {
+    private final CompleteConfiguration<?, ?> configuration;
+
+    RedisCacheConfiguration(CompleteConfiguration<?, ?> configuration) {
+        this.configuration = configuration;
+    }
+
+    @Override
+    public String getKeyType() {
+        return configuration.getKeyType().getName();
+    }
+
+    @Override
+    public String getValueType() {
+        return configuration.getValueType().getName();
+    }
+
+    @Override
+    public boolean isReadThrough() {
+        return configuration.isReadThrough();
+    }
+
+    @Override
+    public boolean isWriteThrough() {
+        return configuration.isWriteThrough();
+    }
+
+    @Override
+    public boolean isStoreByValue() {
+        return configuration.isStoreByValue();
+    }
+
+    @Override
+    public boolean isStatisticsEnabled() {
+        return configuration.isStatisticsEnabled();
+    }
+
+    @Override
+    public boolean isManagementEnabled() {
+        return configuration.isManagementEnabled();
+    }
+}
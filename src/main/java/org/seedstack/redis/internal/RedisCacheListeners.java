@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import javax.cache.Cache;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryEventFilter;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListener;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.event.EventType;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Entry listeners registered on a Redis cache. Listeners are notified of the changes made through the cache in the
+ * thread making the change, whether they are synchronous or not. Changes made by other cache instances and expirations
+ * performed by Redis itself are not observed: expired events are only sent when an expiry policy removes an entry with
+ * a zero duration.
+ */
+class RedisCacheListeners<K, V> {
+    private final Cache<K, V> cache;
+    private final List<Registration<K, V>> registrations = new CopyOnWriteArrayList<>();
+
+    RedisCacheListeners(Cache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    void register(CacheEntryListenerConfiguration<K, V> configuration) {
+        registrations.add(new Registration<>(configuration));
+    }
+
+    void deregister(CacheEntryListenerConfiguration<K, V> configuration) {
+        registrations.removeIf(registration -> registration.configuration.equals(configuration));
+    }
+
+    boolean isEmpty() {
+        return registrations.isEmpty();
+    }
+
+    void created(K key, V value) {
+        dispatch(EventType.CREATED, key, value, null);
+    }
+
+    void updated(K key, V value, V oldValue) {
+        dispatch(EventType.UPDATED, key, value, oldValue);
+    }
+
+    void removed(K key, V oldValue) {
+        dispatch(EventType.REMOVED, key, oldValue, oldValue);
+    }
+
+    void expired(K key, V oldValue) {
+        dispatch(EventType.EXPIRED, key, oldValue, oldValue);
+    }
+
+    private void dispatch(EventType eventType, K key, V value, V oldValue) {
+        for (Registration<K, V> registration : registrations) {
+            registration.dispatch(new Event<>(cache, eventType, key, value, registration.oldValueRequired ? oldValue : null));
+        }
+    }
+
+    private static class Registration<K, V> {
+        private final CacheEntryListenerConfiguration<K, V> configuration;
+        private final CacheEntryListener<? super K, ? super V> listener;
+        private final CacheEntryEventFilter<? super K, ? super V> filter;
+        private final boolean oldValueRequired;
+
+        private Registration(CacheEntryListenerConfiguration<K, V> configuration) {
+            this.configuration = configuration;
+            this.listener = configuration.getCacheEntryListenerFactory().create();
+            this.filter = configuration.getCacheEntryEventFilterFactory() == null
+                    ? null : configuration.getCacheEntryEventFilterFactory().create();
+            this.oldValueRequired = configuration.isOldValueRequired();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void dispatch(Event<K, V> event) {
+            if (filter != null && !filter.evaluate(event)) {
+                return;
+            }
+            Iterable<CacheEntryEvent<? extends K, ? extends V>> events = Collections.singletonList(event);
+            switch (event.getEventType()) {
+                case CREATED:
+                    if (listener instanceof CacheEntryCreatedListener) {
+                        ((CacheEntryCreatedListener<K, V>) listener).onCreated(events);
+                    }
+                    break;
+                case UPDATED:
+                    if (listener instanceof CacheEntryUpdatedListener) {
+                        ((CacheEntryUpdatedListener<K, V>) listener).onUpdated(events);
+                    }
+                    break;
+                case REMOVED:
+                    if (listener instanceof CacheEntryRemovedListener) {
+                        ((CacheEntryRemovedListener<K, V>) listener).onRemoved(events);
+                    }
+                    break;
+                case EXPIRED:
+                    if (listener instanceof CacheEntryExpiredListener) {
+                        ((CacheEntryExpiredListener<K, V>) listener).onExpired(events);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported event type " + event.getEventType());
+            }
+        }
+    }
+
+    private static class Event<K, V> extends CacheEntryEvent<K, V> {
+        private static final long serialVersionUID = 1L;
+        private final K key;
+        private final V value;
+        private final V oldValue;
+
+        private Event(Cache<K, V> source, EventType eventType, K key, V value, V oldValue) {
+            super(source, eventType);
+            this.key = key;
+            this.value = value;
+            this.oldValue = oldValue;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V getOldValue() {
+            return oldValue;
+        }
+
+        @Override
+        public boolean isOldValueAvailable() {
+            return oldValue != null;
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> clazz) {
+            if (clazz.isInstance(this)) {
+                return clazz.cast(this);
+            }
+            throw new IllegalArgumentException("Cannot unwrap Redis cache entry event to " + clazz.getName());
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import javax.cache.Cache;
+import javax.cache.CacheException;
+import javax.cache.CacheManager;
+import javax.cache.configuration.CompleteConfiguration;
+import javax.cache.configuration.Configuration;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.spi.CachingProvider;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Manages the caches stored in the Redis client or cluster designated by the scheme-specific part of its URI (e.g.
+ * {@code redis:client1}).
+ */
+class RedisCacheManager implements CacheManager {
+    private final RedisCachingProvider cachingProvider;
+    private final URI uri;
+    private final ClassLoader classLoader;
+    private final Properties properties;
+    private final String backendName;
+    private final ConcurrentMap<String, RedisCache<?, ?>> caches = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    RedisCacheManager(RedisCachingProvider cachingProvider, URI uri, ClassLoader classLoader, Properties properties) {
+        if (!"redis".equals(uri.getScheme()) || !uri.isOpaque()) {
+            throw new IllegalArgumentException("Unsupported cache manager URI " + uri + ", expected redis:<client or cluster>");
+        }
+        this.cachingProvider = cachingProvider;
+        this.uri = uri;
+        this.classLoader = classLoader;
+        this.properties = properties;
+        this.backendName = uri.getSchemeSpecificPart();
+    }
+
+    @Override
+    public CachingProvider getCachingProvider() {
+        return cachingProvider;
+    }
+
+    @Override
+    public URI getURI() {
+        return uri;
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    @Override
+    public Properties getProperties() {
+        return properties;
+    }
+
+    @Override
+    public <K, V, C extends Configuration<K, V>> Cache<K, V> createCache(String cacheName, C configuration) {
+        checkOpen();
+        if (cacheName == null || configuration == null) {
+            throw new NullPointerException("Cache name and configuration cannot be null");
+        }
+        if (!configuration.isStoreByValue()) {
+            throw new IllegalArgumentException("Redis caches only support store-by-value");
+        }
+        CompleteConfiguration<K, V> completeConfiguration;
+        if (configuration instanceof CompleteConfiguration) {
+            completeConfiguration = (CompleteConfiguration<K, V>) configuration;
+        } else {
+            completeConfiguration = new MutableConfiguration<K, V>()
+                    .setTypes(configuration.getKeyType(), configuration.getValueType());
+        }
+        if (RedisCacheBackends.get(backendName) == null) {
+            throw new CacheException("No Redis client or cluster named " + backendName + " is available");
+        }
+        RedisCache<K, V> cache = new RedisCache<>(cacheName, this, backendName, completeConfiguration);
+        if (caches.putIfAbsent(cacheName, cache) != null) {
+            throw new CacheException("Cache " + cacheName + " already exists");
+        }
+        if (completeConfiguration.isStatisticsEnabled()) {
+            registerMBean(cache, "CacheStatistics", cache.getStatistics());
+        }
+        if (completeConfiguration.isManagementEnabled()) {
+            registerMBean(cache, "CacheConfiguration", new RedisCacheConfiguration(cache.getMutableConfiguration()));
+        }
+        return cache;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Cache<K, V> getCache(String cacheName, Class<K> keyType, Class<V> valueType) {
+        checkOpen();
+        if (keyType == null || valueType == null) {
+            throw new NullPointerException("Key and value types cannot be null");
+        }
+        RedisCache<?, ?> cache = caches.get(cacheName);
+        if (cache == null) {
+            return null;
+        }
+        CompleteConfiguration<?, ?> configuration = cache.getMutableConfiguration();
+        if (!configuration.getKeyType().equals(keyType) || !configuration.getValueType().equals(valueType)) {
+            throw new ClassCastException("Cache " + cacheName + " is of types " + configuration.getKeyType().getName()
+                    + " and " + configuration.getValueType().getName());
+        }
+        return (Cache<K, V>) cache;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> Cache<K, V> getCache(String cacheName) {
+        checkOpen();
+        return (Cache<K, V>) caches.get(cacheName);
+    }
+
+    @Override
+    public Iterable<String> getCacheNames() {
+        checkOpen();
+        return Collections.unmodifiableSet(new LinkedHashSet<>(caches.keySet()));
+    }
+
+    @Override
+    public void destroyCache(String cacheName) {
+        checkOpen();
+        RedisCache<?, ?> cache = caches.remove(cacheName);
+        if (cache != null) {
+            cache.clear();
+            closeCache(cache);
+        }
+    }
+
+    @Override
+    public void enableManagement(String cacheName, boolean enabled) {
+        checkOpen();
+        RedisCache<?, ?> cache = caches.get(cacheName);
+        if (cache != null) {
+            cache.getMutableConfiguration().setManagementEnabled(enabled);
+            if (enabled) {
+                registerMBean(cache, "CacheConfiguration", new RedisCacheConfiguration(cache.getMutableConfiguration()));
+            } else {
+                unregisterMBean(cache, "CacheConfiguration");
+            }
+        }
+    }
+
+    @Override
+    public void enableStatistics(String cacheName, boolean enabled) {
+        checkOpen();
+        RedisCache<?, ?> cache = caches.get(cacheName);
+        if (cache != null) {
+            cache.getMutableConfiguration().setStatisticsEnabled(enabled);
+            cache.getStatistics().setEnabled(enabled);
+            if (enabled) {
+                registerMBean(cache, "CacheStatistics", cache.getStatistics());
+            } else {
+                unregisterMBean(cache, "CacheStatistics");
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            cachingProvider.release(this);
+            for (RedisCache<?, ?> cache : caches.values()) {
+                closeCache(cache);
+            }
+            caches.clear();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        if (clazz.isAssignableFrom(getClass())) {
+            return clazz.cast(this);
+        }
+        throw new IllegalArgumentException("Cannot unwrap Redis cache manager to " + clazz.getName());
+    }
+
+    private void closeCache(RedisCache<?, ?> cache) {
+        unregisterMBean(cache, "CacheStatistics");
+        unregisterMBean(cache, "CacheConfiguration");
+        cache.close();
+    }
+
+    private void registerMBean(RedisCache<?, ?> cache, String type, Object mBean) {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = objectName(cache, type);
+        try {
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(mBean, objectName);
+            }
+        } catch (JMException e) {
+            throw new CacheException("Unable to register " + objectName, e);
+        }
+    }
+
+    private void unregisterMBean(RedisCache<?, ?> cache, String type) {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = objectName(cache, type);
+        try {
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new CacheException("Unable to unregister " + objectName, e);
+        }
+    }
+
+    private ObjectName objectName(RedisCache<?, ?> cache, String type) {
+        try {
+            return new ObjectName("javax.cache:type=" + type
+                    + ",CacheManager=" + sanitize(uri.toString())
+                    + ",Cache=" + sanitize(cache.getName()));
+        } catch (MalformedObjectNameException e) {
+            throw new CacheException(e);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Cache manager " + uri + " is closed");
+        }
+    }
+
+    private static String sanitize(String value) {
+        return value == null ? "" : value.replaceAll("[,:=\n]", ".");
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import javax.cache.management.CacheStatisticsMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of a Redis cache, exposed through the JCache statistics MXBean. Evictions are performed by Redis itself
+ * and are not counted. Average times are expressed in microseconds, as required by the specification.
+ */
+class RedisCacheStatistics implements CacheStatisticsMXBean {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder removals = new LongAdder();
+    private final LongAdder getTime = new LongAdder();
+    private final LongAdder putTime = new LongAdder();
+    private final LongAdder removeTime = new LongAdder();
+    private volatile boolean enabled;
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void recordGets(long hitCount, long missCount, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        hits.add(hitCount);
+        misses.add(missCount);
+        getTime.add(nanos);
+    }
+
+    void recordPuts(long count, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        puts.add(count);
+        putTime.add(nanos);
+    }
+
+    void recordRemovals(long count, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        removals.add(count);
+        removeTime.add(nanos);
+    }
+
+    @Override
+    public void clear() {
+        hits.reset();
+        misses.reset();
+        puts.reset();
+        removals.reset();
+        getTime.reset();
+        putTime.reset();
+        removeTime.reset();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public float getCacheHitPercentage() {
+        long gets = getCacheGets();
+        return gets == 0 ? 0 : getCacheHits() * 100f / gets;
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public float getCacheMissPercentage() {
+        long gets = getCacheGets();
+        return gets == 0 ? 0 : getCacheMisses() * 100f / gets;
+    }
+
+    @Override
+    public long getCacheGets() {
+        return hits.sum() + misses.sum();
+    }
+
+    @Override
+    public long getCachePuts() {
+        return puts.sum();
+    }
+
+    @Override
+    public long getCacheRemovals() {
+        return removals.sum();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        return 0;
+    }
+
+    @Override
+    public float getAverageGetTime() {
+        return average(getTime, getCacheGets());
+    }
+
+    @Override
+    public float getAveragePutTime() {
+        return average(putTime, getCachePuts());
+    }
+
+    @Override
+    public float getAverageRemoveTime() {
+        return average(removeTime, getCacheRemovals());
+    }
+
+    private static float average(LongAdder nanos, long count) {
+        return count == 0 ? 0 : (float) TimeUnit.NANOSECONDS.toMicros(nanos.sum()) / count;
+    }
+}
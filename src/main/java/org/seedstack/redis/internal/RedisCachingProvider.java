@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import javax.cache.CacheManager;
+import javax.cache.configuration.OptionalFeature;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+
+/**
+ * JCache provider of caches stored in the Redis clients and clusters configured in the application. Cache managers are
+ * designated by {@code redis:<client or cluster>} URIs, the default {@code redis:default} URI designating the default
+ * client. Caches are only usable while the kernel is started.
+ */
+public class RedisCachingProvider implements CachingProvider {
+    private static final URI DEFAULT_URI = URI.create("redis:" + RedisCacheBackends.DEFAULT_NAME);
+    private final Map<ClassLoader, Map<URI, RedisCacheManager>> cacheManagers = new WeakHashMap<>();
+
+    @Override
+    public synchronized CacheManager getCacheManager(URI uri, ClassLoader classLoader, Properties properties) {
+        URI managerUri = uri == null ? getDefaultURI() : uri;
+        ClassLoader managerClassLoader = classLoader == null ? getDefaultClassLoader() : classLoader;
+        Properties managerProperties = properties == null ? getDefaultProperties() : properties;
+        return cacheManagers.computeIfAbsent(managerClassLoader, key -> new HashMap<>())
+                .computeIfAbsent(managerUri, key -> new RedisCacheManager(this, key, managerClassLoader, managerProperties));
+    }
+
+    @Override
+    public ClassLoader getDefaultClassLoader() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return classLoader == null ? RedisCachingProvider.class.getClassLoader() : classLoader;
+    }
+
+    @Override
+    public URI getDefaultURI() {
+        return DEFAULT_URI;
+    }
+
+    @Override
+    public Properties getDefaultProperties() {
+        return new Properties();
+    }
+
+    @Override
+    public CacheManager getCacheManager(URI uri, ClassLoader classLoader) {
+        return getCacheManager(uri, classLoader, null);
+    }
+
+    @Override
+    public CacheManager getCacheManager() {
+        return getCacheManager(null, null, null);
+    }
+
+    @Override
+    public void close() {
+        for (Map<URI, RedisCacheManager> managers : snapshot()) {
+            new ArrayList<>(managers.values()).forEach(RedisCacheManager::close);
+        }
+    }
+
+    @Override
+    public void close(ClassLoader classLoader) {
+        Map<URI, RedisCacheManager> managers;
+        synchronized (this) {
+            managers = cacheManagers.get(classLoader == null ? getDefaultClassLoader() : classLoader);
+            managers = managers == null ? new HashMap<>() : new HashMap<>(managers);
+        }
+        managers.values().forEach(RedisCacheManager::close);
+    }
+
+    @Override
+    public void close(URI uri, ClassLoader classLoader) {
+        RedisCacheManager cacheManager;
+        synchronized (this) {
+            Map<URI, RedisCacheManager> managers = cacheManagers.get(classLoader == null ? getDefaultClassLoader() : classLoader);
+            cacheManager = managers == null ? null : managers.get(uri == null ? getDefaultURI() : uri);
+        }
+        if (cacheManager != null) {
+            cacheManager.close();
+        }
+    }
+
+    @Override
+    public boolean isSupported(OptionalFeature optionalFeature) {
+        // store-by-reference is the only optional feature and values are always serialized to Redis
+        return false;
+    }
+
+    synchronized void release(RedisCacheManager cacheManager) {
+        Map<URI, RedisCacheManager> managers = cacheManagers.get(cacheManager.getClassLoader());
+        if (managers != null) {
+            managers.remove(cacheManager.getURI(), cacheManager);
+            if (managers.isEmpty()) {
+                cacheManagers.remove(cacheManager.getClassLoader());
+            }
+        }
+    }
+
+    private synchronized Iterable<Map<URI, RedisCacheManager>> snapshot() {
+        ArrayList<Map<URI, RedisCacheManager>> result = new ArrayList<>();
+        for (Map<URI, RedisCacheManager> managers : cacheManagers.values()) {
+            result.add(new HashMap<>(managers));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.RedisClusterPipeline;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A pipeline grouping its commands by the master node owning their slot, each group being sent to its node in
+ * parallel on synchronization. Redirected commands are sent again to their new owner. A connection failure is retried
+ * on a refreshed topology only if it happens while borrowing the connection, since the commands of the group may
+ * otherwise have been executed: the synchronization then fails with the connection exception.
+ */
+class RedisClusterPipelineImpl extends RedisClusterPipeline {
+    private final ClusterTopology clusterTopology;
+    private final ExecutorService executorService;
+    private final int maxAttempts;
+    private final CommandRecorder commandRecorder = new CommandRecorder();
+    private final List<QueuedCommand> queuedCommands = new ArrayList<>();
+
+    RedisClusterPipelineImpl(ClusterTopology clusterTopology, ExecutorService executorService) {
+        this.clusterTopology = clusterTopology;
+        this.executorService = executorService;
+        this.maxAttempts = Math.max(1, clusterTopology.getMaxAttempts());
+    }
+
+    @Override
+    protected Client getClient(String key) {
+        commandRecorder.slot = JedisClusterCRC16.getSlot(key);
+        return commandRecorder;
+    }
+
+    @Override
+    protected Client getClient(byte[] key) {
+        commandRecorder.slot = JedisClusterCRC16.getSlot(key);
+        return commandRecorder;
+    }
+
+    @Override
+    public void sync() {
+        if (queuedCommands.isEmpty()) {
+            return;
+        }
+        Object[] replies;
+        try {
+            replies = execute(queuedCommands);
+        } catch (RuntimeException e) {
+            clean();
+            throw e;
+        } finally {
+            queuedCommands.clear();
+        }
+        for (Object reply : replies) {
+            generateResponse(reply);
+        }
+    }
+
+    @Override
+    public void clear() {
+        queuedCommands.clear();
+        clean();
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    /**
+     * Queues the evaluation of a Lua script accessing a single key, which routes the script to its owner.
+     */
+    Response<Object> eval(byte[] script, byte[] key, byte[]... args) {
+        byte[][] keyAndArgs = new byte[args.length + 1][];
+        keyAndArgs[0] = key;
+        System.arraycopy(args, 0, keyAndArgs, 1, args.length);
+        getClient(key).eval(script, 1, keyAndArgs);
+        return getResponse(BuilderFactory.RAW_OBJECT);
+    }
+
+    private Object[] execute(List<QueuedCommand> commands) {
+        Object[] replies = new Object[commands.size()];
+        List<Integer> pending = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            pending.add(i);
+        }
+
+        RuntimeException lastException = null;
+        for (int attempt = 0; attempt < maxAttempts && !pending.isEmpty(); attempt++) {
+            Map<HostAndPort, List<Integer>> batches = new LinkedHashMap<>();
+            for (Integer index : pending) {
+                QueuedCommand command = commands.get(index);
+                HostAndPort node = command.askTarget != null ? command.askTarget : clusterTopology.getOwner(command.slot);
+                batches.computeIfAbsent(node, k -> new ArrayList<>()).add(index);
+            }
+
+            Map<HostAndPort, Future<List<Object>>> futures = new LinkedHashMap<>();
+            Map.Entry<HostAndPort, List<Integer>> localBatch = null;
+            for (Map.Entry<HostAndPort, List<Integer>> batch : batches.entrySet()) {
+                if (localBatch == null) {
+                    localBatch = batch;
+                } else {
+                    futures.put(batch.getKey(), executorService.submit(() -> sendBatch(batch.getKey(), batch.getValue(), commands)));
+                }
+            }
+
+            List<Integer> retries = new ArrayList<>();
+            JedisConnectionException failure = null;
+            boolean topologyChanged = false;
+            for (Map.Entry<HostAndPort, List<Integer>> batch : batches.entrySet()) {
+                List<Object> batchReplies;
+                try {
+                    if (batch == localBatch) {
+                        batchReplies = sendBatch(batch.getKey(), batch.getValue(), commands);
+                    } else {
+                        batchReplies = waitFor(futures.get(batch.getKey()));
+                    }
+                } catch (UnsentBatchException e) {
+                    lastException = e.getCause();
+                    retries.addAll(batch.getValue());
+                    topologyChanged = true;
+                    continue;
+                } catch (JedisConnectionException e) {
+                    failure = e;
+                    topologyChanged = true;
+                    continue;
+                }
+
+                for (int i = 0; i < batchReplies.size(); i++) {
+                    int index = batch.getValue().get(i);
+                    QueuedCommand command = commands.get(index);
+                    Object reply = batchReplies.get(i);
+                    command.askTarget = null;
+                    if (reply instanceof JedisMovedDataException) {
+                        clusterTopology.update(command.slot, ((JedisMovedDataException) reply).getTargetNode());
+                        topologyChanged = true;
+                        retries.add(index);
+                    } else if (reply instanceof JedisAskDataException) {
+                        command.askTarget = ((JedisAskDataException) reply).getTargetNode();
+                        retries.add(index);
+                    }
+                    replies[index] = reply;
+                }
+            }
+
+            if (topologyChanged) {
+                try {
+                    clusterTopology.refresh();
+                } catch (JedisConnectionException e) {
+                    lastException = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            pending = retries;
+        }
+
+        for (Integer index : pending) {
+            if (replies[index] == null) {
+                throw lastException;
+            }
+        }
+        return replies;
+    }
+
+    private List<Object> sendBatch(HostAndPort node, List<Integer> indices, List<QueuedCommand> commands) {
+        Jedis connection;
+        try {
+            connection = clusterTopology.getConnection(node, commands.get(indices.get(0)).slot);
+        } catch (JedisConnectionException e) {
+            throw new UnsentBatchException(e);
+        }
+        try (Jedis jedis = connection) {
+            Client client = jedis.getClient();
+            int askings = 0;
+            for (Integer index : indices) {
+                QueuedCommand command = commands.get(index);
+                if (command.askTarget != null) {
+                    client.sendCommand(Protocol.Command.ASKING);
+                    askings++;
+                }
+                client.sendCommand(command.command, command.args);
+            }
+            List<Object> rawReplies = client.getMany(indices.size() + askings);
+            if (askings == 0) {
+                return rawReplies;
+            }
+            List<Object> replies = new ArrayList<>(indices.size());
+            int position = 0;
+            for (Integer index : indices) {
+                if (commands.get(index).askTarget != null) {
+                    position++;
+                }
+                replies.add(rawReplies.get(position++));
+            }
+            return replies;
+        }
+    }
+
+    private List<Object> waitFor(Future<List<Object>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JedisConnectionException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new JedisConnectionException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Failure to borrow the connection to a node, before any command of its group was sent.
+     */
+    private static class UnsentBatchException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private UnsentBatchException(JedisConnectionException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized JedisConnectionException getCause() {
+            return (JedisConnectionException) super.getCause();
+        }
+    }
+
+    private static class QueuedCommand {
+        private final int slot;
+        private final ProtocolCommand command;
+        private final byte[][] args;
+        private HostAndPort askTarget;
+
+        private QueuedCommand(int slot, ProtocolCommand command, byte[][] args) {
+            this.slot = slot;
+            this.command = command;
+            this.args = args;
+        }
+    }
+
+    /**
+     * A never-connected client which records the commands issued by {@link redis.clients.jedis.PipelineBase} instead
+     * of writing them to a socket.
+     */
+    private class CommandRecorder extends Client {
+        private int slot;
+
+        @Override
+        public void sendCommand(ProtocolCommand cmd, byte[]... args) {
+            queuedCommands.add(new QueuedCommand(slot, cmd, args));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.RedisClusterPipeline;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+
+import java.util.concurrent.ExecutorService;
+
+class RedisClusterPipelinedTransactionHandler implements org.seedstack.seed.transaction.spi.TransactionHandler<RedisClusterPipeline> {
+    private final RedisLink<RedisClusterPipeline> redisLink;
+    private final ClusterTopology clusterTopology;
+    private final RedisMetrics redisMetrics;
+    private final ExecutorService executorService;
+
+    RedisClusterPipelinedTransactionHandler(RedisLink<RedisClusterPipeline> redisLink, ClusterTopology clusterTopology, ExecutorService executorService, RedisMetrics redisMetrics) {
+        this.redisLink = redisLink;
+        this.clusterTopology = clusterTopology;
+        this.executorService = executorService;
+        this.redisMetrics = redisMetrics;
+    }
+
+    @Override
+    public void doInitialize(TransactionMetadata transactionMetadata) {
+        // connections are borrowed per node when the pipeline is synchronized
+        this.redisLink.push(null, transactionMetadata);
+    }
+
+    @Override
+    public RedisClusterPipeline doCreateTransaction() {
+        RedisLink<RedisClusterPipeline>.Holder holder = this.redisLink.getHolder();
+        RedisClusterPipeline pipeline = new RedisClusterPipelineImpl(clusterTopology, executorService);
+        holder.setTransaction(pipeline);
+        return pipeline;
+    }
+
+    @Override
+    public void doJoinGlobalTransaction() {
+        // not supported
+    }
+
+    @Override
+    public void doBeginTransaction(RedisClusterPipeline currentTransaction) {
+        this.redisLink.getHolder().setBeginNanos(System.nanoTime());
+    }
+
+    @Override
+    public void doCommitTransaction(RedisClusterPipeline currentTransaction) {
+        RedisLink<RedisClusterPipeline>.Holder holder = this.redisLink.getHolder();
+        this.redisMetrics.commit(holder.getTransactionMetadata(), holder.getBeginNanos(), currentTransaction::sync);
+    }
+
+    @Override
+    public void doMarkTransactionAsRollbackOnly(RedisClusterPipeline currentTransaction) {
+        // not supported
+    }
+
+    @Override
+    public void doRollbackTransaction(RedisClusterPipeline currentTransaction) {
+        this.redisMetrics.recordRollback();
+        currentTransaction.clear();
+    }
+
+    @Override
+    public void doReleaseTransaction(RedisClusterPipeline currentTransaction) {
+        currentTransaction.close();
+    }
+
+    @Override
+    public void doCleanup() {
+        this.redisLink.pop();
+    }
+
+    @Override
+    public RedisClusterPipeline getCurrentTransaction() {
+        RedisLink<RedisClusterPipeline>.Holder holder = this.redisLink.getHolder();
+
+        if (holder == null) {
+            return null;
+        } else {
+            return holder.getTransaction();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import redis.clients.jedis.Transaction;
+
+class RedisClusterTransactionHandler implements org.seedstack.seed.transaction.spi.TransactionHandler<Transaction> {
+    static final String SLOT = "redis.cluster.slot";
+    private final RedisLink<Transaction> redisLink;
+    private final ClusterTopology clusterTopology;
+    private final RedisMetrics redisMetrics;
+
+    RedisClusterTransactionHandler(RedisLink<Transaction> redisLink, ClusterTopology clusterTopology, RedisMetrics redisMetrics) {
+        this.redisLink = redisLink;
+        this.clusterTopology = clusterTopology;
+        this.redisMetrics = redisMetrics;
+    }
+
+    @Override
+    public void doInitialize(TransactionMetadata transactionMetadata) {
+        // the connection to the slot owner is borrowed when the transaction is executed
+        this.redisLink.push(null, transactionMetadata);
+    }
+
+    @Override
+    public Transaction doCreateTransaction() {
+        RedisLink<Transaction>.Holder holder = this.redisLink.getHolder();
+        Integer slot = (Integer) holder.getTransactionMetadata().getMetadata(SLOT);
+        // without a fixed slot, the transaction is routed by its first key
+        Transaction transaction = slot == null ? new ClusterTransaction(clusterTopology) : new ClusterTransaction(clusterTopology, slot);
+        holder.setTransaction(transaction);
+        return transaction;
+    }
+
+    @Override
+    public void doJoinGlobalTransaction() {
+        // not supported
+    }
+
+    @Override
+    public void doBeginTransaction(Transaction currentTransaction) {
+        this.redisLink.getHolder().setBeginNanos(System.nanoTime());
+    }
+
+    @Override
+    public void doCommitTransaction(Transaction currentTransaction) {
+        RedisLink<Transaction>.Holder holder = this.redisLink.getHolder();
+        this.redisMetrics.commit(holder.getTransactionMetadata(), holder.getBeginNanos(), currentTransaction::exec);
+    }
+
+    @Override
+    public void doMarkTransactionAsRollbackOnly(Transaction currentTransaction) {
+        // not supported
+    }
+
+    @Override
+    public void doRollbackTransaction(Transaction currentTransaction) {
+        this.redisMetrics.recordRollback();
+        currentTransaction.clear();
+    }
+
+    @Override
+    public void doReleaseTransaction(Transaction currentTransaction) {
+        currentTransaction.close();
+    }
+
+    @Override
+    public void doCleanup() {
+        this.redisLink.pop();
+    }
+
+    @Override
+    public Transaction getCurrentTransaction() {
+        RedisLink<Transaction>.Holder holder = this.redisLink.getHolder();
+
+        if (holder == null) {
+            return null;
+        } else {
+            return holder.getTransaction();
+        }
+    }
+}
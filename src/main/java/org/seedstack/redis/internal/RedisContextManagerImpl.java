@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.RedisContext;
+import org.seedstack.redis.RedisContextCarrier;
+import org.seedstack.redis.RedisContextManager;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+class RedisContextManagerImpl implements RedisContextManager {
+    private final RedisContextCarrier contextCarrier;
+
+    RedisContextManagerImpl(RedisContextCarrier contextCarrier) {
+        this.contextCarrier = contextCarrier;
+    }
+
+    @Override
+    public RedisContext capture() {
+        return new CapturedContext(contextCarrier, contextCarrier.get());
+    }
+
+    /**
+     * Captured chain of scopes, installed for the duration of each call with scoped-value semantics: the previous
+     * context of the thread is always restored, even if scopes opened by the call were not properly closed.
+     */
+    private static class CapturedContext implements RedisContext {
+        private final RedisContextCarrier contextCarrier;
+        private final Object context;
+
+        private CapturedContext(RedisContextCarrier contextCarrier, Object context) {
+            this.contextCarrier = contextCarrier;
+            this.context = context;
+        }
+
+        @Override
+        public void run(Runnable runnable) {
+            Object previous = contextCarrier.get();
+            contextCarrier.set(context);
+            try {
+                runnable.run();
+            } finally {
+                contextCarrier.set(previous);
+            }
+        }
+
+        @Override
+        public <T> T call(Callable<T> callable) throws Exception {
+            Object previous = contextCarrier.get();
+            contextCarrier.set(context);
+            try {
+                return callable.call();
+            } finally {
+                contextCarrier.set(previous);
+            }
+        }
+
+        @Override
+        public Runnable wrap(Runnable runnable) {
+            return () -> run(runnable);
+        }
+
+        @Override
+        public <T> Callable<T> wrap(Callable<T> callable) {
+            return () -> call(callable);
+        }
+
+        @Override
+        public Executor wrap(Executor executor) {
+            return command -> executor.execute(wrap(command));
+        }
+    }
+}
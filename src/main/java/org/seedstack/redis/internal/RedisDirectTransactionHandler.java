@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import redis.clients.jedis.Jedis;
+
+/**
+ * Binds a plain pooled {@link Jedis} connection to the method scope without opening a MULTI/EXEC transaction. Commands
+ * are executed immediately so their results can be read inline.
+ */
+class RedisDirectTransactionHandler implements org.seedstack.seed.transaction.spi.TransactionHandler<Jedis> {
+    private final RedisLink<Jedis> redisLink;
+    private final ReplicaRouter replicaRouter;
+    private final RedisMetrics redisMetrics;
+
+    RedisDirectTransactionHandler(RedisLink<Jedis> redisLink, ReplicaRouter replicaRouter, RedisMetrics redisMetrics) {
+        this.redisLink = redisLink;
+        this.replicaRouter = replicaRouter;
+        this.redisMetrics = redisMetrics;
+    }
+
+    @Override
+    public void doInitialize(TransactionMetadata transactionMetadata) {
+        this.redisLink.push(this.replicaRouter.borrow(this.redisMetrics, transactionMetadata), transactionMetadata);
+    }
+
+    @Override
+    public Jedis doCreateTransaction() {
+        RedisLink<Jedis>.Holder holder = this.redisLink.getHolder();
+        Jedis jedis = holder.getJedis();
+        holder.setTransaction(jedis);
+        return jedis;
+    }
+
+    @Override
+    public void doJoinGlobalTransaction() {
+        // not supported
+    }
+
+    @Override
+    public void doBeginTransaction(Jedis currentTransaction) {
+        this.redisLink.getHolder().setBeginNanos(System.nanoTime());
+    }
+
+    @Override
+    public void doCommitTransaction(Jedis currentTransaction) {
+        // nothing to flush (commands are executed immediately)
+        RedisLink<Jedis>.Holder holder = this.redisLink.getHolder();
+        this.redisMetrics.recordExecute(holder.getTransactionMetadata(), System.nanoTime() - holder.getBeginNanos());
+        this.redisMetrics.recordCommit(holder.getTransactionMetadata(), 0);
+    }
+
+    @Override
+    public void doMarkTransactionAsRollbackOnly(Jedis currentTransaction) {
+        // not supported
+    }
+
+    @Override
+    public void doRollbackTransaction(Jedis currentTransaction) {
+        // not supported (commands are executed immediately)
+        this.redisMetrics.recordRollback();
+    }
+
+    @Override
+    public void doReleaseTransaction(Jedis currentTransaction) {
+        // nothing to do (connection is returned to the pool on cleanup)
+    }
+
+    @Override
+    public void doCleanup() {
+        this.replicaRouter.release(this.redisLink.pop());
+    }
+
+    @Override
+    public Jedis getCurrentTransaction() {
+        RedisLink<Jedis>.Holder holder = this.redisLink.getHolder();
+
+        if (holder == null) {
+            return null;
+        } else {
+            return holder.getTransaction();
+        }
+    }
+}
@@ -11,7 +11,19 @@ import org.seedstack.shed.exception.ErrorCode;
 
 enum RedisErrorCode implements ErrorCode {
     ACCESSING_REDIS_OUTSIDE_TRANSACTION,
+    BORROW_TIMEOUT_EXCEEDED,
+    BULK_LOAD_FAILED,
+    CIRCUIT_BREAKER_OPEN,
+    CONFLICTING_REDIS_CODECS,
+    CROSS_SLOT_CLUSTER_TRANSACTION,
+    DUPLICATE_REDIS_LIMITER,
+    INVALID_FIRE_AND_FORGET,
+    INVALID_REDIS_LISTENER,
+    INVALID_REDIS_SCRIPT,
     NO_REDIS_CLIENT_SPECIFIED_FOR_TRANSACTION,
     UNABLE_TO_CREATE_CLIENT,
-    UNABLE_TO_CREATE_PROXY
+    UNABLE_TO_CREATE_CONTEXT_CARRIER,
+    UNABLE_TO_CREATE_PROXY,
+    UNROUTABLE_CLUSTER_TRANSACTION,
+    WARM_UP_FAILED
 }
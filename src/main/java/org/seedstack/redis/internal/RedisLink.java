@@ -7,60 +7,105 @@
  */
 package org.seedstack.redis.internal;
 
+import org.seedstack.redis.RedisContextCarrier;
 import org.seedstack.seed.SeedException;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
 import org.seedstack.seed.transaction.spi.TransactionalLink;
 import redis.clients.jedis.Jedis;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-
+/**
+ * Links the transactional proxies to the active scope of the current thread. The scopes of all links are stacked in a
+ * single immutable chain of frames held by the {@link RedisContextCarrier}, so that the whole context can be captured
+ * and re-entered on another thread, and nothing is retained by threads outside of a scope.
+ */
 class RedisLink<T> implements TransactionalLink<T> {
-    private final ThreadLocal<Deque<Holder>> perThreadObjectContainer = new ThreadLocal<Deque<Holder>>() {
-        @Override
-        protected Deque<Holder> initialValue() {
-            return new ArrayDeque<Holder>();
-        }
-    };
+    private final RedisContextCarrier contextCarrier;
+
+    RedisLink(RedisContextCarrier contextCarrier) {
+        this.contextCarrier = contextCarrier;
+    }
 
     public T get() {
-        Holder holder = perThreadObjectContainer.get().peek();
+        Holder holder = getHolder();
 
-        if (holder == null || holder.transaction == null) {
+        if (holder == null || holder.transaction == null || holder.closed) {
             throw SeedException.createNew(RedisErrorCode.ACCESSING_REDIS_OUTSIDE_TRANSACTION);
         }
 
         return holder.transaction;
     }
 
+    @SuppressWarnings("unchecked")
     Holder getHolder() {
-        return perThreadObjectContainer.get().peek();
+        for (Frame frame = (Frame) contextCarrier.get(); frame != null; frame = frame.parent) {
+            if (frame.link == this) {
+                return (Holder) frame.holder;
+            }
+        }
+        return null;
     }
 
     void push(Jedis jedis) {
-        perThreadObjectContainer.get().push(new Holder(jedis));
+        push(jedis, null);
+    }
+
+    void push(Jedis jedis, TransactionMetadata transactionMetadata) {
+        contextCarrier.set(new Frame(this, new Holder(jedis, transactionMetadata), (Frame) contextCarrier.get()));
     }
 
     Jedis pop() {
-        Deque<Holder> holders = perThreadObjectContainer.get();
-        Holder holder = holders.pop();
-        if (holders.isEmpty()) {
-            perThreadObjectContainer.remove();
+        Frame top = (Frame) contextCarrier.get();
+        Frame frame = top;
+        while (frame != null && frame.link != this) {
+            frame = frame.parent;
+        }
+        if (frame == null) {
+            throw SeedException.createNew(RedisErrorCode.ACCESSING_REDIS_OUTSIDE_TRANSACTION);
+        }
+        frame.holder.closed = true;
+        contextCarrier.set(frame == top ? frame.parent : top.without(frame));
+        return frame.holder.jedis;
+    }
+
+    /**
+     * Immutable element of the chain of active scopes.
+     */
+    static class Frame {
+        private final RedisLink<?> link;
+        private final RedisLink<?>.Holder holder;
+        private final Frame parent;
+
+        private Frame(RedisLink<?> link, RedisLink<?>.Holder holder, Frame parent) {
+            this.link = link;
+            this.holder = holder;
+            this.parent = parent;
+        }
+
+        private Frame without(Frame removed) {
+            return this == removed ? parent : new Frame(link, holder, parent == null ? null : parent.without(removed));
         }
-        return holder.jedis;
     }
 
     class Holder {
         private final Jedis jedis;
-        private T transaction;
+        private final TransactionMetadata transactionMetadata;
+        private volatile T transaction;
+        private volatile long beginNanos;
+        private volatile boolean closed;
 
-        private Holder(Jedis jedis) {
+        private Holder(Jedis jedis, TransactionMetadata transactionMetadata) {
             this.jedis = jedis;
+            this.transactionMetadata = transactionMetadata;
         }
 
         Jedis getJedis() {
             return jedis;
         }
 
+        TransactionMetadata getTransactionMetadata() {
+            return transactionMetadata;
+        }
+
         T getTransaction() {
             return transaction;
         }
@@ -68,5 +113,13 @@ class RedisLink<T> implements TransactionalLink<T> {
         void setTransaction(T transaction) {
             this.transaction = transaction;
         }
+
+        long getBeginNanos() {
+            return beginNanos;
+        }
+
+        void setBeginNanos(long beginNanos) {
+            this.beginNanos = beginNanos;
+        }
     }
 }
@@ -0,0 +1,340 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.seedstack.redis.RedisConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.StreamEntry;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XReadGroupParams;
+import redis.clients.jedis.util.Pool;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs the {@link org.seedstack.redis.RedisListener} methods of a client. Channels and patterns are each subscribed
+ * by a thread holding a dedicated connection, and each stream listener is polled by its own thread with XREADGROUP.
+ * Messages are dispatched to a bounded worker pool, the reading threads blocking when it is saturated. Stream entries
+ * of a poll are acknowledged together once all of them have been processed.
+ */
+class RedisListenerContainer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisListenerContainer.class);
+    private static final long RETRY_DELAY = 1000;
+    private static final long STOP_TIMEOUT = 5000;
+    private final String clientName;
+    private final RedisConfig.ListenersConfig listenersConfig;
+    private final Pool<Jedis> listenerPool;
+    private final List<RedisListenerMethod> listenerMethods;
+    private final String consumer;
+    private final List<Thread> threads = new ArrayList<>();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private ThreadPoolExecutor workers;
+    private volatile boolean running;
+
+    RedisListenerContainer(String clientName, RedisConfig.ListenersConfig listenersConfig, Pool<Jedis> listenerPool, List<RedisListenerMethod> listenerMethods) {
+        this.clientName = clientName;
+        this.listenersConfig = listenersConfig;
+        this.listenerPool = listenerPool;
+        this.listenerMethods = listenerMethods;
+        this.consumer = listenersConfig.getConsumer() != null ? listenersConfig.getConsumer() : ManagementFactory.getRuntimeMXBean().getName();
+    }
+
+    /**
+     * Returns the number of dedicated connections needed by the listeners.
+     */
+    static int getConnectionCount(List<RedisListenerMethod> listenerMethods) {
+        int channels = 0;
+        int patterns = 0;
+        int streams = 0;
+        for (RedisListenerMethod listenerMethod : listenerMethods) {
+            switch (listenerMethod.getKind()) {
+                case CHANNELS:
+                    channels = 1;
+                    break;
+                case PATTERNS:
+                    patterns = 1;
+                    break;
+                default:
+                    streams++;
+            }
+        }
+        return channels + patterns + streams;
+    }
+
+    synchronized void start(Function<Class<?>, Object> instanceProvider) {
+        running = true;
+        workers = new ThreadPoolExecutor(
+                listenersConfig.getThreads(),
+                listenersConfig.getThreads(),
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(listenersConfig.getQueueSize()),
+                new ThreadFactoryBuilder().setNameFormat("redis-listener-" + clientName + "-%d").setDaemon(true).build(),
+                (task, executor) -> {
+                    // block the reading thread until a worker is available
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Listeners of Redis client " + clientName + " are stopped");
+                    }
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                });
+
+        Map<String, List<Listener>> channelListeners = new LinkedHashMap<>();
+        Map<String, List<Listener>> patternListeners = new LinkedHashMap<>();
+        for (RedisListenerMethod listenerMethod : listenerMethods) {
+            Listener listener = new Listener(listenerMethod, instanceProvider.apply(listenerMethod.getListenerClass()));
+            switch (listenerMethod.getKind()) {
+                case CHANNELS:
+                    for (String channel : listenerMethod.getSources()) {
+                        channelListeners.computeIfAbsent(channel, key -> new ArrayList<>()).add(listener);
+                    }
+                    break;
+                case PATTERNS:
+                    for (String pattern : listenerMethod.getSources()) {
+                        patternListeners.computeIfAbsent(pattern, key -> new ArrayList<>()).add(listener);
+                    }
+                    break;
+                default:
+                    startThread("redis-stream-" + clientName + "-" + listenerMethod.getSources()[0], () -> consume(listener));
+            }
+        }
+        if (!channelListeners.isEmpty()) {
+            Subscriber subscriber = new Subscriber(channelListeners, false);
+            subscribers.add(subscriber);
+            startThread("redis-subscriber-" + clientName, subscriber);
+        }
+        if (!patternListeners.isEmpty()) {
+            Subscriber subscriber = new Subscriber(patternListeners, true);
+            subscribers.add(subscriber);
+            startThread("redis-psubscriber-" + clientName, subscriber);
+        }
+        LOGGER.info("Started {} Redis listener(s) of client {}", listenerMethods.size(), clientName);
+    }
+
+    synchronized void stop() {
+        running = false;
+        subscribers.forEach(Subscriber::close);
+        for (Thread thread : threads) {
+            try {
+                thread.join(listenersConfig.getBlock() + STOP_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (workers != null) {
+            workers.shutdown();
+            try {
+                if (!workers.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    workers.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        threads.clear();
+        subscribers.clear();
+        listenerPool.close();
+    }
+
+    private void startThread(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void dispatch(List<Listener> listeners, String channel, String message) {
+        if (listeners != null) {
+            for (Listener listener : listeners) {
+                workers.execute(() -> listener.invoke(channel, message));
+            }
+        }
+    }
+
+    /**
+     * Polls a stream through the consumer group, first going through the entries left pending for this consumer by a
+     * previous run, then reading new entries.
+     */
+    private void consume(Listener listener) {
+        String stream = listener.method.getSources()[0];
+        String group = listener.method.getGroup();
+        StreamEntryID pendingCursor = new StreamEntryID();
+        while (running) {
+            try (Jedis jedis = listenerPool.getResource()) {
+                createGroup(jedis, stream, group);
+                while (running) {
+                    XReadGroupParams params = XReadGroupParams.xReadGroupParams().count(listenersConfig.getCount());
+                    if (pendingCursor == null) {
+                        params.block(listenersConfig.getBlock());
+                    }
+                    List<Map.Entry<String, List<StreamEntry>>> result = jedis.xreadGroup(group, consumer, params,
+                            Collections.singletonMap(stream, pendingCursor != null ? pendingCursor : StreamEntryID.UNRECEIVED_ENTRY));
+                    List<StreamEntry> entries = result == null || result.isEmpty() ? Collections.emptyList() : result.get(0).getValue();
+                    if (pendingCursor != null) {
+                        pendingCursor = entries.isEmpty() ? null : entries.get(entries.size() - 1).getID();
+                    }
+                    if (!entries.isEmpty()) {
+                        StreamEntryID[] processed = process(listener, stream, entries);
+                        if (processed.length > 0) {
+                            jedis.xack(stream, group, processed);
+                        }
+                    }
+                }
+            } catch (JedisConnectionException | JedisDataException e) {
+                if (running) {
+                    LOGGER.warn("Redis stream listener {} failed, retrying in {} ms", listener.method, RETRY_DELAY, e);
+                    sleep();
+                }
+            }
+        }
+    }
+
+    private StreamEntryID[] process(Listener listener, String stream, List<StreamEntry> entries) {
+        Map<StreamEntryID, CompletableFuture<Boolean>> futures = new LinkedHashMap<>();
+        for (StreamEntry entry : entries) {
+            if (entry != null && entry.getFields() != null) {
+                futures.put(entry.getID(), CompletableFuture.supplyAsync(() -> listener.invoke(stream, entry), workers));
+            }
+        }
+        List<StreamEntryID> processed = new ArrayList<>(futures.size());
+        futures.forEach((id, future) -> {
+            if (future.join()) {
+                processed.add(id);
+            }
+        });
+        return processed.toArray(new StreamEntryID[0]);
+    }
+
+    private void createGroup(Jedis jedis, String stream, String group) {
+        try {
+            jedis.xgroupCreate(stream, group, StreamEntryID.LAST_ENTRY, true);
+        } catch (JedisDataException e) {
+            if (e.getMessage() == null || !e.getMessage().startsWith("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(RETRY_DELAY);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private static class Listener {
+        private final RedisListenerMethod method;
+        private final Object instance;
+
+        private Listener(RedisListenerMethod method, Object instance) {
+            this.method = method;
+            this.instance = instance;
+        }
+
+        private boolean invoke(String source, Object message) {
+            try {
+                method.invoke(instance, source, message);
+                return true;
+            } catch (Exception e) {
+                LOGGER.error("Redis listener {} failed to process a message from {}", method, source, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Subscribes to channels or patterns, subscribing again after connection failures until stopped.
+     */
+    private class Subscriber extends JedisPubSub implements Runnable {
+        private final Map<String, List<Listener>> listeners;
+        private final boolean patterns;
+        private volatile Jedis jedis;
+
+        private Subscriber(Map<String, List<Listener>> listeners, boolean patterns) {
+            this.listeners = new HashMap<>(listeners);
+            this.patterns = patterns;
+        }
+
+        @Override
+        public void run() {
+            String[] keys = listeners.keySet().toArray(new String[0]);
+            while (running) {
+                try (Jedis connection = listenerPool.getResource()) {
+                    jedis = connection;
+                    if (!running) {
+                        return;
+                    }
+                    if (patterns) {
+                        connection.psubscribe(this, keys);
+                    } else {
+                        connection.subscribe(this, keys);
+                    }
+                } catch (JedisConnectionException e) {
+                    if (running) {
+                        LOGGER.warn("Redis subscription of client {} failed, subscribing again in {} ms", clientName, RETRY_DELAY, e);
+                        sleep();
+                    }
+                } finally {
+                    jedis = null;
+                }
+            }
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+            dispatch(listeners.get(channel), channel, message);
+        }
+
+        @Override
+        public void onPMessage(String pattern, String channel, String message) {
+            dispatch(listeners.get(pattern), channel, message);
+        }
+
+        private void close() {
+            if (isSubscribed()) {
+                try {
+                    if (patterns) {
+                        punsubscribe();
+                    } else {
+                        unsubscribe();
+                    }
+                    return;
+                } catch (JedisConnectionException e) {
+                    LOGGER.debug("Unable to unsubscribe, disconnecting instead", e);
+                }
+            }
+            Jedis connection = jedis;
+            if (connection != null) {
+                connection.getClient().disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.common.base.Strings;
+import org.seedstack.redis.RedisListener;
+import org.seedstack.seed.SeedException;
+import redis.clients.jedis.StreamEntry;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A method annotated with {@link RedisListener}, validated at startup.
+ */
+class RedisListenerMethod {
+    static final Predicate<Class<?>> LISTENER_ANNOTATED = candidate -> {
+        try {
+            for (Method method : candidate.getDeclaredMethods()) {
+                if (method.isAnnotationPresent(RedisListener.class)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    };
+    private final Method method;
+    private final Kind kind;
+    private final String client;
+    private final String[] sources;
+    private final String group;
+    private final boolean withSource;
+
+    private RedisListenerMethod(Method method, Kind kind, String client, String[] sources, String group, boolean withSource) {
+        this.method = method;
+        this.kind = kind;
+        this.client = client;
+        this.sources = sources;
+        this.group = group;
+        this.withSource = withSource;
+    }
+
+    /**
+     * Detects the listener methods declared by the specified classes.
+     *
+     * @param candidates    the scanned classes.
+     * @param clients       the names of the configured clients.
+     * @param defaultClient the default client or null.
+     * @return the listener methods.
+     */
+    static List<RedisListenerMethod> detect(Collection<Class<?>> candidates, Set<String> clients, String defaultClient) {
+        List<RedisListenerMethod> listenerMethods = new ArrayList<>();
+        for (Class<?> candidate : candidates) {
+            for (Method method : candidate.getDeclaredMethods()) {
+                RedisListener redisListener = method.getAnnotation(RedisListener.class);
+                if (redisListener != null) {
+                    listenerMethods.add(create(method, redisListener, clients, defaultClient));
+                }
+            }
+        }
+        return listenerMethods;
+    }
+
+    private static RedisListenerMethod create(Method method, RedisListener redisListener, Set<String> clients, String defaultClient) {
+        String client = redisListener.client();
+        if (client.isEmpty()) {
+            if (!Strings.isNullOrEmpty(defaultClient)) {
+                client = defaultClient;
+            } else if (clients.size() == 1) {
+                client = clients.iterator().next();
+            }
+        }
+        if (!clients.contains(client)) {
+            throw invalid(method, "unknown client '" + client + "'");
+        }
+
+        Kind kind;
+        String[] sources;
+        int kinds = 0;
+        if (redisListener.channels().length > 0) {
+            kinds++;
+        }
+        if (redisListener.patterns().length > 0) {
+            kinds++;
+        }
+        if (!redisListener.stream().isEmpty()) {
+            kinds++;
+        }
+        if (kinds != 1) {
+            throw invalid(method, "exactly one of channels, patterns or stream must be specified");
+        }
+        if (redisListener.channels().length > 0) {
+            kind = Kind.CHANNELS;
+            sources = redisListener.channels();
+        } else if (redisListener.patterns().length > 0) {
+            kind = Kind.PATTERNS;
+            sources = redisListener.patterns();
+        } else {
+            kind = Kind.STREAM;
+            sources = new String[]{redisListener.stream()};
+            if (redisListener.group().isEmpty()) {
+                throw invalid(method, "a consumer group is required to consume a stream");
+            }
+        }
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Class<?> messageType = kind == Kind.STREAM ? StreamEntry.class : String.class;
+        if (parameterTypes.length == 0 || parameterTypes.length > 2
+                || !parameterTypes[parameterTypes.length - 1].isAssignableFrom(messageType)
+                || parameterTypes.length == 2 && !parameterTypes[0].isAssignableFrom(String.class)) {
+            throw invalid(method, "expected parameters ([String source,] " + messageType.getSimpleName() + " message)");
+        }
+
+        method.setAccessible(true);
+        return new RedisListenerMethod(method, kind, client, sources, redisListener.group(), parameterTypes.length == 2);
+    }
+
+    private static SeedException invalid(Method method, String reason) {
+        return SeedException.createNew(RedisErrorCode.INVALID_REDIS_LISTENER)
+                .put("method", method.toString())
+                .put("reason", reason);
+    }
+
+    Class<?> getListenerClass() {
+        return method.getDeclaringClass();
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    String getClient() {
+        return client;
+    }
+
+    String[] getSources() {
+        return sources;
+    }
+
+    String getGroup() {
+        return group;
+    }
+
+    /**
+     * Invokes the listener method, unwrapping the exceptions it throws.
+     *
+     * @param instance the listener instance.
+     * @param source   the channel or stream the message comes from.
+     * @param message  the message or stream entry.
+     * @throws Exception if the listener failed.
+     */
+    void invoke(Object instance, String source, Object message) throws Exception {
+        try {
+            if (withSource) {
+                method.invoke(instance, source, message);
+            } else {
+                method.invoke(instance, message);
+            }
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+
+    enum Kind {
+        CHANNELS,
+        PATTERNS,
+        STREAM
+    }
+}
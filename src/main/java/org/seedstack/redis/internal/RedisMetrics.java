@@ -0,0 +1,236 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.util.Pool;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Pool gauges, latency histograms and counters of a named Redis client or cluster. Histograms are recorded by the
+ * transaction handlers, pool gauges are read from the underlying Jedis pools on demand.
+ */
+class RedisMetrics implements RedisMetricsMXBean {
+    static final String METHOD = "redis.method";
+    private final String name;
+    private final Supplier<Collection<? extends Pool<Jedis>>> pools;
+    private final LatencyHistogram borrowWait = new LatencyHistogram();
+    private final LatencyHistogram execute = new LatencyHistogram();
+    private final LatencyHistogram commit = new LatencyHistogram();
+    private final ConcurrentMap<String, LatencyHistogram> methodExecute = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> methodCommit = new ConcurrentHashMap<>();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedCommands = new LongAdder();
+
+    RedisMetrics(String name, Supplier<Collection<? extends Pool<Jedis>>> pools) {
+        this.name = name;
+        this.pools = pools;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Borrows a connection from the specified pool, recording the time spent waiting for it.
+     */
+    Jedis borrow(Pool<Jedis> pool) {
+        return borrow(pool::getResource);
+    }
+
+    /**
+     * Borrows a connection with the specified function, recording the time spent waiting for it.
+     */
+    Jedis borrow(Supplier<Jedis> borrower) {
+        long start = System.nanoTime();
+        try {
+            return borrower.get();
+        } catch (RuntimeException e) {
+            exceptions.increment();
+            throw e;
+        } finally {
+            borrowWait.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs the specified commit action, recording the execution time of the method since the transaction began and
+     * the duration of the commit itself. A failed commit is only counted as an exception.
+     */
+    void commit(TransactionMetadata transactionMetadata, long beginNanos, Runnable action) {
+        long start = System.nanoTime();
+        recordExecute(transactionMetadata, start - beginNanos);
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            exceptions.increment();
+            throw e;
+        }
+        recordCommit(transactionMetadata, System.nanoTime() - start);
+    }
+
+    void recordExecute(TransactionMetadata transactionMetadata, long nanos) {
+        execute.record(nanos);
+        histogramOf(methodExecute, transactionMetadata).record(nanos);
+    }
+
+    void recordCommit(TransactionMetadata transactionMetadata, long nanos) {
+        commits.increment();
+        commit.record(nanos);
+        histogramOf(methodCommit, transactionMetadata).record(nanos);
+    }
+
+    void recordRollback() {
+        rollbacks.increment();
+    }
+
+    void recordException() {
+        exceptions.increment();
+    }
+
+    void recordBatch(int size) {
+        batches.increment();
+        batchedCommands.add(size);
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return (int) sumPools(Pool::getNumActive);
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return (int) sumPools(Pool::getNumIdle);
+    }
+
+    @Override
+    public int getWaitingThreads() {
+        return (int) sumPools(Pool::getNumWaiters);
+    }
+
+    @Override
+    public long getMeanPoolBorrowWaitMillis() {
+        Collection<? extends Pool<Jedis>> currentPools = pools.get();
+        return currentPools.isEmpty() ? 0 : sumPools(Pool::getMeanBorrowWaitTimeMillis) / currentPools.size();
+    }
+
+    @Override
+    public long getMaxPoolBorrowWaitMillis() {
+        return pools.get().stream().mapToLong(Pool::getMaxBorrowWaitTimeMillis).max().orElse(0);
+    }
+
+    @Override
+    public LatencyStats getBorrowWait() {
+        return borrowWait.snapshot();
+    }
+
+    @Override
+    public LatencyStats getExecute() {
+        return execute.snapshot();
+    }
+
+    @Override
+    public LatencyStats getCommit() {
+        return commit.snapshot();
+    }
+
+    @Override
+    public Map<String, LatencyStats> getMethodExecute() {
+        return snapshot(methodExecute, Function.identity());
+    }
+
+    @Override
+    public Map<String, LatencyStats> getMethodCommit() {
+        return snapshot(methodCommit, Function.identity());
+    }
+
+    @Override
+    public long getCommitCount() {
+        return commits.sum();
+    }
+
+    @Override
+    public long getRollbackCount() {
+        return rollbacks.sum();
+    }
+
+    @Override
+    public long getExceptionCount() {
+        return exceptions.sum();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getBatchedCommandCount() {
+        return batchedCommands.sum();
+    }
+
+    Map<String, Object> collect() {
+        Map<String, Object> pool = new LinkedHashMap<>();
+        pool.put("active", getActiveConnections());
+        pool.put("idle", getIdleConnections());
+        pool.put("waiters", getWaitingThreads());
+        pool.put("meanBorrowWaitMillis", getMeanPoolBorrowWaitMillis());
+        pool.put("maxBorrowWaitMillis", getMaxPoolBorrowWaitMillis());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("pool", pool);
+        result.put("borrowWait", borrowWait.snapshot().toMap());
+        result.put("execute", execute.snapshot().toMap());
+        result.put("commit", commit.snapshot().toMap());
+        result.put("methodExecute", snapshot(methodExecute, LatencyStats::toMap));
+        result.put("methodCommit", snapshot(methodCommit, LatencyStats::toMap));
+        result.put("commits", getCommitCount());
+        result.put("rollbacks", getRollbackCount());
+        result.put("exceptions", getExceptionCount());
+        result.put("batches", getBatchCount());
+        result.put("batchedCommands", getBatchedCommandCount());
+        return result;
+    }
+
+    private long sumPools(ToLongFunction<Pool<Jedis>> gauge) {
+        long sum = 0;
+        for (Pool<Jedis> pool : pools.get()) {
+            sum += gauge.applyAsLong(pool);
+        }
+        return sum;
+    }
+
+    private LatencyHistogram histogramOf(ConcurrentMap<String, LatencyHistogram> histograms, TransactionMetadata transactionMetadata) {
+        Object method = transactionMetadata == null ? null : transactionMetadata.getMetadata(METHOD);
+        String key = method == null ? "<unknown>" : method.toString();
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        return histogram;
+    }
+
+    private <T> Map<String, T> snapshot(Map<String, LatencyHistogram> histograms, Function<LatencyStats, T> mapper) {
+        Map<String, T> result = new LinkedHashMap<>();
+        histograms.forEach((key, value) -> result.put(key, mapper.apply(value.snapshot())));
+        return result;
+    }
+}
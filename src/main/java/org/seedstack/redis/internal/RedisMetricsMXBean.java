@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import java.util.Map;
+
+/**
+ * JMX view of the metrics collected for a Redis client or cluster. Latencies are expressed in microseconds.
+ */
+public interface RedisMetricsMXBean {
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getWaitingThreads();
+
+    long getMeanPoolBorrowWaitMillis();
+
+    long getMaxPoolBorrowWaitMillis();
+
+    LatencyStats getBorrowWait();
+
+    LatencyStats getExecute();
+
+    LatencyStats getCommit();
+
+    Map<String, LatencyStats> getMethodExecute();
+
+    Map<String, LatencyStats> getMethodCommit();
+
+    long getCommitCount();
+
+    long getRollbackCount();
+
+    long getExceptionCount();
+
+    long getBatchCount();
+
+    long getBatchedCommandCount();
+}
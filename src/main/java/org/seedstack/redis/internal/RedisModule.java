@@ -7,53 +7,242 @@
  */
 package org.seedstack.redis.internal;
 
+import com.google.inject.Inject;
+import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.PrivateModule;
+import com.google.inject.Provider;
+import com.google.inject.Scopes;
 import com.google.inject.name.Names;
 import com.google.inject.util.Providers;
+import com.google.inject.util.Types;
+import org.seedstack.redis.AsyncRedis;
+import org.seedstack.redis.BatchingRedis;
+import org.seedstack.redis.LuaScript;
+import org.seedstack.redis.RedisBulkLoader;
+import org.seedstack.redis.RedisClusterPipeline;
+import org.seedstack.redis.RedisCodec;
+import org.seedstack.redis.RedisContextCarrier;
+import org.seedstack.redis.RedisContextManager;
 import org.seedstack.redis.RedisExceptionHandler;
-import org.seedstack.seed.core.internal.transaction.TransactionalClassProxy;
+import org.seedstack.redis.RedisRateLimiter;
+import org.seedstack.redis.RedisScanner;
+import org.seedstack.redis.RedisSemaphore;
+import org.seedstack.redis.RedisTemplate;
+import org.seedstack.redis.ShardedRedis;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Transaction;
+import redis.clients.jedis.commands.JedisCommands;
 
+import java.lang.reflect.Type;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 class RedisModule extends PrivateModule {
     private final Map<String, Class<? extends RedisExceptionHandler>> exceptionHandlerClasses;
     private final Map<String, JedisCluster> jedisClusters;
     private final Map<String, JedisPool> jediPools;
+    private final Map<String, ClusterTopology> clusterTopologies;
+    private final ExecutorService clusterExecutorService;
+    private final Map<String, RedisMetrics> redisMetrics;
+    private final RedisTransactionMetadataTable redisTransactionMetadataTable;
+    private final Map<String, ? extends AsyncRedis> asyncRedis;
+    private final Map<String, ? extends BatchingRedis> batchingRedis;
+    private final Map<String, ReplicaRouter> replicaRouters;
+    private final Map<String, ? extends ShardedRedis> shardedRedis;
+    private final BinaryCodec binaryCodec;
+    private final Map<Type, Class<? extends RedisCodec<?, ?>>> codecClasses;
+    private final Map<String, ? extends RedisBulkLoader> bulkLoaders;
+    private final Set<Class<?>> listenerClasses;
+    private final Map<Key<?>, LuaScript<?>> luaScripts;
+    private final Map<String, ? extends RedisRateLimiter> rateLimiters;
+    private final Map<String, ? extends RedisSemaphore> semaphores;
+    private final RedisContextCarrier contextCarrier;
+    private final CommandTracer commandTracer;
 
-    public RedisModule(Map<String, JedisPool> jedisPools, Map<String, Class<? extends RedisExceptionHandler>> exceptionHandlerClasses, Map<String, JedisCluster> jedisClusters) {
+    public RedisModule(Map<String, JedisPool> jedisPools, Map<String, Class<? extends RedisExceptionHandler>> exceptionHandlerClasses, Map<String, JedisCluster> jedisClusters, Map<String, ClusterTopology> clusterTopologies, ExecutorService clusterExecutorService, Map<String, RedisMetrics> redisMetrics, RedisTransactionMetadataTable redisTransactionMetadataTable, Map<String, ? extends AsyncRedis> asyncRedis, Map<String, ? extends BatchingRedis> batchingRedis, Map<String, ReplicaRouter> replicaRouters, Map<String, ? extends ShardedRedis> shardedRedis, BinaryCodec binaryCodec, Map<Type, Class<? extends RedisCodec<?, ?>>> codecClasses, Map<String, ? extends RedisBulkLoader> bulkLoaders, Set<Class<?>> listenerClasses, Map<Key<?>, LuaScript<?>> luaScripts, Map<String, ? extends RedisRateLimiter> rateLimiters, Map<String, ? extends RedisSemaphore> semaphores, RedisContextCarrier contextCarrier, CommandTracer commandTracer) {
         this.jediPools = jedisPools;
         this.exceptionHandlerClasses = exceptionHandlerClasses;
         this.jedisClusters = jedisClusters;
+        this.clusterTopologies = clusterTopologies;
+        this.clusterExecutorService = clusterExecutorService;
+        this.redisMetrics = redisMetrics;
+        this.redisTransactionMetadataTable = redisTransactionMetadataTable;
+        this.asyncRedis = asyncRedis;
+        this.batchingRedis = batchingRedis;
+        this.replicaRouters = replicaRouters;
+        this.shardedRedis = shardedRedis;
+        this.binaryCodec = binaryCodec;
+        this.codecClasses = codecClasses;
+        this.bulkLoaders = bulkLoaders;
+        this.listenerClasses = listenerClasses;
+        this.luaScripts = luaScripts;
+        this.rateLimiters = rateLimiters;
+        this.semaphores = semaphores;
+        this.contextCarrier = contextCarrier;
+        this.commandTracer = commandTracer;
     }
 
     @Override
     protected void configure() {
-        RedisLink<Transaction> transactionRedisLink = new RedisLink<>();
-        bind(Transaction.class).toInstance(TransactionalClassProxy.create(Transaction.class, transactionRedisLink));
+        bind(RedisTransactionMetadataTable.class).toInstance(redisTransactionMetadataTable);
+        expose(RedisTransactionMetadataTable.class);
 
-        RedisLink<Pipeline> pipelineRedisLink = new RedisLink<>();
-        bind(Pipeline.class).toInstance(TransactionalClassProxy.create(Pipeline.class, pipelineRedisLink));
+        codecClasses.values().forEach(this::bind);
+
+        for (Class<?> listenerClass : listenerClasses) {
+            bind(listenerClass);
+            expose(listenerClass);
+        }
+
+        bind(RedisContextManager.class).toInstance(new RedisContextManagerImpl(contextCarrier));
+        expose(RedisContextManager.class);
+
+        RedisLink<Transaction> transactionRedisLink = new RedisLink<>(contextCarrier);
+        bind(Transaction.class).toInstance(TracingProxy.forLink(Transaction.class, transactionRedisLink, commandTracer, false));
+
+        RedisLink<Pipeline> pipelineRedisLink = new RedisLink<>(contextCarrier);
+        bind(Pipeline.class).toInstance(TracingProxy.forLink(Pipeline.class, pipelineRedisLink, commandTracer, false));
+
+        RedisLink<Jedis> directRedisLink = new RedisLink<>(contextCarrier);
+        Jedis jedis = TracingProxy.forLink(Jedis.class, directRedisLink, commandTracer, true);
+        bind(Jedis.class).toInstance(jedis);
+        bind(JedisCommands.class).toInstance(jedis);
 
         jediPools.forEach((key, value) -> {
-            bindClient(key, value, transactionRedisLink, pipelineRedisLink);
+            bindClient(key, replicaRouters.get(key), transactionRedisLink, pipelineRedisLink, directRedisLink);
             bind(JedisPool.class).annotatedWith(Names.named(key)).toInstance(value);
             expose(JedisPool.class).annotatedWith(Names.named(key));
+            bind(RedisScanner.class).annotatedWith(Names.named(key)).toInstance(new ClientScanner(value, redisMetrics.get(key)));
+            expose(RedisScanner.class).annotatedWith(Names.named(key));
         });
 
         expose(Transaction.class);
         expose(Pipeline.class);
+        expose(Jedis.class);
+        expose(JedisCommands.class);
+
+        RedisLink<RedisClusterPipeline> clusterPipelineRedisLink = new RedisLink<>(contextCarrier);
+        bind(RedisClusterPipeline.class).toInstance(TracingProxy.forLink(RedisClusterPipeline.class, clusterPipelineRedisLink, commandTracer, false));
 
         jedisClusters.forEach((key, value) -> {
+            bindCluster(key, clusterTopologies.get(key), transactionRedisLink, clusterPipelineRedisLink);
             bind(JedisCluster.class).annotatedWith(Names.named(key)).toInstance(value);
             expose(JedisCluster.class).annotatedWith(Names.named(key));
+            bind(RedisScanner.class).annotatedWith(Names.named(key)).toInstance(new ClusterScanner(clusterTopologies.get(key)));
+            expose(RedisScanner.class).annotatedWith(Names.named(key));
+        });
+
+        expose(RedisClusterPipeline.class);
+
+        bulkLoaders.forEach((key, value) -> {
+            bind(RedisBulkLoader.class).annotatedWith(Names.named(key)).toInstance(value);
+            expose(RedisBulkLoader.class).annotatedWith(Names.named(key));
+        });
+
+        shardedRedis.forEach((key, value) -> {
+            bind(ShardedRedis.class).annotatedWith(Names.named(key)).toInstance(value);
+            expose(ShardedRedis.class).annotatedWith(Names.named(key));
+        });
+
+        luaScripts.forEach(this::bindLuaScript);
+
+        rateLimiters.forEach((key, value) -> {
+            bind(RedisRateLimiter.class).annotatedWith(Names.named(key)).toInstance(value);
+            expose(RedisRateLimiter.class).annotatedWith(Names.named(key));
+        });
+
+        semaphores.forEach((key, value) -> {
+            bind(RedisSemaphore.class).annotatedWith(Names.named(key)).toInstance(value);
+            expose(RedisSemaphore.class).annotatedWith(Names.named(key));
         });
     }
 
-    private void bindClient(String name, JedisPool jedisPool, RedisLink<Transaction> transactionRedisLink, RedisLink<Pipeline> pipelineRedisLink) {
+    private void bindClient(String name, ReplicaRouter replicaRouter, RedisLink<Transaction> transactionRedisLink, RedisLink<Pipeline> pipelineRedisLink, RedisLink<Jedis> directRedisLink) {
+        bindExceptionHandler(name);
+        RedisMetrics metrics = redisMetrics.get(name);
+
+        RedisTransactionHandler redisTransactionHandler = new RedisTransactionHandler(transactionRedisLink, replicaRouter, metrics);
+        bind(RedisTransactionHandler.class).annotatedWith(Names.named(name)).toInstance(redisTransactionHandler);
+
+        RedisPipelinedTransactionHandler redisPipelinedTransactionHandler = new RedisPipelinedTransactionHandler(pipelineRedisLink, replicaRouter, metrics);
+        bind(RedisPipelinedTransactionHandler.class).annotatedWith(Names.named(name)).toInstance(redisPipelinedTransactionHandler);
+
+        RedisDirectTransactionHandler redisDirectTransactionHandler = new RedisDirectTransactionHandler(directRedisLink, replicaRouter, metrics);
+        bind(RedisDirectTransactionHandler.class).annotatedWith(Names.named(name)).toInstance(redisDirectTransactionHandler);
+
+        expose(RedisTransactionHandler.class).annotatedWith(Names.named(name));
+        expose(RedisPipelinedTransactionHandler.class).annotatedWith(Names.named(name));
+        expose(RedisDirectTransactionHandler.class).annotatedWith(Names.named(name));
+
+        bind(AsyncRedis.class).annotatedWith(Names.named(name)).toInstance(asyncRedis.get(name));
+        expose(AsyncRedis.class).annotatedWith(Names.named(name));
+
+        bind(BatchingRedis.class).annotatedWith(Names.named(name)).toInstance(batchingRedis.get(name));
+        expose(BatchingRedis.class).annotatedWith(Names.named(name));
+
+        bindTemplates(name, jediPools.get(name), metrics);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void bindTemplates(String name, JedisPool jedisPool, RedisMetrics metrics) {
+        Type defaultTemplateType = Types.newParameterizedType(RedisTemplate.class, String.class, Object.class);
+        if (!codecClasses.containsKey(defaultTemplateType)) {
+            Key<RedisTemplate<String, Object>> key = (Key<RedisTemplate<String, Object>>) Key.get(defaultTemplateType, Names.named(name));
+            bind(key).toInstance(new RedisTemplateImpl<>(jedisPool, binaryCodec, metrics));
+            expose(key);
+        }
+        codecClasses.forEach((templateType, codecClass) -> {
+            Key<RedisTemplate<?, ?>> key = (Key<RedisTemplate<?, ?>>) Key.get(templateType, Names.named(name));
+            bind(key).toProvider(new RedisTemplateProvider(jedisPool, codecClass, metrics)).in(Scopes.SINGLETON);
+            expose(key);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void bindLuaScript(Key<?> key, LuaScript<?> luaScript) {
+        bind((Key<Object>) key).toInstance(luaScript);
+        expose(key);
+    }
+
+    private void bindCluster(String name, ClusterTopology clusterTopology, RedisLink<Transaction> transactionRedisLink, RedisLink<RedisClusterPipeline> clusterPipelineRedisLink) {
+        bindExceptionHandler(name);
+
+        RedisClusterTransactionHandler redisClusterTransactionHandler = new RedisClusterTransactionHandler(transactionRedisLink, clusterTopology, redisMetrics.get(name));
+        bind(RedisClusterTransactionHandler.class).annotatedWith(Names.named(name)).toInstance(redisClusterTransactionHandler);
+
+        RedisClusterPipelinedTransactionHandler redisClusterPipelinedTransactionHandler = new RedisClusterPipelinedTransactionHandler(clusterPipelineRedisLink, clusterTopology, clusterExecutorService, redisMetrics.get(name));
+        bind(RedisClusterPipelinedTransactionHandler.class).annotatedWith(Names.named(name)).toInstance(redisClusterPipelinedTransactionHandler);
+
+        expose(RedisClusterPipelinedTransactionHandler.class).annotatedWith(Names.named(name));
+        expose(RedisClusterTransactionHandler.class).annotatedWith(Names.named(name));
+    }
+
+    private static class RedisTemplateProvider implements Provider<RedisTemplate<?, ?>> {
+        private final JedisPool jedisPool;
+        private final Class<? extends RedisCodec<?, ?>> codecClass;
+        private final RedisMetrics redisMetrics;
+        @Inject
+        private Injector injector;
+
+        private RedisTemplateProvider(JedisPool jedisPool, Class<? extends RedisCodec<?, ?>> codecClass, RedisMetrics redisMetrics) {
+            this.jedisPool = jedisPool;
+            this.codecClass = codecClass;
+            this.redisMetrics = redisMetrics;
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public RedisTemplate<?, ?> get() {
+            return new RedisTemplateImpl(jedisPool, injector.getInstance(codecClass), redisMetrics);
+        }
+    }
+
+    private void bindExceptionHandler(String name) {
         Class<? extends RedisExceptionHandler> exceptionHandlerClass = exceptionHandlerClasses.get(name);
 
         if (exceptionHandlerClass != null) {
@@ -62,14 +251,6 @@ class RedisModule extends PrivateModule {
             bind(RedisExceptionHandler.class).annotatedWith(Names.named(name)).toProvider(Providers.<RedisExceptionHandler>of(null));
         }
 
-        RedisTransactionHandler redisTransactionHandler = new RedisTransactionHandler(transactionRedisLink, jedisPool);
-        bind(RedisTransactionHandler.class).annotatedWith(Names.named(name)).toInstance(redisTransactionHandler);
-
-        RedisPipelinedTransactionHandler redisPipelinedTransactionHandler = new RedisPipelinedTransactionHandler(pipelineRedisLink, jedisPool);
-        bind(RedisPipelinedTransactionHandler.class).annotatedWith(Names.named(name)).toInstance(redisPipelinedTransactionHandler);
-
         expose(RedisExceptionHandler.class).annotatedWith(Names.named(name));
-        expose(RedisTransactionHandler.class).annotatedWith(Names.named(name));
-        expose(RedisPipelinedTransactionHandler.class).annotatedWith(Names.named(name));
     }
 }
@@ -8,29 +8,46 @@
 package org.seedstack.redis.internal;
 
 import org.seedstack.seed.transaction.spi.TransactionMetadata;
-import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Pipeline;
 
 
 class RedisPipelinedTransactionHandler implements org.seedstack.seed.transaction.spi.TransactionHandler<Pipeline> {
+    static final String ATOMIC = "redis.pipeline.atomic";
+    static final String FLUSH_THRESHOLD = "redis.pipeline.flushThreshold";
+    static final String FIRE_AND_FORGET = "redis.pipeline.fireAndForget";
     private final RedisLink<Pipeline> redisLink;
-    private final JedisPool jedisPool;
+    private final ReplicaRouter replicaRouter;
+    private final RedisMetrics redisMetrics;
 
-    RedisPipelinedTransactionHandler(RedisLink<Pipeline> redisLink, JedisPool jedisPool) {
+    RedisPipelinedTransactionHandler(RedisLink<Pipeline> redisLink, ReplicaRouter replicaRouter, RedisMetrics redisMetrics) {
         this.redisLink = redisLink;
-        this.jedisPool = jedisPool;
+        this.replicaRouter = replicaRouter;
+        this.redisMetrics = redisMetrics;
     }
 
     @Override
     public void doInitialize(TransactionMetadata transactionMetadata) {
-        this.redisLink.push(this.jedisPool.getResource());
+        this.redisLink.push(this.replicaRouter.borrow(this.redisMetrics, transactionMetadata), transactionMetadata);
     }
 
     @Override
     public Pipeline doCreateTransaction() {
         RedisLink<Pipeline>.Holder holder = this.redisLink.getHolder();
-        Pipeline pipeline = holder.getJedis().pipelined();
-        pipeline.multi();
+        TransactionMetadata transactionMetadata = holder.getTransactionMetadata();
+        Pipeline pipeline;
+        if (isFireAndForget(transactionMetadata)) {
+            pipeline = new FireAndForgetPipeline(holder.getJedis().getClient());
+        } else if (isAtomic(transactionMetadata)) {
+            pipeline = holder.getJedis().pipelined();
+            pipeline.multi();
+        } else {
+            int flushThreshold = getFlushThreshold(transactionMetadata);
+            if (flushThreshold > 0) {
+                pipeline = FlushingPipeline.pipelined(holder.getJedis(), flushThreshold);
+            } else {
+                pipeline = holder.getJedis().pipelined();
+            }
+        }
         holder.setTransaction(pipeline);
         return pipeline;
     }
@@ -42,12 +59,19 @@ class RedisPipelinedTransactionHandler implements org.seedstack.seed.transaction
 
     @Override
     public void doBeginTransaction(Pipeline currentTransaction) {
-        // nothing to do (transaction already began)
+        this.redisLink.getHolder().setBeginNanos(System.nanoTime());
     }
 
     @Override
     public void doCommitTransaction(Pipeline currentTransaction) {
-        currentTransaction.exec();
+        RedisLink<Pipeline>.Holder holder = this.redisLink.getHolder();
+        this.redisMetrics.commit(holder.getTransactionMetadata(), holder.getBeginNanos(), () -> {
+            if (currentTransaction.isInMulti()) {
+                currentTransaction.exec();
+            } else {
+                currentTransaction.sync();
+            }
+        });
     }
 
     @Override
@@ -57,6 +81,7 @@ class RedisPipelinedTransactionHandler implements org.seedstack.seed.transaction
 
     @Override
     public void doRollbackTransaction(Pipeline currentTransaction) {
+        this.redisMetrics.recordRollback();
         currentTransaction.clear();
     }
 
@@ -67,7 +92,7 @@ class RedisPipelinedTransactionHandler implements org.seedstack.seed.transaction
 
     @Override
     public void doCleanup() {
-        this.redisLink.pop().close();
+        this.replicaRouter.release(this.redisLink.pop());
     }
 
     @Override
@@ -80,4 +105,17 @@ class RedisPipelinedTransactionHandler implements org.seedstack.seed.transaction
             return holder.getTransaction();
         }
     }
+
+    private boolean isAtomic(TransactionMetadata transactionMetadata) {
+        return transactionMetadata == null || !Boolean.FALSE.equals(transactionMetadata.getMetadata(ATOMIC));
+    }
+
+    private boolean isFireAndForget(TransactionMetadata transactionMetadata) {
+        return transactionMetadata != null && Boolean.TRUE.equals(transactionMetadata.getMetadata(FIRE_AND_FORGET));
+    }
+
+    private int getFlushThreshold(TransactionMetadata transactionMetadata) {
+        Object flushThreshold = transactionMetadata == null ? null : transactionMetadata.getMetadata(FLUSH_THRESHOLD);
+        return flushThreshold instanceof Integer ? (Integer) flushThreshold : 0;
+    }
 }
@@ -7,34 +7,100 @@
  */
 package org.seedstack.redis.internal;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import com.google.inject.util.Types;
 import io.nuun.kernel.api.plugin.InitState;
+import io.nuun.kernel.api.plugin.context.Context;
 import io.nuun.kernel.api.plugin.context.InitContext;
 import io.nuun.kernel.api.plugin.request.ClasspathScanRequest;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.seedstack.redis.LuaScript;
+import org.seedstack.redis.RedisCodec;
 import org.seedstack.redis.RedisConfig;
+import org.seedstack.redis.RedisContextCarrier;
 import org.seedstack.redis.RedisExceptionHandler;
+import org.seedstack.redis.RedisTemplate;
 import org.seedstack.seed.SeedException;
+import org.seedstack.seed.core.SeedRuntime;
 import org.seedstack.seed.core.internal.AbstractSeedPlugin;
 import org.seedstack.seed.crypto.spi.SSLProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.DefaultJedisClientConfig;
 import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
 
+import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocketFactory;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class RedisPlugin extends AbstractSeedPlugin {
     private static final Logger LOGGER = LoggerFactory.getLogger(RedisPlugin.class);
+    private static final Class<?>[] CLUSTER_CONSTRUCTOR_TYPES = {
+            Set.class, JedisClientConfig.class, int.class, GenericObjectPoolConfig.class
+    };
     private final Map<String, JedisPool> jedisPools = new HashMap<>();
     private final Map<String, JedisCluster> jedisClusters = new HashMap<>();
+    private final Map<String, ClusterTopology> clusterTopologies = new HashMap<>();
     private final Map<String, Class<? extends RedisExceptionHandler>> exceptionHandlerClasses = new HashMap<String, Class<? extends RedisExceptionHandler>>();
+    private final Map<String, RedisMetrics> redisMetrics = new HashMap<>();
+    private final Map<String, NearCache> nearCaches = new HashMap<>();
+    private final Map<String, AsyncRedisImpl> asyncRedis = new HashMap<>();
+    private final Map<String, BatchingRedisImpl> batchingRedis = new HashMap<>();
+    private final Map<String, ReplicaRouter> replicaRouters = new HashMap<>();
+    private final Map<String, ShardedRedisImpl> shardedRedis = new HashMap<>();
+    private final Map<String, AbstractBulkLoader> bulkLoaders = new HashMap<>();
+    private final Map<String, RedisListenerContainer> listenerContainers = new HashMap<>();
+    private final Set<Class<?>> listenerClasses = new HashSet<>();
+    private final Map<Key<?>, LuaScript<?>> luaScripts = new HashMap<>();
+    private final Map<String, RedisRateLimiterImpl> rateLimiters = new HashMap<>();
+    private final Map<String, RedisSemaphoreImpl> semaphores = new HashMap<>();
+    private RedisContextCarrier contextCarrier;
+    private CommandTracer commandTracer;
+    private final Map<String, BorrowGuard> borrowGuards = new HashMap<>();
+    private ScheduledExecutorService adaptiveExecutorService;
+    private final List<ObjectName> registeredMBeans = new ArrayList<>();
+    private final Map<Type, Class<? extends RedisCodec<?, ?>>> codecClasses = new HashMap<>();
+    private ExecutorService clusterExecutorService;
+    private ExecutorService shardedExecutorService;
+    private RedisTransactionMetadataTable redisTransactionMetadataTable;
+    private BinaryCodec binaryCodec;
+    @Inject
+    private Injector injector;
 
     @Override
     public String name() {
@@ -46,63 +112,258 @@ public class RedisPlugin extends AbstractSeedPlugin {
         return Lists.newArrayList(SSLProvider.class);
     }
 
+    @Override
+    protected void setup(SeedRuntime seedRuntime) {
+        seedRuntime.getDiagnosticManager().registerDiagnosticInfoCollector("redis", this::collectDiagnosticInfo);
+    }
+
     @Override
     public Collection<ClasspathScanRequest> classpathScanRequests() {
         return classpathScanRequestBuilder()
                 .subtypeOf(RedisExceptionHandler.class)
+                .subtypeOf(RedisCodec.class)
+                .predicate(RedisTransactionMetadataTable.REDIS_ANNOTATED)
+                .predicate(RedisListenerMethod.LISTENER_ANNOTATED)
+                .predicate(LuaScriptRegistry.SCRIPT_ANNOTATED)
                 .build();
     }
 
     @Override
     public InitState initialize(InitContext initContext) {
         RedisConfig redisConfig = getConfiguration(RedisConfig.class);
+        contextCarrier = createContextCarrier(redisConfig.getContextCarrier());
+        redisTransactionMetadataTable = new RedisTransactionMetadataTable(
+                redisConfig,
+                initContext.scannedTypesByPredicate().getOrDefault(RedisTransactionMetadataTable.REDIS_ANNOTATED, Collections.emptySet())
+        );
+        LOGGER.debug("Precomputed Redis transaction metadata of {} method(s)", redisTransactionMetadataTable.size());
+        binaryCodec = new BinaryCodec(redisConfig.getCodec().getCompressionThreshold());
+        detectCodecs(initContext.scannedSubTypesByParentClass().getOrDefault(RedisCodec.class, Collections.emptySet()));
 
-        if (redisConfig.getClients().isEmpty() && redisConfig.getClusters().isEmpty()) {
-            LOGGER.info("No Redis client or cluster configured, Redis support disabled");
+        if (redisConfig.getClients().isEmpty() && redisConfig.getClusters().isEmpty() && redisConfig.getShardedClients().isEmpty()) {
+            LOGGER.info("No Redis client, cluster or sharded client configured, Redis support disabled");
             return InitState.INITIALIZED;
         }
 
-        for (Map.Entry<String, RedisConfig.ClientConfig> clientEntry : redisConfig.getClients().entrySet()) {
-            String clientName = clientEntry.getKey();
-            RedisConfig.ClientConfig clientConfig = clientEntry.getValue();
+        RedisCacheBackends.setCodec(binaryCodec);
+        if (redisConfig.getTracing().isEnabled()) {
+            LOGGER.info("Enabling Redis command tracing with a sample rate of {}", redisConfig.getTracing().getSampleRate());
+            commandTracer = new CommandTracer(redisConfig.getTracing());
+        }
+        if (!Strings.isNullOrEmpty(redisConfig.getDefaultClient())) {
+            RedisCacheBackends.setDefaultName(redisConfig.getDefaultClient());
+        } else if (redisConfig.getClients().size() + redisConfig.getClusters().size() == 1) {
+            RedisCacheBackends.setDefaultName(redisConfig.getClients().isEmpty()
+                    ? redisConfig.getClusters().keySet().iterator().next()
+                    : redisConfig.getClients().keySet().iterator().next());
+        }
 
-            Class<? extends RedisExceptionHandler> exceptionHandlerClass = clientConfig.getExceptionHandler();
-            if (exceptionHandlerClass != null) {
-                exceptionHandlerClasses.put(clientName, exceptionHandlerClass);
+        try (RedisWarmUp warmUp = new RedisWarmUp(redisConfig.getWarmUp())) {
+            SSLProvider sslProvider = initContext.dependency(SSLProvider.class);
+
+            // cluster creation performs the topology handshakes so it is started first and runs concurrently
+            Map<String, Future<JedisCluster>> clusterFutures = new LinkedHashMap<>();
+            for (Map.Entry<String, RedisConfig.ClusterConfig> clusterEntry : redisConfig.getClusters().entrySet()) {
+                LOGGER.info("Creating Jedis Cluster {}", clusterEntry.getKey());
+                clusterFutures.put(clusterEntry.getKey(), warmUp.submit(() -> createJedisCluster(clusterEntry.getValue(), sslProvider)));
             }
 
-            try {
-                LOGGER.info("Creating Jedis Pool for client {}", clientName);
-                jedisPools.put(clientName, createJedisPool(clientConfig, initContext.dependency(SSLProvider.class)));
-            } catch (Exception e) {
-                throw SeedException.wrap(e, RedisErrorCode.UNABLE_TO_CREATE_CLIENT).put("clientName", clientName);
+            for (Map.Entry<String, RedisConfig.ClientConfig> clientEntry : redisConfig.getClients().entrySet()) {
+                String clientName = clientEntry.getKey();
+                RedisConfig.ClientConfig clientConfig = clientEntry.getValue();
+
+                Class<? extends RedisExceptionHandler> exceptionHandlerClass = clientConfig.getExceptionHandler();
+                if (exceptionHandlerClass != null) {
+                    exceptionHandlerClasses.put(clientName, exceptionHandlerClass);
+                }
+
+                try {
+                    LOGGER.info("Creating Jedis Pool for client {}", clientName);
+                    BudgetedJedisPool jedisPool = createJedisPool(clientName, clientConfig, clientConfig.getPoolConfig(), sslProvider);
+                    jedisPools.put(clientName, jedisPool);
+                    warmUp.addPool("client " + clientName, jedisPool, clientConfig.getPoolConfig().getMinIdle());
+                    Map<String, BudgetedJedisPool> replicaPools = new LinkedHashMap<>();
+                    for (URI replicaUri : clientConfig.getReplicas().getUris()) {
+                        String replicaName = replicaUri.getHost() + ":" + replicaUri.getPort();
+                        LOGGER.info("Creating Jedis Pool for replica {} of client {}", replicaName, clientName);
+                        BudgetedJedisPool replicaPool = createPlainJedisPool(replicaUri, clientConfig, clientConfig.getPoolConfig(), sslProvider);
+                        replicaPools.put(replicaName, replicaPool);
+                        warmUp.addPool("replica " + replicaName + " of client " + clientName, replicaPool, clientConfig.getPoolConfig().getMinIdle());
+                    }
+                    BorrowGuard borrowGuard = new BorrowGuard(clientName, clientConfig.getBorrow(), jedisPool);
+                    borrowGuards.put(clientName, borrowGuard);
+                    replicaRouters.put(clientName, new ReplicaRouter(clientName, jedisPool, replicaPools, clientConfig.getReplicas(), borrowGuard));
+                    RedisMetrics clientMetrics = registerMetrics("Client", new RedisMetrics(clientName, () -> getClientPools(clientName)));
+                    asyncRedis.put(clientName, new AsyncRedisImpl(
+                            clientName,
+                            clientConfig.getAsync(),
+                            () -> createJedisPool(clientName, clientConfig, createAsyncPoolConfig(clientConfig), sslProvider),
+                            clientMetrics
+                    ));
+                    batchingRedis.put(clientName, new BatchingRedisImpl(clientName, clientConfig.getBatching(), jedisPool, clientMetrics));
+                    RedisCacheBackends.register(clientName, RedisCacheBackends.forPool(jedisPool, clientMetrics));
+                    bulkLoaders.put(clientName, new ClientBulkLoader(clientName, clientConfig.getBulkLoad().getWindow(), jedisPool, clientMetrics));
+                } catch (Exception e) {
+                    throw SeedException.wrap(e, RedisErrorCode.UNABLE_TO_CREATE_CLIENT).put("clientName", clientName);
+                }
             }
-        }
 
-        for (Map.Entry<String, RedisConfig.ClusterConfig> clusterEntry : redisConfig.getClusters().entrySet()) {
-            String clusterName = clusterEntry.getKey();
-            try {
-                LOGGER.info("Creating Jedis Cluster {}", clusterName);
-                JedisCluster jedisCluster = createJedisCluster(clusterEntry.getValue(), initContext.dependency(SSLProvider.class));
-                if (jedisCluster.getClusterNodes().isEmpty()) {
-                    LOGGER.warn("Unable to connect to any node of the cluster {} at startup", clusterName);
+            if (!redisConfig.getShardedClients().isEmpty()) {
+                shardedExecutorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                        .setNameFormat("redis-sharded-%d")
+                        .setDaemon(true)
+                        .build());
+            }
+
+            for (Map.Entry<String, RedisConfig.ShardedClientConfig> shardedEntry : redisConfig.getShardedClients().entrySet()) {
+                String shardedName = shardedEntry.getKey();
+                RedisConfig.ShardedClientConfig shardedConfig = shardedEntry.getValue();
+                try {
+                    LOGGER.info("Creating {} Jedis Pool(s) for sharded client {}", shardedConfig.getUris().size(), shardedName);
+                    List<JedisPool> shardPools = new ArrayList<>();
+                    for (URI shardUri : shardedConfig.getUris()) {
+                        JedisPool shardPool = createPlainJedisPool(shardUri, shardedConfig, shardedConfig.getPoolConfig(), sslProvider);
+                        shardPools.add(shardPool);
+                        warmUp.addPool("shard " + shardUri.getHost() + ":" + shardUri.getPort() + " of sharded client " + shardedName,
+                                shardPool, shardedConfig.getPoolConfig().getMinIdle());
+                    }
+                    RedisMetrics shardedMetrics = registerMetrics("Sharded", new RedisMetrics(shardedName, () -> shardPools));
+                    shardedRedis.put(shardedName, new ShardedRedisImpl(shardPools, shardedExecutorService, shardedMetrics));
+                } catch (Exception e) {
+                    throw SeedException.wrap(e, RedisErrorCode.UNABLE_TO_CREATE_CLIENT).put("clientName", shardedName);
                 }
-                jedisClusters.put(clusterName, jedisCluster);
-            } catch (Exception e) {
-                throw SeedException.wrap(e, RedisErrorCode.UNABLE_TO_CREATE_CLIENT).put("clusterName", clusterName);
             }
+
+            if (!redisConfig.getClusters().isEmpty()) {
+                clusterExecutorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                        .setNameFormat("redis-cluster-%d")
+                        .setDaemon(true)
+                        .build());
+            }
+
+            for (Map.Entry<String, Future<JedisCluster>> clusterFuture : clusterFutures.entrySet()) {
+                String clusterName = clusterFuture.getKey();
+                RedisConfig.ClusterConfig clusterConfig = redisConfig.getClusters().get(clusterName);
+                try {
+                    JedisCluster jedisCluster = warmUp.await(clusterFuture.getValue());
+                    if (jedisCluster.getClusterNodes().isEmpty()) {
+                        LOGGER.warn("Unable to connect to any node of the cluster {} at startup", clusterName);
+                    }
+                    jedisClusters.put(clusterName, jedisCluster);
+                    jedisCluster.getClusterNodes().forEach((node, nodePool) ->
+                            warmUp.addPool("cluster " + clusterName + " node " + node, nodePool, clusterConfig.getPoolConfig().getMinIdle()));
+                    RedisMetrics clusterMetrics = registerMetrics("Cluster", new RedisMetrics(clusterName, () -> jedisCluster.getClusterNodes().values()));
+                    ClusterTopology clusterTopology = new ClusterTopology(clusterName, jedisCluster, clusterConfig.getMaxAttempts(), clusterMetrics);
+                    clusterTopologies.put(clusterName, clusterTopology);
+                    RedisCacheBackends.register(clusterName, RedisCacheBackends.forCluster(clusterTopology, clusterExecutorService));
+                    bulkLoaders.put(clusterName, new ClusterBulkLoader(clusterName, clusterConfig.getBulkLoad().getWindow(), clusterTopology, clusterExecutorService));
+                } catch (Exception e) {
+                    throw SeedException.wrap(e, RedisErrorCode.UNABLE_TO_CREATE_CLIENT).put("clusterName", clusterName);
+                }
+            }
+
+            Map<String, List<RedisListenerMethod>> listenerMethods = RedisListenerMethod.detect(
+                    initContext.scannedTypesByPredicate().getOrDefault(RedisListenerMethod.LISTENER_ANNOTATED, Collections.emptySet()),
+                    redisConfig.getClients().keySet(),
+                    redisConfig.getDefaultClient()
+            ).stream().collect(Collectors.groupingBy(RedisListenerMethod::getClient));
+            listenerMethods.forEach((clientName, clientListenerMethods) -> {
+                clientListenerMethods.forEach(listenerMethod -> listenerClasses.add(listenerMethod.getListenerClass()));
+                RedisConfig.ClientConfig clientConfig = redisConfig.getClients().get(clientName);
+                LOGGER.info("Creating listener Jedis pool for {} listener(s) of client {}", clientListenerMethods.size(), clientName);
+                listenerContainers.put(clientName, new RedisListenerContainer(
+                        clientName,
+                        clientConfig.getListeners(),
+                        createPlainJedisPool(clientConfig.getUri(), clientConfig, createListenerPoolConfig(clientConfig, clientListenerMethods), sslProvider),
+                        clientListenerMethods
+                ));
+            });
+
+            warmUp.complete();
         }
 
+        borrowGuards.forEach((clientName, borrowGuard) -> {
+            if (borrowGuard.isAdaptive()) {
+                if (adaptiveExecutorService == null) {
+                    adaptiveExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                            .setNameFormat("redis-adaptive-%d")
+                            .setDaemon(true)
+                            .build());
+                }
+                LOGGER.info("Enabling adaptive pool sizing for client {}", clientName);
+                adaptiveExecutorService.scheduleWithFixedDelay(borrowGuard::adapt, borrowGuard.getAdaptiveInterval(), borrowGuard.getAdaptiveInterval(), TimeUnit.MILLISECONDS);
+            }
+        });
+
+        LuaScriptRegistry luaScriptRegistry = new LuaScriptRegistry(jedisPools, redisMetrics, clusterTopologies, redisConfig.getDefaultClient());
+        luaScriptRegistry.register(initContext.scannedTypesByPredicate().getOrDefault(LuaScriptRegistry.SCRIPT_ANNOTATED, Collections.emptySet()));
+        redisConfig.getClients().forEach((clientName, clientConfig) ->
+                createLimiters(luaScriptRegistry, clientName, clientConfig.getRateLimiters(), clientConfig.getSemaphores()));
+        redisConfig.getClusters().forEach((clusterName, clusterConfig) ->
+                createLimiters(luaScriptRegistry, clusterName, clusterConfig.getRateLimiters(), clusterConfig.getSemaphores()));
+        luaScriptRegistry.preload();
+        luaScripts.putAll(luaScriptRegistry.getBindings());
+
         return InitState.INITIALIZED;
     }
 
     @Override
     public Object nativeUnitModule() {
-        return new RedisModule(jedisPools, exceptionHandlerClasses, jedisClusters);
+        return new RedisModule(jedisPools, exceptionHandlerClasses, jedisClusters, clusterTopologies, clusterExecutorService, redisMetrics, redisTransactionMetadataTable, asyncRedis, batchingRedis, replicaRouters, shardedRedis, binaryCodec, codecClasses, bulkLoaders, listenerClasses, luaScripts, rateLimiters, semaphores, contextCarrier, commandTracer);
+    }
+
+    @Override
+    public void start(Context context) {
+        listenerContainers.values().forEach(listenerContainer -> listenerContainer.start(injector::getInstance));
     }
 
     @Override
     public void stop() {
+        listenerContainers.forEach((key, value) -> {
+            LOGGER.info("Stopping {} listeners", key);
+            value.stop();
+        });
+
+        RedisCacheBackends.clear();
+
+        if (adaptiveExecutorService != null) {
+            LOGGER.info("Shutting down adaptive pool sizing");
+            adaptiveExecutorService.shutdownNow();
+        }
+
+        batchingRedis.forEach((key, value) -> {
+            LOGGER.info("Shutting down {} batching executor", key);
+            value.close();
+        });
+
+        asyncRedis.forEach((key, value) -> {
+            LOGGER.info("Shutting down {} asynchronous facade", key);
+            try {
+                value.close();
+            } catch (Exception e) {
+                LOGGER.error(String.format("Unable to properly close %s asynchronous facade", key), e);
+            }
+        });
+
+        nearCaches.forEach((key, value) -> {
+            LOGGER.info("Stopping {} near cache", key);
+            value.stop();
+        });
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registeredMBeans) {
+            try {
+                mBeanServer.unregisterMBean(objectName);
+            } catch (JMException e) {
+                LOGGER.warn("Unable to unregister Redis MBean {}", objectName, e);
+            }
+        }
+
+        replicaRouters.forEach((key, value) -> {
+            LOGGER.info("Shutting down {} replica Jedis pools", key);
+            value.close();
+        });
+
         jedisPools.forEach((key, value) -> {
             LOGGER.info("Shutting down {} Jedis pool", key);
             try {
@@ -112,6 +373,17 @@ public class RedisPlugin extends AbstractSeedPlugin {
             }
         });
 
+        shardedRedis.forEach((key, value) -> {
+            LOGGER.info("Shutting down {} sharded Jedis pools", key);
+            for (JedisPool shardPool : value.getShardPools()) {
+                try {
+                    shardPool.close();
+                } catch (Exception e) {
+                    LOGGER.error(String.format("Unable to properly close %s sharded Jedis pool", key), e);
+                }
+            }
+        });
+
         jedisClusters.forEach((key, value) -> {
             LOGGER.info("Shutting down {} Jedis cluster", key);
             try {
@@ -120,32 +392,229 @@ public class RedisPlugin extends AbstractSeedPlugin {
                 LOGGER.error(String.format("Unable to properly close %s Jedis cluster", key), e);
             }
         });
+
+        if (clusterExecutorService != null) {
+            clusterExecutorService.shutdownNow();
+        }
+
+        if (shardedExecutorService != null) {
+            shardedExecutorService.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void detectCodecs(Collection<Class<?>> candidates) {
+        for (Class<?> candidate : candidates) {
+            if (candidate.isInterface() || Modifier.isAbstract(candidate.getModifiers()) || BinaryCodec.class.equals(candidate)) {
+                continue;
+            }
+            Type codecType = TypeLiteral.get(candidate).getSupertype(RedisCodec.class).getType();
+            if (!(codecType instanceof ParameterizedType) || !isResolved((ParameterizedType) codecType)) {
+                LOGGER.warn("Ignoring Redis codec {} since its key and value types cannot be resolved", candidate.getName());
+                continue;
+            }
+            Type[] typeArguments = ((ParameterizedType) codecType).getActualTypeArguments();
+            Type templateType = Types.newParameterizedType(RedisTemplate.class, typeArguments[0], typeArguments[1]);
+            Class<? extends RedisCodec<?, ?>> existing = codecClasses.putIfAbsent(templateType, (Class<? extends RedisCodec<?, ?>>) candidate);
+            if (existing != null) {
+                throw SeedException.createNew(RedisErrorCode.CONFLICTING_REDIS_CODECS)
+                        .put("codec1", existing.getName())
+                        .put("codec2", candidate.getName())
+                        .put("templateType", templateType.getTypeName());
+            }
+            LOGGER.debug("Detected Redis codec {} for {}", candidate.getName(), templateType.getTypeName());
+        }
+    }
+
+    private boolean isResolved(ParameterizedType parameterizedType) {
+        for (Type typeArgument : parameterizedType.getActualTypeArguments()) {
+            if (typeArgument instanceof TypeVariable || typeArgument instanceof WildcardType) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private RedisMetrics registerMetrics(String type, RedisMetrics metrics) {
+        redisMetrics.put(metrics.getName(), metrics);
+        registerMBean(type, metrics.getName(), metrics);
+        return metrics;
+    }
+
+    private void registerMBean(String type, String name, Object mBean) {
+        try {
+            ObjectName objectName = new ObjectName(String.format("org.seedstack.redis:type=%s,name=%s", type, ObjectName.quote(name)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mBean, objectName);
+            registeredMBeans.add(objectName);
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register Redis {} MBean for {}", type, name, e);
+        }
+    }
+
+    private void createLimiters(LuaScriptRegistry luaScriptRegistry, String target, Map<String, RedisConfig.RateLimiterConfig> rateLimiterConfigs, Map<String, RedisConfig.SemaphoreConfig> semaphoreConfigs) {
+        rateLimiterConfigs.forEach((name, rateLimiterConfig) -> {
+            if (rateLimiters.containsKey(name)) {
+                throw SeedException.createNew(RedisErrorCode.DUPLICATE_REDIS_LIMITER)
+                        .put("kind", "rate limiter")
+                        .put("name", name)
+                        .put("target", target);
+            }
+            LOGGER.info("Creating {} rate limiter {} of {} permit(s) per {} ms on {}", rateLimiterConfig.getAlgorithm(), name, rateLimiterConfig.getLimit(), rateLimiterConfig.getPeriod(), target);
+            rateLimiters.put(name, new RedisRateLimiterImpl(name, rateLimiterConfig,
+                    luaScriptRegistry.getBuiltInScript(target, RedisRateLimiterImpl.getScriptLocation(rateLimiterConfig))));
+        });
+        semaphoreConfigs.forEach((name, semaphoreConfig) -> {
+            if (semaphores.containsKey(name)) {
+                throw SeedException.createNew(RedisErrorCode.DUPLICATE_REDIS_LIMITER)
+                        .put("kind", "semaphore")
+                        .put("name", name)
+                        .put("target", target);
+            }
+            LOGGER.info("Creating semaphore {} of {} permit(s) on {}", name, semaphoreConfig.getPermits(), target);
+            semaphores.put(name, new RedisSemaphoreImpl(name, semaphoreConfig,
+                    luaScriptRegistry.getBuiltInScript(target, RedisSemaphoreImpl.SCRIPT)));
+        });
+    }
+
+    private Map<String, Object> collectDiagnosticInfo() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        redisMetrics.forEach((key, value) -> {
+            Map<String, Object> info = value.collect();
+            NearCache nearCache = nearCaches.get(key);
+            if (nearCache != null) {
+                info.put("nearCache", nearCache.collect());
+            }
+            ReplicaRouter replicaRouter = replicaRouters.get(key);
+            if (replicaRouter != null && !replicaRouter.getReplicaPools().isEmpty()) {
+                info.put("replicas", replicaRouter.collect());
+            }
+            BorrowGuard borrowGuard = borrowGuards.get(key);
+            if (borrowGuard != null) {
+                info.put("borrow", borrowGuard.collect());
+            }
+            result.put(key, info);
+        });
+        if (!rateLimiters.isEmpty()) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            rateLimiters.forEach((key, value) -> info.put(key, value.collect()));
+            result.put("rateLimiters", info);
+        }
+        if (!semaphores.isEmpty()) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            semaphores.forEach((key, value) -> info.put(key, value.collect()));
+            result.put("semaphores", info);
+        }
+        if (commandTracer != null) {
+            result.put("tracing", commandTracer.collect());
+        }
+        return result;
+    }
+
+    private List<JedisPool> getClientPools(String clientName) {
+        List<JedisPool> pools = new ArrayList<>(2);
+        pools.add(jedisPools.get(clientName));
+        ReplicaRouter replicaRouter = replicaRouters.get(clientName);
+        if (replicaRouter != null) {
+            pools.addAll(replicaRouter.getReplicaPools());
+        }
+        AsyncRedisImpl clientAsyncRedis = asyncRedis.get(clientName);
+        if (clientAsyncRedis != null && clientAsyncRedis.getJedisPool() != null) {
+            pools.add(clientAsyncRedis.getJedisPool());
+        }
+        return pools;
+    }
+
+    private JedisPoolConfig createAsyncPoolConfig(RedisConfig.ClientConfig clientConfig) {
+        JedisPoolConfig poolConfig = (JedisPoolConfig) clientConfig.getPoolConfig().clone();
+        int maxConnections = clientConfig.getAsync().getMaxConnections();
+        poolConfig.setMaxTotal(maxConnections);
+        poolConfig.setMaxIdle(maxConnections);
+        poolConfig.setMinIdle(Math.min(poolConfig.getMinIdle(), maxConnections));
+        return poolConfig;
+    }
+
+    private RedisContextCarrier createContextCarrier(Class<? extends RedisContextCarrier> contextCarrierClass) {
+        if (contextCarrierClass == null) {
+            return new ThreadLocalContextCarrier();
+        }
+        try {
+            return contextCarrierClass.getConstructor().newInstance();
+        } catch (Exception e) {
+            throw SeedException.wrap(e, RedisErrorCode.UNABLE_TO_CREATE_CONTEXT_CARRIER).put("carrierClass", contextCarrierClass.getName());
+        }
+    }
+
+    private JedisPoolConfig createListenerPoolConfig(RedisConfig.ClientConfig clientConfig, List<RedisListenerMethod> listenerMethods) {
+        JedisPoolConfig poolConfig = (JedisPoolConfig) clientConfig.getPoolConfig().clone();
+        int connectionCount = RedisListenerContainer.getConnectionCount(listenerMethods);
+        poolConfig.setMaxTotal(connectionCount);
+        poolConfig.setMaxIdle(connectionCount);
+        poolConfig.setMinIdle(0);
+        return poolConfig;
     }
 
+    private BudgetedJedisPool createJedisPool(String clientName, RedisConfig.ClientConfig clientConfig, JedisPoolConfig poolConfig, SSLProvider sslProvider) {
+        if (clientConfig.getNearCache().isEnabled()) {
+            return createNearCachingJedisPool(clientName, clientConfig, poolConfig, sslProvider);
+        } else {
+            return createPlainJedisPool(clientConfig.getUri(), clientConfig, poolConfig, sslProvider);
+        }
+    }
 
-    private JedisPool createJedisPool(RedisConfig.ClientConfig clientConfig, SSLProvider sslProvider) {
+    private BudgetedJedisPool createPlainJedisPool(URI uri, RedisConfig.CommonConfig clientConfig, JedisPoolConfig poolConfig, SSLProvider sslProvider) {
         if (clientConfig.isSsl() && sslProvider.sslContext().isPresent()) {
             SSLContext sslContext = sslProvider.sslContext().get();
-            return new JedisPool(
-                    clientConfig.getPoolConfig(),
-                    clientConfig.getUri(),
+            return new BudgetedJedisPool(
+                    poolConfig,
+                    uri,
                     clientConfig.getTimeout(),
                     clientConfig.getSocketTimeout(),
                     clientConfig.getSocketInfiniteTimeout(),
                     sslContext.getSocketFactory(),
-                    sslContext.getSupportedSSLParameters(),
-                    null // default
+                    sslContext.getSupportedSSLParameters()
             );
         } else {
-            return new JedisPool(
-                    clientConfig.getPoolConfig(),
-                    clientConfig.getUri(),
+            return new BudgetedJedisPool(
+                    poolConfig,
+                    uri,
                     clientConfig.getTimeout(),
                     clientConfig.getSocketTimeout()
             );
         }
     }
 
+    private BudgetedJedisPool createNearCachingJedisPool(String clientName, RedisConfig.ClientConfig clientConfig, JedisPoolConfig poolConfig, SSLProvider sslProvider) {
+        SSLSocketFactory sslSocketFactory = null;
+        SSLParameters sslParameters = null;
+        if (clientConfig.isSsl() && sslProvider.sslContext().isPresent()) {
+            SSLContext sslContext = sslProvider.sslContext().get();
+            sslSocketFactory = sslContext.getSocketFactory();
+            sslParameters = sslContext.getSupportedSSLParameters();
+        }
+
+        NearCache nearCache = nearCaches.get(clientName);
+        boolean created = nearCache == null;
+        if (created) {
+            LOGGER.info("Enabling near cache for client {} in {} tracking mode", clientName, clientConfig.getNearCache().getTrackingMode());
+            nearCache = new NearCache(clientName, clientConfig.getNearCache());
+        }
+        NearCachingJedisFactory jedisFactory = new NearCachingJedisFactory(
+                clientConfig.getUri(),
+                clientConfig.getTimeout(),
+                clientConfig.getSocketTimeout(),
+                clientConfig.getSocketInfiniteTimeout(),
+                sslSocketFactory,
+                sslParameters,
+                nearCache
+        );
+        if (created) {
+            nearCache.start(jedisFactory::createConnection);
+            nearCaches.put(clientName, nearCache);
+            registerMBean("NearCache", clientName, nearCache);
+        }
+        return new BudgetedJedisPool(poolConfig, jedisFactory);
+    }
+
     private JedisCluster createJedisCluster(RedisConfig.ClusterConfig clusterConfig, SSLProvider sslProvider) {
         SSLSocketFactory sslSocketFactory;
         SSLParameters sslParameters;
@@ -161,21 +630,23 @@ public class RedisPlugin extends AbstractSeedPlugin {
             ssl = false;
         }
 
-        return new JedisCluster(
+        JedisClientConfig jedisClientConfig = DefaultJedisClientConfig.builder()
+                .connectionTimeoutMillis(clusterConfig.getTimeout())
+                .socketTimeoutMillis(clusterConfig.getSocketTimeout())
+                .blockingSocketTimeoutMillis(clusterConfig.getSocketInfiniteTimeout())
+                .user(clusterConfig.getUser())
+                .password(clusterConfig.getPassword())
+                .clientName(clusterConfig.getClientName())
+                .ssl(ssl)
+                .sslSocketFactory(sslSocketFactory)
+                .sslParameters(sslParameters)
+                .build();
+        Object[] args = {
                 clusterConfig.getHostAndPorts().stream().map(HostAndPort::from).collect(Collectors.toSet()),
-                clusterConfig.getTimeout(),
-                clusterConfig.getSocketTimeout(),
-                clusterConfig.getSocketInfiniteTimeout(),
+                jedisClientConfig,
                 clusterConfig.getMaxAttempts(),
-                clusterConfig.getUser(),
-                clusterConfig.getPassword(),
-                clusterConfig.getClientName(),
-                clusterConfig.getPoolConfig(),
-                ssl,
-                sslSocketFactory,
-                sslParameters,
-                null, // default
-                null // no mapping
-        );
+                clusterConfig.getPoolConfig()
+        };
+        return TracingProxy.forInstance(JedisCluster.class, CLUSTER_CONSTRUCTOR_TYPES, args, commandTracer);
     }
 }
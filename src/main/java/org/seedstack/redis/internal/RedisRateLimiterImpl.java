@@ -0,0 +1,159 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.seedstack.redis.LuaScript;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.redis.RedisRateLimiter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate limiter whose acquisitions are decided by a single call of the script of its algorithm. With prefetching, the
+ * script is asked for up to {@code prefetch} extra permits which are handed out locally until they expire, so that
+ * concurrent acquisitions of a hot key wait for the call in flight instead of each calling the server. A denied
+ * acquisition also makes the next ones of at least as many permits be denied locally until the delay returned by the
+ * script has elapsed, so an exhausted hot key does not call the server on each acquisition either.
+ */
+class RedisRateLimiterImpl implements RedisRateLimiter {
+    static final String KEY_PREFIX = "ratelimiter:";
+    private static final String SLIDING_WINDOW_SCRIPT = "rate-limiter-sliding-window.lua";
+    private static final String TOKEN_BUCKET_SCRIPT = "rate-limiter-token-bucket.lua";
+    private final String name;
+    private final String key;
+    private final LuaScript<Long> luaScript;
+    private final List<String> parameters;
+    private final int prefetch;
+    private final long periodNanos;
+    private final Cache<String, Batch> batches;
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+
+    RedisRateLimiterImpl(String name, RedisConfig.RateLimiterConfig rateLimiterConfig, LuaScript<Long> luaScript) {
+        this.name = name;
+        this.key = KEY_PREFIX + name;
+        this.luaScript = luaScript;
+        String limit = String.valueOf(rateLimiterConfig.getLimit());
+        String period = String.valueOf(rateLimiterConfig.getPeriod());
+        if (rateLimiterConfig.getAlgorithm() == RedisConfig.RateLimiterConfig.Algorithm.TOKEN_BUCKET) {
+            int burst = rateLimiterConfig.getBurst() > 0 ? rateLimiterConfig.getBurst() : rateLimiterConfig.getLimit();
+            this.parameters = Arrays.asList(limit, period, String.valueOf(burst));
+        } else {
+            this.parameters = Arrays.asList(limit, period);
+        }
+        this.prefetch = rateLimiterConfig.getPrefetch();
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(rateLimiterConfig.getPeriod());
+        this.batches = prefetch > 0 ? CacheBuilder.newBuilder().expireAfterAccess(periodNanos, TimeUnit.NANOSECONDS).build() : null;
+    }
+
+    static String getScriptLocation(RedisConfig.RateLimiterConfig rateLimiterConfig) {
+        return rateLimiterConfig.getAlgorithm() == RedisConfig.RateLimiterConfig.Algorithm.TOKEN_BUCKET ? TOKEN_BUCKET_SCRIPT : SLIDING_WINDOW_SCRIPT;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        return acquire(key, 1);
+    }
+
+    @Override
+    public boolean tryAcquire(int permits) {
+        return acquire(key, permits);
+    }
+
+    @Override
+    public boolean tryAcquire(String partition) {
+        return acquire(key + ":" + partition, 1);
+    }
+
+    @Override
+    public boolean tryAcquire(String partition, int permits) {
+        return acquire(key + ":" + partition, permits);
+    }
+
+    Map<String, Object> collect() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("granted", granted.sum());
+        result.put("denied", denied.sum());
+        result.put("calls", calls.sum());
+        return result;
+    }
+
+    private boolean acquire(String redisKey, int permits) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("The number of permits must be positive");
+        }
+        boolean result = batches == null ? call(redisKey, permits, permits) > 0 : acquireBatched(redisKey, permits);
+        (result ? granted : denied).increment();
+        return result;
+    }
+
+    private boolean acquireBatched(String redisKey, int permits) {
+        Batch batch = batches.asMap().computeIfAbsent(redisKey, k -> new Batch());
+        synchronized (batch) {
+            long now = System.nanoTime();
+            if (batch.remaining >= permits && now - batch.expiry < 0) {
+                batch.remaining -= permits;
+                return true;
+            }
+            if (permits >= batch.deniedPermits && now - batch.retryTime < 0) {
+                return false;
+            }
+            // permits left in the batch cannot satisfy the acquisition and were already counted by the server
+            batch.remaining = 0;
+            long acquired = call(redisKey, permits, permits + prefetch);
+            if (acquired < permits) {
+                batch.deniedPermits = permits;
+                batch.retryTime = now + TimeUnit.MILLISECONDS.toNanos(-acquired);
+                return false;
+            }
+            batch.remaining = acquired - permits;
+            batch.expiry = now + periodNanos;
+            batch.deniedPermits = Integer.MAX_VALUE;
+            return true;
+        }
+    }
+
+    /**
+     * Calls the script of the algorithm.
+     *
+     * @return the number of granted permits, or the opposite of the delay in milliseconds before the minimum number of
+     * permits is available.
+     */
+    private long call(String redisKey, int minimum, int maximum) {
+        calls.increment();
+        String[] args = new String[parameters.size() + 2];
+        args[0] = String.valueOf(minimum);
+        args[1] = String.valueOf(maximum);
+        for (int i = 0; i < parameters.size(); i++) {
+            args[i + 2] = parameters.get(i);
+        }
+        Long result = luaScript.eval(Collections.singletonList(redisKey), Arrays.asList(args));
+        return result == null ? 0 : result;
+    }
+
+    private static class Batch {
+        private long remaining;
+        private long expiry;
+        private int deniedPermits = Integer.MAX_VALUE;
+        private long retryTime;
+    }
+}
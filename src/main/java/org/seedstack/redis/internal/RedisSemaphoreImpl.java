@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.LuaScript;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.redis.RedisSemaphore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Semaphore whose permits are the members of a sorted set scored by their lease expiry. Members are made of a random
+ * identifier of the instance and a sequence number, so they are unique across instances without generating a UUID
+ * per permit.
+ */
+class RedisSemaphoreImpl implements RedisSemaphore {
+    static final String KEY_PREFIX = "semaphore:";
+    static final String SCRIPT = "semaphore.lua";
+    private final String name;
+    private final String key;
+    private final LuaScript<Long> luaScript;
+    private final String permits;
+    private final String leaseTime;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+
+    RedisSemaphoreImpl(String name, RedisConfig.SemaphoreConfig semaphoreConfig, LuaScript<Long> luaScript) {
+        this.name = name;
+        this.key = KEY_PREFIX + name;
+        this.luaScript = luaScript;
+        this.permits = String.valueOf(semaphoreConfig.getPermits());
+        this.leaseTime = String.valueOf(semaphoreConfig.getLeaseTime());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Permit tryAcquire() {
+        return acquire(key);
+    }
+
+    @Override
+    public Permit tryAcquire(String partition) {
+        return acquire(key + ":" + partition);
+    }
+
+    Map<String, Object> collect() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("granted", granted.sum());
+        result.put("denied", denied.sum());
+        return result;
+    }
+
+    private Permit acquire(String redisKey) {
+        String holder = instanceId + ":" + sequence.incrementAndGet();
+        if (call(redisKey, "acquire", holder) > 0) {
+            granted.increment();
+            return new PermitImpl(redisKey, holder);
+        } else {
+            denied.increment();
+            return null;
+        }
+    }
+
+    private long call(String redisKey, String operation, String holder) {
+        Long result = luaScript.eval(Collections.singletonList(redisKey), Arrays.asList(operation, holder, permits, leaseTime));
+        return result == null ? 0 : result;
+    }
+
+    private class PermitImpl implements Permit {
+        private final String redisKey;
+        private final String holder;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private PermitImpl(String redisKey, String holder) {
+            this.redisKey = redisKey;
+            this.holder = holder;
+        }
+
+        @Override
+        public boolean renew() {
+            return !released.get() && call(redisKey, "renew", holder) > 0;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                call(redisKey, "release", holder);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return redisKey + "/" + holder;
+        }
+    }
+}
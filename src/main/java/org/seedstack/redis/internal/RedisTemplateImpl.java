@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.RedisCodec;
+import org.seedstack.redis.RedisTemplate;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.util.Pool;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+class RedisTemplateImpl<K, V> implements RedisTemplate<K, V> {
+    private final Pool<Jedis> jedisPool;
+    private final RedisCodec<K, V> codec;
+    private final RedisMetrics redisMetrics;
+
+    RedisTemplateImpl(Pool<Jedis> jedisPool, RedisCodec<K, V> codec, RedisMetrics redisMetrics) {
+        this.jedisPool = jedisPool;
+        this.codec = codec;
+        this.redisMetrics = redisMetrics;
+    }
+
+    @Override
+    public <T> T execute(Function<Jedis, T> function) {
+        try (Jedis jedis = redisMetrics.borrow(jedisPool)) {
+            return function.apply(jedis);
+        } catch (RuntimeException e) {
+            redisMetrics.recordException();
+            throw e;
+        }
+    }
+
+    @Override
+    public RedisCodec<K, V> getCodec() {
+        return codec;
+    }
+
+    @Override
+    public V get(K key) {
+        return decode(execute(jedis -> jedis.get(codec.encodeKey(key))));
+    }
+
+    @Override
+    public List<V> mget(List<K> keys) {
+        if (keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        byte[][] encodedKeys = new byte[keys.size()][];
+        for (int i = 0; i < encodedKeys.length; i++) {
+            encodedKeys[i] = codec.encodeKey(keys.get(i));
+        }
+        List<byte[]> encodedValues = execute(jedis -> jedis.mget(encodedKeys));
+        List<V> values = new ArrayList<>(encodedValues.size());
+        for (byte[] encodedValue : encodedValues) {
+            values.add(decode(encodedValue));
+        }
+        return values;
+    }
+
+    @Override
+    public void set(K key, V value) {
+        byte[] encodedKey = codec.encodeKey(key);
+        byte[] encodedValue = codec.encodeValue(value);
+        execute(jedis -> jedis.set(encodedKey, encodedValue));
+    }
+
+    @Override
+    public void setex(K key, int seconds, V value) {
+        byte[] encodedKey = codec.encodeKey(key);
+        byte[] encodedValue = codec.encodeValue(value);
+        execute(jedis -> jedis.setex(encodedKey, (long) seconds, encodedValue));
+    }
+
+    @Override
+    public void mset(Map<K, V> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        byte[][] keysValues = new byte[entries.size() * 2][];
+        int i = 0;
+        for (Map.Entry<K, V> entry : entries.entrySet()) {
+            keysValues[i++] = codec.encodeKey(entry.getKey());
+            keysValues[i++] = codec.encodeValue(entry.getValue());
+        }
+        execute(jedis -> jedis.mset(keysValues));
+    }
+
+    @Override
+    public boolean del(K key) {
+        byte[] encodedKey = codec.encodeKey(key);
+        return execute(jedis -> jedis.del(encodedKey)) > 0;
+    }
+
+    @Override
+    public boolean exists(K key) {
+        byte[] encodedKey = codec.encodeKey(key);
+        return execute(jedis -> jedis.exists(encodedKey));
+    }
+
+    @Override
+    public boolean expire(K key, int seconds) {
+        byte[] encodedKey = codec.encodeKey(key);
+        return execute(jedis -> jedis.expire(encodedKey, (long) seconds)) > 0;
+    }
+
+    @Override
+    public V hget(K key, String field) {
+        byte[] encodedKey = codec.encodeKey(key);
+        return decode(execute(jedis -> jedis.hget(encodedKey, SafeEncoder.encode(field))));
+    }
+
+    @Override
+    public void hset(K key, String field, V value) {
+        byte[] encodedKey = codec.encodeKey(key);
+        byte[] encodedValue = codec.encodeValue(value);
+        execute(jedis -> jedis.hset(encodedKey, SafeEncoder.encode(field), encodedValue));
+    }
+
+    @Override
+    public Map<String, V> hgetAll(K key) {
+        byte[] encodedKey = codec.encodeKey(key);
+        Map<byte[], byte[]> encodedFields = execute(jedis -> jedis.hgetAll(encodedKey));
+        Map<String, V> fields = new LinkedHashMap<>();
+        for (Map.Entry<byte[], byte[]> encodedField : encodedFields.entrySet()) {
+            fields.put(SafeEncoder.encode(encodedField.getKey()), decode(encodedField.getValue()));
+        }
+        return fields;
+    }
+
+    private V decode(byte[] encodedValue) {
+        return encodedValue == null ? null : codec.decodeValue(encodedValue);
+    }
+}
@@ -8,22 +8,23 @@
 package org.seedstack.redis.internal;
 
 import org.seedstack.seed.transaction.spi.TransactionMetadata;
-import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Transaction;
 
 
 class RedisTransactionHandler implements org.seedstack.seed.transaction.spi.TransactionHandler<Transaction> {
     private final RedisLink<Transaction> redisLink;
-    private final JedisPool jedisPool;
+    private final ReplicaRouter replicaRouter;
+    private final RedisMetrics redisMetrics;
 
-    RedisTransactionHandler(RedisLink<Transaction> redisLink, JedisPool jedisPool) {
+    RedisTransactionHandler(RedisLink<Transaction> redisLink, ReplicaRouter replicaRouter, RedisMetrics redisMetrics) {
         this.redisLink = redisLink;
-        this.jedisPool = jedisPool;
+        this.replicaRouter = replicaRouter;
+        this.redisMetrics = redisMetrics;
     }
 
     @Override
     public void doInitialize(TransactionMetadata transactionMetadata) {
-        this.redisLink.push(this.jedisPool.getResource());
+        this.redisLink.push(this.replicaRouter.borrow(this.redisMetrics, transactionMetadata), transactionMetadata);
     }
 
     @Override
@@ -41,12 +42,13 @@ class RedisTransactionHandler implements org.seedstack.seed.transaction.spi.Tran
 
     @Override
     public void doBeginTransaction(Transaction currentTransaction) {
-        // nothing to do (transaction already began)
+        this.redisLink.getHolder().setBeginNanos(System.nanoTime());
     }
 
     @Override
     public void doCommitTransaction(Transaction currentTransaction) {
-        currentTransaction.exec();
+        RedisLink<Transaction>.Holder holder = this.redisLink.getHolder();
+        this.redisMetrics.commit(holder.getTransactionMetadata(), holder.getBeginNanos(), currentTransaction::exec);
     }
 
     @Override
@@ -56,6 +58,7 @@ class RedisTransactionHandler implements org.seedstack.seed.transaction.spi.Tran
 
     @Override
     public void doRollbackTransaction(Transaction currentTransaction) {
+        this.redisMetrics.recordRollback();
         currentTransaction.clear();
     }
 
@@ -66,7 +69,7 @@ class RedisTransactionHandler implements org.seedstack.seed.transaction.spi.Tran
 
     @Override
     public void doCleanup() {
-        this.redisLink.pop().close();
+        this.replicaRouter.release(this.redisLink.pop());
     }
 
     @Override
@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.common.base.Strings;
+import org.seedstack.redis.Redis;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.redis.RedisExceptionHandler;
+import org.seedstack.seed.SeedException;
+import org.seedstack.seed.transaction.spi.TransactionHandler;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * Holds the Redis transaction metadata of each intercepted method. Metadata of methods found by the classpath scan is
+ * computed at startup into an immutable table. Other methods (outside scanned packages or inheriting the annotation)
+ * are resolved on their first invocation and cached. Returned metadata is shared and must not be modified.
+ */
+class RedisTransactionMetadataTable {
+    /**
+     * Matches classes annotated with {@link Redis} or declaring at least one method annotated with {@link Redis}.
+     */
+    static final Predicate<Class<?>> REDIS_ANNOTATED = candidate -> {
+        try {
+            if (candidate.isAnnotationPresent(Redis.class)) {
+                return true;
+            }
+            for (Method method : candidate.getDeclaredMethods()) {
+                if (method.isAnnotationPresent(Redis.class)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    };
+    private static final TransactionMetadata NOT_ANNOTATED = new TransactionMetadata();
+    private final RedisConfig redisConfig;
+    private final Map<Method, TransactionMetadata> precomputed;
+    private final ConcurrentMap<Method, TransactionMetadata> computed = new ConcurrentHashMap<>();
+
+    RedisTransactionMetadataTable(RedisConfig redisConfig, Collection<Class<?>> annotatedClasses) {
+        this.redisConfig = redisConfig;
+        Map<Method, TransactionMetadata> table = new HashMap<>();
+        for (Class<?> annotatedClass : annotatedClasses) {
+            for (Method method : annotatedClass.getDeclaredMethods()) {
+                if (!Modifier.isStatic(method.getModifiers()) && !method.isSynthetic()) {
+                    RedisResolver.INSTANCE.apply(method).ifPresent(redis -> table.put(method, resolve(method, redis)));
+                }
+            }
+        }
+        this.precomputed = Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * Returns the metadata of the specified method, or null if it is not a Redis transaction.
+     *
+     * @param method         the intercepted method.
+     * @param defaultHandler the transaction handler used when the method is not annotated with {@link Redis}. It is
+     *                       fixed by the configuration for the lifetime of the application.
+     * @return the shared metadata or null.
+     */
+    TransactionMetadata get(Method method, Class<?> defaultHandler) {
+        TransactionMetadata metadata = precomputed.get(method);
+        if (metadata == null) {
+            metadata = computed.get(method);
+            if (metadata == null) {
+                metadata = computed.computeIfAbsent(method, m -> resolve(m, defaultHandler));
+            }
+        }
+        return metadata == NOT_ANNOTATED ? null : metadata;
+    }
+
+    int size() {
+        return precomputed.size() + computed.size();
+    }
+
+    private TransactionMetadata resolve(Method method, Class<?> defaultHandler) {
+        Optional<Redis> redisOptional = RedisResolver.INSTANCE.apply(method);
+        if (redisOptional.isPresent()) {
+            return resolve(method, redisOptional.get());
+        } else if (isRedisHandler(defaultHandler)) {
+            String defaultClient = redisConfig.getDefaultClient();
+            if (Strings.isNullOrEmpty(defaultClient)) {
+                throw SeedException.createNew(RedisErrorCode.NO_REDIS_CLIENT_SPECIFIED_FOR_TRANSACTION)
+                        .put("method", method.toString());
+            }
+            TransactionMetadata result = createMetadata(method);
+            result.setResource(defaultClient);
+            result.setHandler(defaultHandler.asSubclass(TransactionHandler.class));
+            return result;
+        } else {
+            return NOT_ANNOTATED;
+        }
+    }
+
+    private TransactionMetadata resolve(Method method, Redis redis) {
+        TransactionMetadata result = createMetadata(method);
+        result.setResource(redis.value());
+        result.setHandler(resolveHandler(redis));
+        if (redis.fireAndForget()) {
+            checkFireAndForget(method, redis, result.getHandler());
+        }
+        if (RedisPipelinedTransactionHandler.class.equals(result.getHandler())) {
+            result.addMetadata(RedisPipelinedTransactionHandler.ATOMIC, redis.atomic());
+            result.addMetadata(RedisPipelinedTransactionHandler.FLUSH_THRESHOLD, redis.flushThreshold());
+            result.addMetadata(RedisPipelinedTransactionHandler.FIRE_AND_FORGET, redis.fireAndForget());
+        }
+        if (RedisClusterTransactionHandler.class.equals(result.getHandler()) && !Redis.FIRST_KEY.equals(redis.routingKey())) {
+            result.addMetadata(RedisClusterTransactionHandler.SLOT, JedisClusterCRC16.getSlot(redis.routingKey()));
+        }
+        if (redis.readOnly() && !isClusterHandler(result.getHandler())) {
+            result.addMetadata(ReplicaRouter.READ_ONLY, true);
+        }
+        if (redis.borrowTimeout() >= 0 && !isClusterHandler(result.getHandler())) {
+            result.addMetadata(BorrowGuard.BORROW_TIMEOUT, redis.borrowTimeout());
+        }
+        return result;
+    }
+
+    private void checkFireAndForget(Method method, Redis redis, Class<?> handler) {
+        String reason;
+        if (isClusterHandler(handler)) {
+            reason = "cluster '" + redis.value() + "'";
+        } else if (RedisDirectTransactionHandler.class.equals(handler)) {
+            reason = "a DIRECT connection";
+        } else if (RedisTransactionHandler.class.equals(handler)) {
+            reason = "a MULTI/EXEC transaction (not pipelined)";
+        } else {
+            return;
+        }
+        throw SeedException.createNew(RedisErrorCode.INVALID_FIRE_AND_FORGET)
+                .put("method", method.toString())
+                .put("reason", reason);
+    }
+
+    private TransactionMetadata createMetadata(Method method) {
+        TransactionMetadata result = new TransactionMetadata();
+        result.setExceptionHandler(RedisExceptionHandler.class);
+        result.addMetadata(RedisMetrics.METHOD, method.getDeclaringClass().getName() + "." + method.getName());
+        return result;
+    }
+
+    private Class<? extends TransactionHandler<?>> resolveHandler(Redis redis) {
+        if (redisConfig.getClusters().containsKey(redis.value())) {
+            if (!redis.routingKey().isEmpty() && !redis.pipelined() && redis.mode() == Redis.Mode.TRANSACTION) {
+                return RedisClusterTransactionHandler.class;
+            }
+            return RedisClusterPipelinedTransactionHandler.class;
+        } else if (redis.mode() == Redis.Mode.DIRECT) {
+            return RedisDirectTransactionHandler.class;
+        } else if (redis.pipelined()) {
+            return RedisPipelinedTransactionHandler.class;
+        } else {
+            return RedisTransactionHandler.class;
+        }
+    }
+
+    private boolean isRedisHandler(Class<?> handler) {
+        return RedisTransactionHandler.class.equals(handler)
+                || RedisPipelinedTransactionHandler.class.equals(handler)
+                || RedisDirectTransactionHandler.class.equals(handler)
+                || isClusterHandler(handler);
+    }
+
+    private boolean isClusterHandler(Class<?> handler) {
+        return RedisClusterPipelinedTransactionHandler.class.equals(handler)
+                || RedisClusterTransactionHandler.class.equals(handler);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.seed.SeedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.util.Pool;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the startup handshakes concurrently on a temporary executor: creation of clusters and, each if enabled,
+ * pre-filling of pools up to their {@code minIdle} size and the PING health gate. Cluster creation, pre-filling and PING
+ * share a single time budget starting with the warm-up.
+ */
+class RedisWarmUp implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisWarmUp.class);
+    private final RedisConfig.WarmUpConfig warmUpConfig;
+    private final ExecutorService executorService;
+    private final long deadline;
+    private final Map<String, List<Future<?>>> prefills = new LinkedHashMap<>();
+    private final Map<String, Pool<Jedis>> pools = new LinkedHashMap<>();
+
+    RedisWarmUp(RedisConfig.WarmUpConfig warmUpConfig) {
+        this.warmUpConfig = warmUpConfig;
+        this.executorService = Executors.newFixedThreadPool(warmUpConfig.getParallelism(), new ThreadFactoryBuilder()
+                .setNameFormat("redis-startup-%d")
+                .setDaemon(true)
+                .build());
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(warmUpConfig.getTimeout());
+    }
+
+    /**
+     * Submits a startup task, like the creation of a cluster, to be awaited with {@link #await(Future)}.
+     */
+    <T> Future<T> submit(Callable<T> task) {
+        return executorService.submit(task);
+    }
+
+    /**
+     * Waits for a task submitted with {@link #submit(Callable)} within the remaining time budget and returns its
+     * result. The task is cancelled if it did not complete in time.
+     */
+    <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get(remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Registers a pool to check with the health gate. Its connections up to {@code minIdle} are also opened
+     * concurrently if the warm-up is enabled.
+     */
+    void addPool(String name, Pool<Jedis> pool, int minIdle) {
+        pools.put(name, pool);
+        if (warmUpConfig.isEnabled()) {
+            List<Future<?>> futures = new ArrayList<>(minIdle);
+            for (int i = 0; i < minIdle; i++) {
+                futures.add(executorService.submit(() -> pool.addObjects(1)));
+            }
+            prefills.put(name, futures);
+        }
+    }
+
+    /**
+     * Waits for the pre-filling of all pools, then checks each one with a PING if the health gate is enabled.
+     *
+     * @throws SeedException if the health gate is enabled and a pool did not answer within the time budget.
+     */
+    void complete() {
+        for (Map.Entry<String, List<Future<?>>> prefill : prefills.entrySet()) {
+            int opened = 0;
+            Exception lastError = null;
+            for (Future<?> future : prefill.getValue()) {
+                try {
+                    future.get(remainingNanos(), TimeUnit.NANOSECONDS);
+                    opened++;
+                } catch (ExecutionException e) {
+                    lastError = e;
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    lastError = e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (lastError != null) {
+                LOGGER.warn("Opened {} of {} connection(s) of {} at startup, remaining ones will be opened on demand",
+                        opened, prefill.getValue().size(), prefill.getKey(), lastError.getCause() != null ? lastError.getCause() : lastError);
+            } else {
+                LOGGER.debug("Opened {} connection(s) of {} at startup", opened, prefill.getKey());
+            }
+        }
+
+        if (warmUpConfig.isPing()) {
+            ping();
+        }
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+    }
+
+    private void ping() {
+        Map<String, Future<String>> pings = new LinkedHashMap<>();
+        pools.forEach((name, pool) -> pings.put(name, executorService.submit(() -> {
+            try (Jedis jedis = pool.getResource()) {
+                return jedis.ping();
+            }
+        })));
+
+        List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, Future<String>> ping : pings.entrySet()) {
+            try {
+                ping.getValue().get(remainingNanos(), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                ping.getValue().cancel(true);
+                LOGGER.error("No answer to PING from {} at startup", ping.getKey(), e.getCause() != null ? e.getCause() : e);
+                failures.add(ping.getKey());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw SeedException.createNew(RedisErrorCode.WARM_UP_FAILED).put("targets", String.join(", ", failures));
+        }
+    }
+
+    private long remainingNanos() {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the pool a transaction borrows its connection from. Read-only transactions go to a replica, chosen by the
+ * number of connections currently borrowed from its pool or in turn, and other ones to the primary. A replica which
+ * cannot be connected to is skipped for the configured retry delay, and the primary is used when no replica is left.
+ * Borrows are made through the {@link BorrowGuard} of the client.
+ */
+class ReplicaRouter {
+    static final String READ_ONLY = "redis.readOnly";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRouter.class);
+    private final String name;
+    private final BudgetedJedisPool primary;
+    private final Replica[] replicas;
+    private final RedisConfig.ReplicasConfig replicasConfig;
+    private final BorrowGuard borrowGuard;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ReplicaRouter(String name, BudgetedJedisPool primary, Map<String, BudgetedJedisPool> replicaPools, RedisConfig.ReplicasConfig replicasConfig, BorrowGuard borrowGuard) {
+        this.name = name;
+        this.primary = primary;
+        this.replicasConfig = replicasConfig;
+        this.borrowGuard = borrowGuard;
+        this.replicas = replicaPools.entrySet().stream()
+                .map(entry -> new Replica(entry.getKey(), entry.getValue()))
+                .toArray(Replica[]::new);
+    }
+
+    /**
+     * Borrows a connection for the specified transaction, from a replica if it is read-only.
+     */
+    Jedis borrow(RedisMetrics redisMetrics, TransactionMetadata transactionMetadata) {
+        if (replicas.length > 0 && isReadOnly(transactionMetadata)) {
+            int start = next.getAndIncrement() & Integer.MAX_VALUE;
+            if (replicasConfig.getSelection() == RedisConfig.ReplicasConfig.Selection.LEAST_OUTSTANDING) {
+                Replica best;
+                for (int i = 0; i < replicas.length && (best = leastOutstanding(start, System.nanoTime())) != null; i++) {
+                    Jedis jedis = tryBorrow(best, redisMetrics, transactionMetadata);
+                    if (jedis != null) {
+                        return jedis;
+                    }
+                }
+            } else {
+                for (int i = 0; i < replicas.length; i++) {
+                    Replica replica = replicas[(start + i) % replicas.length];
+                    if (replica.isAvailable(System.nanoTime())) {
+                        Jedis jedis = tryBorrow(replica, redisMetrics, transactionMetadata);
+                        if (jedis != null) {
+                            return jedis;
+                        }
+                    }
+                }
+            }
+        }
+        return borrowGuard.borrow(primary, redisMetrics, transactionMetadata);
+    }
+
+    /**
+     * Returns a connection borrowed with {@link #borrow(RedisMetrics, TransactionMetadata)} to its pool.
+     */
+    void release(Jedis jedis) {
+        borrowGuard.release(jedis);
+    }
+
+    List<JedisPool> getReplicaPools() {
+        List<JedisPool> pools = new ArrayList<>(replicas.length);
+        for (Replica replica : replicas) {
+            pools.add(replica.pool);
+        }
+        return Collections.unmodifiableList(pools);
+    }
+
+    Map<String, Object> collect() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        long now = System.nanoTime();
+        for (Replica replica : replicas) {
+            Map<String, Object> info = new LinkedHashMap<>();
+            info.put("available", replica.isAvailable(now));
+            info.put("active", replica.pool.getNumActive());
+            info.put("idle", replica.pool.getNumIdle());
+            result.put(replica.name, info);
+        }
+        return result;
+    }
+
+    void close() {
+        for (Replica replica : replicas) {
+            try {
+                replica.pool.close();
+            } catch (RuntimeException e) {
+                LOGGER.error("Unable to properly close replica {} pool of Redis client {}", replica.name, name, e);
+            }
+        }
+    }
+
+    private Replica leastOutstanding(int start, long now) {
+        Replica best = null;
+        int bestActive = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.length; i++) {
+            Replica replica = replicas[(start + i) % replicas.length];
+            if (replica.isAvailable(now)) {
+                int active = replica.pool.getNumActive();
+                if (active < bestActive) {
+                    best = replica;
+                    bestActive = active;
+                }
+            }
+        }
+        return best;
+    }
+
+    private Jedis tryBorrow(Replica replica, RedisMetrics redisMetrics, TransactionMetadata transactionMetadata) {
+        try {
+            return borrowGuard.borrow(replica.pool, redisMetrics, transactionMetadata);
+        } catch (JedisConnectionException e) {
+            replica.unavailableUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(replicasConfig.getRetryDelay());
+            LOGGER.warn("Replica {} of Redis client {} is unavailable, skipping it for {} ms",
+                    replica.name, name, replicasConfig.getRetryDelay(), e);
+            return null;
+        }
+    }
+
+    private static boolean isReadOnly(TransactionMetadata transactionMetadata) {
+        return transactionMetadata != null && Boolean.TRUE.equals(transactionMetadata.getMetadata(READ_ONLY));
+    }
+
+    private static class Replica {
+        private final String name;
+        private final BudgetedJedisPool pool;
+        private volatile long unavailableUntil;
+
+        private Replica(String name, BudgetedJedisPool pool) {
+            this.name = name;
+            this.pool = pool;
+            this.unavailableUntil = System.nanoTime();
+        }
+
+        private boolean isAvailable(long now) {
+            return now - unavailableUntil >= 0;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Sequential spliterator over a SCAN cursor. The next page is fetched when the elements of the current one are
+ * consumed, the cursor being iterated until the server returns the initial cursor again.
+ */
+class ScanSpliterator<T> implements Spliterator<T> {
+    private final Function<String, ScanResult<T>> pageFetcher;
+    private Iterator<T> page = Collections.emptyIterator();
+    private String cursor = ScanParams.SCAN_POINTER_START;
+    private boolean started;
+
+    ScanSpliterator(Function<String, ScanResult<T>> pageFetcher) {
+        this.pageFetcher = pageFetcher;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (!page.hasNext()) {
+            if (started && ScanParams.SCAN_POINTER_START.equals(cursor)) {
+                return false;
+            }
+            started = true;
+            ScanResult<T> scanResult = pageFetcher.apply(cursor);
+            cursor = scanResult.getCursor();
+            page = scanResult.getResult().iterator();
+        }
+        action.accept(page.next());
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.ShardedRedis;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.util.Hashing;
+import redis.clients.jedis.util.ShardInfo;
+import redis.clients.jedis.util.Sharded;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * {@link ShardedRedis} implementation. Keys are placed with the consistent hashing of Jedis {@link Sharded} (MurmurHash
+ * and {@code {hash tag}} extraction), so a key lives on the same shard as with a {@code ShardedJedis} built from the
+ * same ordered list of instances.
+ */
+class ShardedRedisImpl implements ShardedRedis {
+    private final List<JedisPool> shardPools;
+    private final Sharded<JedisPool, PoolShardInfo> sharded;
+    private final ExecutorService executorService;
+    private final RedisMetrics redisMetrics;
+
+    ShardedRedisImpl(List<JedisPool> shardPools, ExecutorService executorService, RedisMetrics redisMetrics) {
+        this.shardPools = shardPools;
+        List<PoolShardInfo> shardInfos = new ArrayList<>(shardPools.size());
+        for (JedisPool shardPool : shardPools) {
+            shardInfos.add(new PoolShardInfo(shardPool));
+        }
+        this.sharded = new Sharded<>(shardInfos, Hashing.MURMUR_HASH, Sharded.DEFAULT_KEY_TAG_PATTERN);
+        this.executorService = executorService;
+        this.redisMetrics = redisMetrics;
+    }
+
+    @Override
+    public <T> T execute(String key, Function<Jedis, T> function) {
+        return execute(sharded.getShard(key), function);
+    }
+
+    @Override
+    public <T> List<T> executeOnAllShards(Function<Jedis, T> function) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(shardPools.size());
+        for (JedisPool shardPool : shardPools) {
+            futures.add(CompletableFuture.supplyAsync(() -> execute(shardPool, function), executorService));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            results.add(join(future));
+        }
+        return results;
+    }
+
+    @Override
+    public String get(String key) {
+        return execute(key, jedis -> jedis.get(key));
+    }
+
+    @Override
+    public List<String> mget(String... keys) {
+        String[] values = new String[keys.length];
+        forEachShard(keys, 1, (jedis, shardKeys) -> {
+            List<String> shardValues = jedis.mget(shardKeys.keys);
+            for (int i = 0; i < shardValues.size(); i++) {
+                values[shardKeys.positions[i]] = shardValues.get(i);
+            }
+            return null;
+        });
+        return Arrays.asList(values);
+    }
+
+    @Override
+    public String set(String key, String value) {
+        return execute(key, jedis -> jedis.set(key, value));
+    }
+
+    @Override
+    public String mset(String... keysValues) {
+        if (keysValues.length % 2 != 0) {
+            throw new IllegalArgumentException("Keys and values must be specified alternately");
+        }
+        List<String> replies = forEachShard(keysValues, 2, (jedis, shardKeys) -> jedis.mset(shardKeys.keys));
+        for (String reply : replies) {
+            if (!"OK".equals(reply)) {
+                return reply;
+            }
+        }
+        return replies.isEmpty() ? null : "OK";
+    }
+
+    @Override
+    public String setex(String key, int seconds, String value) {
+        return execute(key, jedis -> jedis.setex(key, (long) seconds, value));
+    }
+
+    @Override
+    public Long del(String... keys) {
+        long deleted = 0;
+        for (Long shardDeleted : forEachShard(keys, 1, (jedis, shardKeys) -> jedis.del(shardKeys.keys))) {
+            deleted += shardDeleted;
+        }
+        return deleted;
+    }
+
+    @Override
+    public Boolean exists(String key) {
+        return execute(key, jedis -> jedis.exists(key));
+    }
+
+    @Override
+    public Long expire(String key, int seconds) {
+        return execute(key, jedis -> jedis.expire(key, (long) seconds));
+    }
+
+    @Override
+    public Long incr(String key) {
+        return execute(key, jedis -> jedis.incr(key));
+    }
+
+    @Override
+    public String hget(String key, String field) {
+        return execute(key, jedis -> jedis.hget(key, field));
+    }
+
+    @Override
+    public Map<String, String> hgetAll(String key) {
+        return execute(key, jedis -> jedis.hgetAll(key));
+    }
+
+    @Override
+    public Long hset(String key, String field, String value) {
+        return execute(key, jedis -> jedis.hset(key, field, value));
+    }
+
+    List<JedisPool> getShardPools() {
+        return shardPools;
+    }
+
+    private <T> T execute(JedisPool shardPool, Function<Jedis, T> function) {
+        try (Jedis jedis = redisMetrics.borrow(shardPool)) {
+            return function.apply(jedis);
+        } catch (RuntimeException e) {
+            redisMetrics.recordException();
+            throw e;
+        }
+    }
+
+    /**
+     * Splits the specified arguments by shard and runs the specified command on each involved shard, in parallel if
+     * more than one. Each group of {@code stride} arguments starts with the key determining its shard.
+     */
+    private <T> List<T> forEachShard(String[] args, int stride, ShardCommand<T> command) {
+        Map<JedisPool, ShardKeys> byShard = new IdentityHashMap<>();
+        for (int i = 0; i < args.length; i += stride) {
+            byShard.computeIfAbsent(sharded.getShard(args[i]), pool -> new ShardKeys(args.length / stride, stride))
+                    .add(args, i, i / stride);
+        }
+
+        List<T> results = new ArrayList<>(byShard.size());
+        if (byShard.size() == 1) {
+            Map.Entry<JedisPool, ShardKeys> entry = byShard.entrySet().iterator().next();
+            results.add(execute(entry.getKey(), jedis -> command.apply(jedis, entry.getValue().trim())));
+        } else if (!byShard.isEmpty()) {
+            List<CompletableFuture<T>> futures = new ArrayList<>(byShard.size());
+            for (Map.Entry<JedisPool, ShardKeys> entry : byShard.entrySet()) {
+                futures.add(CompletableFuture.supplyAsync(
+                        () -> execute(entry.getKey(), jedis -> command.apply(jedis, entry.getValue().trim())),
+                        executorService
+                ));
+            }
+            for (CompletableFuture<T> future : futures) {
+                results.add(join(future));
+            }
+        }
+        return results;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShardCommand<T> {
+        T apply(Jedis jedis, ShardKeys shardKeys);
+    }
+
+    /**
+     * The arguments of a multi-key command belonging to one shard, with the position of each key in the original
+     * command.
+     */
+    private static class ShardKeys {
+        private final int stride;
+        private String[] keys;
+        private int[] positions;
+        private int count;
+
+        private ShardKeys(int capacity, int stride) {
+            this.stride = stride;
+            this.keys = new String[capacity * stride];
+            this.positions = new int[capacity];
+        }
+
+        private void add(String[] args, int offset, int position) {
+            System.arraycopy(args, offset, keys, count * stride, stride);
+            positions[count++] = position;
+        }
+
+        private ShardKeys trim() {
+            if (keys.length != count * stride) {
+                keys = Arrays.copyOf(keys, count * stride);
+                positions = Arrays.copyOf(positions, count);
+            }
+            return this;
+        }
+    }
+
+    private static class PoolShardInfo extends ShardInfo<JedisPool> {
+        private final JedisPool jedisPool;
+
+        private PoolShardInfo(JedisPool jedisPool) {
+            super(Sharded.DEFAULT_WEIGHT);
+            this.jedisPool = jedisPool;
+        }
+
+        @Override
+        protected JedisPool createResource() {
+            return jedisPool;
+        }
+
+        @Override
+        public String getName() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.seedstack.redis.RedisContextCarrier;
+
+/**
+ * Default context carrier, holding a single thread-local reference which is removed when the context is cleared so
+ * that threads outside of any Redis scope, including short-lived virtual threads, retain nothing.
+ */
+class ThreadLocalContextCarrier implements RedisContextCarrier {
+    private final ThreadLocal<Object> context = new ThreadLocal<>();
+
+    @Override
+    public Object get() {
+        return context.get();
+    }
+
+    @Override
+    public void set(Object context) {
+        if (context == null) {
+            this.context.remove();
+        } else {
+            this.context.set(context);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import javassist.util.proxy.MethodHandler;
+import javassist.util.proxy.ProxyFactory;
+import org.seedstack.seed.SeedException;
+import org.seedstack.seed.core.internal.transaction.TransactionalClassProxy;
+import org.seedstack.seed.transaction.spi.TransactionalLink;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Creates the proxies through which the commands are sampled by a {@link CommandTracer}. Without tracer, transactional
+ * proxies are plain {@link TransactionalClassProxy} instances and other objects are created as is, so tracing costs
+ * nothing when disabled.
+ */
+final class TracingProxy implements MethodHandler {
+    private static final Set<String> UNTRACED_METHODS = new HashSet<>(Arrays.asList(
+            "close", "getClusterNodes", "getConnectionFromSlot", "getClient", "isBroken", "isConnected"
+    ));
+    private final CommandTracer commandTracer;
+    private final TransactionalLink<?> transactionalLink;
+    private final boolean timed;
+
+    private TracingProxy(CommandTracer commandTracer, TransactionalLink<?> transactionalLink, boolean timed) {
+        this.commandTracer = commandTracer;
+        this.transactionalLink = transactionalLink;
+        this.timed = timed;
+    }
+
+    /**
+     * Creates a proxy delegating to the object of the specified transactional link.
+     *
+     * @param timed true if the commands are executed when called, false if they are only queued.
+     */
+    static <T> T forLink(Class<T> proxiedClass, TransactionalLink<T> transactionalLink, CommandTracer commandTracer, boolean timed) {
+        if (commandTracer == null) {
+            return TransactionalClassProxy.create(proxiedClass, transactionalLink);
+        }
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setSuperclass(proxiedClass);
+        if (AutoCloseable.class.isAssignableFrom(proxiedClass)) {
+            proxyFactory.setInterfaces(new Class<?>[]{TransactionalClassProxy.IgnoreAutoCloseable.class});
+        }
+        proxyFactory.setFilter(method -> !method.getDeclaringClass().equals(Object.class));
+        return create(proxyFactory, proxiedClass, new Class<?>[0], new Object[0], new TracingProxy(commandTracer, transactionalLink, timed));
+    }
+
+    /**
+     * Creates an instance of the specified class with the specified constructor arguments, its public commands being
+     * traced if a tracer is specified.
+     */
+    static <T> T forInstance(Class<T> instanceClass, Class<?>[] parameterTypes, Object[] args, CommandTracer commandTracer) {
+        if (commandTracer == null) {
+            try {
+                return instanceClass.getConstructor(parameterTypes).newInstance(args);
+            } catch (InvocationTargetException e) {
+                throw propagate(e, instanceClass);
+            } catch (NoSuchMethodException | InstantiationException | IllegalAccessException e) {
+                throw SeedException.wrap(e, RedisErrorCode.UNABLE_TO_CREATE_PROXY)
+                        .put("class", instanceClass.getName());
+            }
+        }
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.setSuperclass(instanceClass);
+        proxyFactory.setFilter(method -> Modifier.isPublic(method.getModifiers())
+                && !method.getDeclaringClass().equals(Object.class)
+                && !UNTRACED_METHODS.contains(method.getName()));
+        return create(proxyFactory, instanceClass, parameterTypes, args, new TracingProxy(commandTracer, null, true));
+    }
+
+    @Override
+    public Object invoke(Object self, Method thisMethod, Method proceed, Object[] args) throws Throwable {
+        Object target = transactionalLink == null ? self : transactionalLink.get();
+        Method method = transactionalLink == null ? proceed : thisMethod;
+        if (!commandTracer.sample()) {
+            return invoke(method, target, args);
+        }
+        long start = System.nanoTime();
+        Object result = invoke(method, target, args);
+        commandTracer.record(thisMethod, args, result, timed ? System.nanoTime() - start : -1);
+        return result;
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T create(ProxyFactory proxyFactory, Class<T> proxiedClass, Class<?>[] parameterTypes, Object[] args, MethodHandler methodHandler) {
+        try {
+            return (T) proxyFactory.create(parameterTypes, args, methodHandler);
+        } catch (InvocationTargetException e) {
+            throw propagate(e, proxiedClass);
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException e) {
+            throw SeedException.wrap(e, RedisErrorCode.UNABLE_TO_CREATE_PROXY)
+                    .put("class", proxiedClass.getName());
+        }
+    }
+
+    /**
+     * Rethrows the runtime exceptions of constructors as is, such as the connection failures of clients.
+     */
+    private static RuntimeException propagate(InvocationTargetException e, Class<?> instanceClass) {
+        if (e.getCause() instanceof RuntimeException) {
+            return (RuntimeException) e.getCause();
+        }
+        return SeedException.wrap(e.getCause(), RedisErrorCode.UNABLE_TO_CREATE_PROXY)
+                .put("class", instanceClass.getName());
+    }
+}
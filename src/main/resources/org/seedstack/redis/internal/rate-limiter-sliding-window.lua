@@ -0,0 +1,43 @@
+--
+-- Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+--
+-- This Source Code Form is subject to the terms of the Mozilla Public
+-- License, v. 2.0. If a copy of the MPL was not distributed with this
+-- file, You can obtain one at http://mozilla.org/MPL/2.0/.
+--
+
+-- Sliding window rate limiter, the count of the previous fixed window being weighted by its overlap with the sliding
+-- window. Grants between ARGV[1] and ARGV[2] permits out of ARGV[3] permits per period of ARGV[4] ms, and returns the
+-- number of granted permits. If fewer than ARGV[1] permits are available, returns the opposite of the estimated delay
+-- in ms before they are.
+redis.replicate_commands()
+local minimum = tonumber(ARGV[1])
+local maximum = tonumber(ARGV[2])
+local limit = tonumber(ARGV[3])
+local period = tonumber(ARGV[4])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local window = math.floor(now / period)
+local state = redis.call('HMGET', KEYS[1], 'window', 'current', 'previous')
+local stored = tonumber(state[1])
+local current = 0
+local previous = 0
+if stored == window then
+    current = tonumber(state[2])
+    previous = tonumber(state[3])
+elseif stored == window - 1 then
+    previous = tonumber(state[2])
+end
+local available = math.floor(limit - current - previous * (period - now % period) / period)
+local granted = math.min(maximum, available)
+if granted < minimum then
+    local remaining = period - now % period
+    if previous > 0 and limit - current >= minimum then
+        -- permits become available as the weight of the previous window decreases
+        return -math.max(1, remaining - math.floor((limit - current - minimum) * period / previous))
+    end
+    return -remaining
+end
+redis.call('HMSET', KEYS[1], 'window', window, 'current', current + granted, 'previous', previous)
+redis.call('PEXPIRE', KEYS[1], period * 2)
+return granted
@@ -0,0 +1,38 @@
+--
+-- Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+--
+-- This Source Code Form is subject to the terms of the Mozilla Public
+-- License, v. 2.0. If a copy of the MPL was not distributed with this
+-- file, You can obtain one at http://mozilla.org/MPL/2.0/.
+--
+
+-- Token bucket rate limiter, refilled with ARGV[3] permits per period of ARGV[4] ms up to a capacity of ARGV[5]
+-- permits. Grants between ARGV[1] and ARGV[2] permits and returns the number of granted permits. If fewer than ARGV[1]
+-- permits are available, returns the opposite of the delay in ms before they are. A missing bucket is full, so the key
+-- expires once the bucket would be refilled.
+redis.replicate_commands()
+local minimum = tonumber(ARGV[1])
+local maximum = tonumber(ARGV[2])
+local limit = tonumber(ARGV[3])
+local period = tonumber(ARGV[4])
+local capacity = tonumber(ARGV[5])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local state = redis.call('HMGET', KEYS[1], 'tokens', 'timestamp')
+local tokens = tonumber(state[1])
+local timestamp = tonumber(state[2])
+if tokens == nil or timestamp == nil then
+    tokens = capacity
+    timestamp = now
+elseif now > timestamp then
+    -- the clock of a promoted replica may lag behind, in which case the bucket is not refilled
+    tokens = math.min(capacity, tokens + (now - timestamp) * limit / period)
+    timestamp = now
+end
+local granted = math.min(maximum, math.floor(tokens))
+if granted < minimum then
+    return -math.max(1, math.ceil((math.min(minimum, capacity) - tokens) * period / limit))
+end
+redis.call('HMSET', KEYS[1], 'tokens', tokens - granted, 'timestamp', timestamp)
+redis.call('PEXPIRE', KEYS[1], math.ceil(capacity * period / limit) + 1)
+return granted
@@ -0,0 +1,32 @@
+--
+-- Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+--
+-- This Source Code Form is subject to the terms of the Mozilla Public
+-- License, v. 2.0. If a copy of the MPL was not distributed with this
+-- file, You can obtain one at http://mozilla.org/MPL/2.0/.
+--
+
+-- Counting semaphore whose holders are the members of a sorted set scored by the expiry of their lease. ARGV[1] is the
+-- operation and ARGV[2] the holder. Acquiring with at most ARGV[3] holders and renewing for ARGV[4] ms return 1 on
+-- success and 0 otherwise, releasing returns the number of removed holders.
+redis.replicate_commands()
+local operation = ARGV[1]
+local holder = ARGV[2]
+if operation == 'release' then
+    return redis.call('ZREM', KEYS[1], holder)
+end
+local permits = tonumber(ARGV[3])
+local lease = tonumber(ARGV[4])
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now)
+if operation == 'acquire' then
+    if redis.call('ZCARD', KEYS[1]) >= permits then
+        return 0
+    end
+elseif not redis.call('ZSCORE', KEYS[1], holder) then
+    return 0
+end
+redis.call('ZADD', KEYS[1], now + lease, holder)
+redis.call('PEXPIRE', KEYS[1], lease)
+return 1
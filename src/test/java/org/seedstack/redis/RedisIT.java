@@ -14,8 +14,26 @@ import org.seedstack.seed.testing.junit4.SeedITRunner;
 import org.seedstack.seed.transaction.Transactional;
 import redis.clients.jedis.*;
 
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.expiry.CreatedExpiryPolicy;
+import javax.cache.expiry.Duration;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -26,11 +44,42 @@ public class RedisIT {
     @Inject
     private Pipeline pipeline;
     @Inject
+    private Jedis jedis;
+    @Inject
     @Named("client1")
     private JedisPool jedisPool;
     @Inject
+    @Named("client1")
+    private AsyncRedis asyncRedis;
+    @Inject
+    @Named("client1")
+    private BatchingRedis batchingRedis;
+    @Inject
     @Named("cluster1")
     private JedisCluster jedisCluster;
+    @Inject
+    @Named("sharded1")
+    private ShardedRedis shardedRedis;
+    @Inject
+    @Named("client1")
+    private RedisTemplate<String, Object> redisTemplate;
+    @Inject
+    @Named("client1")
+    private RedisScanner redisScanner;
+    @Inject
+    @Named("client1")
+    private RedisBulkLoader redisBulkLoader;
+    @Inject
+    @RedisScript(value = "scripts/increment.lua", client = "client1")
+    private LuaScript<Long> incrementScript;
+    @Inject
+    @Named("limiter1")
+    private RedisRateLimiter redisRateLimiter;
+    @Inject
+    @Named("semaphore1")
+    private RedisSemaphore redisSemaphore;
+    @Inject
+    private RedisContextManager redisContextManager;
 
     @Test
     public void redis_is_injectable() {
@@ -56,6 +105,159 @@ public class RedisIT {
         assertThat(retrieveKey2().get()).isEqualTo("value3value4");
     }
 
+    @Test
+    public void non_atomic_pipeline() {
+        addKeys3(10);
+        assertThat(countKeys3(10)).isEqualTo(10);
+    }
+
+    @Test
+    public void fire_and_forget_pipeline() {
+        addKeys4(100);
+        try (Jedis connection = jedisPool.getResource()) {
+            assertThat(connection.get("key4-99")).isEqualTo("99");
+        }
+    }
+
+    @Test
+    public void direct_access() {
+        assertThat(incrementAndGet("counter1")).isEqualTo(incrementAndGet("counter1") - 1);
+    }
+
+    @Test
+    public void context_propagation() throws Exception {
+        assertThat(incrementOnAnotherThread("counter2")).isEqualTo(incrementOnAnotherThread("counter2") - 1);
+    }
+
+    @Test
+    public void budgeted_access() {
+        assertThat(incrementWithinBudget("counter3")).isEqualTo(incrementWithinBudget("counter3") - 1);
+    }
+
+    @Test
+    public void read_only_access() {
+        addKey1();
+        assertThat(readKey1()).isEqualTo("value1value2");
+    }
+
+    @Test
+    public void async_access() throws Exception {
+        asyncRedis.set("async1", "value5").get();
+        CompletableFuture<String> first = asyncRedis.get("async1");
+        CompletableFuture<Long> second = asyncRedis.incr("async2");
+        assertThat(first.thenCombine(second, (value, counter) -> value + (counter > 0)).get()).isEqualTo("value5true");
+    }
+
+    @Test
+    public void batched_access() throws Exception {
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(batchingRedis.incr("batched1"));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+        assertThat(batchingRedis.get("batched1").get()).isEqualTo(String.valueOf(futures.get(9).get()));
+    }
+
+    @Test
+    public void sharded_access() {
+        shardedRedis.mset("sharded1", "a", "sharded2", "b", "{sharded}3", "c", "{sharded}4", "d");
+        assertThat(shardedRedis.mget("sharded2", "sharded1", "{sharded}4")).containsExactly("b", "a", "d");
+        String tagged = shardedRedis.execute("{sharded}", jedis -> jedis.get("{sharded}3"));
+        assertThat(tagged).isEqualTo("c");
+        assertThat(shardedRedis.del("sharded1", "sharded2", "{sharded}3", "{sharded}4")).isEqualTo(4);
+    }
+
+    @Test
+    public void template_access() {
+        redisTemplate.set("template1", 42L);
+        redisTemplate.hset("template2", "field1", Arrays.asList("a", "b"));
+        assertThat(redisTemplate.get("template1")).isEqualTo(42L);
+        assertThat(redisTemplate.hget("template2", "field1")).isEqualTo(Arrays.asList("a", "b"));
+        assertThat(redisTemplate.del("template1")).isTrue();
+    }
+
+    @Test
+    public void scan_access() {
+        try (Jedis connection = jedisPool.getResource()) {
+            for (int i = 0; i < 50; i++) {
+                connection.set("scan:" + i, String.valueOf(i));
+                connection.sadd("scanSet", String.valueOf(i));
+            }
+        }
+        assertThat(redisScanner.scan(new ScanParams().match("scan:*").count(10)).distinct().count()).isEqualTo(50);
+        assertThat(redisScanner.sscan("scanSet").distinct().count()).isEqualTo(50);
+    }
+
+    @Test
+    public void bulk_load() {
+        BulkLoadResult result = redisBulkLoader.load(IntStream.range(0, 10000)
+                .mapToObj(i -> BulkCommand.set("bulk:" + i, String.valueOf(i))));
+        assertThat(result.getCommands()).isEqualTo(10000);
+        assertThat(result.getErrors()).isZero();
+        try (Jedis connection = jedisPool.getResource()) {
+            assertThat(connection.get("bulk:9999")).isEqualTo("9999");
+        }
+    }
+
+    @Test
+    public void script_access() {
+        long value = incrementScript.eval(Arrays.asList("scripted1"), Arrays.asList("2"));
+        assertThat(incrementScriptInTransaction().get()).isEqualTo(value + 3);
+    }
+
+    @Test
+    public void rate_limiter_access() {
+        String user = "user" + System.nanoTime();
+        long granted = IntStream.range(0, 10).filter(i -> redisRateLimiter.tryAcquire(user)).count();
+        assertThat(granted).isEqualTo(5);
+        assertThat(redisRateLimiter.tryAcquire(user + "-bis", 5)).isTrue();
+    }
+
+    @Test
+    public void semaphore_access() {
+        try (RedisSemaphore.Permit permit1 = redisSemaphore.tryAcquire("job1");
+             RedisSemaphore.Permit permit2 = redisSemaphore.tryAcquire("job1")) {
+            assertThat(permit1).isNotNull();
+            assertThat(permit1.renew()).isTrue();
+            assertThat(permit2).isNull();
+        }
+        try (RedisSemaphore.Permit permit = redisSemaphore.tryAcquire("job1")) {
+            assertThat(permit).isNotNull();
+        }
+    }
+
+    @Test
+    public void jcache_access() {
+        CacheManager cacheManager = Caching.getCachingProvider().getCacheManager(URI.create("redis:client1"), null);
+        Cache<String, Long> cache = cacheManager.createCache("cache1", new MutableConfiguration<String, Long>()
+                .setTypes(String.class, Long.class)
+                .setExpiryPolicyFactory(CreatedExpiryPolicy.factoryOf(Duration.ONE_MINUTE)));
+        try {
+            Map<String, Long> entries = new HashMap<>();
+            entries.put("key1", 1L);
+            entries.put("key2", 2L);
+            cache.putAll(entries);
+            assertThat(cache.getAll(entries.keySet())).isEqualTo(entries);
+            assertThat(cache.getAndPut("key1", 3L)).isEqualTo(1L);
+            assertThat(cache.replace("key2", 2L, 4L)).isTrue();
+            assertThat(cache.get("key2")).isEqualTo(4L);
+        } finally {
+            cacheManager.destroyCache("cache1");
+        }
+    }
+
+    @Test
+    public void listener_access() throws Exception {
+        String received = null;
+        for (int i = 0; i < 50 && received == null; i++) {
+            try (Jedis connection = jedisPool.getResource()) {
+                connection.publish("listened1", "message1");
+            }
+            received = Listeners.RECEIVED.poll(100, TimeUnit.MILLISECONDS);
+        }
+        assertThat(received).isEqualTo("listened1:message1");
+    }
+
     @Test
     public void plain_usage() {
         Jedis jedis = null;
@@ -73,6 +275,15 @@ public class RedisIT {
         }
     }
 
+    public static class Listeners {
+        static final BlockingQueue<String> RECEIVED = new LinkedBlockingQueue<>();
+
+        @RedisListener(client = "client1", channels = "listened1")
+        public void onMessage(String channel, String message) {
+            RECEIVED.add(channel + ":" + message);
+        }
+    }
+
     @Transactional
     @Redis("client1")
     protected void addKey1() {
@@ -87,6 +298,66 @@ public class RedisIT {
         pipeline.append("key2", "value4");
     }
 
+    @Transactional
+    @Redis(value = "client1", pipelined = true, atomic = false, flushThreshold = 3)
+    protected void addKeys3(int count) {
+        for (int i = 0; i < count; i++) {
+            pipeline.set("key3-" + i, String.valueOf(i));
+        }
+    }
+
+    @Transactional
+    @Redis(value = "client1", pipelined = true, fireAndForget = true)
+    protected void addKeys4(int count) {
+        for (int i = 0; i < count; i++) {
+            pipeline.set("key4-" + i, String.valueOf(i));
+        }
+    }
+
+    @Transactional
+    @Redis(value = "client1", mode = Redis.Mode.DIRECT)
+    protected long countKeys3(int count) {
+        long found = 0;
+        for (int i = 0; i < count; i++) {
+            if (jedis.exists("key3-" + i)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Transactional
+    @Redis(value = "client1", mode = Redis.Mode.DIRECT)
+    protected long incrementAndGet(String key) {
+        jedis.incr(key);
+        return Long.parseLong(jedis.get(key));
+    }
+
+    @Transactional
+    @Redis(value = "client1", mode = Redis.Mode.DIRECT)
+    protected long incrementOnAnotherThread(String key) throws Exception {
+        RedisContext redisContext = redisContextManager.capture();
+        return CompletableFuture.supplyAsync(() -> jedis.incr(key), redisContext.wrap(ForkJoinPool.commonPool())).get();
+    }
+
+    @Transactional
+    @Redis(value = "client1", mode = Redis.Mode.DIRECT, borrowTimeout = 1000)
+    protected long incrementWithinBudget(String key) {
+        return jedis.incr(key);
+    }
+
+    @Transactional
+    @Redis(value = "client1", mode = Redis.Mode.DIRECT, readOnly = true)
+    protected String readKey1() {
+        return jedis.get("key1");
+    }
+
+    @Transactional
+    @Redis(value = "client1")
+    protected Response<Long> incrementScriptInTransaction() {
+        return incrementScript.eval(transaction, Arrays.asList("scripted1"), Arrays.asList("3"));
+    }
+
     @Transactional
     @Redis(value = "client1")
     protected Response<String> retrieveKey1() {
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.seedstack.seed.diagnostic.DiagnosticManager;
+import org.seedstack.seed.testing.ConfigurationProperty;
+import org.seedstack.seed.testing.junit4.SeedITRunner;
+import org.seedstack.seed.transaction.Transactional;
+import redis.clients.jedis.Jedis;
+
+import javax.inject.Inject;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(SeedITRunner.class)
+@ConfigurationProperty(name = "redis.tracing.enabled", value = "true")
+@ConfigurationProperty(name = "redis.tracing.sampleRate", value = "1")
+public class RedisTracingIT {
+    @Inject
+    private Jedis jedis;
+    @Inject
+    private DiagnosticManager diagnosticManager;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void traced_access() {
+        incrementAndGet("traced1");
+        Map<String, Object> redisInfo = (Map<String, Object>) diagnosticManager.getDiagnosticInfo(null).get("redis");
+        Map<String, Object> tracingInfo = (Map<String, Object>) redisInfo.get("tracing");
+        assertThat((Map<String, Object>) tracingInfo.get("hotKeys")).containsKey("traced1");
+    }
+
+    @Transactional
+    @Redis(value = "client1", mode = Redis.Mode.DIRECT)
+    protected long incrementAndGet(String key) {
+        jedis.incr(key);
+        return Long.parseLong(jedis.get(key));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.RedisConfig;
+import redis.clients.jedis.JedisPool;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AsyncRedisImplTest {
+    private RespServer respServer;
+    private RedisMetrics redisMetrics;
+    private AsyncRedisImpl asyncRedis;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        redisMetrics = new RedisMetrics("client", Collections::emptyList);
+        asyncRedis = new AsyncRedisImpl("client", new RedisConfig.AsyncConfig().setMaxConnections(2),
+                () -> new JedisPool("127.0.0.1", respServer.getPort()), redisMetrics);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        asyncRedis.close();
+        respServer.close();
+    }
+
+    @Test
+    public void commands_complete_their_future() throws Exception {
+        assertThat(asyncRedis.setex("key1", 60, "value1").get(5, TimeUnit.SECONDS)).isEqualTo("OK");
+        assertThat(asyncRedis.get("key1").get(5, TimeUnit.SECONDS)).isEqualTo("value1");
+        assertThat(asyncRedis.expire("key1", 60).get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(asyncRedis.getJedisPool()).isNotNull();
+    }
+
+    @Test
+    public void exceptions_complete_the_future_exceptionally() {
+        CompletableFuture<Object> future = asyncRedis.execute(jedis -> {
+            throw new IllegalStateException("failure");
+        });
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(redisMetrics.getExceptionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void errors_complete_the_future_exceptionally() {
+        CompletableFuture<Object> future = asyncRedis.execute(jedis -> {
+            throw new StackOverflowError();
+        });
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(StackOverflowError.class);
+        assertThat(redisMetrics.getExceptionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void closed_facade_rejects_commands() {
+        asyncRedis.close();
+        assertThatThrownBy(() -> asyncRedis.get("key1").get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+    }
+}
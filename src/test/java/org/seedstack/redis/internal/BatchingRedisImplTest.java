@@ -0,0 +1,182 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.RedisConfig;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BatchingRedisImplTest {
+    private RespServer respServer;
+    private JedisPool jedisPool;
+    private RedisMetrics redisMetrics;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        jedisPool = new JedisPool("127.0.0.1", respServer.getPort());
+        redisMetrics = new RedisMetrics("client", () -> Collections.singletonList(jedisPool));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedisPool.close();
+        respServer.close();
+    }
+
+    @Test
+    public void commands_are_sent_in_batches() throws Exception {
+        BatchingRedisImpl batchingRedis = create(new RedisConfig.BatchingConfig().setMaxBatchSize(10).setMaxLingerMicros(100000));
+        try {
+            List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(batchingRedis.incr("counter1"));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertThat(futures.get(i).get(5, TimeUnit.SECONDS)).isEqualTo(i + 1);
+            }
+            assertThat(batchingRedis.setex("key1", 60, "value1").get(5, TimeUnit.SECONDS)).isEqualTo("OK");
+            assertThat(batchingRedis.expire("key1", 60).get(5, TimeUnit.SECONDS)).isEqualTo(1);
+            assertThat(batchingRedis.get("key1").get(5, TimeUnit.SECONDS)).isEqualTo("value1");
+        } finally {
+            batchingRedis.close();
+        }
+        assertThat(redisMetrics.getBatchedCommandCount()).isEqualTo(23);
+        assertThat(redisMetrics.getBatchCount()).isLessThan(23);
+    }
+
+    @Test
+    public void failed_batches_complete_their_futures_exceptionally() throws IOException {
+        BatchingRedisImpl batchingRedis = create(new RedisConfig.BatchingConfig());
+        try {
+            respServer.close();
+            assertThatThrownBy(() -> batchingRedis.get("key1").get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+            assertThat(redisMetrics.getExceptionCount()).isPositive();
+        } finally {
+            batchingRedis.close();
+        }
+    }
+
+    @Test
+    public void commands_sent_before_a_failure_may_have_been_executed() throws Exception {
+        BatchingRedisImpl batchingRedis = create(new RedisConfig.BatchingConfig());
+        try {
+            respServer.dropConnectionAfter("INCR");
+            assertThatThrownBy(() -> batchingRedis.incr("counter1").get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(JedisConnectionException.class);
+            assertThat(respServer.getString("counter1")).isEqualTo("1");
+        } finally {
+            batchingRedis.close();
+        }
+    }
+
+    @Test
+    public void commands_failing_to_be_queued_do_not_fail_the_batch() throws Exception {
+        BatchingRedisImpl batchingRedis = create(new RedisConfig.BatchingConfig().setMaxLingerMicros(100000));
+        try {
+            CompletableFuture<String> failing = batchingRedis.submit(pipeline -> {
+                throw new IllegalStateException("queue failure");
+            });
+            CompletableFuture<Long> succeeding = batchingRedis.incr("counter1");
+            assertThat(succeeding.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+            assertThatThrownBy(() -> failing.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("queue failure");
+        } finally {
+            batchingRedis.close();
+        }
+    }
+
+    @Test
+    public void futures_are_completed_after_the_connection_is_released() throws Exception {
+        BatchingRedisImpl batchingRedis = create(new RedisConfig.BatchingConfig());
+        try {
+            assertThat(batchingRedis.incr("counter1")
+                    .thenApply(value -> jedisPool.getNumActive())
+                    .get(5, TimeUnit.SECONDS)).isZero();
+        } finally {
+            batchingRedis.close();
+        }
+    }
+
+    @Test
+    public void commands_are_rejected_when_the_queue_is_full() throws Exception {
+        BatchingRedisImpl batchingRedis = create(new RedisConfig.BatchingConfig().setMaxPending(1).setMaxBatchSize(1));
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<String> blocking = batchingRedis.submit(pipeline -> {
+                sending.countDown();
+                await(release);
+                return pipeline.get("key1");
+            });
+            await(sending);
+            CompletableFuture<String> queued = batchingRedis.get("key1");
+            assertThatThrownBy(() -> batchingRedis.get("key1").get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(RejectedExecutionException.class);
+            release.countDown();
+            assertThat(blocking.get(5, TimeUnit.SECONDS)).isNull();
+            assertThat(queued.get(5, TimeUnit.SECONDS)).isNull();
+        } finally {
+            release.countDown();
+            batchingRedis.close();
+        }
+    }
+
+    @Test
+    public void commands_submitted_concurrently_with_close_are_always_completed() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            BatchingRedisImpl batchingRedis = create(new RedisConfig.BatchingConfig());
+            List<CompletableFuture<Long>> futures = Collections.synchronizedList(new ArrayList<>());
+            Thread submitter = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    futures.add(batchingRedis.incr("counter1"));
+                }
+            });
+            submitter.start();
+            batchingRedis.close();
+            submitter.join();
+            for (CompletableFuture<Long> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertThat(e).hasCauseInstanceOf(RejectedExecutionException.class);
+                }
+            }
+        }
+    }
+
+    private BatchingRedisImpl create(RedisConfig.BatchingConfig batchingConfig) {
+        return new BatchingRedisImpl("client", batchingConfig, jedisPool, redisMetrics);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
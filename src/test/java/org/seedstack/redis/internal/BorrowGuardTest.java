@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.seed.SeedException;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BorrowGuardTest {
+    private RespServer respServer;
+    private BudgetedJedisPool jedisPool;
+    private RedisMetrics redisMetrics;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(4);
+        jedisPool = new BudgetedJedisPool(poolConfig, URI.create("redis://127.0.0.1:" + respServer.getPort()), 2000, 2000);
+        redisMetrics = new RedisMetrics("client", () -> Collections.singletonList(jedisPool));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedisPool.close();
+        respServer.close();
+    }
+
+    @Test
+    public void borrows_wait_at_most_the_transaction_budget() {
+        BorrowGuard borrowGuard = new BorrowGuard("client", new RedisConfig.BorrowConfig(), jedisPool);
+        List<Jedis> borrowed = borrowAll(borrowGuard);
+        try {
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> borrowGuard.borrow(jedisPool, redisMetrics, budget(50)))
+                    .isInstanceOfSatisfying(SeedException.class,
+                            e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.BORROW_TIMEOUT_EXCEEDED))
+                    .hasCauseInstanceOf(JedisExhaustedPoolException.class);
+            assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(50_000_000L);
+        } finally {
+            borrowed.forEach(borrowGuard::release);
+        }
+        assertThat(jedisPool.getNumActive()).isZero();
+        assertThat(jedisPool.getNumIdle()).isEqualTo(4);
+    }
+
+    @Test
+    public void fail_fast_borrows_do_not_wait() {
+        BorrowGuard borrowGuard = new BorrowGuard("client", new RedisConfig.BorrowConfig().setFailFast(true), jedisPool);
+        List<Jedis> borrowed = borrowAll(borrowGuard);
+        try {
+            assertThatThrownBy(() -> borrowGuard.borrow(jedisPool, redisMetrics, null))
+                    .isInstanceOfSatisfying(SeedException.class,
+                            e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.BORROW_TIMEOUT_EXCEEDED));
+        } finally {
+            borrowed.forEach(borrowGuard::release);
+        }
+    }
+
+    @Test
+    public void circuit_opens_after_consecutive_failures_and_closes_after_a_successful_trial() throws Exception {
+        BorrowGuard borrowGuard = new BorrowGuard("client", new RedisConfig.BorrowConfig().setCircuitBreaker(
+                new RedisConfig.BorrowConfig.CircuitBreakerConfig().setEnabled(true).setFailureThreshold(2).setOpenDuration(200)), jedisPool);
+        for (int i = 0; i < 2; i++) {
+            Jedis jedis = borrowGuard.borrow(jedisPool, redisMetrics, null);
+            respServer.dropConnectionAfter("ECHO");
+            assertThatThrownBy(() -> jedis.echo("hello")).isInstanceOf(JedisConnectionException.class);
+            borrowGuard.release(jedis);
+        }
+        assertThat(borrowGuard.collect()).containsEntry("circuit", "OPEN").containsEntry("consecutiveFailures", 2);
+        assertThatThrownBy(() -> borrowGuard.borrow(jedisPool, redisMetrics, null))
+                .isInstanceOfSatisfying(SeedException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.CIRCUIT_BREAKER_OPEN));
+        assertThat(borrowGuard.collect()).containsEntry("rejections", 1L);
+
+        Thread.sleep(250);
+        Jedis trial = borrowGuard.borrow(jedisPool, redisMetrics, null);
+        assertThatThrownBy(() -> borrowGuard.borrow(jedisPool, redisMetrics, null))
+                .isInstanceOfSatisfying(SeedException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.CIRCUIT_BREAKER_OPEN));
+        assertThat(trial.ping()).isEqualTo("PONG");
+        borrowGuard.release(trial);
+        assertThat(borrowGuard.collect()).containsEntry("circuit", "CLOSED").containsEntry("consecutiveFailures", 0);
+        borrowGuard.release(borrowGuard.borrow(jedisPool, redisMetrics, null));
+    }
+
+    @Test
+    public void connection_failures_count_towards_opening_the_circuit() throws IOException {
+        BorrowGuard borrowGuard = new BorrowGuard("client", new RedisConfig.BorrowConfig().setCircuitBreaker(
+                new RedisConfig.BorrowConfig.CircuitBreakerConfig().setEnabled(true).setFailureThreshold(2)), jedisPool);
+        respServer.close();
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> borrowGuard.borrow(jedisPool, redisMetrics, null)).isInstanceOf(JedisConnectionException.class);
+        }
+        assertThatThrownBy(() -> borrowGuard.borrow(jedisPool, redisMetrics, null))
+                .isInstanceOfSatisfying(SeedException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.CIRCUIT_BREAKER_OPEN));
+    }
+
+    @Test
+    public void adaptive_sizing_grows_on_exhaustion_and_shrinks_when_idle() {
+        BorrowGuard borrowGuard = new BorrowGuard("client", new RedisConfig.BorrowConfig().setAdaptive(
+                new RedisConfig.BorrowConfig.AdaptiveConfig().setEnabled(true).setMinTotal(2).setMaxTotal(8)), jedisPool);
+        assertThat(borrowGuard.isAdaptive()).isTrue();
+        List<Jedis> borrowed = borrowAll(borrowGuard);
+        assertThatThrownBy(() -> borrowGuard.borrow(jedisPool, redisMetrics, budget(10))).isInstanceOf(SeedException.class);
+        borrowGuard.adapt();
+        assertThat(jedisPool.getMaxTotal()).isEqualTo(5);
+        borrowed.add(borrowGuard.borrow(jedisPool, redisMetrics, budget(10)));
+        borrowed.forEach(borrowGuard::release);
+
+        borrowGuard.adapt();
+        assertThat(jedisPool.getMaxTotal()).isEqualTo(5);
+        borrowGuard.adapt();
+        assertThat(jedisPool.getMaxTotal()).isEqualTo(4);
+        assertThat(borrowGuard.collect()).containsEntry("maxTotal", 4);
+    }
+
+    @Test
+    public void adaptive_sizing_requires_a_bounded_pool() {
+        jedisPool.setMaxTotal(-1);
+        BorrowGuard borrowGuard = new BorrowGuard("client", new RedisConfig.BorrowConfig().setAdaptive(
+                new RedisConfig.BorrowConfig.AdaptiveConfig().setEnabled(true)), jedisPool);
+        assertThat(borrowGuard.isAdaptive()).isFalse();
+    }
+
+    private List<Jedis> borrowAll(BorrowGuard borrowGuard) {
+        List<Jedis> borrowed = new ArrayList<>();
+        for (int i = 0; i < jedisPool.getMaxTotal(); i++) {
+            borrowed.add(borrowGuard.borrow(jedisPool, redisMetrics, null));
+        }
+        return borrowed;
+    }
+
+    private static TransactionMetadata budget(int timeout) {
+        TransactionMetadata transactionMetadata = new TransactionMetadata();
+        transactionMetadata.addMetadata(BorrowGuard.BORROW_TIMEOUT, timeout);
+        return transactionMetadata;
+    }
+}
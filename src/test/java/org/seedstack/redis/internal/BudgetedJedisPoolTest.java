@@ -0,0 +1,96 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+import java.io.IOException;
+import java.net.URI;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BudgetedJedisPoolTest {
+    private RespServer respServer;
+    private BudgetedJedisPool jedisPool;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(2);
+        poolConfig.setMaxWaitMillis(50);
+        jedisPool = new BudgetedJedisPool(poolConfig, URI.create("redis://127.0.0.1:" + respServer.getPort()), 2000, 2000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedisPool.close();
+        respServer.close();
+    }
+
+    @Test
+    public void connections_are_borrowed_and_returned() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.ping()).isEqualTo("PONG");
+            assertThat(jedisPool.getNumActive()).isEqualTo(1);
+        }
+        assertThat(jedisPool.getNumActive()).isZero();
+        assertThat(jedisPool.getNumIdle()).isEqualTo(1);
+        assertThat(jedisPool.getNumWaiters()).isZero();
+        assertThat(jedisPool.getMaxBorrowWaitTimeMillis()).isGreaterThanOrEqualTo(0);
+    }
+
+    @Test
+    public void broken_connections_are_destroyed() {
+        Jedis jedis = jedisPool.getResource();
+        respServer.dropConnectionAfter("PING");
+        assertThatThrownBy(jedis::ping).isInstanceOf(JedisConnectionException.class);
+        jedis.close();
+        assertThat(jedisPool.getNumActive()).isZero();
+        assertThat(jedisPool.getNumIdle()).isZero();
+    }
+
+    @Test
+    public void exhausted_pool_waits_the_specified_time() {
+        try (Jedis first = jedisPool.getResource(); Jedis second = jedisPool.getResource(0)) {
+            assertThat(first).isNotSameAs(second);
+            assertThatThrownBy(() -> jedisPool.getResource(10)).isInstanceOf(JedisExhaustedPoolException.class);
+            assertThatThrownBy(jedisPool::getResource).isInstanceOf(JedisExhaustedPoolException.class);
+        }
+    }
+
+    @Test
+    public void pool_can_be_resized_and_prefilled() {
+        jedisPool.setMaxTotal(3);
+        assertThat(jedisPool.getMaxTotal()).isEqualTo(3);
+        jedisPool.addObjects(3);
+        assertThat(jedisPool.getNumIdle()).isEqualTo(3);
+    }
+
+    @Test
+    public void unreachable_server_is_reported_as_connection_failure() throws IOException {
+        respServer.close();
+        assertThatThrownBy(() -> jedisPool.getResource(10)).isInstanceOf(JedisConnectionException.class);
+    }
+
+    @Test
+    public void closed_pool_reports_no_connections() {
+        jedisPool.addObjects(1);
+        jedisPool.close();
+        assertThat(jedisPool.isClosed()).isTrue();
+        assertThat(jedisPool.getNumActive()).isEqualTo(-1);
+        assertThat(jedisPool.getNumIdle()).isEqualTo(-1);
+    }
+}
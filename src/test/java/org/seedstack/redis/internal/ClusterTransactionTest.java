@@ -0,0 +1,194 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.seed.SeedException;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ClusterTransactionTest {
+    private final RespServer.SlotMap slotMap = new RespServer.SlotMap();
+    private RespServer first;
+    private RespServer second;
+    private JedisCluster jedisCluster;
+    private ClusterTopology clusterTopology;
+
+    @Before
+    public void setUp() throws IOException {
+        first = new RespServer().setSlotMap(slotMap);
+        second = new RespServer().setSlotMap(slotMap);
+        slotMap.assign(0, 8191, first).assign(8192, JedisCluster.HASHSLOTS - 1, second);
+        GenericObjectPoolConfig<Jedis> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setTestOnBorrow(true);
+        jedisCluster = new JedisCluster(new HostAndPort("127.0.0.1", first.getPort()), poolConfig);
+        clusterTopology = new ClusterTopology("cluster", jedisCluster, 3, new RedisMetrics("cluster", Collections::emptyList));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedisCluster.close();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void commands_are_executed_on_the_owner_of_the_slot() {
+        String key = keyOwnedBy(8192, JedisCluster.HASHSLOTS - 1);
+        ClusterTransaction transaction = new ClusterTransaction(clusterTopology, slotOf(key));
+        Response<String> set = transaction.set(key, "1");
+        Response<Long> incr = transaction.incr(key);
+        assertThat(transaction.exec()).containsExactly("OK", 2L);
+        assertThat(set.get()).isEqualTo("OK");
+        assertThat(incr.get()).isEqualTo(2);
+        assertThat(second.getString(key)).isEqualTo("2");
+        assertThat(first.getString(key)).isNull();
+    }
+
+    @Test
+    public void empty_transactions_are_not_sent() {
+        long commandCount = first.getCommandCount();
+        ClusterTransaction transaction = new ClusterTransaction(clusterTopology, 0);
+        assertThat(transaction.exec()).isEmpty();
+        assertThat(transaction.execGetResponse()).isEmpty();
+        assertThat(first.getCommandCount()).isEqualTo(commandCount);
+    }
+
+    @Test
+    public void exec_replies_are_mapped_onto_responses() {
+        String key = keyOwnedBy(0, 8191);
+        ClusterTransaction transaction = new ClusterTransaction(clusterTopology, slotOf(key));
+        Response<String> set = transaction.set(key, "value");
+        Response<String> get = transaction.get(key);
+        List<Response<?>> responses = transaction.execGetResponse();
+        assertThat(responses).hasSize(2);
+        assertThat(responses.get(0).get()).isEqualTo("OK");
+        assertThat(responses.get(1).get()).isEqualTo("value");
+        assertThat(set.get()).isEqualTo("OK");
+        assertThat(get.get()).isEqualTo("value");
+    }
+
+    @Test
+    public void moved_transactions_are_executed_again_on_the_new_owner() {
+        String key = keyOwnedBy(0, 8191);
+        clusterTopology.refresh();
+        slotMap.assign(slotOf(key), slotOf(key), second);
+        ClusterTransaction transaction = new ClusterTransaction(clusterTopology, slotOf(key));
+        Response<Long> response = transaction.incr(key);
+        transaction.exec();
+        assertThat(response.get()).isEqualTo(1);
+        assertThat(second.getString(key)).isEqualTo("1");
+        assertThat(first.getString(key)).isNull();
+        assertThat(clusterTopology.getOwner(slotOf(key)).getPort()).isEqualTo(second.getPort());
+    }
+
+    @Test
+    public void asked_transactions_are_executed_again_on_the_importing_node() {
+        String key = keyOwnedBy(0, 8191);
+        clusterTopology.refresh();
+        slotMap.migrate(slotOf(key), second);
+        ClusterTransaction transaction = new ClusterTransaction(clusterTopology, slotOf(key));
+        Response<String> response = transaction.set(key, "value");
+        transaction.execGetResponse();
+        assertThat(response.get()).isEqualTo("OK");
+        assertThat(second.getString(key)).isEqualTo("value");
+        assertThat(first.getString(key)).isNull();
+        assertThat(clusterTopology.getOwner(slotOf(key)).getPort()).isEqualTo(first.getPort());
+    }
+
+    @Test
+    public void transactions_are_not_executed_again_after_a_connection_failure() {
+        String key = keyOwnedBy(0, 8191);
+        first.dropConnectionAfter("EXEC");
+        ClusterTransaction transaction = new ClusterTransaction(clusterTopology, slotOf(key));
+        transaction.incr(key);
+        assertThatThrownBy(transaction::exec).isInstanceOf(JedisConnectionException.class);
+        assertThat(first.getString(key)).isEqualTo("1");
+    }
+
+    @Test
+    public void keys_of_other_slots_are_rejected() {
+        String key = keyOwnedBy(0, 8191);
+        ClusterTransaction transaction = new ClusterTransaction(clusterTopology, slotOf(key) + 1);
+        assertThatThrownBy(() -> transaction.get(key)).isInstanceOfSatisfying(SeedException.class,
+                e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.CROSS_SLOT_CLUSTER_TRANSACTION));
+    }
+
+    @Test
+    public void slot_is_pinned_by_the_first_key_of_each_transaction() {
+        String firstKey = keyOwnedBy(0, 8191);
+        String secondKey = keyOwnedBy(8192, JedisCluster.HASHSLOTS - 1);
+        ClusterTransaction first = new ClusterTransaction(clusterTopology);
+        first.set(firstKey, "value1");
+        first.exec();
+        ClusterTransaction second = new ClusterTransaction(clusterTopology);
+        second.set(secondKey, "value2");
+        second.exec();
+        assertThat(this.first.getString(firstKey)).isEqualTo("value1");
+        assertThat(this.second.getString(secondKey)).isEqualTo("value2");
+    }
+
+    @Test
+    public void keys_of_other_slots_than_the_first_key_are_rejected() {
+        ClusterTransaction transaction = new ClusterTransaction(clusterTopology);
+        transaction.set("{user1}.name", "name");
+        assertThatThrownBy(() -> transaction.set("{user2}.name", "name")).isInstanceOfSatisfying(SeedException.class,
+                e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.CROSS_SLOT_CLUSTER_TRANSACTION));
+    }
+
+    @Test
+    public void multi_key_commands_are_checked_as_they_are_queued() {
+        ClusterTransaction transaction = new ClusterTransaction(clusterTopology);
+        Response<String> mset = transaction.mset("{user1}.name", "name", "{user1}.email", "email");
+        Response<List<String>> mget = transaction.mget("{user1}.name", "{user1}.email");
+        Response<Long> del = transaction.del("{user1}.name", "{user1}.email");
+        assertThatThrownBy(() -> transaction.mget("{user1}.name", "{user2}.name")).isInstanceOf(SeedException.class);
+        assertThatThrownBy(() -> transaction.mset("{user1}.name", "name", "{user2}.name", "name")).isInstanceOf(SeedException.class);
+        assertThatThrownBy(() -> transaction.del("{user1}.name", "{user2}.name")).isInstanceOf(SeedException.class);
+        assertThatThrownBy(() -> transaction.del("{user2}.name".getBytes(), "{user1}.name".getBytes())).isInstanceOf(SeedException.class);
+        transaction.exec();
+        assertThat(mset.get()).isEqualTo("OK");
+        assertThat(mget.get()).containsExactly("name", "email");
+        assertThat(del.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void transactions_without_keys_cannot_be_routed() {
+        ClusterTransaction transaction = new ClusterTransaction(clusterTopology);
+        transaction.ping();
+        assertThatThrownBy(transaction::exec).isInstanceOfSatisfying(SeedException.class,
+                e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.UNROUTABLE_CLUSTER_TRANSACTION));
+    }
+
+    private static String keyOwnedBy(int start, int end) {
+        for (int i = 0; ; i++) {
+            int slot = slotOf("key" + i);
+            if (slot >= start && slot <= end) {
+                return "key" + i;
+            }
+        }
+    }
+
+    private static int slotOf(String key) {
+        return JedisClusterCRC16.getSlot(key);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FireAndForgetPipelineTest {
+    private RespServer respServer;
+    private Jedis jedis;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        jedis = new Jedis("127.0.0.1", respServer.getPort());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedis.close();
+        respServer.close();
+    }
+
+    @Test
+    public void commands_are_executed_without_reading_replies() {
+        FireAndForgetPipeline pipeline = new FireAndForgetPipeline(jedis.getClient());
+        for (int i = 0; i < 100; i++) {
+            pipeline.set("key" + i, String.valueOf(i));
+        }
+        pipeline.incr("key0");
+        pipeline.sync();
+        assertThat(respServer.getString("key99")).isEqualTo("99");
+        // replies are enabled again, so the connection is usable afterwards
+        assertThat(jedis.get("key0")).isEqualTo("1");
+        pipeline.sync();
+        assertThat(jedis.ping()).isEqualTo("PONG");
+    }
+
+    @Test
+    public void all_commands_return_the_same_unreadable_response() {
+        FireAndForgetPipeline pipeline = new FireAndForgetPipeline(jedis.getClient());
+        Response<String> set = pipeline.set("key1", "value1");
+        Response<Long> incr = pipeline.incr("counter1");
+        pipeline.sync();
+        assertThat((Object) set).isSameAs(incr);
+        assertThatThrownBy(set::get).isInstanceOf(JedisDataException.class).hasMessageContaining("discarded");
+        assertThatThrownBy(incr::get).isInstanceOf(JedisDataException.class);
+    }
+
+    @Test
+    public void multi_is_not_supported() {
+        FireAndForgetPipeline pipeline = new FireAndForgetPipeline(jedis.getClient());
+        assertThatThrownBy(pipeline::multi).isInstanceOf(UnsupportedOperationException.class);
+        pipeline.sync();
+    }
+
+    @Test
+    public void connection_errors_are_reported_on_sync() {
+        FireAndForgetPipeline pipeline = new FireAndForgetPipeline(jedis.getClient());
+        respServer.dropConnectionAfter("SET");
+        pipeline.set("key1", "value1");
+        assertThatThrownBy(pipeline::sync).isInstanceOf(JedisConnectionException.class);
+        assertThat(respServer.getString("key1")).isEqualTo("value1");
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FlushingPipelineTest {
+    private RespServer respServer;
+    private Jedis jedis;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        jedis = new Jedis("127.0.0.1", respServer.getPort());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedis.close();
+        respServer.close();
+    }
+
+    @Test
+    public void pipeline_is_synchronized_every_threshold_commands() {
+        FlushingPipeline pipeline = FlushingPipeline.pipelined(jedis, 3);
+        Response<Long> first = pipeline.incr("counter1");
+        pipeline.incr("counter1");
+        Response<Long> third = pipeline.incr("counter1");
+        assertThat(first.get()).isEqualTo(1);
+        assertThat(third.get()).isEqualTo(3);
+
+        Response<Long> fourth = pipeline.incr("counter1");
+        assertThatThrownBy(fourth::get).isInstanceOf(JedisDataException.class);
+        pipeline.sync();
+        assertThat(fourth.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void pipeline_is_registered_on_the_connection() {
+        FlushingPipeline pipeline = FlushingPipeline.pipelined(jedis, 10);
+        pipeline.set("key1", "value1");
+        assertThatThrownBy(() -> jedis.get("key1")).isInstanceOf(JedisDataException.class);
+        // resetting the connection, as done by its pool, reads the pending replies
+        jedis.resetState();
+        assertThat(jedis.get("key1")).isEqualTo("value1");
+    }
+
+    @Test
+    public void flushed_commands_are_executed_when_the_pipeline_is_cleared() {
+        FlushingPipeline pipeline = FlushingPipeline.pipelined(jedis, 2);
+        pipeline.incr("counter1");
+        pipeline.incr("counter1");
+        assertThat(respServer.getString("counter1")).isEqualTo("2");
+        pipeline.incr("counter1");
+        pipeline.clear();
+        assertThat(respServer.getString("counter1")).isEqualTo("3");
+    }
+}
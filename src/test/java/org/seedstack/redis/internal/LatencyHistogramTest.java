@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LatencyHistogramTest {
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    @Test
+    public void empty_histogram_has_zero_stats() {
+        LatencyStats stats = latencyHistogram.snapshot();
+        assertThat(stats.getCount()).isZero();
+        assertThat(stats.getMean()).isZero();
+        assertThat(stats.getP50()).isZero();
+        assertThat(stats.getP999()).isZero();
+        assertThat(stats.getMax()).isZero();
+    }
+
+    @Test
+    public void percentiles_are_bucket_upper_bounds_capped_by_the_max() {
+        for (int i = 0; i < 99; i++) {
+            record(10);
+        }
+        record(5000);
+        LatencyStats stats = latencyHistogram.snapshot();
+        assertThat(stats.getCount()).isEqualTo(100);
+        assertThat(stats.getMean()).isEqualTo(59);
+        assertThat(stats.getP50()).isEqualTo(16);
+        assertThat(stats.getP99()).isEqualTo(16);
+        assertThat(stats.getP999()).isEqualTo(5000);
+        assertThat(stats.getMax()).isEqualTo(5000);
+    }
+
+    @Test
+    public void single_value_is_reported_exactly() {
+        record(1000);
+        LatencyStats stats = latencyHistogram.snapshot();
+        assertThat(stats.getP50()).isEqualTo(1000);
+        assertThat(stats.getP99()).isEqualTo(1000);
+        assertThat(stats.getMax()).isEqualTo(1000);
+        assertThat(stats.toMap()).containsEntry("count", 1L).containsEntry("p50Micros", 1000L);
+    }
+
+    @Test
+    public void negative_and_huge_durations_are_bounded() {
+        latencyHistogram.record(-5);
+        latencyHistogram.record(Long.MAX_VALUE);
+        LatencyStats stats = latencyHistogram.snapshot();
+        assertThat(stats.getCount()).isEqualTo(2);
+        assertThat(stats.getP50()).isZero();
+        assertThat(stats.getP999()).isEqualTo(1L << 39);
+        assertThat(stats.getMax()).isEqualTo(TimeUnit.NANOSECONDS.toMicros(Long.MAX_VALUE));
+    }
+
+    private void record(long micros) {
+        latencyHistogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.common.io.Resources;
+import com.google.inject.Key;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.LuaScript;
+import org.seedstack.redis.RedisScript;
+import org.seedstack.seed.SeedException;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LuaScriptRegistryTest {
+    private final RespServer.SlotMap slotMap = new RespServer.SlotMap();
+    private RespServer server;
+    private RespServer first;
+    private RespServer second;
+    private JedisPool jedisPool;
+    private JedisCluster jedisCluster;
+    private LuaScriptRegistry luaScriptRegistry;
+    private String sha1;
+
+    @Before
+    public void setUp() throws IOException {
+        String source = Resources.toString(Resources.getResource("scripts/increment.lua"), StandardCharsets.UTF_8);
+        sha1 = LuaScriptRegistry.sha1(source);
+        server = createServer(source);
+        jedisPool = new JedisPool("127.0.0.1", server.getPort());
+        first = createServer(source).setSlotMap(slotMap);
+        second = createServer(source).setSlotMap(slotMap);
+        slotMap.assign(0, 8191, first).assign(8192, JedisCluster.HASHSLOTS - 1, second);
+        jedisCluster = new JedisCluster(new HostAndPort("127.0.0.1", first.getPort()), new GenericObjectPoolConfig<>());
+        luaScriptRegistry = createRegistry(null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedisPool.close();
+        jedisCluster.close();
+        server.close();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void scripts_are_loaded_into_every_client_and_cluster_master() {
+        luaScriptRegistry.register(Collections.singletonList(Scripts.class));
+        assertThat(isLoaded(server)).isFalse();
+        luaScriptRegistry.preload();
+        assertThat(isLoaded(server)).isTrue();
+        assertThat(isLoaded(first)).isTrue();
+        assertThat(isLoaded(second)).isTrue();
+    }
+
+    @Test
+    public void scripts_are_invoked_by_their_digest() throws Exception {
+        luaScriptRegistry.register(Collections.singletonList(Scripts.class));
+        luaScriptRegistry.preload();
+        LuaScript<Long> increment = getScript(Scripts.class, "clientIncrement");
+        assertThat(increment.getSha1()).isEqualTo(sha1);
+        assertThat(increment.eval(Collections.singletonList("counter"), Collections.singletonList("2"))).isEqualTo(2);
+        assertThat(increment.eval(Collections.singletonList("counter"), Collections.singletonList("2"))).isEqualTo(4);
+        assertThat(server.getString("counter")).isEqualTo("4");
+        assertThat(server.getCommandCount("EVALSHA")).isEqualTo(2);
+        assertThat(server.getCommandCount("EVAL")).isZero();
+    }
+
+    @Test
+    public void missing_scripts_are_loaded_again_and_retried() throws Exception {
+        luaScriptRegistry.register(Collections.singletonList(Scripts.class));
+        LuaScript<Long> increment = getScript(Scripts.class, "clientIncrement");
+        assertThat(increment.eval(Collections.singletonList("counter"), Collections.singletonList("1"))).isEqualTo(1);
+        assertThat(server.getCommandCount("EVALSHA")).isEqualTo(2);
+        assertThat(server.getCommandCount("SCRIPT")).isEqualTo(1);
+        assertThat(isLoaded(server)).isTrue();
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(increment.eval(jedis, Collections.singletonList("counter"), Collections.singletonList("1"))).isEqualTo(2);
+        }
+        assertThat(server.getCommandCount("SCRIPT")).isEqualTo(2);
+    }
+
+    @Test
+    public void cluster_scripts_run_on_the_owner_of_the_first_key() throws Exception {
+        luaScriptRegistry.register(Collections.singletonList(Scripts.class));
+        luaScriptRegistry.preload();
+        LuaScript<Long> increment = getScript(Scripts.class, "clusterIncrement");
+        String firstKey = keyOwnedBy(0, 8191);
+        String secondKey = keyOwnedBy(8192, JedisCluster.HASHSLOTS - 1);
+        flush(second);
+        long scriptCommands = second.getCommandCount("SCRIPT");
+
+        assertThat(increment.eval(Collections.singletonList(firstKey), Collections.singletonList("3"))).isEqualTo(3);
+        assertThat(increment.eval(Collections.singletonList(secondKey), Collections.singletonList("5"))).isEqualTo(5);
+        assertThat(first.getString(firstKey)).isEqualTo("3");
+        assertThat(second.getString(secondKey)).isEqualTo("5");
+        assertThat(second.getCommandCount("SCRIPT") - scriptCommands).isEqualTo(1);
+        assertThat(isLoaded(second)).isTrue();
+    }
+
+    @Test
+    public void queued_scripts_fail_when_missing_and_are_loaded_again() throws Exception {
+        luaScriptRegistry.register(Collections.singletonList(Scripts.class));
+        LuaScript<Long> increment = getScript(Scripts.class, "clientIncrement");
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            Response<Long> response = increment.eval(pipeline, Collections.singletonList("counter"), Collections.singletonList("1"));
+            pipeline.sync();
+            assertThatThrownBy(response::get).isInstanceOf(JedisNoScriptException.class);
+            assertThat(isLoaded(server)).isTrue();
+
+            response = increment.eval(pipeline, Collections.singletonList("counter"), Collections.singletonList("1"));
+            pipeline.sync();
+            assertThat(response.get()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void queued_cluster_scripts_are_loaded_again_on_every_master() throws Exception {
+        luaScriptRegistry.register(Collections.singletonList(Scripts.class));
+        LuaScript<Long> increment = getScript(Scripts.class, "clusterIncrement");
+        try (Jedis jedis = new Jedis("127.0.0.1", first.getPort())) {
+            Pipeline pipeline = jedis.pipelined();
+            Response<Long> response = increment.eval(pipeline, Collections.singletonList(keyOwnedBy(0, 8191)), Collections.singletonList("1"));
+            pipeline.sync();
+            assertThatThrownBy(response::get).isInstanceOf(JedisNoScriptException.class);
+        }
+        assertThat(isLoaded(first)).isTrue();
+        assertThat(isLoaded(second)).isTrue();
+    }
+
+    @Test
+    public void fields_of_the_same_script_and_target_share_their_handle() throws Exception {
+        luaScriptRegistry = createRegistry("client");
+        luaScriptRegistry.register(Arrays.asList(Scripts.class, DefaultClientScripts.class));
+        assertThat(luaScriptRegistry.getBindings()).hasSize(3);
+        assertThat(getScript(DefaultClientScripts.class, "increment")).isSameAs(getScript(Scripts.class, "clientIncrement"));
+        assertThat(getScript(Scripts.class, "clusterIncrement")).isNotSameAs(getScript(Scripts.class, "clientIncrement"));
+    }
+
+    @Test
+    public void invalid_script_fields_are_rejected() {
+        for (Class<?> invalidScripts : Arrays.asList(DefaultClientScripts.class, UnknownClient.class, WrongType.class, MissingScript.class)) {
+            assertThatThrownBy(() -> luaScriptRegistry.register(Collections.singletonList(invalidScripts)))
+                    .isInstanceOfSatisfying(SeedException.class, e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.INVALID_REDIS_SCRIPT));
+        }
+    }
+
+    private LuaScriptRegistry createRegistry(String defaultClient) {
+        RedisMetrics redisMetrics = new RedisMetrics("client", Collections::emptyList);
+        return new LuaScriptRegistry(Collections.singletonMap("client", jedisPool),
+                Collections.singletonMap("client", redisMetrics),
+                Collections.singletonMap("cluster", new ClusterTopology("cluster", jedisCluster, 3, new RedisMetrics("cluster", Collections::emptyList))),
+                defaultClient);
+    }
+
+    @SuppressWarnings("unchecked")
+    private LuaScript<Long> getScript(Class<?> declaringClass, String fieldName) throws NoSuchFieldException {
+        Field field = declaringClass.getDeclaredField(fieldName);
+        return (LuaScript<Long>) luaScriptRegistry.getBindings().get(Key.get(field.getGenericType(), field.getAnnotation(RedisScript.class)));
+    }
+
+    private boolean isLoaded(RespServer respServer) {
+        try (Jedis jedis = new Jedis("127.0.0.1", respServer.getPort())) {
+            return jedis.scriptExists(sha1);
+        }
+    }
+
+    private static void flush(RespServer respServer) {
+        try (Jedis jedis = new Jedis("127.0.0.1", respServer.getPort())) {
+            jedis.scriptFlush();
+        }
+    }
+
+    /**
+     * Creates a server emulating the increment script.
+     */
+    private static RespServer createServer(String source) throws IOException {
+        return new RespServer().defineScript(source, (strings, keys, args) -> {
+            byte[] current = strings.get(keys.get(0));
+            long value = (current == null ? 0 : Long.parseLong(new String(current, StandardCharsets.US_ASCII)))
+                    + Long.parseLong(new String(args.get(0), StandardCharsets.US_ASCII));
+            strings.set(keys.get(0), String.valueOf(value).getBytes(StandardCharsets.US_ASCII));
+            return value;
+        });
+    }
+
+    private static String keyOwnedBy(int start, int end) {
+        for (int i = 0; ; i++) {
+            int slot = JedisClusterCRC16.getSlot("key" + i);
+            if (slot >= start && slot <= end) {
+                return "key" + i;
+            }
+        }
+    }
+
+    private static class Scripts {
+        @RedisScript(value = "scripts/increment.lua", client = "client")
+        private LuaScript<Long> clientIncrement;
+        @RedisScript(value = "/scripts/increment.lua", client = "cluster")
+        private LuaScript<Long> clusterIncrement;
+    }
+
+    private static class DefaultClientScripts {
+        @RedisScript("scripts/increment.lua")
+        private LuaScript<Long> increment;
+    }
+
+    private static class UnknownClient {
+        @RedisScript(value = "scripts/increment.lua", client = "other")
+        private LuaScript<Long> increment;
+    }
+
+    private static class WrongType {
+        @RedisScript(value = "scripts/increment.lua", client = "client")
+        private List<Long> increment;
+    }
+
+    private static class MissingScript {
+        @RedisScript(value = "scripts/missing.lua", client = "client")
+        private LuaScript<Long> increment;
+    }
+}
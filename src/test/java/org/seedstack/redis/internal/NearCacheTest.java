@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.RedisConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NearCacheTest {
+    private RespServer respServer;
+    private NearCache nearCache;
+    private BudgetedJedisPool jedisPool;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        nearCache = new NearCache("client", new RedisConfig.NearCacheConfig().setEnabled(true).setReconnectDelay(50));
+        NearCachingJedisFactory jedisFactory = new NearCachingJedisFactory(URI.create("redis://127.0.0.1:" + respServer.getPort()),
+                2000, 2000, 0, null, null, nearCache);
+        nearCache.start(jedisFactory::createConnection);
+        jedisPool = new BudgetedJedisPool(new JedisPoolConfig(), jedisFactory);
+        await(nearCache::isConnected);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedisPool.close();
+        nearCache.stop();
+        respServer.close();
+    }
+
+    @Test
+    public void pooled_connections_track_their_reads() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis).isInstanceOf(NearCachingJedis.class);
+            assertThat(((NearCachingJedis) jedis).getTrackingId()).isEqualTo(nearCache.getSubscriberId());
+        }
+    }
+
+    @Test
+    public void reads_are_served_from_the_near_cache() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.set("key1", "value1");
+            long commands = respServer.getCommandCount();
+            assertThat(jedis.get("key1")).isEqualTo("value1");
+            assertThat(jedis.get("key1")).isEqualTo("value1");
+            assertThat(respServer.getCommandCount()).isEqualTo(commands + 1);
+        }
+        assertThat(nearCache.getSize()).isEqualTo(1);
+        assertThat(nearCache.getHitCount()).isEqualTo(1);
+        assertThat(nearCache.getMissCount()).isEqualTo(1);
+        assertThat(nearCache.getHitRatio()).isEqualTo(0.5);
+        assertThat(nearCache.collect()).containsEntry("connected", true).containsEntry("size", 1L).containsEntry("hits", 1L);
+    }
+
+    @Test
+    public void connection_reads_its_own_writes() {
+        respServer.setInvalidationDelay(60000);
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.set("key1", "value1");
+            jedis.hset("hash1", "field1", "value1");
+            jedis.mset("key2", "value1", "key3", "value1");
+            assertThat(jedis.get("key1")).isEqualTo("value1");
+            assertThat(jedis.hget("hash1", "field1")).isEqualTo("value1");
+            assertThat(jedis.mget("key2", "key3")).containsExactly("value1", "value1");
+
+            jedis.set("key1", "value2");
+            jedis.hset("hash1", "field1", "value2");
+            jedis.mset("key2", "value2", "key3", "value2");
+            assertThat(jedis.get("key1")).isEqualTo("value2");
+            assertThat(jedis.hget("hash1", "field1")).isEqualTo("value2");
+            assertThat(jedis.mget("key2", "key3")).containsExactly("value2", "value2");
+
+            jedis.incr("counter1");
+            assertThat(jedis.get("counter1")).isEqualTo("1");
+            jedis.incr("counter1");
+            assertThat(jedis.get("counter1")).isEqualTo("2");
+
+            jedis.del("key1");
+            assertThat(jedis.get("key1")).isNull();
+            jedis.flushDB();
+            assertThat(nearCache.getSize()).isZero();
+            assertThat(jedis.get("key2")).isNull();
+        }
+    }
+
+    @Test
+    public void writes_of_other_clients_are_invalidated() {
+        try (Jedis jedis = jedisPool.getResource(); Jedis other = new Jedis("127.0.0.1", respServer.getPort())) {
+            jedis.set("key1", "value1");
+            assertThat(jedis.get("key1")).isEqualTo("value1");
+            long invalidations = nearCache.getInvalidationCount();
+
+            other.set("key1", "value2");
+            await(() -> nearCache.getInvalidationCount() > invalidations);
+            assertThat(jedis.get("key1")).isEqualTo("value2");
+        }
+    }
+
+    @Test
+    public void nothing_is_cached_without_invalidation_connection() {
+        nearCache.stop();
+        assertThat(nearCache.isConnected()).isFalse();
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.set("key1", "value1");
+            assertThat(jedis.get("key1")).isEqualTo("value1");
+        }
+        assertThat(nearCache.getSize()).isZero();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime() - deadline).as("condition not met in time").isNegative();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.BulkCommand;
+import org.seedstack.redis.BulkLoadResult;
+import org.seedstack.seed.SeedException;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RedisBulkLoaderTest {
+    private final RespServer.SlotMap slotMap = new RespServer.SlotMap();
+    private RespServer server;
+    private RespServer first;
+    private RespServer second;
+    private JedisPool jedisPool;
+    private JedisCluster jedisCluster;
+    private ClusterTopology clusterTopology;
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new RespServer();
+        jedisPool = new JedisPool("127.0.0.1", server.getPort());
+        first = new RespServer().setSlotMap(slotMap);
+        second = new RespServer().setSlotMap(slotMap);
+        slotMap.assign(0, 8191, first).assign(8192, JedisCluster.HASHSLOTS - 1, second);
+        jedisCluster = new JedisCluster(new HostAndPort("127.0.0.1", first.getPort()), new GenericObjectPoolConfig<>());
+        clusterTopology = new ClusterTopology("cluster", jedisCluster, 3, new RedisMetrics("cluster", Collections::emptyList));
+        executorService = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executorService.shutdownNow();
+        jedisPool.close();
+        jedisCluster.close();
+        server.close();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void commands_are_streamed_on_a_single_connection() {
+        BulkLoadResult result = createClientBulkLoader(4).load(IntStream.range(0, 25)
+                .mapToObj(i -> BulkCommand.set("key" + i, "value" + i)));
+        assertThat(result.getCommands()).isEqualTo(25);
+        assertThat(result.getErrors()).isZero();
+        assertThat(result.getErrorSamples()).isEmpty();
+        for (int i = 0; i < 25; i++) {
+            assertThat(server.getString("key" + i)).isEqualTo("value" + i);
+        }
+        assertThat(jedisPool.getNumActive()).isZero();
+    }
+
+    @Test
+    public void in_flight_commands_are_bounded_by_the_window() {
+        int window = 6;
+        long commandCount = server.getCommandCount();
+        int[] sent = new int[1];
+        Iterator<BulkCommand> commands = IntStream.range(0, 100)
+                .peek(i -> {
+                    // commands sent before this one are either answered or among the in-flight ones
+                    assertThat(sent[0] - (server.getCommandCount() - commandCount)).isLessThan(window);
+                    sent[0]++;
+                })
+                .mapToObj(i -> BulkCommand.of("INCR", "counter"))
+                .iterator();
+        BulkLoadResult result = createClientBulkLoader(window).load(commands);
+        assertThat(result.getCommands()).isEqualTo(100);
+        assertThat(server.getString("counter")).isEqualTo("100");
+    }
+
+    @Test
+    public void error_replies_are_counted_without_aborting_the_load() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.set("text", "value");
+        }
+        BulkLoadResult result = createClientBulkLoader(4).load(IntStream.range(0, 15)
+                .mapToObj(i -> i % 3 == 0 ? BulkCommand.of("INCR", "text") : BulkCommand.of("INCR", "counter")));
+        assertThat(result.getCommands()).isEqualTo(15);
+        assertThat(result.getErrors()).isEqualTo(5);
+        assertThat(result.getErrorSamples()).hasSize(5).allSatisfy(message -> assertThat(message).contains("not an integer"));
+        assertThat(server.getString("counter")).isEqualTo("10");
+    }
+
+    @Test
+    public void pending_replies_are_read_when_the_source_fails() {
+        Iterator<BulkCommand> commands = IntStream.range(0, 10)
+                .mapToObj(i -> {
+                    if (i == 7) {
+                        throw new IllegalStateException("source failure");
+                    }
+                    return BulkCommand.of("INCR", "counter");
+                })
+                .iterator();
+        assertThatThrownBy(() -> createClientBulkLoader(4).load(commands)).isInstanceOf(IllegalStateException.class);
+        assertThat(server.getString("counter")).isEqualTo("7");
+        try (Jedis jedis = jedisPool.getResource()) {
+            assertThat(jedis.incr("counter")).isEqualTo(8);
+        }
+    }
+
+    @Test
+    public void connection_failures_abort_the_load() {
+        server.dropConnectionAfter("EXPIRE");
+        assertThatThrownBy(() -> createClientBulkLoader(4).load(IntStream.range(0, 10)
+                .mapToObj(i -> i == 5 ? BulkCommand.expire("key", 10) : BulkCommand.set("key", "value"))))
+                .isInstanceOfSatisfying(SeedException.class, e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.BULK_LOAD_FAILED));
+    }
+
+    @Test
+    public void cluster_commands_are_partitioned_by_master() {
+        BulkLoadResult result = createClusterBulkLoader(4).load(IntStream.range(0, 50)
+                .mapToObj(i -> BulkCommand.set("key" + i, "value" + i)));
+        assertThat(result.getCommands()).isEqualTo(50);
+        assertThat(result.getErrors()).isZero();
+        int firstKeys = 0;
+        for (int i = 0; i < 50; i++) {
+            String key = "key" + i;
+            RespServer owner = JedisClusterCRC16.getSlot(key) < 8192 ? first : second;
+            RespServer other = owner == first ? second : first;
+            assertThat(owner.getString(key)).isEqualTo("value" + i);
+            assertThat(other.getString(key)).isNull();
+            firstKeys += owner == first ? 1 : 0;
+        }
+        assertThat(firstKeys).isStrictlyBetween(0, 50);
+    }
+
+    @Test
+    public void cluster_redirections_are_counted_and_update_the_topology() {
+        String key = "key0";
+        int slot = JedisClusterCRC16.getSlot(key);
+        RespServer owner = slot < 8192 ? first : second;
+        RespServer newOwner = owner == first ? second : first;
+        clusterTopology.refresh();
+        slotMap.assign(slot, slot, newOwner);
+        BulkLoadResult result = createClusterBulkLoader(4).load(Collections.singletonList(BulkCommand.set(key, "value")).iterator());
+        assertThat(result.getErrors()).isEqualTo(1);
+        assertThat(result.getErrorSamples().get(0)).startsWith("MOVED");
+        assertThat(clusterTopology.getOwner(slot).getPort()).isEqualTo(newOwner.getPort());
+
+        result = createClusterBulkLoader(4).load(Collections.singletonList(BulkCommand.set(key, "value")).iterator());
+        assertThat(result.getErrors()).isZero();
+        assertThat(newOwner.getString(key)).isEqualTo("value");
+    }
+
+    @Test
+    public void cluster_node_failures_abort_the_load() {
+        first.dropConnectionAfter("INCR");
+        second.dropConnectionAfter("INCR");
+        assertThatThrownBy(() -> createClusterBulkLoader(4).load(IntStream.range(0, 100)
+                .mapToObj(i -> BulkCommand.of("INCR", "key" + i))))
+                .isInstanceOfSatisfying(SeedException.class, e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.BULK_LOAD_FAILED));
+    }
+
+    private ClientBulkLoader createClientBulkLoader(int window) {
+        return new ClientBulkLoader("client", window, jedisPool, new RedisMetrics("client", Collections::emptyList));
+    }
+
+    private ClusterBulkLoader createClusterBulkLoader(int window) {
+        return new ClusterBulkLoader("cluster", window, clusterTopology, executorService);
+    }
+}
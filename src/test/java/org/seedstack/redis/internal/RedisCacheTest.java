@@ -0,0 +1,422 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.configuration.CacheEntryListenerConfiguration;
+import javax.cache.configuration.CompleteConfiguration;
+import javax.cache.configuration.FactoryBuilder;
+import javax.cache.configuration.MutableCacheEntryListenerConfiguration;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.event.CacheEntryCreatedListener;
+import javax.cache.event.CacheEntryEvent;
+import javax.cache.event.CacheEntryEventFilter;
+import javax.cache.event.CacheEntryExpiredListener;
+import javax.cache.event.CacheEntryListenerException;
+import javax.cache.event.CacheEntryRemovedListener;
+import javax.cache.event.CacheEntryUpdatedListener;
+import javax.cache.expiry.Duration;
+import javax.cache.expiry.ExpiryPolicy;
+import javax.cache.integration.CacheWriter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URI;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RedisCacheTest {
+    private static final List<String> EVENTS = new CopyOnWriteArrayList<>();
+    private static final List<Object> WRITES = new CopyOnWriteArrayList<>();
+    private final RedisCachingProvider cachingProvider = new RedisCachingProvider();
+    private final List<RespServer> servers = new ArrayList<>();
+    private JedisPool jedisPool;
+    private JedisCluster jedisCluster;
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() throws IOException {
+        RespServer server = createServer();
+        jedisPool = new JedisPool("127.0.0.1", server.getPort());
+        RedisCacheBackends.register("client", RedisCacheBackends.forPool(jedisPool, new RedisMetrics("client", Collections::emptyList)));
+        EVENTS.clear();
+        WRITES.clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        cachingProvider.close();
+        RedisCacheBackends.clear();
+        jedisPool.close();
+        if (jedisCluster != null) {
+            jedisCluster.close();
+            executorService.shutdownNow();
+        }
+        for (RespServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void entries_are_stored_and_read() {
+        Cache<String, Integer> cache = createCache("client", "cache", new MutableConfiguration<>());
+        cache.put("one", 1);
+        Map<String, Integer> entries = new HashMap<>();
+        entries.put("two", 2);
+        entries.put("three", 3);
+        cache.putAll(entries);
+        assertThat(cache.get("one")).isEqualTo(1);
+        assertThat(cache.get("four")).isNull();
+        assertThat(cache.containsKey("two")).isTrue();
+        assertThat(cache.getAll(new HashSet<>(Arrays.asList("one", "three", "four")))).containsOnly(
+                entry("one", 1), entry("three", 3));
+        assertThat(cache.putIfAbsent("one", 10)).isFalse();
+        assertThat(cache.remove("two")).isTrue();
+        assertThat(cache.remove("two")).isFalse();
+        assertThat(cache.getAndPut("one", 11)).isEqualTo(1);
+        assertThat(cache.getAndReplace("one", 12)).isEqualTo(11);
+        assertThat(cache.replace("one", 12, 13)).isTrue();
+        assertThat(cache.remove("one", 12)).isFalse();
+        assertThat(cache.getAndRemove("one")).isEqualTo(13);
+        assertThat(cache.get("one")).isNull();
+    }
+
+    @Test
+    public void keys_of_caches_do_not_overlap() {
+        Cache<String, Integer> cache = createCache("client", "a", new MutableConfiguration<>());
+        Cache<String, Integer> prefixedCache = createCache("client", "a:b", new MutableConfiguration<>());
+        cache.put("one", 1);
+        prefixedCache.put("one", 2);
+        prefixedCache.put("two", 2);
+        assertThat(entries(cache)).containsOnly(entry("one", 1));
+        cache.clear();
+        assertThat(entries(prefixedCache)).containsOnly(entry("one", 2), entry("two", 2));
+    }
+
+    @Test
+    public void iterator_removes_entries() {
+        Cache<String, Integer> cache = createCache("client", "cache", new MutableConfiguration<>());
+        cache.put("one", 1);
+        cache.put("two", 2);
+        for (Iterator<Cache.Entry<String, Integer>> iterator = cache.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getKey().equals("one")) {
+                iterator.remove();
+            }
+        }
+        assertThat(entries(cache)).containsOnly(entry("two", 2));
+    }
+
+    @Test
+    public void entries_are_spread_over_the_nodes_of_a_cluster() throws IOException {
+        Cache<Integer, String> cache = createCache(createCluster(), "cache", new MutableConfiguration<Integer, String>()
+                .addCacheEntryListenerConfiguration(listenerConfiguration(false)));
+        Map<Integer, String> entries = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            entries.put(i, "value" + i);
+        }
+        cache.putAll(entries);
+        assertThat(EVENTS).hasSize(20);
+        assertThat(dbSize(servers.get(1))).isPositive();
+        assertThat(dbSize(servers.get(2))).isPositive();
+        assertThat(dbSize(servers.get(1)) + dbSize(servers.get(2))).isEqualTo(20);
+
+        assertThat(cache.getAll(entries.keySet())).isEqualTo(entries);
+        assertThat(entries(cache)).isEqualTo(entries);
+        cache.removeAll(new HashSet<>(Arrays.asList(0, 1, 2, 3, 4)));
+        assertThat(EVENTS).hasSize(25).contains("REMOVED 4 value4");
+        assertThat(entries(cache)).hasSize(15);
+        cache.clear();
+        assertThat(EVENTS).hasSize(25);
+        assertThat(dbSize(servers.get(1)) + dbSize(servers.get(2))).isZero();
+    }
+
+    @Test
+    public void null_keys_and_values_are_rejected_before_writing_through() {
+        Cache<String, Integer> cache = createCache("client", "cache", new MutableConfiguration<String, Integer>()
+                .setWriteThrough(true)
+                .setCacheWriterFactory(FactoryBuilder.factoryOf(RecordingWriter.class)));
+        assertThatThrownBy(() -> cache.put(null, 1)).isInstanceOf(NullPointerException.class);
+        assertThatThrownBy(() -> cache.put("one", null)).isInstanceOf(NullPointerException.class);
+        assertThatThrownBy(() -> cache.getAndPut(null, 1)).isInstanceOf(NullPointerException.class);
+        assertThatThrownBy(() -> cache.getAndPut("one", null)).isInstanceOf(NullPointerException.class);
+        assertThatThrownBy(() -> cache.putAll(Collections.singletonMap("one", null))).isInstanceOf(NullPointerException.class);
+        assertThatThrownBy(() -> cache.remove(null)).isInstanceOf(NullPointerException.class);
+        assertThatThrownBy(() -> cache.removeAll(Collections.singleton(null))).isInstanceOf(NullPointerException.class);
+        assertThat(WRITES).isEmpty();
+
+        cache.put("one", 1);
+        cache.remove("one");
+        assertThat(WRITES).containsExactly("one=1", "one");
+    }
+
+    @Test
+    public void listeners_are_notified_of_the_changes_made_through_the_cache() {
+        Cache<String, Integer> cache = createCache("client", "cache", new MutableConfiguration<String, Integer>()
+                .addCacheEntryListenerConfiguration(listenerConfiguration(true)));
+        cache.put("one", 1);
+        cache.put("one", 2);
+        cache.getAndPut("one", 3);
+        cache.replace("one", 3, 4);
+        cache.remove("one");
+        cache.putIfAbsent("two", 2);
+        cache.remove("two", 2);
+        cache.putAll(Collections.singletonMap("three", 3));
+        cache.removeAll(Collections.singleton("three"));
+        cache.invoke("four", (entry, arguments) -> {
+            entry.setValue(4);
+            return null;
+        });
+        cache.getAndRemove("four");
+        cache.put("five", 5);
+        cache.removeAll();
+        cache.put("six", 6);
+        cache.clear();
+        assertThat(EVENTS).containsExactly(
+                "CREATED one 1",
+                "UPDATED one 2 1",
+                "UPDATED one 3 2",
+                "UPDATED one 4 3",
+                "REMOVED one 4 4",
+                "CREATED two 2",
+                "REMOVED two 2 2",
+                "CREATED three 3",
+                "REMOVED three 3 3",
+                "CREATED four 4",
+                "REMOVED four 4 4",
+                "CREATED five 5",
+                "REMOVED five 5 5",
+                "CREATED six 6");
+    }
+
+    @Test
+    public void listeners_can_be_registered_and_deregistered() {
+        Cache<String, Integer> cache = createCache("client", "cache", new MutableConfiguration<>());
+        MutableCacheEntryListenerConfiguration<String, Integer> listenerConfiguration = listenerConfiguration(false);
+        cache.registerCacheEntryListener(listenerConfiguration);
+        assertThatThrownBy(() -> cache.registerCacheEntryListener(listenerConfiguration)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(listenerConfigurations(cache)).containsExactly(listenerConfiguration);
+        cache.put("one", 1);
+        cache.put("one", 2);
+        cache.deregisterCacheEntryListener(listenerConfiguration);
+        cache.put("one", 3);
+        assertThat(EVENTS).containsExactly("CREATED one 1", "UPDATED one 2");
+        assertThat(listenerConfigurations(cache)).isEmpty();
+    }
+
+    @Test
+    public void filters_select_the_notified_events() {
+        Cache<String, Integer> cache = createCache("client", "cache", new MutableConfiguration<String, Integer>()
+                .addCacheEntryListenerConfiguration(new MutableCacheEntryListenerConfiguration<>(
+                        FactoryBuilder.factoryOf(RecordingListener.class),
+                        FactoryBuilder.factoryOf(new OneFilter()),
+                        false,
+                        true)));
+        cache.put("one", 1);
+        cache.put("two", 2);
+        assertThat(EVENTS).containsExactly("CREATED one 1");
+    }
+
+    @Test
+    public void entries_expired_by_the_expiry_policy_are_notified() {
+        Cache<String, Integer> cache = createCache("client", "cache", new MutableConfiguration<String, Integer>()
+                .setExpiryPolicyFactory(FactoryBuilder.factoryOf(ExpiredOnAccess.class))
+                .addCacheEntryListenerConfiguration(listenerConfiguration(false)));
+        cache.put("one", 1);
+        assertThat(cache.get("one")).isEqualTo(1);
+        assertThat(cache.get("one")).isNull();
+        assertThat(EVENTS).containsExactly("CREATED one 1", "EXPIRED one 1");
+    }
+
+    private RespServer createServer() throws IOException {
+        RespServer server = new RespServer();
+        server.defineScript(RedisCache.PUT.getBody(), (strings, keys, args) -> {
+            byte[] old = strings.get(keys.get(0));
+            store(strings, keys.get(0), args.get(0), old == null ? args.get(1) : args.get(2));
+            return old;
+        });
+        server.defineScript(RedisCache.REPLACE.getBody(), (strings, keys, args) -> {
+            byte[] old = strings.get(keys.get(0));
+            if (old != null) {
+                store(strings, keys.get(0), args.get(0), args.get(1));
+            }
+            return old;
+        });
+        server.defineScript(RedisCache.REPLACE_IF_EQUAL.getBody(), (strings, keys, args) -> {
+            if (Arrays.equals(strings.get(keys.get(0)), args.get(1))) {
+                store(strings, keys.get(0), args.get(0), args.get(2));
+                return 1L;
+            }
+            return 0L;
+        });
+        server.defineScript(RedisCache.REMOVE_IF_EQUAL.getBody(), (strings, keys, args) ->
+                Arrays.equals(strings.get(keys.get(0)), args.get(0)) && strings.del(keys.get(0)) ? 1L : 0L);
+        server.defineScript(RedisCache.GET_AND_REMOVE.getBody(), (strings, keys, args) -> {
+            byte[] old = strings.get(keys.get(0));
+            strings.del(keys.get(0));
+            return old;
+        });
+        servers.add(server);
+        return server;
+    }
+
+    /**
+     * Emulates the store function of the scripts, keys never expiring on the server.
+     */
+    private static void store(RespServer.Strings strings, byte[] key, byte[] value, byte[] ttl) {
+        if ("0".equals(new String(ttl))) {
+            strings.del(key);
+        } else {
+            strings.set(key, value);
+        }
+    }
+
+    private String createCluster() throws IOException {
+        RespServer.SlotMap slotMap = new RespServer.SlotMap();
+        RespServer first = createServer().setSlotMap(slotMap);
+        RespServer second = createServer().setSlotMap(slotMap);
+        slotMap.assign(0, 8191, first).assign(8192, JedisCluster.HASHSLOTS - 1, second);
+        jedisCluster = new JedisCluster(new HostAndPort("127.0.0.1", first.getPort()), new GenericObjectPoolConfig<>());
+        executorService = Executors.newCachedThreadPool();
+        ClusterTopology clusterTopology = new ClusterTopology("cluster", jedisCluster, 3, new RedisMetrics("cluster", Collections::emptyList));
+        RedisCacheBackends.register("cluster", RedisCacheBackends.forCluster(clusterTopology, executorService));
+        return "cluster";
+    }
+
+    private <K, V> Cache<K, V> createCache(String backendName, String cacheName, MutableConfiguration<K, V> configuration) {
+        CacheManager cacheManager = cachingProvider.getCacheManager(URI.create("redis:" + backendName), getClass().getClassLoader());
+        return cacheManager.createCache(cacheName, configuration);
+    }
+
+    private static <K, V> MutableCacheEntryListenerConfiguration<K, V> listenerConfiguration(boolean oldValueRequired) {
+        return new MutableCacheEntryListenerConfiguration<>(FactoryBuilder.factoryOf(RecordingListener.class), null, oldValueRequired, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Iterable<CacheEntryListenerConfiguration<K, V>> listenerConfigurations(Cache<K, V> cache) {
+        return ((CompleteConfiguration<K, V>) cache.getConfiguration(CompleteConfiguration.class)).getCacheEntryListenerConfigurations();
+    }
+
+    private static <K, V> Map<K, V> entries(Cache<K, V> cache) {
+        Map<K, V> entries = new HashMap<>();
+        cache.forEach(entry -> entries.put(entry.getKey(), entry.getValue()));
+        return entries;
+    }
+
+    private static <K, V> Map.Entry<K, V> entry(K key, V value) {
+        return new AbstractMap.SimpleEntry<>(key, value);
+    }
+
+    private static long dbSize(RespServer server) {
+        try (Jedis jedis = new Jedis("127.0.0.1", server.getPort())) {
+            return jedis.dbSize();
+        }
+    }
+
+    public static class RecordingListener implements CacheEntryCreatedListener<Object, Object>, CacheEntryUpdatedListener<Object, Object>,
+            CacheEntryRemovedListener<Object, Object>, CacheEntryExpiredListener<Object, Object> {
+        @Override
+        public void onCreated(Iterable<CacheEntryEvent<?, ?>> events) throws CacheEntryListenerException {
+            record(events);
+        }
+
+        @Override
+        public void onUpdated(Iterable<CacheEntryEvent<?, ?>> events) throws CacheEntryListenerException {
+            record(events);
+        }
+
+        @Override
+        public void onRemoved(Iterable<CacheEntryEvent<?, ?>> events) throws CacheEntryListenerException {
+            record(events);
+        }
+
+        @Override
+        public void onExpired(Iterable<CacheEntryEvent<?, ?>> events) throws CacheEntryListenerException {
+            record(events);
+        }
+
+        private void record(Iterable<CacheEntryEvent<?, ?>> events) {
+            for (CacheEntryEvent<?, ?> event : events) {
+                EVENTS.add(event.getEventType() + " " + event.getKey() + " " + event.getValue()
+                        + (event.isOldValueAvailable() ? " " + event.getOldValue() : ""));
+            }
+        }
+    }
+
+    private static class OneFilter implements CacheEntryEventFilter<String, Integer>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean evaluate(CacheEntryEvent<? extends String, ? extends Integer> event) {
+            return "one".equals(event.getKey());
+        }
+    }
+
+    public static class ExpiredOnAccess implements ExpiryPolicy {
+        @Override
+        public Duration getExpiryForCreation() {
+            return Duration.ETERNAL;
+        }
+
+        @Override
+        public Duration getExpiryForAccess() {
+            return Duration.ZERO;
+        }
+
+        @Override
+        public Duration getExpiryForUpdate() {
+            return null;
+        }
+    }
+
+    public static class RecordingWriter implements CacheWriter<Object, Object> {
+        @Override
+        public void write(Cache.Entry<?, ?> entry) {
+            WRITES.add(entry.getKey() + "=" + entry.getValue());
+        }
+
+        @Override
+        public void writeAll(Collection<Cache.Entry<?, ?>> entries) {
+            entries.forEach(this::write);
+            entries.clear();
+        }
+
+        @Override
+        public void delete(Object key) {
+            WRITES.add(key);
+        }
+
+        @Override
+        public void deleteAll(Collection<?> keys) {
+            keys.forEach(this::delete);
+            keys.clear();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RedisClusterPipelineImplTest {
+    private final RespServer.SlotMap slotMap = new RespServer.SlotMap();
+    private RespServer first;
+    private RespServer second;
+    private JedisCluster jedisCluster;
+    private ClusterTopology clusterTopology;
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() throws IOException {
+        first = new RespServer().setSlotMap(slotMap);
+        second = new RespServer().setSlotMap(slotMap);
+        slotMap.assign(0, 8191, first).assign(8192, JedisCluster.HASHSLOTS - 1, second);
+        GenericObjectPoolConfig<Jedis> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setTestOnBorrow(true);
+        jedisCluster = new JedisCluster(new HostAndPort("127.0.0.1", first.getPort()), poolConfig);
+        clusterTopology = new ClusterTopology("cluster", jedisCluster, 3, new RedisMetrics("cluster", Collections::emptyList));
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executorService.shutdownNow();
+        jedisCluster.close();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void commands_are_sent_to_the_owner_of_their_slot() {
+        List<String> keys = new ArrayList<>();
+        List<Response<Long>> responses = new ArrayList<>();
+        try (RedisClusterPipelineImpl pipeline = new RedisClusterPipelineImpl(clusterTopology, executorService)) {
+            for (int i = 0; i < 20; i++) {
+                keys.add("pipeline" + i);
+                responses.add(pipeline.incrBy("pipeline" + i, i));
+            }
+            pipeline.sync();
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            assertThat(responses.get(i).get()).isEqualTo(i);
+            assertThat(ownerOf(keys.get(i)).getString(keys.get(i))).isEqualTo(String.valueOf(i));
+        }
+    }
+
+    @Test
+    public void moved_commands_are_sent_again_to_the_new_owner() {
+        String key = keyOwnedBy(0, 8191);
+        clusterTopology.refresh();
+        slotMap.assign(slotOf(key), slotOf(key), second);
+        try (RedisClusterPipelineImpl pipeline = new RedisClusterPipelineImpl(clusterTopology, executorService)) {
+            Response<Long> response = pipeline.incr(key);
+            pipeline.sync();
+            assertThat(response.get()).isEqualTo(1);
+        }
+        assertThat(second.getString(key)).isEqualTo("1");
+        assertThat(first.getString(key)).isNull();
+        assertThat(clusterTopology.getOwner(slotOf(key)).getPort()).isEqualTo(second.getPort());
+    }
+
+    @Test
+    public void asked_commands_are_sent_again_to_the_importing_node() {
+        String key = keyOwnedBy(0, 8191);
+        clusterTopology.refresh();
+        slotMap.migrate(slotOf(key), second);
+        try (RedisClusterPipelineImpl pipeline = new RedisClusterPipelineImpl(clusterTopology, executorService)) {
+            Response<String> response = pipeline.set(key, "value");
+            pipeline.sync();
+            assertThat(response.get()).isEqualTo("OK");
+        }
+        assertThat(second.getString(key)).isEqualTo("value");
+        assertThat(clusterTopology.getOwner(slotOf(key)).getPort()).isEqualTo(first.getPort());
+    }
+
+    @Test
+    public void commands_are_not_sent_again_after_a_connection_failure() {
+        String key = keyOwnedBy(0, 8191);
+        first.dropConnectionAfter("INCR");
+        try (RedisClusterPipelineImpl pipeline = new RedisClusterPipelineImpl(clusterTopology, executorService)) {
+            pipeline.incr(key);
+            assertThatThrownBy(pipeline::sync).isInstanceOf(JedisConnectionException.class);
+        }
+        assertThat(first.getString(key)).isEqualTo("1");
+    }
+
+    @Test
+    public void commands_are_sent_again_when_the_connection_cannot_be_borrowed() throws IOException {
+        String key = keyOwnedBy(0, 8191);
+        clusterTopology.refresh();
+        first.close();
+        slotMap.assign(0, 8191, second);
+        try (RedisClusterPipelineImpl pipeline = new RedisClusterPipelineImpl(clusterTopology, executorService)) {
+            Response<Long> response = pipeline.incr(key);
+            pipeline.sync();
+            assertThat(response.get()).isEqualTo(1);
+        }
+        assertThat(second.getString(key)).isEqualTo("1");
+    }
+
+    private RespServer ownerOf(String key) {
+        return slotOf(key) < 8192 ? first : second;
+    }
+
+    private static String keyOwnedBy(int start, int end) {
+        for (int i = 0; ; i++) {
+            int slot = slotOf("key" + i);
+            if (slot >= start && slot <= end) {
+                return "key" + i;
+            }
+        }
+    }
+
+    private static int slotOf(String key) {
+        return JedisClusterCRC16.getSlot(key);
+    }
+}
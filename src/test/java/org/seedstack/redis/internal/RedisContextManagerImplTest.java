@@ -0,0 +1,173 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.redis.RedisContext;
+import org.seedstack.seed.SeedException;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RedisContextManagerImplTest {
+    private final ThreadLocalContextCarrier contextCarrier = new ThreadLocalContextCarrier();
+    private final RedisLink<Pipeline> pipelineLink = new RedisLink<>(contextCarrier);
+    private final RedisLink<Jedis> jedisLink = new RedisLink<>(contextCarrier);
+    private final RedisContextManagerImpl contextManager = new RedisContextManagerImpl(contextCarrier);
+    private RespServer respServer;
+    private BudgetedJedisPool jedisPool;
+    private RedisPipelinedTransactionHandler pipelineHandler;
+    private RedisDirectTransactionHandler directHandler;
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        jedisPool = new BudgetedJedisPool(new JedisPoolConfig(), URI.create("redis://127.0.0.1:" + respServer.getPort()), 2000, 2000);
+        RedisMetrics redisMetrics = new RedisMetrics("client", () -> Collections.singletonList(jedisPool));
+        ReplicaRouter replicaRouter = new ReplicaRouter("client", jedisPool, Collections.emptyMap(), new RedisConfig.ReplicasConfig(),
+                new BorrowGuard("client", new RedisConfig.BorrowConfig(), jedisPool));
+        pipelineHandler = new RedisPipelinedTransactionHandler(pipelineLink, replicaRouter, redisMetrics);
+        directHandler = new RedisDirectTransactionHandler(jedisLink, replicaRouter, redisMetrics);
+        executorService = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executorService.shutdownNow();
+        jedisPool.close();
+        respServer.close();
+    }
+
+    @Test
+    public void captured_scopes_are_used_by_other_threads() throws Exception {
+        Pipeline pipeline = beginPipeline();
+        Jedis jedis = beginDirect();
+        RedisContext context = contextManager.capture();
+        assertThat(submit(() -> context.call(() -> {
+            assertThat(jedisLink.get()).isSameAs(jedis);
+            pipelineLink.get().incr("counter");
+            return pipelineLink.get();
+        }))).isSameAs(pipeline);
+        endDirect(jedis);
+        endPipeline(pipeline);
+        assertThat(respServer.getString("counter")).isEqualTo("1");
+    }
+
+    @Test
+    public void threads_retain_nothing_once_the_call_is_over() throws Exception {
+        Pipeline pipeline = beginPipeline();
+        RedisContext context = contextManager.capture();
+        submit(() -> context.call(pipelineLink::get));
+        assertThat(submit(contextCarrier::get)).isNull();
+        assertThatThrownBy(() -> submit(pipelineLink::get)).hasCauseInstanceOf(SeedException.class);
+        endPipeline(pipeline);
+        assertThat(contextCarrier.get()).isNull();
+    }
+
+    @Test
+    public void previous_context_of_the_thread_is_restored() throws Exception {
+        Pipeline pipeline = beginPipeline();
+        RedisContext context = contextManager.capture();
+        endPipeline(pipeline);
+
+        // the thread has its own scope, hidden while the captured context is entered
+        Jedis jedis = beginDirect();
+        Object ownContext = contextCarrier.get();
+        RedisContext emptyContext = submit(contextManager::capture);
+        emptyContext.run(() -> assertThatThrownBy(jedisLink::get).isInstanceOfSatisfying(SeedException.class,
+                e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.ACCESSING_REDIS_OUTSIDE_TRANSACTION)));
+        assertThat(contextCarrier.get()).isSameAs(ownContext);
+
+        // even when the call fails or leaves a scope open
+        Jedis[] leaked = new Jedis[1];
+        assertThatThrownBy(() -> context.run(() -> {
+            leaked[0] = beginDirect();
+            throw new IllegalStateException("failure");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(contextCarrier.get()).isSameAs(ownContext);
+        assertThat(jedisLink.get()).isSameAs(jedis);
+        endDirect(jedis);
+        leaked[0].close();
+    }
+
+    @Test
+    public void scopes_ended_since_the_capture_cannot_be_used() throws Exception {
+        Pipeline pipeline = beginPipeline();
+        RedisContext context = contextManager.capture();
+        endPipeline(pipeline);
+        assertThatThrownBy(() -> submit(() -> context.call(pipelineLink::get))).hasCauseInstanceOf(SeedException.class);
+    }
+
+    @Test
+    public void scopes_can_end_out_of_order() {
+        Pipeline pipeline = beginPipeline();
+        Jedis jedis = beginDirect();
+        endPipeline(pipeline);
+        assertThat(jedisLink.get()).isSameAs(jedis);
+        assertThat(pipelineLink.getHolder()).isNull();
+        endDirect(jedis);
+        assertThat(contextCarrier.get()).isNull();
+    }
+
+    @Test
+    public void wrapped_executors_run_tasks_within_the_context() throws Exception {
+        Pipeline pipeline = beginPipeline();
+        RedisContext context = contextManager.capture();
+        assertThat(CompletableFuture.supplyAsync(pipelineLink::get, context.wrap(executorService)).get(5, TimeUnit.SECONDS))
+                .isSameAs(pipeline);
+        assertThat(executorService.submit(context.wrap(pipelineLink::get)).get(5, TimeUnit.SECONDS)).isSameAs(pipeline);
+        endPipeline(pipeline);
+    }
+
+    private <T> T submit(Callable<T> callable) throws Exception {
+        return executorService.submit(callable).get(5, TimeUnit.SECONDS);
+    }
+
+    private Pipeline beginPipeline() {
+        pipelineHandler.doInitialize(new TransactionMetadata());
+        Pipeline pipeline = pipelineHandler.doCreateTransaction();
+        pipelineHandler.doBeginTransaction(pipeline);
+        return pipeline;
+    }
+
+    private void endPipeline(Pipeline pipeline) {
+        pipelineHandler.doCommitTransaction(pipeline);
+        pipelineHandler.doReleaseTransaction(pipeline);
+        pipelineHandler.doCleanup();
+    }
+
+    private Jedis beginDirect() {
+        directHandler.doInitialize(new TransactionMetadata());
+        Jedis jedis = directHandler.doCreateTransaction();
+        directHandler.doBeginTransaction(jedis);
+        return jedis;
+    }
+
+    private void endDirect(Jedis jedis) {
+        directHandler.doCommitTransaction(jedis);
+        directHandler.doReleaseTransaction(jedis);
+        directHandler.doCleanup();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.redis.RedisListener;
+import org.seedstack.seed.SeedException;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.StreamEntry;
+import redis.clients.jedis.StreamEntryID;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RedisListenerContainerTest {
+    private static final long TIMEOUT = 5000;
+    private final PubSubListeners pubSubListeners = new PubSubListeners();
+    private final StreamListener streamListener = new StreamListener();
+    private RespServer server;
+    private JedisPool jedisPool;
+    private RedisListenerContainer container;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new RespServer();
+        jedisPool = new JedisPool("127.0.0.1", server.getPort());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (container != null) {
+            container.stop();
+        }
+        jedisPool.close();
+        server.close();
+    }
+
+    @Test
+    public void messages_are_dispatched_to_channel_and_pattern_listeners() throws Exception {
+        container = start(PubSubListeners.class);
+        try (Jedis jedis = jedisPool.getResource()) {
+            publishOnceSubscribed(jedis, "orders", "order1");
+            publishOnceSubscribed(jedis, "users.created", "user1");
+            assertThat(jedis.publish("orders", "invalid")).isEqualTo(1);
+            assertThat(jedis.publish("orders", "order2")).isEqualTo(1);
+            assertThat(jedis.publish("products", "product1")).isZero();
+        }
+        assertThat(poll(pubSubListeners.messages, 3)).containsExactlyInAnyOrder("orders:order1", "users.created:user1", "orders:order2");
+    }
+
+    @Test
+    public void subscriptions_are_closed_when_stopped() throws Exception {
+        container = start(PubSubListeners.class);
+        try (Jedis jedis = jedisPool.getResource()) {
+            publishOnceSubscribed(jedis, "orders", "order1");
+            publishOnceSubscribed(jedis, "users.created", "user1");
+            container.stop();
+            container = null;
+            assertThat(jedis.publish("orders", "order2")).isZero();
+            assertThat(jedis.publish("users.created", "user2")).isZero();
+        }
+    }
+
+    @Test
+    public void stream_entries_of_a_poll_are_acknowledged_together() throws Exception {
+        List<StreamEntryID> ids = addEvents(5);
+        streamListener.failing = "event2";
+        container = start(StreamListener.class);
+        assertThat(poll(streamListener.events, 4)).containsExactlyInAnyOrder("event0", "event1", "event3", "event4");
+        await(() -> server.getPendingEntries("events", "group").size() == 1);
+        assertThat(server.getPendingEntries("events", "group")).containsExactly(ids.get(2).toString());
+        assertThat(server.getCommandCount("XACK")).isEqualTo(1);
+
+        // the blocked poll returns new entries as they are added
+        addEvents(1);
+        assertThat(poll(streamListener.events, 1)).containsExactly("event0");
+        await(() -> server.getCommandCount("XACK") == 2);
+        assertThat(server.getPendingEntries("events", "group")).containsExactly(ids.get(2).toString());
+    }
+
+    @Test
+    public void pending_stream_entries_are_delivered_again_when_restarted() throws Exception {
+        List<StreamEntryID> ids = addEvents(3);
+        streamListener.failing = "event1";
+        container = start(StreamListener.class);
+        assertThat(poll(streamListener.events, 2)).containsExactlyInAnyOrder("event0", "event2");
+        await(() -> server.getPendingEntries("events", "group").equals(Collections.singletonList(ids.get(1).toString())));
+        container.stop();
+
+        streamListener.failing = null;
+        container = start(StreamListener.class);
+        assertThat(poll(streamListener.events, 1)).containsExactly("event1");
+        await(() -> server.getPendingEntries("events", "group").isEmpty());
+    }
+
+    @Test
+    public void listener_methods_are_validated() {
+        List<RedisListenerMethod> listenerMethods = RedisListenerMethod.detect(Arrays.asList(PubSubListeners.class, StreamListener.class),
+                new HashSet<>(Arrays.asList("client1", "client2")), "client2");
+        assertThat(listenerMethods).extracting(RedisListenerMethod::getClient).containsOnly("client2");
+        assertThat(RedisListenerContainer.getConnectionCount(listenerMethods)).isEqualTo(3);
+
+        for (Class<?> invalidListener : Arrays.asList(UnknownClient.class, ChannelsAndStream.class, StreamWithoutGroup.class, WrongParameters.class)) {
+            assertThatThrownBy(() -> RedisListenerMethod.detect(Collections.singletonList(invalidListener), Collections.singleton("client"), null))
+                    .isInstanceOfSatisfying(SeedException.class, e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.INVALID_REDIS_LISTENER));
+        }
+    }
+
+    private RedisListenerContainer start(Class<?> listenerClass) {
+        RedisListenerContainer redisListenerContainer = new RedisListenerContainer("client",
+                new RedisConfig.ListenersConfig().setThreads(2).setQueueSize(2).setCount(10).setBlock(100).setConsumer("consumer"),
+                new JedisPool("127.0.0.1", server.getPort()),
+                RedisListenerMethod.detect(Collections.singletonList(listenerClass), Collections.singleton("client"), null));
+        redisListenerContainer.start(type -> type == PubSubListeners.class ? pubSubListeners : streamListener);
+        return redisListenerContainer;
+    }
+
+    private List<StreamEntryID> addEvents(int count) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            if (!jedis.exists("events")) {
+                jedis.xgroupCreate("events", "group", new StreamEntryID(), true);
+            }
+            StreamEntryID[] ids = new StreamEntryID[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = jedis.xadd("events", StreamEntryID.NEW_ENTRY, Collections.singletonMap("type", "event" + i));
+            }
+            return Arrays.asList(ids);
+        }
+    }
+
+    /**
+     * Publishes the message until it is received, the subscriptions being made asynchronously.
+     */
+    private static void publishOnceSubscribed(Jedis jedis, String channel, String message) throws InterruptedException {
+        await(() -> jedis.publish(channel, message) > 0);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition met before timeout").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static List<String> poll(BlockingQueue<String> queue, int count) throws InterruptedException {
+        String[] elements = new String[count];
+        for (int i = 0; i < count; i++) {
+            elements[i] = queue.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        return Arrays.asList(elements);
+    }
+
+    private static class PubSubListeners {
+        private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+
+        @RedisListener(channels = "orders")
+        private void onOrder(String message) {
+            if ("invalid".equals(message)) {
+                throw new IllegalArgumentException("Invalid order");
+            }
+            messages.add("orders:" + message);
+        }
+
+        @RedisListener(patterns = "users.*")
+        private void onUser(String channel, String message) {
+            messages.add(channel + ":" + message);
+        }
+    }
+
+    private static class StreamListener {
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        private volatile String failing;
+
+        @RedisListener(stream = "events", group = "group")
+        private void onEvent(StreamEntry entry) {
+            String type = entry.getFields().get("type");
+            if (type.equals(failing)) {
+                throw new IllegalStateException("Failed to process " + type);
+            }
+            events.add(type);
+        }
+    }
+
+    private static class UnknownClient {
+        @RedisListener(client = "other", channels = "orders")
+        private void onOrder(String message) {
+        }
+    }
+
+    private static class ChannelsAndStream {
+        @RedisListener(channels = "orders", stream = "events", group = "group")
+        private void onOrder(String message) {
+        }
+    }
+
+    private static class StreamWithoutGroup {
+        @RedisListener(stream = "events")
+        private void onEvent(StreamEntry entry) {
+        }
+    }
+
+    private static class WrongParameters {
+        @RedisListener(channels = "orders")
+        private void onOrder(Integer message) {
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RedisMetricsTest {
+    private RespServer respServer;
+    private JedisPool jedisPool;
+    private RedisMetrics redisMetrics;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        jedisPool = new JedisPool("127.0.0.1", respServer.getPort());
+        redisMetrics = new RedisMetrics("client", () -> Collections.singletonList(jedisPool));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedisPool.close();
+        respServer.close();
+    }
+
+    @Test
+    public void successful_commits_are_recorded_per_method() {
+        redisMetrics.commit(methodMetadata("method1"), System.nanoTime(), () -> {
+        });
+        redisMetrics.commit(methodMetadata("method1"), System.nanoTime(), () -> {
+        });
+        redisMetrics.commit(null, System.nanoTime(), () -> {
+        });
+
+        assertThat(redisMetrics.getCommitCount()).isEqualTo(3);
+        assertThat(redisMetrics.getExceptionCount()).isZero();
+        assertThat(redisMetrics.getExecute().getCount()).isEqualTo(3);
+        assertThat(redisMetrics.getCommit().getCount()).isEqualTo(3);
+        assertThat(redisMetrics.getMethodCommit()).containsOnlyKeys("method1", "<unknown>");
+        assertThat(redisMetrics.getMethodCommit().get("method1").getCount()).isEqualTo(2);
+        assertThat(redisMetrics.getMethodExecute().get("<unknown>").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failed_commits_are_only_counted_as_exceptions() {
+        assertThatThrownBy(() -> redisMetrics.commit(methodMetadata("method1"), System.nanoTime(), () -> {
+            throw new JedisConnectionException("failure");
+        })).isInstanceOf(JedisConnectionException.class);
+
+        assertThat(redisMetrics.getExceptionCount()).isEqualTo(1);
+        assertThat(redisMetrics.getCommitCount()).isZero();
+        assertThat(redisMetrics.getCommit().getCount()).isZero();
+        assertThat(redisMetrics.getMethodCommit()).isEmpty();
+        assertThat(redisMetrics.getExecute().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void borrows_are_timed_and_pool_gauges_read() {
+        try (Jedis jedis = redisMetrics.borrow(jedisPool)) {
+            assertThat(jedis.ping()).isEqualTo("PONG");
+            assertThat(redisMetrics.getActiveConnections()).isEqualTo(1);
+            assertThat(redisMetrics.getIdleConnections()).isZero();
+        }
+        assertThat(redisMetrics.getActiveConnections()).isZero();
+        assertThat(redisMetrics.getIdleConnections()).isEqualTo(1);
+        assertThat(redisMetrics.getBorrowWait().getCount()).isEqualTo(1);
+        assertThat(redisMetrics.getExceptionCount()).isZero();
+    }
+
+    @Test
+    public void failed_borrows_are_counted_as_exceptions() {
+        assertThatThrownBy(() -> redisMetrics.borrow(() -> {
+            throw new JedisConnectionException("failure");
+        })).isInstanceOf(JedisConnectionException.class);
+        assertThat(redisMetrics.getExceptionCount()).isEqualTo(1);
+        assertThat(redisMetrics.getBorrowWait().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void batches_and_rollbacks_are_collected() {
+        redisMetrics.recordBatch(5);
+        redisMetrics.recordBatch(3);
+        redisMetrics.recordRollback();
+
+        Map<String, Object> collected = redisMetrics.collect();
+        assertThat(collected).containsEntry("batches", 2L)
+                .containsEntry("batchedCommands", 8L)
+                .containsEntry("rollbacks", 1L)
+                .containsEntry("commits", 0L)
+                .containsKeys("pool", "borrowWait", "execute", "commit", "methodExecute", "methodCommit");
+    }
+
+    private static TransactionMetadata methodMetadata(String method) {
+        TransactionMetadata transactionMetadata = new TransactionMetadata();
+        transactionMetadata.addMetadata(RedisMetrics.METHOD, method);
+        return transactionMetadata;
+    }
+}
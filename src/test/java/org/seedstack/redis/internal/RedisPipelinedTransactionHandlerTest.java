@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RedisPipelinedTransactionHandlerTest {
+    private RespServer respServer;
+    private BudgetedJedisPool jedisPool;
+    private RedisMetrics redisMetrics;
+    private RedisPipelinedTransactionHandler handler;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        jedisPool = new BudgetedJedisPool(new JedisPoolConfig(), URI.create("redis://127.0.0.1:" + respServer.getPort()), 2000, 2000);
+        redisMetrics = new RedisMetrics("client", () -> Collections.singletonList(jedisPool));
+        ReplicaRouter replicaRouter = new ReplicaRouter("client", jedisPool, Collections.emptyMap(), new RedisConfig.ReplicasConfig(),
+                new BorrowGuard("client", new RedisConfig.BorrowConfig(), jedisPool));
+        handler = new RedisPipelinedTransactionHandler(new RedisLink<>(new ThreadLocalContextCarrier()), replicaRouter, redisMetrics);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedisPool.close();
+        respServer.close();
+    }
+
+    @Test
+    public void atomic_pipelines_are_rolled_back() {
+        Pipeline pipeline = begin(new TransactionMetadata());
+        pipeline.incr("counter1");
+        end(pipeline, false);
+        assertThat(respServer.getString("counter1")).isNull();
+        assertThat(redisMetrics.getRollbackCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void flushing_pipelines_are_committed() {
+        Pipeline pipeline = begin(nonAtomic(2));
+        assertThat(pipeline).isInstanceOf(FlushingPipeline.class);
+        Response<Long> first = pipeline.incr("counter1");
+        pipeline.incr("counter1");
+        assertThat(first.get()).isEqualTo(1);
+        Response<Long> last = pipeline.incr("counter1");
+        end(pipeline, true);
+        assertThat(last.get()).isEqualTo(3);
+        assertThat(jedisPool.getNumActive()).isZero();
+    }
+
+    @Test
+    public void commands_of_non_atomic_pipelines_are_executed_on_rollback() {
+        Pipeline pipeline = begin(nonAtomic(2));
+        pipeline.incr("counter1");
+        pipeline.incr("counter1");
+        pipeline.incr("counter1");
+        end(pipeline, false);
+        assertThat(respServer.getString("counter1")).isEqualTo("3");
+        // the connection is returned in a usable state
+        Pipeline next = begin(nonAtomic(0));
+        Response<String> value = next.get("counter1");
+        end(next, true);
+        assertThat(value.get()).isEqualTo("3");
+    }
+
+    private Pipeline begin(TransactionMetadata transactionMetadata) {
+        handler.doInitialize(transactionMetadata);
+        Pipeline pipeline = handler.doCreateTransaction();
+        handler.doBeginTransaction(pipeline);
+        return pipeline;
+    }
+
+    private void end(Pipeline pipeline, boolean commit) {
+        try {
+            if (commit) {
+                handler.doCommitTransaction(pipeline);
+            } else {
+                handler.doRollbackTransaction(pipeline);
+            }
+            handler.doReleaseTransaction(pipeline);
+        } finally {
+            handler.doCleanup();
+        }
+    }
+
+    private static TransactionMetadata nonAtomic(int flushThreshold) {
+        TransactionMetadata transactionMetadata = new TransactionMetadata();
+        transactionMetadata.addMetadata(RedisPipelinedTransactionHandler.ATOMIC, false);
+        transactionMetadata.addMetadata(RedisPipelinedTransactionHandler.FLUSH_THRESHOLD, flushThreshold);
+        return transactionMetadata;
+    }
+}
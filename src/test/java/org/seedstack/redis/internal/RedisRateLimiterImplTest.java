@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.Test;
+import org.seedstack.redis.LuaScript;
+import org.seedstack.redis.RedisConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.MultiKeyPipelineBase;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RedisRateLimiterImplTest {
+    private final ScriptedLimit scriptedLimit = new ScriptedLimit();
+
+    @Test
+    public void each_acquisition_calls_the_script_without_prefetch() {
+        RedisRateLimiterImpl rateLimiter = createRateLimiter(new RedisConfig.RateLimiterConfig()
+                .setAlgorithm(RedisConfig.RateLimiterConfig.Algorithm.SLIDING_WINDOW)
+                .setLimit(10)
+                .setPeriod(1000));
+        scriptedLimit.available = 2;
+        assertThat(rateLimiter.tryAcquire()).isTrue();
+        assertThat(rateLimiter.tryAcquire()).isTrue();
+        assertThat(rateLimiter.tryAcquire()).isFalse();
+        assertThat(rateLimiter.tryAcquire()).isFalse();
+        assertThat(scriptedLimit.calls).containsExactly(
+                Arrays.asList("ratelimiter:limiter", "1", "1", "10", "1000"),
+                Arrays.asList("ratelimiter:limiter", "1", "1", "10", "1000"),
+                Arrays.asList("ratelimiter:limiter", "1", "1", "10", "1000"),
+                Arrays.asList("ratelimiter:limiter", "1", "1", "10", "1000"));
+        assertThat(rateLimiter.collect()).containsEntry("granted", 2L).containsEntry("denied", 2L).containsEntry("calls", 4L);
+    }
+
+    @Test
+    public void prefetched_permits_are_handed_out_locally() {
+        RedisRateLimiterImpl rateLimiter = createRateLimiter(new RedisConfig.RateLimiterConfig().setPrefetch(4));
+        scriptedLimit.available = 100;
+        for (int i = 0; i < 5; i++) {
+            assertThat(rateLimiter.tryAcquire()).isTrue();
+        }
+        assertThat(scriptedLimit.calls).hasSize(1);
+        assertThat(scriptedLimit.calls.get(0).subList(1, 3)).containsExactly("1", "5");
+
+        assertThat(rateLimiter.tryAcquire(2)).isTrue();
+        assertThat(scriptedLimit.calls).hasSize(2);
+        assertThat(scriptedLimit.calls.get(1).subList(1, 3)).containsExactly("2", "6");
+        assertThat(rateLimiter.collect()).containsEntry("granted", 6L).containsEntry("calls", 2L);
+    }
+
+    @Test
+    public void acquisitions_larger_than_the_batch_call_the_script() {
+        RedisRateLimiterImpl rateLimiter = createRateLimiter(new RedisConfig.RateLimiterConfig().setPrefetch(2));
+        scriptedLimit.available = 100;
+        assertThat(rateLimiter.tryAcquire()).isTrue();
+        assertThat(rateLimiter.tryAcquire(3)).isTrue();
+        assertThat(scriptedLimit.calls).hasSize(2);
+        assertThat(scriptedLimit.available).isEqualTo(92);
+    }
+
+    @Test
+    public void partial_batches_are_granted_when_prefetched_permits_are_not_available() {
+        RedisRateLimiterImpl rateLimiter = createRateLimiter(new RedisConfig.RateLimiterConfig().setPrefetch(4));
+        scriptedLimit.available = 2;
+        assertThat(rateLimiter.tryAcquire()).isTrue();
+        assertThat(rateLimiter.tryAcquire()).isTrue();
+        assertThat(scriptedLimit.calls).hasSize(1);
+    }
+
+    @Test
+    public void denied_acquisitions_are_denied_locally_until_the_retry_delay() throws Exception {
+        RedisRateLimiterImpl rateLimiter = createRateLimiter(new RedisConfig.RateLimiterConfig().setPrefetch(4));
+        scriptedLimit.retryDelay = 200;
+        assertThat(rateLimiter.tryAcquire(2)).isFalse();
+        assertThat(rateLimiter.tryAcquire(2)).isFalse();
+        assertThat(rateLimiter.tryAcquire(3)).isFalse();
+        assertThat(scriptedLimit.calls).hasSize(1);
+
+        // fewer permits may be available before the delay
+        assertThat(rateLimiter.tryAcquire(1)).isFalse();
+        assertThat(scriptedLimit.calls).hasSize(2);
+
+        scriptedLimit.available = 10;
+        Thread.sleep(250);
+        assertThat(rateLimiter.tryAcquire(2)).isTrue();
+        assertThat(scriptedLimit.calls).hasSize(3);
+        assertThat(rateLimiter.collect()).containsEntry("granted", 1L).containsEntry("denied", 4L).containsEntry("calls", 3L);
+    }
+
+    @Test
+    public void prefetched_permits_expire_with_the_period() throws Exception {
+        RedisRateLimiterImpl rateLimiter = createRateLimiter(new RedisConfig.RateLimiterConfig().setPeriod(100).setPrefetch(4));
+        scriptedLimit.available = 100;
+        assertThat(rateLimiter.tryAcquire()).isTrue();
+        Thread.sleep(150);
+        assertThat(rateLimiter.tryAcquire()).isTrue();
+        assertThat(scriptedLimit.calls).hasSize(2);
+    }
+
+    @Test
+    public void partitions_have_their_own_key_and_batch() {
+        RedisRateLimiterImpl rateLimiter = createRateLimiter(new RedisConfig.RateLimiterConfig().setPrefetch(4));
+        scriptedLimit.available = 100;
+        assertThat(rateLimiter.tryAcquire("user1")).isTrue();
+        assertThat(rateLimiter.tryAcquire("user2", 2)).isTrue();
+        assertThat(rateLimiter.tryAcquire("user1")).isTrue();
+        assertThat(scriptedLimit.calls).hasSize(2);
+        assertThat(scriptedLimit.calls.get(0).get(0)).isEqualTo("ratelimiter:limiter:user1");
+        assertThat(scriptedLimit.calls.get(1).get(0)).isEqualTo("ratelimiter:limiter:user2");
+    }
+
+    @Test
+    public void token_bucket_script_receives_the_burst() {
+        RedisRateLimiterImpl rateLimiter = createRateLimiter(new RedisConfig.RateLimiterConfig().setLimit(10).setPeriod(1000));
+        scriptedLimit.available = 1;
+        assertThat(rateLimiter.tryAcquire()).isTrue();
+        assertThat(scriptedLimit.calls.get(0)).containsExactly("ratelimiter:limiter", "1", "1", "10", "1000", "10");
+    }
+
+    @Test
+    public void permits_must_be_positive() {
+        RedisRateLimiterImpl rateLimiter = createRateLimiter(new RedisConfig.RateLimiterConfig());
+        assertThatThrownBy(() -> rateLimiter.tryAcquire(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(scriptedLimit.calls).isEmpty();
+    }
+
+    private RedisRateLimiterImpl createRateLimiter(RedisConfig.RateLimiterConfig rateLimiterConfig) {
+        return new RedisRateLimiterImpl("limiter", rateLimiterConfig, scriptedLimit);
+    }
+
+    /**
+     * Stands for the script of the algorithm: grants up to the maximum of the available permits if the minimum is
+     * available, otherwise returns the opposite of the retry delay.
+     */
+    private static class ScriptedLimit implements LuaScript<Long> {
+        private final List<List<String>> calls = new ArrayList<>();
+        private long available;
+        private long retryDelay = 1;
+
+        @Override
+        public String getSha1() {
+            return "scripted";
+        }
+
+        @Override
+        public Long eval(List<String> keys, List<String> args) {
+            List<String> call = new ArrayList<>(keys);
+            call.addAll(args);
+            calls.add(call);
+            long minimum = Long.parseLong(args.get(0));
+            long maximum = Long.parseLong(args.get(1));
+            if (available < minimum) {
+                return -retryDelay;
+            }
+            long granted = Math.min(available, maximum);
+            available -= granted;
+            return granted;
+        }
+
+        @Override
+        public Long eval(Jedis jedis, List<String> keys, List<String> args) {
+            return eval(keys, args);
+        }
+
+        @Override
+        public Response<Long> eval(MultiKeyPipelineBase pipeline, List<String> keys, List<String> args) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RedisScannerTest {
+    private final RespServer.SlotMap slotMap = new RespServer.SlotMap();
+    private RespServer server;
+    private RespServer first;
+    private RespServer second;
+    private JedisPool jedisPool;
+    private JedisCluster jedisCluster;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new RespServer();
+        jedisPool = new JedisPool("127.0.0.1", server.getPort());
+        first = new RespServer().setSlotMap(slotMap);
+        second = new RespServer().setSlotMap(slotMap);
+        slotMap.assign(0, 8191, first).assign(8192, JedisCluster.HASHSLOTS - 1, second);
+        jedisCluster = new JedisCluster(new HostAndPort("127.0.0.1", first.getPort()), new GenericObjectPoolConfig<>());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedisPool.close();
+        jedisCluster.close();
+        server.close();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void pages_are_fetched_as_the_stream_is_consumed() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            for (int i = 0; i < 25; i++) {
+                jedis.set("key" + i, "value");
+            }
+        }
+        ClientScanner scanner = createClientScanner();
+        long commandCount = server.getCommandCount();
+        try (Stream<String> keys = scanner.scan(new ScanParams().count(10))) {
+            assertThat(keys.limit(5).count()).isEqualTo(5);
+        }
+        assertThat(server.getCommandCount() - commandCount).isEqualTo(1);
+
+        commandCount = server.getCommandCount();
+        assertThat(scanner.scan(new ScanParams().count(10)).collect(Collectors.toSet())).hasSize(25);
+        assertThat(server.getCommandCount() - commandCount).isEqualTo(3);
+    }
+
+    @Test
+    public void keys_are_filtered_by_the_match_pattern() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.set("user:1", "value");
+            jedis.set("user:2", "value");
+            jedis.set("order:1", "value");
+        }
+        assertThat(createClientScanner().scan(new ScanParams().match("user:*")).collect(Collectors.toList()))
+                .containsExactlyInAnyOrder("user:1", "user:2");
+    }
+
+    @Test
+    public void hash_fields_are_scanned_with_their_values() {
+        Map<String, String> hash = new HashMap<>();
+        for (int i = 0; i < 15; i++) {
+            hash.put("field" + i, "value" + i);
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.hset("hash", hash);
+        }
+        assertThat(createClientScanner().hscan("hash", new ScanParams().count(4))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue))).isEqualTo(hash);
+    }
+
+    @Test
+    public void keyspace_scans_of_a_cluster_cover_every_master_in_parallel() {
+        for (int i = 0; i < 40; i++) {
+            jedisCluster.set("key" + i, "value");
+        }
+        ClusterScanner scanner = createClusterScanner();
+        Stream<String> keys = scanner.scan();
+        long firstCommandCount = first.getCommandCount();
+        long secondCommandCount = second.getCommandCount();
+        assertThat(keys.isParallel()).isTrue();
+        assertThat(keys.collect(Collectors.toSet())).hasSize(40);
+        assertThat(first.getCommandCount()).isGreaterThan(firstCommandCount);
+        assertThat(second.getCommandCount()).isGreaterThan(secondCommandCount);
+    }
+
+    @Test
+    public void collection_scans_of_a_cluster_are_sent_to_the_owner_of_the_key() {
+        jedisCluster.hset("hash", Collections.singletonMap("field", "value"));
+        assertThat(createClusterScanner().hscan("hash").collect(Collectors.toList()))
+                .extracting(Map.Entry::getValue)
+                .containsExactly("value");
+    }
+
+    @Test
+    public void cluster_spliterators_split_their_nodes_until_they_are_consumed() {
+        ClusterScanSpliterator<List<String>, String> spliterator = new ClusterScanSpliterator<>(
+                Arrays.asList(Arrays.asList("a1", "a2"), Collections.singletonList("b1"), Collections.singletonList("c1"), Collections.emptyList()),
+                node -> Spliterators.spliterator(node, Spliterator.NONNULL));
+        Spliterator<String> prefix = spliterator.trySplit();
+        assertThat(prefix).isNotNull();
+        assertThat(StreamSupport.stream(prefix, false).collect(Collectors.toList())).containsExactly("a1", "a2", "b1");
+
+        assertThat(spliterator.tryAdvance(element -> assertThat(element).isEqualTo("c1"))).isTrue();
+        assertThat(spliterator.trySplit()).isNull();
+        assertThat(spliterator.tryAdvance(element -> {
+        })).isFalse();
+    }
+
+    private ClientScanner createClientScanner() {
+        return new ClientScanner(jedisPool, new RedisMetrics("client", Collections::emptyList));
+    }
+
+    private ClusterScanner createClusterScanner() {
+        return new ClusterScanner(new ClusterTopology("cluster", jedisCluster, 3, new RedisMetrics("cluster", Collections::emptyList)));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RedisTemplateImplTest {
+    private RespServer respServer;
+    private JedisPool jedisPool;
+    private RedisTemplateImpl<String, Object> redisTemplate;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        jedisPool = new JedisPool("127.0.0.1", respServer.getPort());
+        redisTemplate = new RedisTemplateImpl<>(jedisPool, new BinaryCodec(1024),
+                new RedisMetrics("client", () -> Collections.singletonList(jedisPool)));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedisPool.close();
+        respServer.close();
+    }
+
+    @Test
+    public void values_are_encoded_with_the_codec() {
+        redisTemplate.set("key1", "value1");
+        redisTemplate.set("key2", 42L);
+        assertThat(redisTemplate.get("key1")).isEqualTo("value1");
+        assertThat(redisTemplate.get("key2")).isEqualTo(42L);
+        assertThat(redisTemplate.get("missing")).isNull();
+    }
+
+    @Test
+    public void expiring_commands_use_the_codec() {
+        redisTemplate.setex("key1", 60, "value1");
+        assertThat(redisTemplate.get("key1")).isEqualTo("value1");
+        assertThat(redisTemplate.expire("key1", 60)).isTrue();
+        assertThat(redisTemplate.expire("missing", 60)).isFalse();
+    }
+
+    @Test
+    public void multiple_keys_are_set_and_read_together() {
+        Map<String, Object> entries = new LinkedHashMap<>();
+        entries.put("key1", "value1");
+        entries.put("key2", true);
+        redisTemplate.mset(entries);
+        assertThat(redisTemplate.mget(Arrays.asList("key1", "missing", "key2"))).containsExactly("value1", null, true);
+        assertThat(redisTemplate.exists("key1")).isTrue();
+        assertThat(redisTemplate.del("key1")).isTrue();
+        assertThat(redisTemplate.del("key1")).isFalse();
+        assertThat(redisTemplate.exists("key1")).isFalse();
+    }
+
+    @Test
+    public void hash_fields_use_the_codec() {
+        redisTemplate.hset("hash1", "field1", 1.5);
+        redisTemplate.hset("hash1", "field2", "value2");
+        assertThat(redisTemplate.hget("hash1", "field1")).isEqualTo(1.5);
+        assertThat(redisTemplate.hgetAll("hash1")).containsEntry("field1", 1.5).containsEntry("field2", "value2");
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import com.google.inject.Guice;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.Redis;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.redis.RedisExceptionHandler;
+import org.seedstack.seed.SeedException;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import org.seedstack.seed.transaction.spi.TransactionMetadataResolver;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RedisTransactionMetadataTableTest {
+    private final RedisConfig redisConfig = new RedisConfig();
+    private RedisTransactionMetadataTable table;
+
+    @Before
+    public void setUp() {
+        redisConfig.addClient("client1", new RedisConfig.ClientConfig());
+        redisConfig.addCluster("cluster1", new RedisConfig.ClusterConfig());
+        table = new RedisTransactionMetadataTable(redisConfig, Arrays.asList(Annotated.class, AnnotatedClass.class));
+    }
+
+    @Test
+    public void scanned_methods_are_precomputed_and_shared() throws Exception {
+        assertThat(table.size()).isEqualTo(8);
+        TransactionMetadata metadata = table.get(method(Annotated.class, "transaction"), null);
+        assertThat(metadata.getResource()).isEqualTo("client1");
+        assertThat(metadata.getHandler()).isEqualTo(RedisTransactionHandler.class);
+        assertThat(metadata.getExceptionHandler()).isEqualTo(RedisExceptionHandler.class);
+        assertThat(metadata.getMetadata(RedisMetrics.METHOD)).isEqualTo(Annotated.class.getName() + ".transaction");
+        assertThat(metadata.getMetadata(ReplicaRouter.READ_ONLY)).isNull();
+        assertThat(metadata.getMetadata(BorrowGuard.BORROW_TIMEOUT)).isNull();
+        assertThat(table.get(method(Annotated.class, "transaction"), null)).isSameAs(metadata);
+        assertThat(table.size()).isEqualTo(8);
+    }
+
+    @Test
+    public void pipelined_methods_carry_pipeline_options() throws Exception {
+        TransactionMetadata metadata = table.get(method(Annotated.class, "pipeline"), null);
+        assertThat(metadata.getHandler()).isEqualTo(RedisPipelinedTransactionHandler.class);
+        assertThat(metadata.getMetadata(RedisPipelinedTransactionHandler.ATOMIC)).isEqualTo(false);
+        assertThat(metadata.getMetadata(RedisPipelinedTransactionHandler.FLUSH_THRESHOLD)).isEqualTo(100);
+        assertThat(metadata.getMetadata(RedisPipelinedTransactionHandler.FIRE_AND_FORGET)).isEqualTo(true);
+    }
+
+    @Test
+    public void fire_and_forget_requires_a_pipeline_of_a_client() {
+        for (Class<?> invalid : Arrays.asList(FireAndForgetTransaction.class, FireAndForgetDirect.class, FireAndForgetCluster.class)) {
+            assertThatThrownBy(() -> new RedisTransactionMetadataTable(redisConfig, Collections.singletonList(invalid)))
+                    .isInstanceOfSatisfying(SeedException.class,
+                            e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.INVALID_FIRE_AND_FORGET));
+        }
+    }
+
+    @Test
+    public void direct_methods_use_the_direct_handler() throws Exception {
+        assertThat(table.get(method(Annotated.class, "direct"), null).getHandler()).isEqualTo(RedisDirectTransactionHandler.class);
+    }
+
+    @Test
+    public void read_only_and_borrow_timeout_apply_to_clients() throws Exception {
+        TransactionMetadata metadata = table.get(method(Annotated.class, "readOnly"), null);
+        assertThat(metadata.getMetadata(ReplicaRouter.READ_ONLY)).isEqualTo(true);
+        assertThat(metadata.getMetadata(BorrowGuard.BORROW_TIMEOUT)).isEqualTo(50);
+    }
+
+    @Test
+    public void cluster_methods_use_cluster_handlers() throws Exception {
+        TransactionMetadata transaction = table.get(method(Annotated.class, "clusterTransaction"), null);
+        assertThat(transaction.getHandler()).isEqualTo(RedisClusterTransactionHandler.class);
+        assertThat(transaction.getMetadata(RedisClusterTransactionHandler.SLOT)).isEqualTo(JedisClusterCRC16.getSlot("{user1}"));
+        assertThat(transaction.getMetadata(ReplicaRouter.READ_ONLY)).isNull();
+        assertThat(transaction.getMetadata(BorrowGuard.BORROW_TIMEOUT)).isNull();
+
+        TransactionMetadata firstKey = table.get(method(Annotated.class, "clusterFirstKeyTransaction"), null);
+        assertThat(firstKey.getHandler()).isEqualTo(RedisClusterTransactionHandler.class);
+        assertThat(firstKey.getMetadata(RedisClusterTransactionHandler.SLOT)).isNull();
+
+        TransactionMetadata pipeline = table.get(method(Annotated.class, "clusterPipeline"), null);
+        assertThat(pipeline.getHandler()).isEqualTo(RedisClusterPipelinedTransactionHandler.class);
+        assertThat(pipeline.getMetadata(RedisClusterTransactionHandler.SLOT)).isNull();
+    }
+
+    @Test
+    public void class_annotation_applies_to_declared_methods() throws Exception {
+        TransactionMetadata metadata = table.get(method(AnnotatedClass.class, "inherited"), null);
+        assertThat(metadata.getResource()).isEqualTo("client1");
+        assertThat(metadata.getHandler()).isEqualTo(RedisPipelinedTransactionHandler.class);
+    }
+
+    @Test
+    public void methods_outside_the_scan_are_resolved_once() throws Exception {
+        Method method = method(NotScanned.class, "transaction");
+        TransactionMetadata metadata = table.get(method, null);
+        assertThat(metadata.getResource()).isEqualTo("client1");
+        assertThat(metadata.getHandler()).isEqualTo(RedisTransactionHandler.class);
+        assertThat(table.size()).isEqualTo(9);
+        assertThat(table.get(method, null)).isSameAs(metadata);
+        assertThat(table.size()).isEqualTo(9);
+    }
+
+    @Test
+    public void methods_without_annotation_are_not_redis_transactions() throws Exception {
+        assertThat(table.get(method(NotScanned.class, "notAnnotated"), null)).isNull();
+        assertThat(table.get(method(NotScanned.class, "notAnnotated"), Object.class)).isNull();
+    }
+
+    @Test
+    public void methods_without_annotation_use_the_default_client_with_a_redis_handler() throws Exception {
+        redisConfig.setDefaultClient("client1");
+        TransactionMetadata metadata = table.get(method(NotScanned.class, "notAnnotated"), RedisPipelinedTransactionHandler.class);
+        assertThat(metadata.getResource()).isEqualTo("client1");
+        assertThat(metadata.getHandler()).isEqualTo(RedisPipelinedTransactionHandler.class);
+        assertThat(metadata.getExceptionHandler()).isEqualTo(RedisExceptionHandler.class);
+    }
+
+    @Test
+    public void methods_without_annotation_require_a_default_client_with_a_redis_handler() throws Exception {
+        assertThatThrownBy(() -> table.get(method(NotScanned.class, "notAnnotated"), RedisTransactionHandler.class))
+                .isInstanceOfSatisfying(SeedException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.NO_REDIS_CLIENT_SPECIFIED_FOR_TRANSACTION));
+    }
+
+    @Test
+    public void resolver_looks_up_the_table() throws Exception {
+        TransactionMetadataResolver resolver = Guice.createInjector(binder -> binder.bind(RedisTransactionMetadataTable.class).toInstance(table))
+                .getInstance(RedisTransactionMetadataResolver.class);
+        Method method = method(Annotated.class, "pipeline");
+        assertThat(resolver.resolve(new StaticInvocation(method), new TransactionMetadata())).isSameAs(table.get(method, null));
+        assertThat(resolver.resolve(new StaticInvocation(method(NotScanned.class, "notAnnotated")), new TransactionMetadata())).isNull();
+    }
+
+    private static Method method(Class<?> someClass, String name) throws NoSuchMethodException {
+        return someClass.getDeclaredMethod(name);
+    }
+
+    static class Annotated {
+        @Redis("client1")
+        void transaction() {
+        }
+
+        @Redis(value = "client1", pipelined = true, atomic = false, flushThreshold = 100, fireAndForget = true)
+        void pipeline() {
+        }
+
+        @Redis(value = "client1", mode = Redis.Mode.DIRECT)
+        void direct() {
+        }
+
+        @Redis(value = "client1", readOnly = true, borrowTimeout = 50)
+        void readOnly() {
+        }
+
+        @Redis(value = "cluster1", routingKey = "{user1}", readOnly = true, borrowTimeout = 50)
+        void clusterTransaction() {
+        }
+
+        @Redis(value = "cluster1", routingKey = Redis.FIRST_KEY)
+        void clusterFirstKeyTransaction() {
+        }
+
+        @Redis(value = "cluster1")
+        void clusterPipeline() {
+        }
+
+        void notAnnotated() {
+        }
+    }
+
+    static class FireAndForgetTransaction {
+        @Redis(value = "client1", fireAndForget = true)
+        void transaction() {
+        }
+    }
+
+    static class FireAndForgetDirect {
+        @Redis(value = "client1", mode = Redis.Mode.DIRECT, pipelined = true, fireAndForget = true)
+        void direct() {
+        }
+    }
+
+    static class FireAndForgetCluster {
+        @Redis(value = "cluster1", pipelined = true, fireAndForget = true)
+        void cluster() {
+        }
+    }
+
+    @Redis(value = "client1", pipelined = true)
+    static class AnnotatedClass {
+        void inherited() {
+        }
+
+        static void ignored() {
+        }
+    }
+
+    static class NotScanned {
+        @Redis("client1")
+        void transaction() {
+        }
+
+        void notAnnotated() {
+        }
+    }
+
+    private static class StaticInvocation implements MethodInvocation {
+        private final Method method;
+
+        private StaticInvocation(Method method) {
+            this.method = method;
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public Object[] getArguments() {
+            return new Object[0];
+        }
+
+        @Override
+        public Object proceed() {
+            return null;
+        }
+
+        @Override
+        public Object getThis() {
+            return null;
+        }
+
+        @Override
+        public AccessibleObject getStaticPart() {
+            return method;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.seed.SeedException;
+import redis.clients.jedis.JedisPool;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RedisWarmUpTest {
+    private RespServer respServer;
+    private JedisPool jedisPool;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        jedisPool = new JedisPool("127.0.0.1", respServer.getPort());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        jedisPool.close();
+        respServer.close();
+    }
+
+    @Test
+    public void pools_are_prefilled_up_to_min_idle() {
+        try (RedisWarmUp warmUp = new RedisWarmUp(new RedisConfig.WarmUpConfig())) {
+            warmUp.addPool("client", jedisPool, 3);
+            warmUp.complete();
+        }
+        assertThat(jedisPool.getNumIdle()).isEqualTo(3);
+    }
+
+    @Test
+    public void pools_are_not_prefilled_when_disabled() {
+        try (RedisWarmUp warmUp = new RedisWarmUp(new RedisConfig.WarmUpConfig().setEnabled(false))) {
+            warmUp.addPool("client", jedisPool, 3);
+            warmUp.complete();
+        }
+        assertThat(jedisPool.getNumIdle()).isZero();
+    }
+
+    @Test
+    public void health_gate_pings_pools_when_prefilling_is_disabled() throws IOException {
+        respServer.close();
+        try (RedisWarmUp warmUp = new RedisWarmUp(new RedisConfig.WarmUpConfig().setEnabled(false).setPing(true).setTimeout(2000))) {
+            warmUp.addPool("client", jedisPool, 3);
+            assertThatThrownBy(warmUp::complete).isInstanceOfSatisfying(SeedException.class,
+                    e -> assertThat(e.getErrorCode()).isEqualTo(RedisErrorCode.WARM_UP_FAILED));
+        }
+    }
+
+    @Test
+    public void health_gate_passes_when_pools_answer() {
+        try (RedisWarmUp warmUp = new RedisWarmUp(new RedisConfig.WarmUpConfig().setEnabled(false).setPing(true))) {
+            warmUp.addPool("client", jedisPool, 3);
+            warmUp.complete();
+        }
+        assertThat(respServer.getCommandCount()).isPositive();
+    }
+
+    @Test
+    public void submitted_tasks_are_bound_by_the_time_budget() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        try (RedisWarmUp warmUp = new RedisWarmUp(new RedisConfig.WarmUpConfig().setTimeout(100))) {
+            assertThat(warmUp.await(warmUp.submit(() -> "done"))).isEqualTo("done");
+            Future<Object> future = warmUp.submit(() -> {
+                never.await();
+                return null;
+            });
+            assertThatThrownBy(() -> warmUp.await(future)).isInstanceOf(TimeoutException.class);
+            assertThat(future.isCancelled()).isTrue();
+        }
+    }
+
+    @Test
+    public void failures_of_submitted_tasks_are_rethrown() {
+        try (RedisWarmUp warmUp = new RedisWarmUp(new RedisConfig.WarmUpConfig())) {
+            Future<Object> future = warmUp.submit(() -> {
+                throw new IOException("failure");
+            });
+            assertThatThrownBy(() -> warmUp.await(future)).isInstanceOf(IOException.class).hasMessage("failure");
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.RedisConfig;
+import org.seedstack.seed.transaction.spi.TransactionMetadata;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplicaRouterTest {
+    private final TransactionMetadata readOnly = new TransactionMetadata();
+    private RespServer primaryServer;
+    private RespServer firstServer;
+    private RespServer secondServer;
+    private BudgetedJedisPool primary;
+    private Map<String, BudgetedJedisPool> replicaPools;
+    private BorrowGuard borrowGuard;
+    private RedisMetrics redisMetrics;
+    private ReplicaRouter replicaRouter;
+
+    @Before
+    public void setUp() throws IOException {
+        readOnly.addMetadata(ReplicaRouter.READ_ONLY, true);
+        primaryServer = new RespServer();
+        firstServer = new RespServer();
+        secondServer = new RespServer();
+        primary = createPool(primaryServer);
+        replicaPools = new LinkedHashMap<>();
+        replicaPools.put("first", createPool(firstServer));
+        replicaPools.put("second", createPool(secondServer));
+        borrowGuard = new BorrowGuard("client", new RedisConfig.BorrowConfig(), primary);
+        redisMetrics = new RedisMetrics("client", () -> Collections.singletonList(primary));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (replicaRouter != null) {
+            replicaRouter.close();
+        }
+        primary.close();
+        primaryServer.close();
+        firstServer.close();
+        secondServer.close();
+    }
+
+    @Test
+    public void read_write_transactions_use_the_primary() {
+        replicaRouter = createRouter(new RedisConfig.ReplicasConfig());
+        assertThat(borrowFrom(null)).isSameAs(primaryServer);
+        assertThat(borrowFrom(new TransactionMetadata())).isSameAs(primaryServer);
+    }
+
+    @Test
+    public void read_only_transactions_use_the_least_outstanding_replica() {
+        replicaRouter = createRouter(new RedisConfig.ReplicasConfig());
+        Jedis first = replicaRouter.borrow(redisMetrics, readOnly);
+        Jedis second = replicaRouter.borrow(redisMetrics, readOnly);
+        try {
+            assertThat(first.getClient().getPort()).isNotEqualTo(second.getClient().getPort());
+            assertThat(first.getClient().getPort()).isIn(firstServer.getPort(), secondServer.getPort());
+            assertThat(second.getClient().getPort()).isIn(firstServer.getPort(), secondServer.getPort());
+        } finally {
+            replicaRouter.release(first);
+            replicaRouter.release(second);
+        }
+        assertThat(primary.getNumIdle()).isZero();
+    }
+
+    @Test
+    public void read_only_transactions_use_replicas_in_turn() {
+        replicaRouter = createRouter(new RedisConfig.ReplicasConfig().setSelection(RedisConfig.ReplicasConfig.Selection.ROUND_ROBIN));
+        RespServer first = borrowFrom(readOnly);
+        RespServer second = borrowFrom(readOnly);
+        assertThat(first).isNotSameAs(second).isNotSameAs(primaryServer);
+        assertThat(borrowFrom(readOnly)).isSameAs(first);
+        assertThat(borrowFrom(readOnly)).isSameAs(second);
+    }
+
+    @Test
+    public void unavailable_replicas_are_skipped_for_the_retry_delay() throws Exception {
+        replicaRouter = createRouter(new RedisConfig.ReplicasConfig().setRetryDelay(200));
+        secondServer.close();
+        for (int i = 0; i < 4; i++) {
+            assertThat(borrowFrom(readOnly)).isSameAs(firstServer);
+        }
+        assertThat(replicaRouter.collect()).containsKeys("first", "second");
+        assertThat(replicaRouter.collect().get("second")).isEqualTo(replicaInfo(false));
+
+        Thread.sleep(250);
+        assertThat(replicaRouter.collect().get("second")).isEqualTo(replicaInfo(true));
+    }
+
+    @Test
+    public void primary_is_used_when_no_replica_is_available() throws IOException {
+        replicaRouter = createRouter(new RedisConfig.ReplicasConfig().setSelection(RedisConfig.ReplicasConfig.Selection.ROUND_ROBIN));
+        firstServer.close();
+        secondServer.close();
+        assertThat(borrowFrom(readOnly)).isSameAs(primaryServer);
+        assertThat(borrowFrom(readOnly)).isSameAs(primaryServer);
+    }
+
+    @Test
+    public void replica_pools_are_closed_with_the_router() {
+        replicaRouter = createRouter(new RedisConfig.ReplicasConfig());
+        assertThat(replicaRouter.getReplicaPools()).containsExactlyElementsOf(replicaPools.values());
+        replicaRouter.close();
+        replicaPools.values().forEach(pool -> assertThat(pool.isClosed()).isTrue());
+        assertThat(primary.isClosed()).isFalse();
+    }
+
+    private ReplicaRouter createRouter(RedisConfig.ReplicasConfig replicasConfig) {
+        return new ReplicaRouter("client", primary, replicaPools, replicasConfig, borrowGuard);
+    }
+
+    private RespServer borrowFrom(TransactionMetadata transactionMetadata) {
+        Jedis jedis = replicaRouter.borrow(redisMetrics, transactionMetadata);
+        try {
+            int port = jedis.getClient().getPort();
+            for (RespServer respServer : new RespServer[]{primaryServer, firstServer, secondServer}) {
+                if (respServer.getPort() == port) {
+                    return respServer;
+                }
+            }
+            throw new IllegalStateException("Unknown port " + port);
+        } finally {
+            replicaRouter.release(jedis);
+        }
+    }
+
+    private static Map<String, Object> replicaInfo(boolean available) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("available", available);
+        info.put("active", 0);
+        info.put("idle", 0);
+        return info;
+    }
+
+    private static BudgetedJedisPool createPool(RespServer respServer) {
+        return new BudgetedJedisPool(new JedisPoolConfig(), URI.create("redis://127.0.0.1:" + respServer.getPort()), 2000, 2000);
+    }
+}
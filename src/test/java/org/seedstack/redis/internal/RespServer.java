@@ -0,0 +1,1459 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process server speaking the RESP protocol, which stores strings, hashes and lists in memory so that benchmarks
+ * run complete workloads without a Redis instance. It supports the connection commands sent by Jedis, the core
+ * string, hash and list commands, SCAN, HSCAN and MULTI/EXEC/DISCARD transactions. Commands run one at a time under a
+ * global lock, as on a Redis server. WATCH is accepted but never aborts a transaction, keys do not expire and Lua
+ * scripts are only evaluated through the Java emulations defined for them. As on Redis, EVALSHA only runs the scripts
+ * of the script cache, filled by SCRIPT LOAD and EVAL and emptied by SCRIPT FLUSH.
+ *
+ * <p>Each command can be delayed by a fixed latency and a uniformly distributed jitter before it is executed, to
+ * emulate network round-trips or slow commands. Delays elapse on the connection thread outside of the lock, so
+ * concurrent connections are delayed concurrently. Commands queued in a transaction are delayed when queued and EXEC
+ * only by its own latency.</p>
+ *
+ * <p>Servers sharing a {@link SlotMap} emulate a cluster: they answer CLUSTER SLOTS and redirect keyed commands with
+ * MOVED and ASK replies, the owner of a migrating slot redirecting with ASK the commands on keys it does not hold.
+ * A connection can also be dropped right after a command is executed, before its reply is sent.</p>
+ *
+ * <p>CLIENT REPLY OFF and ON disable and enable again the replies of a connection.</p>
+ *
+ * <p>Published messages are delivered to the connections subscribed to their channel or to a matching pattern.
+ * Streams support XADD, XGROUP CREATE, XREADGROUP on a single stream, possibly blocking, and XACK, the entries read by
+ * a consumer staying pending until acknowledged. Stream commands are not redirected in cluster mode.</p>
+ *
+ * <p>Client-side caching is emulated by CLIENT ID and CLIENT TRACKING ON REDIRECT: once a connection enabled tracking,
+ * the keys read by any connection are tracked and their next write is asynchronously published to the redirection
+ * targets on the invalidation channel.</p>
+ */
+class RespServer implements Closeable {
+    private static final byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] QUEUED = "+QUEUED\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PONG = "+PONG\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL_ARRAY = "*-1\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INVALIDATE = "__redis__:invalidate".getBytes(StandardCharsets.US_ASCII);
+    private static final Map<String, Integer> ARITIES = new HashMap<>();
+    private static final Comparator<long[]> STREAM_ID_ORDER = Comparator.<long[]>comparingLong(id -> id[0]).thenComparingLong(id -> id[1]);
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private final Map<String, Object> keyspace = new HashMap<>();
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+    private final LongAdder commands = new LongAdder();
+    private final Map<String, LongAdder> commandCounts = new ConcurrentHashMap<>();
+    private final Set<String> droppingCommands = ConcurrentHashMap.newKeySet();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final AtomicLong connectionIds = new AtomicLong();
+    private final Map<Long, OutputStream> outputs = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> channelSubscriptions = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> patternSubscriptions = new ConcurrentHashMap<>();
+    private final Set<Long> trackingRedirections = ConcurrentHashMap.newKeySet();
+    private final Set<String> trackedKeys = ConcurrentHashMap.newKeySet();
+    private final Map<String, ScriptEmulation> scripts = new ConcurrentHashMap<>();
+    private final Set<String> scriptCache = ConcurrentHashMap.newKeySet();
+    private final ExecutorService invalidationExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "resp-server-invalidation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Latency defaultLatency = new Latency(0, 0);
+    private volatile SlotMap slotMap;
+    private volatile long invalidationDelayMillis;
+
+    static {
+        // minimum number of arguments, including the command name
+        for (String command : new String[]{"PING", "MULTI", "EXEC", "DISCARD", "UNWATCH", "QUIT", "FLUSHDB", "FLUSHALL", "DBSIZE", "UNSUBSCRIBE",
+                "PUNSUBSCRIBE", "ASKING"}) {
+            ARITIES.put(command, 1);
+        }
+        for (String command : new String[]{"ECHO", "SELECT", "AUTH", "CLIENT", "WATCH", "DEL", "EXISTS", "GET", "MGET", "INCR", "DECR", "STRLEN",
+                "HGETALL", "HLEN", "LPOP", "RPOP", "LLEN", "SUBSCRIBE", "PSUBSCRIBE", "SCRIPT", "CLUSTER", "PERSIST", "PTTL", "SCAN", "XGROUP"}) {
+            ARITIES.put(command, 2);
+        }
+        for (String command : new String[]{"SET", "MSET", "EXPIRE", "PEXPIRE", "INCRBY", "DECRBY", "APPEND", "HGET", "HMGET", "HDEL", "HEXISTS", "LPUSH", "RPUSH",
+                "LINDEX", "PUBLISH", "EVAL", "EVALSHA", "HSCAN"}) {
+            ARITIES.put(command, 3);
+        }
+        for (String command : new String[]{"HSET", "HMSET", "SETEX", "PSETEX", "HINCRBY", "LRANGE", "LTRIM", "XACK"}) {
+            ARITIES.put(command, 4);
+        }
+        ARITIES.put("XADD", 5);
+        ARITIES.put("XREADGROUP", 7);
+    }
+
+    private static final Set<String> WRITES = new LinkedHashSet<>(Arrays.asList("SET", "SETEX", "PSETEX", "MSET", "DEL", "EXPIRE", "INCR", "DECR", "INCRBY", "DECRBY", "APPEND",
+            "HSET", "HMSET", "HDEL", "HINCRBY", "LPUSH", "RPUSH", "LPOP", "RPOP", "LTRIM", "FLUSHDB", "FLUSHALL"));
+    private static final Set<String> READS = new LinkedHashSet<>(Arrays.asList("GET", "MGET", "STRLEN", "HGET", "HMGET", "HGETALL", "HSCAN", "HEXISTS", "HLEN",
+            "LINDEX", "LRANGE", "LLEN"));
+    private static final Set<String> KEYLESS = new LinkedHashSet<>(Arrays.asList("ECHO", "SELECT", "AUTH", "CLIENT", "SUBSCRIBE", "PSUBSCRIBE",
+            "UNSUBSCRIBE", "PUNSUBSCRIBE", "SCRIPT", "PUBLISH", "CLUSTER", "SCAN", "XGROUP", "XREADGROUP"));
+
+    RespServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(this::accept, "resp-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Delays every command without a specific latency.
+     *
+     * @param latency the fixed delay in microseconds.
+     * @param jitter  the maximum random delay in microseconds added to the fixed delay.
+     * @return the server itself.
+     */
+    RespServer setLatency(long latency, long jitter) {
+        defaultLatency = new Latency(latency, jitter);
+        return this;
+    }
+
+    /**
+     * Delays the specified command.
+     *
+     * @param command the command name.
+     * @param latency the fixed delay in microseconds.
+     * @param jitter  the maximum random delay in microseconds added to the fixed delay.
+     * @return the server itself.
+     */
+    RespServer setLatency(String command, long latency, long jitter) {
+        latencies.put(command.toUpperCase(), new Latency(latency, jitter));
+        return this;
+    }
+
+    /**
+     * Makes the server a node of the cluster described by the specified slot map.
+     *
+     * @param slotMap the slot map shared by the nodes of the cluster.
+     * @return the server itself.
+     */
+    RespServer setSlotMap(SlotMap slotMap) {
+        this.slotMap = slotMap;
+        return this;
+    }
+
+    /**
+     * Closes the connection executing the next occurrence of the specified command once it is executed, without
+     * sending its reply nor the pending replies of previous commands.
+     *
+     * @param command the command name.
+     * @return the server itself.
+     */
+    RespServer dropConnectionAfter(String command) {
+        droppingCommands.add(command.toUpperCase());
+        return this;
+    }
+
+    /**
+     * Delays the publication of invalidations, which are published in order.
+     *
+     * @param delay the delay in milliseconds.
+     * @return the server itself.
+     */
+    RespServer setInvalidationDelay(long delay) {
+        this.invalidationDelayMillis = delay;
+        return this;
+    }
+
+    /**
+     * Evaluates the Lua script of the specified body, sent by EVAL or by EVALSHA once cached, with the specified
+     * emulation.
+     *
+     * @param body      the body of the script.
+     * @param emulation the emulation of the script.
+     * @return the server itself.
+     */
+    RespServer defineScript(String body, ScriptEmulation emulation) {
+        scripts.put(LuaScriptRegistry.sha1(body), emulation);
+        return this;
+    }
+
+    /**
+     * Reads the string value of a key directly from the keyspace, bypassing cluster redirections.
+     *
+     * @param key the key.
+     * @return the value or null if the key does not exist or does not hold a string.
+     */
+    String getString(String key) {
+        synchronized (keyspace) {
+            Object value = keyspace.get(new String(key.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1));
+            return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : null;
+        }
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    long getCommandCount() {
+        return commands.sum();
+    }
+
+    /**
+     * Returns the number of times the specified command was received, queued commands included.
+     *
+     * @param command the command name.
+     * @return the number of commands.
+     */
+    long getCommandCount(String command) {
+        LongAdder count = commandCounts.get(command.toUpperCase());
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Returns the entries read through a consumer group and not acknowledged yet.
+     *
+     * @param stream the stream key.
+     * @param group  the consumer group.
+     * @return the identifiers of the pending entries, in order.
+     */
+    List<String> getPendingEntries(String stream, String group) {
+        synchronized (keyspace) {
+            Object value = keyspace.get(new String(stream.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1));
+            ConsumerGroup consumerGroup = value instanceof StreamValue ? ((StreamValue) value).groups.get(group) : null;
+            List<String> pendingEntries = new ArrayList<>();
+            if (consumerGroup != null) {
+                for (long[] id : consumerGroup.pending.keySet()) {
+                    pendingEntries.add(formatId(id));
+                }
+            }
+            return pendingEntries;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        // the listening socket is only released once the acceptor is out of accept(), which may still return a client
+        try {
+            acceptor.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        invalidationExecutor.shutdownNow();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (serverSocket.isClosed()) {
+                    socket.close();
+                    return;
+                }
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                Thread connection = new Thread(() -> serve(socket), "resp-server-connection");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                // server closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        long connectionId = connectionIds.incrementAndGet();
+        try (Socket s = socket) {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            ReplyStream out = new ReplyStream(new BufferedOutputStream(s.getOutputStream()));
+            outputs.put(connectionId, out);
+            List<List<byte[]>> queued = null;
+            boolean aborted = false;
+            boolean asking = false;
+            String redirection;
+            while (true) {
+                List<byte[]> args = readCommand(in);
+                if (args == null) {
+                    return;
+                }
+                // replies are written under the lock of the output, shared with invalidation messages
+                synchronized (out) {
+                    String command = new String(args.get(0), StandardCharsets.US_ASCII).toUpperCase();
+                    commands.increment();
+                    commandCounts.computeIfAbsent(command, name -> new LongAdder()).increment();
+                    delay(command);
+                    Integer arity = ARITIES.get(command);
+                    if (arity == null) {
+                        writeError(out, "ERR unknown command '" + command + "'");
+                        aborted |= queued != null;
+                    } else if (args.size() < arity) {
+                        writeError(out, "ERR wrong number of arguments for '" + command + "' command");
+                        aborted |= queued != null;
+                    } else if ((redirection = redirect(command, args, asking)) != null) {
+                        writeError(out, redirection);
+                        aborted |= queued != null;
+                    } else if ("ASKING".equals(command)) {
+                        out.write(OK);
+                    } else if ("MULTI".equals(command)) {
+                        if (queued != null) {
+                            writeError(out, "ERR MULTI calls can not be nested");
+                        } else {
+                            queued = new ArrayList<>();
+                            aborted = false;
+                            out.write(OK);
+                        }
+                    } else if ("EXEC".equals(command) || "DISCARD".equals(command)) {
+                        if (queued == null) {
+                            writeError(out, "ERR " + command + " without MULTI");
+                        } else if ("DISCARD".equals(command)) {
+                            out.write(OK);
+                        } else if (aborted) {
+                            writeError(out, "EXECABORT Transaction discarded because of previous errors.");
+                        } else {
+                            writeArrayHeader(out, queued.size());
+                            synchronized (keyspace) {
+                                for (List<byte[]> queuedArgs : queued) {
+                                    execute(new String(queuedArgs.get(0), StandardCharsets.US_ASCII).toUpperCase(), queuedArgs, out);
+                                }
+                            }
+                            if (droppingCommands.remove(command)) {
+                                return;
+                            }
+                        }
+                        queued = null;
+                    } else if (queued != null) {
+                        queued.add(args);
+                        out.write(QUEUED);
+                    } else if ("QUIT".equals(command)) {
+                        out.write(OK);
+                        out.flush();
+                        return;
+                    } else if (command.endsWith("SUBSCRIBE")) {
+                        subscribe(connectionId, command, args, out);
+                    } else if ("CLIENT".equals(command)) {
+                        client(connectionId, args, out);
+                    } else {
+                        synchronized (keyspace) {
+                            execute(command, args, out);
+                        }
+                        if (droppingCommands.remove(command)) {
+                            return;
+                        }
+                    }
+                    // as on Redis, ASKING applies to the next command or to the whole transaction following it
+                    asking = "ASKING".equals(command) || asking && queued != null;
+                    if (in.available() == 0) {
+                        out.flush();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // connection closed
+        } finally {
+            sockets.remove(socket);
+            outputs.remove(connectionId);
+            channelSubscriptions.remove(connectionId);
+            patternSubscriptions.remove(connectionId);
+        }
+    }
+
+    /**
+     * Answers CLIENT ID and records the redirections of CLIENT TRACKING, other subcommands being acknowledged.
+     */
+    private void client(long connectionId, List<byte[]> args, ReplyStream out) throws IOException {
+        String subcommand = new String(args.get(1), StandardCharsets.US_ASCII).toUpperCase();
+        if ("ID".equals(subcommand)) {
+            writeInteger(out, connectionId);
+            return;
+        }
+        if ("REPLY".equals(subcommand) && args.size() > 2) {
+            // as on Redis, CLIENT REPLY OFF is not acknowledged
+            out.discarding = "OFF".equalsIgnoreCase(new String(args.get(2), StandardCharsets.US_ASCII));
+            if (out.discarding) {
+                return;
+            }
+        }
+        if ("TRACKING".equals(subcommand) && args.size() > 2 && "ON".equalsIgnoreCase(new String(args.get(2), StandardCharsets.US_ASCII))) {
+            for (int i = 3; i < args.size() - 1; i++) {
+                if ("REDIRECT".equalsIgnoreCase(new String(args.get(i), StandardCharsets.US_ASCII))) {
+                    trackingRedirections.add(parseLong(args.get(i + 1)));
+                }
+            }
+        }
+        out.write(OK);
+    }
+
+    /**
+     * Tracks the keys read by the specified command and publishes the tracked keys it writes to the tracking
+     * redirections, a flush being published as a null list of keys.
+     */
+    private void track(String command, List<byte[]> args) {
+        if (trackingRedirections.isEmpty()) {
+            return;
+        }
+        if (READS.contains(command)) {
+            for (int i = 1; i < ("MGET".equals(command) ? args.size() : 2); i++) {
+                trackedKeys.add(key(args, i));
+            }
+            return;
+        } else if (!WRITES.contains(command)) {
+            return;
+        }
+        List<byte[]> keys = null;
+        if (command.startsWith("FLUSH")) {
+            trackedKeys.clear();
+        } else {
+            keys = new ArrayList<>();
+            for (int i = 1; i < args.size(); i += "MSET".equals(command) ? 2 : 1) {
+                if (trackedKeys.remove(key(args, i))) {
+                    keys.add(args.get(i));
+                }
+                if (!"MSET".equals(command) && !"DEL".equals(command)) {
+                    break;
+                }
+            }
+            if (keys.isEmpty()) {
+                return;
+            }
+        }
+        List<byte[]> invalidatedKeys = keys;
+        long delay = invalidationDelayMillis;
+        invalidationExecutor.execute(() -> {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Long redirection : trackingRedirections) {
+                OutputStream out = outputs.get(redirection);
+                if (out != null) {
+                    try {
+                        synchronized (out) {
+                            writeArrayHeader(out, 3);
+                            writeBulk(out, "message".getBytes(StandardCharsets.US_ASCII));
+                            writeBulk(out, INVALIDATE);
+                            if (invalidatedKeys == null) {
+                                out.write(NULL_ARRAY);
+                            } else {
+                                writeArrayHeader(out, invalidatedKeys.size());
+                                for (byte[] key : invalidatedKeys) {
+                                    writeBulk(out, key);
+                                }
+                            }
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        // connection closed
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Records subscriptions and unsubscriptions, confirming each of them with the total number of channels and patterns
+     * subscribed by the connection.
+     */
+    private void subscribe(long connectionId, String command, List<byte[]> args, OutputStream out) throws IOException {
+        Set<String> subscriptions = (command.startsWith("P") ? patternSubscriptions : channelSubscriptions)
+                .computeIfAbsent(connectionId, id -> ConcurrentHashMap.newKeySet());
+        Set<String> otherSubscriptions = (command.startsWith("P") ? channelSubscriptions : patternSubscriptions)
+                .getOrDefault(connectionId, Collections.emptySet());
+        List<String> targets = new ArrayList<>();
+        for (int i = 1; i < args.size(); i++) {
+            targets.add(key(args, i));
+        }
+        boolean unsubscribe = command.contains("UNSUBSCRIBE");
+        if (unsubscribe && targets.isEmpty()) {
+            targets.addAll(subscriptions);
+        }
+        byte[] kind = command.toLowerCase().getBytes(StandardCharsets.US_ASCII);
+        if (targets.isEmpty()) {
+            writeArrayHeader(out, 3);
+            writeBulk(out, kind);
+            out.write(NULL);
+            writeInteger(out, subscriptions.size() + otherSubscriptions.size());
+        }
+        for (String target : targets) {
+            if (unsubscribe) {
+                subscriptions.remove(target);
+            } else {
+                subscriptions.add(target);
+            }
+            writeArrayHeader(out, 3);
+            writeBulk(out, kind);
+            writeBulk(out, target.getBytes(StandardCharsets.ISO_8859_1));
+            writeInteger(out, subscriptions.size() + otherSubscriptions.size());
+        }
+    }
+
+    /**
+     * Delivers a message to the connections subscribed to its channel or to a matching pattern.
+     *
+     * @return the number of deliveries.
+     */
+    private int publish(byte[] channel, byte[] message) {
+        String name = new String(channel, StandardCharsets.ISO_8859_1);
+        int receivers = 0;
+        for (Map.Entry<Long, Set<String>> subscriptions : channelSubscriptions.entrySet()) {
+            if (subscriptions.getValue().contains(name)) {
+                deliver(subscriptions.getKey(), "message".getBytes(StandardCharsets.US_ASCII), channel, message);
+                receivers++;
+            }
+        }
+        for (Map.Entry<Long, Set<String>> subscriptions : patternSubscriptions.entrySet()) {
+            for (String pattern : subscriptions.getValue()) {
+                if (matches(pattern, 0, name, 0)) {
+                    deliver(subscriptions.getKey(), "pmessage".getBytes(StandardCharsets.US_ASCII),
+                            pattern.getBytes(StandardCharsets.ISO_8859_1), channel, message);
+                    receivers++;
+                }
+            }
+        }
+        return receivers;
+    }
+
+    private void deliver(long connectionId, byte[]... parts) {
+        OutputStream out = outputs.get(connectionId);
+        if (out != null) {
+            try {
+                synchronized (out) {
+                    writeArrayHeader(out, parts.length);
+                    for (byte[] part : parts) {
+                        writeBulk(out, part);
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // connection closed
+            }
+        }
+    }
+
+    /**
+     * Returns the MOVED or ASK error redirecting the specified command in cluster mode, or null if the command is
+     * executed by this server.
+     */
+    private String redirect(String command, List<byte[]> args, boolean asking) {
+        SlotMap currentSlotMap = slotMap;
+        // scripts are routed by their first key
+        int keyPosition = command.startsWith("EVAL") ? 3 : 1;
+        if (currentSlotMap == null || args.size() <= keyPosition || KEYLESS.contains(command)) {
+            return null;
+        }
+        int slot = JedisClusterCRC16.getSlot(args.get(keyPosition));
+        int owner = currentSlotMap.getOwner(slot);
+        int migrationTarget = currentSlotMap.getMigrationTarget(slot);
+        if (owner == getPort()) {
+            boolean present;
+            synchronized (keyspace) {
+                present = keyspace.containsKey(key(args, keyPosition));
+            }
+            return migrationTarget == 0 || present ? null : "ASK " + slot + " 127.0.0.1:" + migrationTarget;
+        } else if (asking && migrationTarget == getPort()) {
+            return null;
+        } else {
+            return "MOVED " + slot + " 127.0.0.1:" + owner;
+        }
+    }
+
+    private void delay(String command) {
+        Latency latency = latencies.getOrDefault(command, defaultLatency);
+        if (latency.fixedNanos > 0 || latency.jitterNanos > 0) {
+            long deadline = System.nanoTime() + latency.fixedNanos
+                    + (latency.jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(latency.jitterNanos + 1) : 0);
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        }
+    }
+
+    /**
+     * Executes a command whose name and arity were checked, with the keyspace lock held.
+     */
+    private void execute(String command, List<byte[]> args, OutputStream out) throws IOException {
+        try {
+            switch (command) {
+                case "PING":
+                    if (args.size() > 1) {
+                        writeBulk(out, args.get(1));
+                    } else {
+                        out.write(PONG);
+                    }
+                    break;
+                case "ECHO":
+                    writeBulk(out, args.get(1));
+                    break;
+                case "SELECT":
+                case "AUTH":
+                case "CLIENT":
+                case "WATCH":
+                case "UNWATCH":
+                    out.write(OK);
+                    break;
+                case "FLUSHDB":
+                case "FLUSHALL":
+                    keyspace.clear();
+                    out.write(OK);
+                    break;
+                case "DBSIZE":
+                    writeInteger(out, keyspace.size());
+                    break;
+                case "PUBLISH":
+                    writeInteger(out, publish(args.get(1), args.get(2)));
+                    break;
+                case "CLUSTER":
+                    if (slotMap == null || !"SLOTS".equalsIgnoreCase(new String(args.get(1), StandardCharsets.US_ASCII))) {
+                        throw new CommandException("ERR This instance has cluster support disabled");
+                    }
+                    Map<int[], Integer> ranges = slotMap.getRanges();
+                    writeArrayHeader(out, ranges.size());
+                    for (Map.Entry<int[], Integer> range : ranges.entrySet()) {
+                        writeArrayHeader(out, 3);
+                        writeInteger(out, range.getKey()[0]);
+                        writeInteger(out, range.getKey()[1]);
+                        writeArrayHeader(out, 2);
+                        writeBulk(out, "127.0.0.1".getBytes(StandardCharsets.US_ASCII));
+                        writeInteger(out, range.getValue());
+                    }
+                    break;
+                case "SCRIPT":
+                    script(args, out);
+                    break;
+                case "DEL":
+                case "EXISTS":
+                    int count = 0;
+                    for (int i = 1; i < args.size(); i++) {
+                        if ("DEL".equals(command) ? keyspace.remove(key(args, i)) != null : keyspace.containsKey(key(args, i))) {
+                            count++;
+                        }
+                    }
+                    writeInteger(out, count);
+                    break;
+                case "GET":
+                    writeBulk(out, get(args, 1, byte[].class));
+                    break;
+                case "SET":
+                    set(args, out);
+                    break;
+                case "SETEX":
+                case "PSETEX":
+                    // expiry is not supported, the value is kept
+                    keyspace.put(key(args, 1), args.get(3));
+                    out.write(OK);
+                    break;
+                case "EXPIRE":
+                case "PEXPIRE":
+                    writeInteger(out, keyspace.containsKey(key(args, 1)) ? 1 : 0);
+                    break;
+                case "PERSIST":
+                    writeInteger(out, 0);
+                    break;
+                case "PTTL":
+                    writeInteger(out, keyspace.containsKey(key(args, 1)) ? -1 : -2);
+                    break;
+                case "SCAN":
+                    scan(args, 1, keyspace, false, out);
+                    break;
+                case "EVAL":
+                case "EVALSHA":
+                    eval(command, args, out);
+                    break;
+                case "MGET":
+                    writeArrayHeader(out, args.size() - 1);
+                    for (int i = 1; i < args.size(); i++) {
+                        Object value = keyspace.get(key(args, i));
+                        writeBulk(out, value instanceof byte[] ? (byte[]) value : null);
+                    }
+                    break;
+                case "MSET":
+                    if (args.size() % 2 == 0) {
+                        throw new CommandException("ERR wrong number of arguments for 'MSET' command");
+                    }
+                    for (int i = 1; i < args.size(); i += 2) {
+                        keyspace.put(key(args, i), args.get(i + 1));
+                    }
+                    out.write(OK);
+                    break;
+                case "INCR":
+                case "DECR":
+                case "INCRBY":
+                case "DECRBY":
+                    long increment = args.size() > 2 ? parseLong(args.get(2)) : 1;
+                    byte[] current = get(args, 1, byte[].class);
+                    long value = (current == null ? 0 : parseLong(current)) + (command.startsWith("DECR") ? -increment : increment);
+                    keyspace.put(key(args, 1), encode(value));
+                    writeInteger(out, value);
+                    break;
+                case "APPEND":
+                    byte[] prefix = get(args, 1, byte[].class);
+                    byte[] appended = concat(prefix == null ? new byte[0] : prefix, args.get(2));
+                    keyspace.put(key(args, 1), appended);
+                    writeInteger(out, appended.length);
+                    break;
+                case "STRLEN":
+                    byte[] string = get(args, 1, byte[].class);
+                    writeInteger(out, string == null ? 0 : string.length);
+                    break;
+                default:
+                    if (command.startsWith("H")) {
+                        executeHash(command, args, out);
+                    } else if (command.startsWith("L") || command.startsWith("R")) {
+                        executeList(command, args, out);
+                    } else if (command.startsWith("X")) {
+                        executeStream(command, args, out);
+                    } else {
+                        throw new CommandException("ERR '" + command + "' is not allowed in transactions");
+                    }
+            }
+            track(command, args);
+        } catch (CommandException e) {
+            writeError(out, e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void executeHash(String command, List<byte[]> args, OutputStream out) throws IOException {
+        Map<String, byte[]> hash = get(args, 1, Map.class);
+        switch (command) {
+            case "HSET":
+            case "HMSET":
+                if (args.size() % 2 != 0) {
+                    throw new CommandException("ERR wrong number of arguments for '" + command + "' command");
+                }
+                if (hash == null) {
+                    hash = new LinkedHashMap<>();
+                    keyspace.put(key(args, 1), hash);
+                }
+                int added = 0;
+                for (int i = 2; i < args.size(); i += 2) {
+                    if (hash.put(key(args, i), args.get(i + 1)) == null) {
+                        added++;
+                    }
+                }
+                if ("HSET".equals(command)) {
+                    writeInteger(out, added);
+                } else {
+                    out.write(OK);
+                }
+                break;
+            case "HGET":
+                writeBulk(out, hash == null ? null : hash.get(key(args, 2)));
+                break;
+            case "HMGET":
+                writeArrayHeader(out, args.size() - 2);
+                for (int i = 2; i < args.size(); i++) {
+                    writeBulk(out, hash == null ? null : hash.get(key(args, i)));
+                }
+                break;
+            case "HGETALL":
+                writeArrayHeader(out, hash == null ? 0 : hash.size() * 2);
+                if (hash != null) {
+                    for (Map.Entry<String, byte[]> entry : hash.entrySet()) {
+                        writeBulk(out, entry.getKey().getBytes(StandardCharsets.ISO_8859_1));
+                        writeBulk(out, entry.getValue());
+                    }
+                }
+                break;
+            case "HDEL":
+                int removed = 0;
+                for (int i = 2; hash != null && i < args.size(); i++) {
+                    if (hash.remove(key(args, i)) != null) {
+                        removed++;
+                    }
+                }
+                removeIfEmpty(args, hash == null || hash.isEmpty());
+                writeInteger(out, removed);
+                break;
+            case "HSCAN":
+                scan(args, 2, hash == null ? new HashMap<>() : hash, true, out);
+                break;
+            case "HEXISTS":
+                writeInteger(out, hash != null && hash.containsKey(key(args, 2)) ? 1 : 0);
+                break;
+            case "HLEN":
+                writeInteger(out, hash == null ? 0 : hash.size());
+                break;
+            case "HINCRBY":
+                if (hash == null) {
+                    hash = new LinkedHashMap<>();
+                    keyspace.put(key(args, 1), hash);
+                }
+                byte[] current = hash.get(key(args, 2));
+                long value = (current == null ? 0 : parseLong(current)) + parseLong(args.get(3));
+                hash.put(key(args, 2), encode(value));
+                writeInteger(out, value);
+                break;
+            default:
+                throw new CommandException("ERR '" + command + "' is not allowed in transactions");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void executeList(String command, List<byte[]> args, OutputStream out) throws IOException {
+        List<byte[]> list = get(args, 1, List.class);
+        switch (command) {
+            case "LPUSH":
+            case "RPUSH":
+                if (list == null) {
+                    list = new ArrayList<>();
+                    keyspace.put(key(args, 1), list);
+                }
+                for (int i = 2; i < args.size(); i++) {
+                    list.add("LPUSH".equals(command) ? 0 : list.size(), args.get(i));
+                }
+                writeInteger(out, list.size());
+                break;
+            case "LPOP":
+            case "RPOP":
+                if (list == null) {
+                    out.write(NULL);
+                } else {
+                    writeBulk(out, list.remove("LPOP".equals(command) ? 0 : list.size() - 1));
+                    removeIfEmpty(args, list.isEmpty());
+                }
+                break;
+            case "LLEN":
+                writeInteger(out, list == null ? 0 : list.size());
+                break;
+            case "LINDEX":
+                int index = list == null ? -1 : index(args.get(2), list.size());
+                writeBulk(out, index >= 0 && index < list.size() ? list.get(index) : null);
+                break;
+            case "LRANGE":
+            case "LTRIM":
+                int size = list == null ? 0 : list.size();
+                int start = Math.max(0, index(args.get(2), size));
+                int stop = Math.min(size - 1, index(args.get(3), size));
+                List<byte[]> range = start <= stop ? new ArrayList<>(list.subList(start, stop + 1)) : new ArrayList<>();
+                if ("LRANGE".equals(command)) {
+                    writeArrayHeader(out, range.size());
+                    for (byte[] element : range) {
+                        writeBulk(out, element);
+                    }
+                } else {
+                    if (list != null) {
+                        list.clear();
+                        list.addAll(range);
+                    }
+                    removeIfEmpty(args, range.isEmpty());
+                    out.write(OK);
+                }
+                break;
+            default:
+                throw new CommandException("ERR '" + command + "' is not allowed in transactions");
+        }
+    }
+
+    private void executeStream(String command, List<byte[]> args, OutputStream out) throws IOException {
+        switch (command) {
+            case "XADD":
+                xadd(args, out);
+                break;
+            case "XGROUP":
+                xgroup(args, out);
+                break;
+            case "XREADGROUP":
+                xreadgroup(args, out);
+                break;
+            case "XACK":
+                StreamValue stream = get(args, 1, StreamValue.class);
+                ConsumerGroup consumerGroup = stream == null ? null : stream.groups.get(key(args, 2));
+                int acknowledged = 0;
+                for (int i = 3; consumerGroup != null && i < args.size(); i++) {
+                    if (consumerGroup.pending.remove(parseId(args.get(i))) != null) {
+                        acknowledged++;
+                    }
+                }
+                writeInteger(out, acknowledged);
+                break;
+            default:
+                throw new CommandException("ERR '" + command + "' is not allowed in transactions");
+        }
+    }
+
+    /**
+     * Appends an entry to a stream and wakes up the blocked readers.
+     */
+    private void xadd(List<byte[]> args, OutputStream out) throws IOException {
+        if (args.size() % 2 == 0) {
+            throw new CommandException("ERR wrong number of arguments for 'XADD' command");
+        }
+        StreamValue stream = get(args, 1, StreamValue.class);
+        if (stream == null) {
+            stream = new StreamValue();
+            keyspace.put(key(args, 1), stream);
+        }
+        long[] id;
+        if ("*".equals(key(args, 2))) {
+            long millis = Math.max(System.currentTimeMillis(), stream.lastId[0]);
+            id = new long[]{millis, millis == stream.lastId[0] ? stream.lastId[1] + 1 : 0};
+        } else {
+            id = parseId(args.get(2));
+            if (STREAM_ID_ORDER.compare(id, stream.lastId) <= 0) {
+                throw new CommandException("ERR The ID specified in XADD is equal or smaller than the target stream top item");
+            }
+        }
+        stream.entries.put(id, new ArrayList<>(args.subList(3, args.size())));
+        stream.lastId = id;
+        keyspace.notifyAll();
+        writeBulk(out, formatId(id).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Creates a consumer group, the only supported subcommand.
+     */
+    private void xgroup(List<byte[]> args, OutputStream out) throws IOException {
+        if (args.size() < 5 || !"CREATE".equalsIgnoreCase(key(args, 1))) {
+            throw new CommandException("ERR Unknown or unsupported XGROUP subcommand");
+        }
+        StreamValue stream = get(args, 2, StreamValue.class);
+        if (stream == null) {
+            if (args.size() < 6 || !"MKSTREAM".equalsIgnoreCase(key(args, 5))) {
+                throw new CommandException("ERR The XGROUP subcommand requires the key to exist");
+            }
+            stream = new StreamValue();
+            keyspace.put(key(args, 2), stream);
+        }
+        if (stream.groups.containsKey(key(args, 3))) {
+            throw new CommandException("BUSYGROUP Consumer Group name already exists");
+        }
+        stream.groups.put(key(args, 3), new ConsumerGroup("$".equals(key(args, 4)) ? stream.lastId : parseId(args.get(4))));
+        out.write(OK);
+    }
+
+    /**
+     * Reads the new entries of a single stream, blocking until one is added or the timeout elapses if requested, or
+     * the entries pending for the consumer after the specified identifier.
+     */
+    private void xreadgroup(List<byte[]> args, OutputStream out) throws IOException {
+        String group = key(args, 2);
+        String consumer = key(args, 3);
+        int count = Integer.MAX_VALUE;
+        long block = -1;
+        boolean noAck = false;
+        int streamsPosition = 4;
+        for (; streamsPosition < args.size(); streamsPosition++) {
+            String option = key(args, streamsPosition).toUpperCase();
+            if ("COUNT".equals(option)) {
+                count = (int) parseLong(args.get(++streamsPosition));
+            } else if ("BLOCK".equals(option)) {
+                block = parseLong(args.get(++streamsPosition));
+            } else if ("NOACK".equals(option)) {
+                noAck = true;
+            } else if ("STREAMS".equals(option)) {
+                break;
+            }
+        }
+        if (args.size() != streamsPosition + 3) {
+            throw new CommandException("ERR only a single stream can be read by XREADGROUP");
+        }
+        int keyPosition = streamsPosition + 1;
+        ConsumerGroup consumerGroup = getConsumerGroup(args, keyPosition, group);
+        TreeMap<long[], List<byte[]>> entries = new TreeMap<>(STREAM_ID_ORDER);
+        if (!">".equals(key(args, keyPosition + 1))) {
+            StreamValue stream = get(args, keyPosition, StreamValue.class);
+            for (Map.Entry<long[], String> pending : consumerGroup.pending.tailMap(parseId(args.get(keyPosition + 1)), false).entrySet()) {
+                if (entries.size() < count && consumer.equals(pending.getValue())) {
+                    entries.put(pending.getKey(), stream.entries.get(pending.getKey()));
+                }
+            }
+        } else {
+            long deadline = System.currentTimeMillis() + block;
+            StreamValue stream = get(args, keyPosition, StreamValue.class);
+            while (stream.entries.higherKey(consumerGroup.lastDeliveredId) == null && block >= 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (block > 0 && remaining <= 0) {
+                    break;
+                }
+                try {
+                    keyspace.wait(block == 0 ? 0 : remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                consumerGroup = getConsumerGroup(args, keyPosition, group);
+                stream = get(args, keyPosition, StreamValue.class);
+            }
+            for (Map.Entry<long[], List<byte[]>> entry : stream.entries.tailMap(consumerGroup.lastDeliveredId, false).entrySet()) {
+                if (entries.size() == count) {
+                    break;
+                }
+                entries.put(entry.getKey(), entry.getValue());
+                if (!noAck) {
+                    consumerGroup.pending.put(entry.getKey(), consumer);
+                }
+            }
+            if (entries.isEmpty()) {
+                out.write(NULL_ARRAY);
+                return;
+            }
+            consumerGroup.lastDeliveredId = entries.lastKey();
+        }
+        writeArrayHeader(out, 1);
+        writeArrayHeader(out, 2);
+        writeBulk(out, args.get(keyPosition));
+        writeArrayHeader(out, entries.size());
+        for (Map.Entry<long[], List<byte[]>> entry : entries.entrySet()) {
+            writeArrayHeader(out, 2);
+            writeBulk(out, formatId(entry.getKey()).getBytes(StandardCharsets.US_ASCII));
+            writeArrayHeader(out, entry.getValue().size());
+            for (byte[] field : entry.getValue()) {
+                writeBulk(out, field);
+            }
+        }
+    }
+
+    private ConsumerGroup getConsumerGroup(List<byte[]> args, int keyPosition, String group) {
+        StreamValue stream = get(args, keyPosition, StreamValue.class);
+        ConsumerGroup consumerGroup = stream == null ? null : stream.groups.get(group);
+        if (consumerGroup == null) {
+            throw new CommandException("NOGROUP No such key '" + key(args, keyPosition) + "' or consumer group '" + group + "'");
+        }
+        return consumerGroup;
+    }
+
+    private <T> T get(List<byte[]> args, int position, Class<T> type) {
+        Object value = keyspace.get(key(args, position));
+        if (value != null && !type.isInstance(value)) {
+            throw new CommandException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return type.cast(value);
+    }
+
+    private void set(List<byte[]> args, OutputStream out) throws IOException {
+        boolean nx = false;
+        boolean xx = false;
+        for (int i = 3; i < args.size(); i++) {
+            String option = new String(args.get(i), StandardCharsets.US_ASCII).toUpperCase();
+            if ("NX".equals(option)) {
+                nx = true;
+            } else if ("XX".equals(option)) {
+                xx = true;
+            } else if ("EX".equals(option) || "PX".equals(option) || "EXAT".equals(option) || "PXAT".equals(option)) {
+                // expiry is not supported, its value is skipped
+                i++;
+            }
+        }
+        String key = key(args, 1);
+        if (nx && keyspace.containsKey(key) || xx && !keyspace.containsKey(key)) {
+            out.write(NULL);
+        } else {
+            keyspace.put(key, args.get(2));
+            out.write(OK);
+        }
+    }
+
+    /**
+     * Scans the keys or hash fields in their natural order, the cursor being the position of the next one to scan.
+     */
+    private void scan(List<byte[]> args, int cursorPosition, Map<String, ?> source, boolean withValues, OutputStream out) throws IOException {
+        int cursor = (int) parseLong(args.get(cursorPosition));
+        String pattern = "*";
+        int count = 10;
+        for (int i = cursorPosition + 1; i < args.size() - 1; i += 2) {
+            String option = new String(args.get(i), StandardCharsets.US_ASCII).toUpperCase();
+            if ("MATCH".equals(option)) {
+                pattern = key(args, i + 1);
+            } else if ("COUNT".equals(option)) {
+                count = (int) parseLong(args.get(i + 1));
+            }
+        }
+        List<String> keys = new ArrayList<>(new TreeSet<>(source.keySet()));
+        int end = Math.min(keys.size(), cursor + count);
+        List<String> matching = new ArrayList<>();
+        for (String key : keys.subList(Math.min(cursor, end), end)) {
+            if (matches(pattern, 0, key, 0)) {
+                matching.add(key);
+            }
+        }
+        writeArrayHeader(out, 2);
+        writeBulk(out, encode(end == keys.size() ? 0 : end));
+        writeArrayHeader(out, withValues ? matching.size() * 2 : matching.size());
+        for (String key : matching) {
+            writeBulk(out, key.getBytes(StandardCharsets.ISO_8859_1));
+            if (withValues) {
+                writeBulk(out, (byte[]) source.get(key));
+            }
+        }
+    }
+
+    /**
+     * Caches scripts with SCRIPT LOAD, checks them with SCRIPT EXISTS and empties the cache with SCRIPT FLUSH.
+     */
+    private void script(List<byte[]> args, OutputStream out) throws IOException {
+        String subcommand = key(args, 1).toUpperCase();
+        if ("LOAD".equals(subcommand) && args.size() > 2) {
+            String sha = LuaScriptRegistry.sha1(new String(args.get(2), StandardCharsets.UTF_8));
+            scriptCache.add(sha);
+            writeBulk(out, sha.getBytes(StandardCharsets.US_ASCII));
+        } else if ("EXISTS".equals(subcommand)) {
+            writeArrayHeader(out, args.size() - 2);
+            for (int i = 2; i < args.size(); i++) {
+                writeInteger(out, scriptCache.contains(key(args, i)) ? 1 : 0);
+            }
+        } else if ("FLUSH".equals(subcommand)) {
+            scriptCache.clear();
+            out.write(OK);
+        } else {
+            throw new CommandException("ERR Unknown or unsupported SCRIPT subcommand");
+        }
+    }
+
+    private void eval(String command, List<byte[]> args, OutputStream out) throws IOException {
+        String sha = "EVAL".equals(command) ? LuaScriptRegistry.sha1(new String(args.get(1), StandardCharsets.UTF_8))
+                : new String(args.get(1), StandardCharsets.US_ASCII);
+        ScriptEmulation emulation = scripts.get(sha);
+        if ("EVALSHA".equals(command) && !scriptCache.contains(sha)) {
+            throw new CommandException("NOSCRIPT No matching script. Please use EVAL.");
+        } else if (emulation == null) {
+            throw new CommandException("ERR Lua scripts are not supported");
+        }
+        scriptCache.add(sha);
+        int keyCount = (int) parseLong(args.get(2));
+        Object result = emulation.eval(new Strings(), args.subList(3, 3 + keyCount), args.subList(3 + keyCount, args.size()));
+        if (result instanceof Long) {
+            writeInteger(out, (Long) result);
+        } else {
+            writeBulk(out, (byte[]) result);
+        }
+    }
+
+    private void removeIfEmpty(List<byte[]> args, boolean empty) {
+        if (empty) {
+            keyspace.remove(key(args, 1));
+        }
+    }
+
+    /**
+     * Reads a RESP array of bulk strings.
+     */
+    private List<byte[]> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header == null) {
+            return null;
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<byte[]> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            byte[] value = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(value, read, length - read);
+                if (n < 0) {
+                    return null;
+                }
+                read += n;
+            }
+            readLine(in);
+            args.add(value);
+        }
+        return args;
+    }
+
+    private String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c < 0) {
+                return null;
+            }
+            sb.append((char) c);
+        }
+        in.read();
+        return sb.toString();
+    }
+
+    /**
+     * Converts a key or a hash field to a string with a one-to-one mapping of its bytes.
+     */
+    private static String key(List<byte[]> args, int position) {
+        return new String(args.get(position), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Matches a key against a glob-style pattern supporting {@code *}, {@code ?} and backslash escapes.
+     */
+    private static boolean matches(String pattern, int p, String key, int k) {
+        while (p < pattern.length()) {
+            char c = pattern.charAt(p);
+            if (c == '*') {
+                for (int i = k; i <= key.length(); i++) {
+                    if (matches(pattern, p + 1, key, i)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (c == '\\' && p + 1 < pattern.length()) {
+                c = pattern.charAt(++p);
+            } else if (c == '?') {
+                c = k < key.length() ? key.charAt(k) : c;
+            }
+            if (k >= key.length() || key.charAt(k) != c) {
+                return false;
+            }
+            p++;
+            k++;
+        }
+        return k == key.length();
+    }
+
+    private static long[] parseId(byte[] bytes) {
+        String id = new String(bytes, StandardCharsets.US_ASCII);
+        int separator = id.indexOf('-');
+        try {
+            return separator < 0 ? new long[]{Long.parseLong(id), 0}
+                    : new long[]{Long.parseLong(id.substring(0, separator)), Long.parseLong(id.substring(separator + 1))};
+        } catch (NumberFormatException e) {
+            throw new CommandException("ERR Invalid stream ID specified as stream command argument");
+        }
+    }
+
+    private static String formatId(long[] id) {
+        return id[0] + "-" + id[1];
+    }
+
+    private static int index(byte[] bytes, int size) {
+        long index = parseLong(bytes);
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, index < 0 ? size + index : index));
+    }
+
+    private static long parseLong(byte[] bytes) {
+        try {
+            return Long.parseLong(new String(bytes, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw new CommandException("ERR value is not an integer or out of range");
+        }
+    }
+
+    private static byte[] encode(long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static void writeBulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.write(NULL);
+        } else {
+            out.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(value);
+            out.write(CRLF);
+        }
+    }
+
+    private static void writeInteger(OutputStream out, long value) throws IOException {
+        out.write((":" + value + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeArrayHeader(OutputStream out, int size) throws IOException {
+        out.write(("*" + size + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeError(OutputStream out, String message) throws IOException {
+        out.write(("-" + message + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Java emulation of a Lua script, executed with the keyspace lock held.
+     */
+    @FunctionalInterface
+    interface ScriptEmulation {
+        /**
+         * Evaluates the script.
+         *
+         * @param strings the string keys of the server.
+         * @param keys    the keys passed to the script.
+         * @param args    the other arguments passed to the script.
+         * @return the reply of the script, a bulk string ({@code byte[]}), an integer ({@code Long}) or null.
+         */
+        Object eval(Strings strings, List<byte[]> keys, List<byte[]> args);
+    }
+
+    /**
+     * String keys of the server, as accessed by script emulations.
+     */
+    class Strings {
+        byte[] get(byte[] key) {
+            Object value = keyspace.get(new String(key, StandardCharsets.ISO_8859_1));
+            if (value != null && !(value instanceof byte[])) {
+                throw new CommandException("WRONGTYPE Operation against a key holding the wrong kind of value");
+            }
+            return (byte[]) value;
+        }
+
+        void set(byte[] key, byte[] value) {
+            keyspace.put(new String(key, StandardCharsets.ISO_8859_1), value);
+        }
+
+        boolean del(byte[] key) {
+            return keyspace.remove(new String(key, StandardCharsets.ISO_8859_1)) != null;
+        }
+    }
+
+    /**
+     * Owners of the hash slots of an emulated cluster, shared by its nodes.
+     */
+    static class SlotMap {
+        private final int[] owners = new int[JedisCluster.HASHSLOTS];
+        private final Map<Integer, Integer> migrations = new HashMap<>();
+
+        /**
+         * Assigns the specified range of slots to a node.
+         *
+         * @return the slot map itself.
+         */
+        synchronized SlotMap assign(int start, int end, RespServer owner) {
+            Arrays.fill(owners, start, end + 1, owner.getPort());
+            return this;
+        }
+
+        /**
+         * Starts migrating a slot to another node, keys absent from its owner being redirected there with ASK.
+         *
+         * @return the slot map itself.
+         */
+        synchronized SlotMap migrate(int slot, RespServer target) {
+            migrations.put(slot, target.getPort());
+            return this;
+        }
+
+        synchronized int getOwner(int slot) {
+            return owners[slot];
+        }
+
+        synchronized int getMigrationTarget(int slot) {
+            return migrations.getOrDefault(slot, 0);
+        }
+
+        /**
+         * Returns the contiguous ranges of assigned slots with the port of their owner.
+         */
+        private synchronized Map<int[], Integer> getRanges() {
+            Map<int[], Integer> ranges = new LinkedHashMap<>();
+            int start = 0;
+            for (int slot = 1; slot <= owners.length; slot++) {
+                if (slot == owners.length || owners[slot] != owners[start]) {
+                    if (owners[start] != 0) {
+                        ranges.put(new int[]{start, slot - 1}, owners[start]);
+                    }
+                    start = slot;
+                }
+            }
+            return ranges;
+        }
+    }
+
+    /**
+     * Entries of a stream, with their fields and values, and its consumer groups.
+     */
+    private static class StreamValue {
+        private final TreeMap<long[], List<byte[]>> entries = new TreeMap<>(STREAM_ID_ORDER);
+        private final Map<String, ConsumerGroup> groups = new HashMap<>();
+        private long[] lastId = {0, 0};
+    }
+
+    /**
+     * Last entry delivered to a consumer group and entries delivered but not acknowledged, with their consumer.
+     */
+    private static class ConsumerGroup {
+        private final TreeMap<long[], String> pending = new TreeMap<>(STREAM_ID_ORDER);
+        private long[] lastDeliveredId;
+
+        private ConsumerGroup(long[] lastDeliveredId) {
+            this.lastDeliveredId = lastDeliveredId;
+        }
+    }
+
+    private static class Latency {
+        private final long fixedNanos;
+        private final long jitterNanos;
+
+        private Latency(long latency, long jitter) {
+            this.fixedNanos = TimeUnit.MICROSECONDS.toNanos(latency);
+            this.jitterNanos = TimeUnit.MICROSECONDS.toNanos(jitter);
+        }
+    }
+
+    /**
+     * Output of a connection, whose replies are discarded after CLIENT REPLY OFF until CLIENT REPLY ON.
+     */
+    private static class ReplyStream extends FilterOutputStream {
+        private boolean discarding;
+
+        private ReplyStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!discarding) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!discarding) {
+                out.write(b, off, len);
+            }
+        }
+    }
+
+    /**
+     * Error reply of a command, which does not affect the connection.
+     */
+    private static class CommandException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private CommandException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ShardedRedisImplTest {
+    private RespServer first;
+    private RespServer second;
+    private List<JedisPool> shardPools;
+    private ExecutorService executorService;
+    private ShardedRedisImpl shardedRedis;
+
+    @Before
+    public void setUp() throws IOException {
+        first = new RespServer();
+        second = new RespServer();
+        shardPools = Arrays.asList(new JedisPool("127.0.0.1", first.getPort()), new JedisPool("127.0.0.1", second.getPort()));
+        executorService = Executors.newCachedThreadPool();
+        shardedRedis = new ShardedRedisImpl(shardPools, executorService, new RedisMetrics("sharded", () -> shardPools));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        executorService.shutdownNow();
+        shardPools.forEach(JedisPool::close);
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void keys_are_spread_over_shards() {
+        List<String> keysValues = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            keysValues.add("key" + i);
+            keysValues.add("value" + i);
+        }
+        assertThat(shardedRedis.mset(keysValues.toArray(new String[0]))).isEqualTo("OK");
+
+        int onFirst = 0;
+        for (int i = 0; i < 20; i++) {
+            assertThat(shardedRedis.get("key" + i)).isEqualTo("value" + i);
+            if (first.getString("key" + i) != null) {
+                onFirst++;
+            } else {
+                assertThat(second.getString("key" + i)).isEqualTo("value" + i);
+            }
+        }
+        assertThat(onFirst).isBetween(1, 19);
+        assertThat(shardedRedis.mget("key0", "missing", "key19")).containsExactly("value0", null, "value19");
+        assertThat(shardedRedis.executeOnAllShards(jedis -> jedis.dbSize())).containsExactly((long) onFirst, 20L - onFirst);
+        assertThat(shardedRedis.del("key0", "key1", "missing")).isEqualTo(2);
+    }
+
+    @Test
+    public void hash_tags_place_keys_on_the_same_shard() {
+        shardedRedis.mset("{user1}.name", "name", "{user1}.email", "email");
+        RespServer owner = first.getString("{user1}.name") != null ? first : second;
+        assertThat(owner.getString("{user1}.email")).isEqualTo("email");
+    }
+
+    @Test
+    public void expiring_commands_are_sent_to_the_key_shard() {
+        assertThat(shardedRedis.setex("key1", 60, "value1")).isEqualTo("OK");
+        assertThat(shardedRedis.expire("key1", 60)).isEqualTo(1);
+        assertThat(shardedRedis.expire("missing", 60)).isZero();
+        assertThat(shardedRedis.exists("key1")).isTrue();
+    }
+
+    @Test
+    public void multi_shard_mset_is_not_atomic() throws Exception {
+        second.close();
+        List<String> keysValues = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            keysValues.add("key" + i);
+            keysValues.add("value" + i);
+        }
+        assertThatThrownBy(() -> shardedRedis.mset(keysValues.toArray(new String[0]))).isInstanceOf(JedisConnectionException.class);
+        executorService.shutdown();
+        assertThat(executorService.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        long set = 0;
+        for (int i = 0; i < 20; i++) {
+            if (first.getString("key" + i) != null) {
+                set++;
+            }
+        }
+        assertThat(set).isPositive();
+    }
+
+    @Test
+    public void mset_requires_keys_and_values() {
+        assertThatThrownBy(() -> shardedRedis.mset("key1")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
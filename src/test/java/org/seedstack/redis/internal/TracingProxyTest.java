@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package org.seedstack.redis.internal;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.seedstack.redis.RedisConfig;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisCluster;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TracingProxyTest {
+    private RespServer respServer;
+    private CommandTracer commandTracer;
+
+    @Before
+    public void setUp() throws IOException {
+        respServer = new RespServer();
+        commandTracer = new CommandTracer(new RedisConfig.TracingConfig().setEnabled(true).setSampleRate(1));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        respServer.close();
+    }
+
+    @Test
+    public void instances_are_plain_without_tracer() {
+        try (Jedis jedis = TracingProxy.forInstance(Jedis.class, new Class<?>[]{String.class, int.class},
+                new Object[]{"127.0.0.1", respServer.getPort()}, null)) {
+            assertThat(jedis.getClass()).isEqualTo(Jedis.class);
+        }
+    }
+
+    @Test
+    public void commands_of_traced_instances_are_recorded() {
+        try (Jedis jedis = TracingProxy.forInstance(Jedis.class, new Class<?>[]{String.class, int.class},
+                new Object[]{"127.0.0.1", respServer.getPort()}, commandTracer)) {
+            assertThat(jedis.getClass()).isNotEqualTo(Jedis.class);
+            jedis.set("key1", "value1");
+            assertThat(jedis.get("key1")).isEqualTo("value1");
+            assertThat(jedis.get("key1")).isEqualTo("value1");
+        }
+        Map<String, Object> traces = commandTracer.collect();
+        assertThat(traces).containsEntry("sampledCommands", 3L);
+        assertThat(traces.get("commands")).isInstanceOfSatisfying(Map.class, commands -> assertThat(commands.size()).isEqualTo(2));
+        assertThat(traces.get("commands").toString()).contains("SET=", "GET=");
+        assertThat(traces.get("hotKeys")).isEqualTo(Collections.singletonMap("key1", 3L));
+    }
+
+    @Test
+    public void clusters_are_created_from_a_client_config() {
+        respServer.setSlotMap(new RespServer.SlotMap().assign(0, JedisCluster.HASHSLOTS - 1, respServer));
+        Set<HostAndPort> hostAndPorts = Collections.singleton(new HostAndPort("127.0.0.1", respServer.getPort()));
+        JedisClientConfig jedisClientConfig = DefaultJedisClientConfig.builder().clientName("test").build();
+        try (JedisCluster jedisCluster = TracingProxy.forInstance(JedisCluster.class,
+                new Class<?>[]{Set.class, JedisClientConfig.class, int.class, GenericObjectPoolConfig.class},
+                new Object[]{hostAndPorts, jedisClientConfig, 3, new GenericObjectPoolConfig<Jedis>()}, commandTracer)) {
+            assertThat(jedisCluster.getClusterNodes()).hasSize(1);
+            assertThat(jedisCluster.set("key1", "value1")).isEqualTo("OK");
+            assertThat(jedisCluster.get("key1")).isEqualTo("value1");
+        }
+        assertThat(commandTracer.collect()).containsEntry("sampledCommands", 2L);
+    }
+}
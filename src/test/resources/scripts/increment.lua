@@ -0,0 +1,10 @@
+--
+-- Copyright © 2013-2021, The SeedStack authors <http://seedstack.org>
+--
+-- This Source Code Form is subject to the terms of the Mozilla Public
+-- License, v. 2.0. If a copy of the MPL was not distributed with this
+-- file, You can obtain one at http://mozilla.org/MPL/2.0/.
+--
+
+-- increments a counter and returns its new value
+return redis.call('INCRBY', KEYS[1], ARGV[1])